@@ -0,0 +1,181 @@
+package mywild.wildweather.domain.weather;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
+
+/**
+ * Synthetic weather data for the benchmarks. The data is generated from a fixed seed, so every run measures the same
+ * values. The days end on the 31st of December 2024, and every station has an Average, High and Low row for every day
+ * (and a fine scale record every 5 minutes).
+ */
+final public class WeatherFixtures {
+
+    private WeatherFixtures() {
+        // prevent instantiation
+    }
+
+    public static final String SUMMARY_CSV_HEADER = ",Date,Outdoor Temperature,Wind Speed,Max Daily Gust,Wind Direction,"
+        + "Rain Rate,Daily Rain,Relative Pressure,Humidity,Ultra-Violet Radiation Index";
+
+    public static final String FINE_SCALE_CSV_HEADER = "Date,Simple Date,Outdoor Temperature (°F),Feels Like (°F),"
+        + "Dew Point (°F),Wind Speed (mph),Wind Gust (mph),Max Daily Gust (mph),Wind Direction (°),Hourly Rain (in/hr),"
+        + "Event Rain (in),Daily Rain (in),Weekly Rain (in),Monthly Rain (in),Yearly Rain (in),Relative Pressure (inHg),"
+        + "Humidity (%),Ultra-Violet Radiation Index,Solar Radiation (W/m^2),Indoor Temperature (°F),Indoor Humidity (%),"
+        + "Absolute Pressure (inHg),Outdoor Battery,Indoor Battery";
+
+    private static final String[] DIRECTIONS = {
+        "N", "NNE", "NE", "ENE", "E", "ESE", "SE", "SSE", "S", "SSW", "SW", "WSW", "W", "WNW", "NW", "NNW" };
+
+    private static final LocalDate END_DATE = LocalDate.of(2025, 1, 1);
+
+    private static final ZoneId ZONE = ZoneId.of("America/Denver");
+
+    private static final DateTimeFormatter SIMPLE_DATE = DateTimeFormatter.ofPattern("yyyy/M/d h:mm a", Locale.ROOT);
+
+    /**
+     * The number of stations and years of data, written as "stations x years" (for example 10x30).
+     */
+    public record Scale(int stations, int years) {
+
+        public static Scale of(String text) {
+            var parts = text.split("x");
+            return new Scale(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        }
+
+        public LocalDate startDate() {
+            return END_DATE.minusYears(years);
+        }
+
+    }
+
+    public static String getStationName(int station) {
+        return "Station " + station;
+    }
+
+    /**
+     * The rows of all the stations, ordered by date, station and category (like the rows from the database).
+     */
+    public static List<WeatherEntity> createEntities(Scale scale) {
+        var randoms = new Random[scale.stations()];
+        for (int s = 0; s < randoms.length; s++) {
+            randoms[s] = new Random(s);
+        }
+        List<WeatherEntity> entities = new ArrayList<>();
+        for (var date = scale.startDate(); date.isBefore(END_DATE); date = date.plusDays(1)) {
+            for (int s = 0; s < scale.stations(); s++) {
+                var random = randoms[s];
+                for (var category : WeatherCategory.values()) {
+                    var values = createValues(random);
+                    entities.add(WeatherEntity.builder()
+                        .station(getStationName(s))
+                        .date(date)
+                        .category(category)
+                        .temperature(values.temperature())
+                        .windSpeed(values.windSpeed())
+                        .windMax(values.windMax())
+                        .windDirection(values.windDirection())
+                        .rainRate(values.rainRate())
+                        .rainDaily(values.rainDaily())
+                        .pressure(values.pressure())
+                        .humidity(values.humidity())
+                        .uvRadiationIndex(values.uvRadiationIndex())
+                        .missing(random.nextInt(50) == 0 ? 100.0 : 0.0)
+                        .build());
+                }
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * A summary (high-lows) CSV file of one station, in the format exported by Ambient Weather.
+     */
+    public static String createSummaryCsv(int station, int years) {
+        var random = new Random(station);
+        var csv = new StringBuilder(SUMMARY_CSV_HEADER).append('\n');
+        for (var date = END_DATE.minusYears(years); date.isBefore(END_DATE); date = date.plusDays(1)) {
+            for (var category : List.of("Average", "High", "Low")) {
+                var values = createValues(random);
+                csv.append(category).append(',').append(date)
+                    .append(',').append(format(values.temperature()))
+                    .append(',').append(format(values.windSpeed()))
+                    .append(',').append(format(values.windMax()))
+                    .append(',').append(values.windDirection() != null ? values.windDirection() : "")
+                    .append(',').append(format(values.rainRate()))
+                    .append(',').append(format(values.rainDaily()))
+                    .append(',').append(format(values.pressure()))
+                    .append(',').append(format(values.humidity()))
+                    .append(',').append(format(values.uvRadiationIndex()))
+                    .append('\n');
+            }
+        }
+        return csv.toString();
+    }
+
+    /**
+     * A fine scale (5 minute) CSV file of one year, in the format exported by Ambient Weather (newest record first).
+     */
+    public static String createFineScaleCsv(int station, int year) {
+        var random = new Random(station * 10_000L + year);
+        var csv = new StringBuilder(FINE_SCALE_CSV_HEADER).append('\n');
+        var first = ZonedDateTime.of(year, 1, 1, 0, 0, 0, 0, ZONE);
+        for (var time = first.plusYears(1).minusMinutes(5); !time.isBefore(first); time = time.minusMinutes(5)) {
+            // Some records are missing
+            if (random.nextInt(100) == 0) {
+                continue;
+            }
+            var temperature = 40 + random.nextInt(500) / 10.0;
+            csv.append(time.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME))
+                .append(",").append(time.format(SIMPLE_DATE))
+                .append(',').append(temperature).append(',').append(temperature).append(',').append(temperature - 10)
+                .append(',').append(random.nextInt(200) / 10.0).append(',').append(random.nextInt(300) / 10.0)
+                .append(",30.2,").append(random.nextInt(360))
+                .append(",0,0,0,0.12,1.5,20.3,").append(29 + random.nextInt(200) / 100.0)
+                .append(',').append(random.nextInt(100)).append(',').append(random.nextInt(12))
+                .append(',').append(random.nextInt(1000) / 10.0)
+                .append(",70.1,45,").append(29 + random.nextInt(200) / 100.0)
+                .append(",1,1\n");
+        }
+        return csv.toString();
+    }
+
+    private static Values createValues(Random random) {
+        return new Values(
+            random.nextInt(12) == 0 ? null : random.nextInt(400) / 10.0,
+            random.nextInt(300) / 10.0,
+            random.nextInt(600) / 10.0,
+            random.nextInt(10) == 0 ? null : DIRECTIONS[random.nextInt(DIRECTIONS.length)],
+            random.nextInt(5) == 0 ? random.nextInt(100) / 10.0 : 0.0,
+            random.nextInt(5) == 0 ? random.nextInt(500) / 10.0 : 0.0,
+            1000 + random.nextInt(400) / 10.0,
+            (double) random.nextInt(100),
+            (double) random.nextInt(12));
+    }
+
+    private static String format(Double value) {
+        return value != null ? value.toString() : "";
+    }
+
+    private record Values(
+        Double temperature,
+        Double windSpeed,
+        Double windMax,
+        String windDirection,
+        Double rainRate,
+        Double rainDaily,
+        Double pressure,
+        Double humidity,
+        Double uvRadiationIndex
+    ) {
+        // The values of one row
+    }
+
+}
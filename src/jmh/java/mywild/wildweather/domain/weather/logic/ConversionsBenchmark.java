@@ -0,0 +1,65 @@
+package mywild.wildweather.domain.weather.logic;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Converts one value per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionsBenchmark {
+
+    private static final int VALUES = 1024;
+
+    private static final String[] DIRECTIONS = {
+        "N", "NNE", "NE", "ENE", "E", "ESE", "SE", "SSE", "S", "SSW", "SW", "WSW", "W", "WNW", "NW", "NNW", "", null, "?" };
+
+    private String[] directions;
+
+    private double[] values;
+
+    @Setup
+    public void setup() {
+        var random = new Random(42);
+        directions = new String[VALUES];
+        values = new double[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            directions[i] = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+            values[i] = random.nextDouble() * 100;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void directionToDegrees(Blackhole blackhole) {
+        for (var direction : directions) {
+            blackhole.consume(Conversions.directionToDegrees(direction));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void roundToOneDecimal(Blackhole blackhole) {
+        for (var value : values) {
+            blackhole.consume(Conversions.roundToOneDecimal(value));
+        }
+    }
+
+}
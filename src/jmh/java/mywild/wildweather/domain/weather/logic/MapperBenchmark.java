@@ -0,0 +1,57 @@
+package mywild.wildweather.domain.weather.logic;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import mywild.wildweather.domain.weather.WeatherFixtures;
+import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
+import mywild.wildweather.domain.weather.web.dto.WeatherAggregate;
+import mywild.wildweather.domain.weather.web.dto.WeatherDataDto;
+import mywild.wildweather.domain.weather.web.dto.WeatherGrouping;
+
+/**
+ * Compares the WeatherAggregator based Mapper with the string keyed {@link LegacyMapper}.
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Djmh.args="MapperBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapperBenchmark {
+
+    @Param({ "DAILY", "WEEKLY", "MONTHLY" })
+    private WeatherGrouping grouping;
+
+    @Param({ "1x1", "10x10", "50x30" })
+    private String scale;
+
+    private List<WeatherEntity> entities;
+
+    @Setup
+    public void setup() {
+        entities = WeatherFixtures.createEntities(WeatherFixtures.Scale.of(scale));
+    }
+
+    @Benchmark
+    public WeatherDataDto legacyMapper() {
+        return LegacyMapper.mapEntitiesToDto(grouping, WeatherAggregate.AVERAGE, null, entities);
+    }
+
+    @Benchmark
+    public WeatherDataDto mapper() {
+        return Mapper.mapEntitiesToDto(grouping, WeatherAggregate.AVERAGE, null, entities);
+    }
+
+}
@@ -0,0 +1,78 @@
+package mywild.wildweather.domain.weather.schedulers.api;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Converts one value per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionsBenchmark {
+
+    private static final int VALUES = 1024;
+
+    private double[] values;
+
+    private Double[] degrees;
+
+    @Setup
+    public void setup() {
+        var random = new Random(42);
+        values = new double[VALUES];
+        degrees = new Double[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            values[i] = random.nextDouble() * 100;
+            degrees[i] = random.nextInt(20) == 0 ? null : random.nextDouble() * 720 - 360;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void fahToCel(Blackhole blackhole) {
+        for (var value : values) {
+            blackhole.consume(Conversions.fahToCel(value));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void mphToKmh(Blackhole blackhole) {
+        for (var value : values) {
+            blackhole.consume(Conversions.mphToKmh(value));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void inHgToHpa(Blackhole blackhole) {
+        for (var value : values) {
+            blackhole.consume(Conversions.inHgToHpa(value));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void degreesToDirection(Blackhole blackhole) {
+        for (var value : degrees) {
+            blackhole.consume(Conversions.degreesToDirection(value));
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import mywild.wildweather.domain.weather.WeatherFixtures;
+
+/**
+ * Parses the summary CSV files of all the stations, from memory so that the disk is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvUtilsBenchmark {
+
+    @Param({ "1x1", "10x10", "50x30" })
+    private String scale;
+
+    private String[] csvFiles;
+
+    @Setup
+    public void setup() {
+        var size = WeatherFixtures.Scale.of(scale);
+        csvFiles = new String[size.stations()];
+        for (int s = 0; s < csvFiles.length; s++) {
+            csvFiles[s] = WeatherFixtures.createSummaryCsv(s, size.years());
+        }
+    }
+
+    @Benchmark
+    public int parseRecords() throws IOException {
+        var records = 0;
+        for (var csvFile : csvFiles) {
+            try (var reader = new BufferedReader(new StringReader(csvFile));
+                    var parser = CsvUtils.parseRecords(reader, CsvUtils.getHeaders(reader))) {
+                for (var record : parser) {
+                    records += record.size();
+                }
+            }
+        }
+        return records;
+    }
+
+}
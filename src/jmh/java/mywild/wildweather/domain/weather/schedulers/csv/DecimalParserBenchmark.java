@@ -0,0 +1,89 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import mywild.wildweather.domain.weather.WeatherFixtures;
+
+/**
+ * Parses the number cells of a summary CSV file (in the exported format), with Double.parseDouble() and with the
+ * DecimalParser. Some of the cells can be replaced by "--", like in the known bad files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecimalParserBenchmark {
+
+    private static final int DIRECTION_COLUMN = 5;
+
+    @Param({ "0", "1" })
+    private int badPercent;
+
+    private String[] cells;
+
+    private double[] values;
+
+    @Setup
+    public void setup() {
+        var csv = WeatherFixtures.createSummaryCsv(0, 10);
+        List<String> numberCells = new ArrayList<>();
+        var lines = csv.split("\n");
+        for (int i = 1; i < lines.length; i++) {
+            var columns = lines[i].split(",", -1);
+            for (int c = 2; c < columns.length; c++) {
+                if (c != DIRECTION_COLUMN) {
+                    numberCells.add(columns[c]);
+                }
+            }
+        }
+        cells = numberCells.toArray(String[]::new);
+        if (badPercent > 0) {
+            for (int i = 0; i < cells.length; i += 100 / badPercent) {
+                cells[i] = "--";
+            }
+        }
+        values = new double[cells.length];
+    }
+
+    @Benchmark
+    public int parseDouble() {
+        var invalid = 0;
+        for (int i = 0; i < cells.length; i++) {
+            var cell = cells[i];
+            try {
+                values[i] = cell == null || cell.isBlank() ? Double.NaN : Double.parseDouble(cell);
+            }
+            catch (NumberFormatException ex) {
+                values[i] = Double.NaN;
+                invalid++;
+            }
+        }
+        return invalid;
+    }
+
+    @Benchmark
+    public int decimalParser() {
+        var invalid = 0;
+        for (int i = 0; i < cells.length; i++) {
+            if (!DecimalParser.parse(cells[i], values, i)) {
+                invalid++;
+            }
+        }
+        return invalid;
+    }
+
+}
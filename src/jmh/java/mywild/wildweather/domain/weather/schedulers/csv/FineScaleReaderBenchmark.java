@@ -0,0 +1,93 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import mywild.wildweather.domain.weather.WeatherFixtures;
+
+/**
+ * Reads the Date column of the fine scale CSV files (one file per station and year), with Commons CSV and
+ * ZonedDateTime.parse() (as ProcessFullFiles used to) and with the FineScaleReader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FineScaleReaderBenchmark {
+
+    @Param({ "1x1", "5x2" })
+    private String scale;
+
+    private Path root;
+
+    private List<Path> csvFiles;
+
+    @Setup
+    public void setup() throws IOException {
+        var size = WeatherFixtures.Scale.of(scale);
+        root = Files.createTempDirectory("fine-scale-benchmark-");
+        csvFiles = new ArrayList<>();
+        for (int s = 0; s < size.stations(); s++) {
+            var station = Files.createDirectories(root.resolve(WeatherFixtures.getStationName(s)));
+            for (var year = size.startDate().getYear(); year < size.startDate().getYear() + size.years(); year++) {
+                var csvFile = station.resolve("ambient-weather-" + year + ".csv");
+                Files.writeString(csvFile, WeatherFixtures.createFineScaleCsv(s, year));
+                csvFiles.add(csvFile);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public long commonsCsv() throws IOException {
+        long total = 0;
+        for (var csvFile : csvFiles) {
+            try (var reader = Files.newBufferedReader(csvFile);
+                    var parser = CsvUtils.parseRecords(reader, CsvUtils.getHeaders(reader))) {
+                for (CSVRecord record : parser) {
+                    total += ZonedDateTime.parse(record.get("Date")).toEpochSecond();
+                }
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long fineScaleReader() throws IOException {
+        var total = new long[1];
+        for (var csvFile : csvFiles) {
+            FineScaleReader.read(csvFile, timestamp -> total[0] += timestamp.epochSecond());
+        }
+        return total[0];
+    }
+
+}
@@ -0,0 +1,109 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import mywild.wildweather.domain.weather.WeatherFixtures;
+import mywild.wildweather.domain.weather.data.WeatherRepository;
+import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
+
+/**
+ * Turns the rows of the summary CSV files into entities. The repository only reports every entity as inserted, so the
+ * database is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessSummaryFilesBenchmark {
+
+    @Param({ "1x1", "10x10", "50x30" })
+    private String scale;
+
+    private Path root;
+
+    private List<Path> csvFiles;
+
+    private ProcessSummaryFiles processor;
+
+    @Setup
+    public void setup() throws Exception {
+        var size = WeatherFixtures.Scale.of(scale);
+        root = Files.createTempDirectory("summary-benchmark-");
+        for (int s = 0; s < size.stations(); s++) {
+            var station = Files.createDirectories(root.resolve(WeatherFixtures.getStationName(s)));
+            Files.writeString(station.resolve("ambient-weather-high-lows-details-benchmark.csv"),
+                WeatherFixtures.createSummaryCsv(s, size.years()));
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            csvFiles = paths.filter(Files::isRegularFile).sorted().toList();
+        }
+        // Stub only, so that the invocations (and their entities) are not kept
+        var repo = mock(WeatherRepository.class, withSettings().stubOnly());
+        when(repo.insertNew(anyList())).thenAnswer(invocation -> {
+            List<WeatherEntity> entities = invocation.getArgument(0);
+            var inserted = new boolean[entities.size()];
+            Arrays.fill(inserted, true);
+            return inserted;
+        });
+        processor = new ProcessSummaryFiles();
+        var repoField = ProcessSummaryFiles.class.getDeclaredField("repo");
+        repoField.setAccessible(true);
+        repoField.set(processor, repo);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        WeatherCsvScheduler.clearProcessedFiles();
+        WeatherCsvScheduler.clearChangedWeather();
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public int processSummaryFiles() throws InterruptedException {
+        var summaryFiles = 0;
+        for (var csvFile : csvFiles) {
+            if (processor.processSummaryFile(csvFile)) {
+                summaryFiles++;
+            }
+        }
+        return summaryFiles;
+    }
+
+    /**
+     * All the files in one run of the ingest pipeline (the files are parsed in parallel).
+     */
+    @Benchmark
+    public int processAllSummaryFiles() throws InterruptedException {
+        WeatherCsvScheduler.clearProcessedFiles();
+        return processor.processAllSummaryFiles(csvFiles.stream()).size();
+    }
+
+}
@@ -0,0 +1,70 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Indexes a station year of fine scale records (every 5 minutes, in descending order, in two offsets like a station
+ * with daylight saving time), with a concurrent set of keys (as ProcessFullFiles used to) and with the RecordIndex.
+ * Run with "-prof gc" to compare the memory that each index allocates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordIndexBenchmark {
+
+    private long[] keys;
+
+    @Setup
+    public void setup() {
+        var firstDay = LocalDate.of(2024, 1, 1);
+        var lastDay = firstDay.plusYears(1);
+        var records = (int) (lastDay.toEpochDay() - firstDay.toEpochDay()) * 24 * 12;
+        keys = new long[records];
+        var epochSecond = lastDay.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        for (int i = 0; i < records; i++) {
+            epochSecond -= 5 * 60;
+            var offsetSeconds = i < records / 2 ? -7 * 3600 : -6 * 3600;
+            keys[i] = (epochSecond << 17) | (offsetSeconds + (1 << 16));
+        }
+    }
+
+    @Benchmark
+    public int concurrentSet() {
+        Set<Long> records = ConcurrentHashMap.newKeySet();
+        for (var key : keys) {
+            records.add(key);
+        }
+        return records.size();
+    }
+
+    @Benchmark
+    public int recordIndex() {
+        var records = new RecordIndex();
+        var timestamp = new FineScaleReader.Timestamp();
+        var added = 0;
+        for (var key : keys) {
+            if (records.add(timestamp.setKey(key))) {
+                added++;
+            }
+        }
+        return added + records.countDays().counts().length;
+    }
+
+}
@@ -6,6 +6,7 @@ import org.springframework.validation.annotation.Validated;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import mywild.wildweather.domain.admin.web.dto.ApiStatus;
+import mywild.wildweather.domain.admin.web.dto.CsvStageStatus;
 import mywild.wildweather.domain.admin.web.dto.CsvStatus;
 import mywild.wildweather.domain.weather.schedulers.api.AmbientWeatherApiScheduler;
 import mywild.wildweather.domain.weather.schedulers.api.WeatherUndergroundApiScheduler;
@@ -33,7 +34,9 @@ public class AdminService {
     }
 
     public @Valid CsvStatus getCsvProcessStatus() {
-        return new CsvStatus(csvScheduler.isRunning());
+        return new CsvStatus(csvScheduler.isRunning(), csvScheduler.getLastRunStats().stream()
+            .map(stats -> new CsvStageStatus(stats.stage(), stats.rows(), stats.millis(), stats.rowsPerSecond()))
+            .toList());
     }
 
     public void triggerAmbientWeatherApiProcessing() {
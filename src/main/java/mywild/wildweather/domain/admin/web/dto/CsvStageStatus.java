@@ -0,0 +1,28 @@
+package mywild.wildweather.domain.admin.web.dto;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import lombok.experimental.SuperBuilder;
+
+@ToString(callSuper = true)
+@Getter
+@Setter
+@SuperBuilder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class CsvStageStatus {
+
+    @NotNull
+    private String stage;
+
+    private long rows;
+
+    private long millis;
+
+    private long rowsPerSecond;
+
+}
@@ -1,5 +1,6 @@
 package mywild.wildweather.domain.admin.web.dto;
 
+import java.util.List;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -19,4 +20,10 @@ public class CsvStatus {
     @NotNull
     private boolean busy;
 
+    /**
+     * The throughput of each stage of the last run.
+     */
+    @NotNull
+    private List<CsvStageStatus> lastRunStages;
+
 }
@@ -0,0 +1,15 @@
+package mywild.wildweather.domain.weather.data;
+
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+import mywild.wildweather.domain.weather.data.entity.CsvFileEntity;
+
+@Repository
+public interface CsvFileRepository extends CrudRepository<CsvFileEntity, Long> {
+
+    List<CsvFileEntity> findAllByNameIn(
+        Collection<String> names);
+
+}
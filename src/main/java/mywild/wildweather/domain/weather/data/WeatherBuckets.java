@@ -0,0 +1,48 @@
+package mywild.wildweather.domain.weather.data;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import mywild.wildweather.domain.weather.web.dto.WeatherGrouping;
+
+/**
+ * The calendar days covered by the weeks, months and years that the weather data is grouped by.
+ * Weeks are cut off at the start and end of the year, because the week is always grouped together with its year.
+ */
+final public class WeatherBuckets {
+
+    private WeatherBuckets() {
+        // prevent instantiation
+    }
+
+    public static boolean isSupported(WeatherGrouping grouping) {
+        return grouping == WeatherGrouping.WEEKLY || grouping == WeatherGrouping.MONTHLY || grouping == WeatherGrouping.YEARLY;
+    }
+
+    public static LocalDate getStart(WeatherGrouping grouping, LocalDate date) {
+        return switch (grouping) {
+            case WEEKLY -> max(date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)), date.withDayOfYear(1));
+            case MONTHLY -> date.withDayOfMonth(1);
+            case YEARLY -> date.withDayOfYear(1);
+            case null, default -> throw new IllegalArgumentException("Unsupported grouping: " + grouping);
+        };
+    }
+
+    public static LocalDate getEnd(WeatherGrouping grouping, LocalDate date) {
+        return switch (grouping) {
+            case WEEKLY -> min(date.with(TemporalAdjusters.nextOrSame(DayOfWeek.SUNDAY)), date.with(TemporalAdjusters.lastDayOfYear()));
+            case MONTHLY -> date.with(TemporalAdjusters.lastDayOfMonth());
+            case YEARLY -> date.with(TemporalAdjusters.lastDayOfYear());
+            case null, default -> throw new IllegalArgumentException("Unsupported grouping: " + grouping);
+        };
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+}
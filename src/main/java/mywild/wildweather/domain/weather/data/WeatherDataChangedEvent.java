@@ -0,0 +1,16 @@
+package mywild.wildweather.domain.weather.data;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * Published after new weather data has been committed to the database.
+ * @param changedDays The changed date ranges of each station (start date to end date, inclusive), or null if all the
+ * data may have changed (for example, after a reset).
+ */
+public record WeatherDataChangedEvent(
+    Map<String, NavigableMap<LocalDate, LocalDate>> changedDays
+) {
+    // Record automatically generates: equals, hashCode and toString
+}
@@ -0,0 +1,11 @@
+package mywild.wildweather.domain.weather.data;
+
+import java.time.LocalDate;
+
+/**
+ * Consecutive days (inclusive) without any weather rows, between two days of a station that have rows.
+ */
+public record WeatherGap(
+    LocalDate startDate,
+    LocalDate endDate) {
+}
@@ -0,0 +1,17 @@
+package mywild.wildweather.domain.weather.data;
+
+import java.time.LocalDate;
+import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+
+/**
+ * The aggregated values of one station's category for one group (week, month or year).
+ * The values are in the same order as the requested fields, and are null when none of the days had data.
+ */
+public record WeatherGroupRow(
+    String station,
+    int year,
+    int group,
+    WeatherCategory category,
+    LocalDate firstDate,
+    Double[] values) {
+}
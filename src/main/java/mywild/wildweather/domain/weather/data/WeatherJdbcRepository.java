@@ -0,0 +1,113 @@
+package mywild.wildweather.domain.weather.data;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
+import mywild.wildweather.domain.weather.web.dto.WeatherAggregate;
+import mywild.wildweather.domain.weather.web.dto.WeatherField;
+import mywild.wildweather.domain.weather.web.dto.WeatherGrouping;
+
+/**
+ * Bulk JDBC operations on the weather table, that are too slow to do one entity at a time via Spring Data.
+ */
+public interface WeatherJdbcRepository {
+
+    /**
+     * Insert the entities that are not in the database yet (matched on date, station and category).
+     * Existing rows are never changed. All the entities are written in batches, using a single transaction.
+     * @return For each entity, whether it was inserted (true) or already existed (false).
+     */
+    boolean[] insertNew(List<WeatherEntity> entities);
+
+    /**
+     * Set the percentage of missing records of all the categories of the days (the rows that already have it are not
+     * written). All the days are written in batches, using a single transaction.
+     * @return For each day, whether any of its rows was updated.
+     */
+    boolean[] updateMissing(List<WeatherMissingDay> days);
+
+    /**
+     * Insert all the categories of the days without any rows between the station's first and last day, with 100%
+     * missing records. The days are generated by the database from a series of dates, using a single insert.
+     * @return The gaps that were filled, ordered by date.
+     */
+    List<WeatherGap> insertMissingDays(String station);
+
+    /**
+     * Find the days between the dates (inclusive) without any recorded data (no rows, or only rows with 100% missing
+     * records), from the station's first day on. The days are generated by the database from a series of dates, using
+     * a single query.
+     * @param defaultFirstDate The first day to consider if the station has no rows yet.
+     * @return The missing days, ordered by date.
+     */
+    List<LocalDate> findMissingDays(String station, LocalDate startDate, LocalDate endDate, LocalDate defaultFirstDate);
+
+    /**
+     * Read all the weather rows, ordered by station and date.
+     */
+    void scanAll(WeatherRowCallback callback);
+
+    /**
+     * Read the station's weather rows between the dates (inclusive), ordered by date.
+     */
+    void scanStation(String station, LocalDate startDate, LocalDate endDate, WeatherRowCallback callback);
+
+    /**
+     * Find the weather rows that match the filters. Filters that are null (or an empty list of stations) are left out
+     * of the query, so that each combination of filters gets its own query plan. The rows are ordered by date, station
+     * and category.
+     */
+    List<WeatherEntity> searchWeather(
+        List<String> stations,
+        WeatherCategory category,
+        LocalDate startDate,
+        LocalDate endDate,
+        Integer startMonth,
+        Integer endMonth);
+
+    /**
+     * The first day of each station with weather rows that match the filters, ordered by the first day and station
+     * (the same order in which the stations appear when the rows are ordered by date and station).
+     */
+    Map<String, LocalDate> findFirstDates(
+        List<String> stations,
+        WeatherCategory category,
+        LocalDate startDate,
+        LocalDate endDate,
+        Integer startMonth,
+        Integer endMonth);
+
+    /**
+     * Pass the station's weather rows that match the filters to the consumer, ordered by date and category.
+     * The rows are read with a forward-only cursor, thus they are never all in memory at the same time.
+     */
+    void streamWeather(
+        String station,
+        WeatherCategory category,
+        LocalDate startDate,
+        LocalDate endDate,
+        Integer startMonth,
+        Integer endMonth,
+        Consumer<WeatherEntity> consumer);
+
+    /**
+     * Aggregate the days per station, year, group and category in the database, following the same rules as when the
+     * daily rows are mapped (days with 100% missing records are ignored, and the Low and High of an average are the
+     * lowest and highest values). Only the WEEKLY, MONTHLY and YEARLY groupings are supported.
+     * @return The groups, ordered by station, year, group, first date and category.
+     */
+    List<WeatherGroupRow> aggregateWeather(
+        List<String> stations,
+        WeatherCategory category,
+        WeatherGrouping grouping,
+        WeatherAggregate aggregate,
+        List<WeatherField> fields,
+        LocalDate startDate,
+        LocalDate endDate,
+        Integer startMonth,
+        Integer endMonth);
+
+}
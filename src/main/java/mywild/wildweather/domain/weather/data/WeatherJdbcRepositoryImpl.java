@@ -0,0 +1,548 @@
+package mywild.wildweather.domain.weather.data;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
+import mywild.wildweather.domain.weather.web.dto.WeatherAggregate;
+import mywild.wildweather.domain.weather.web.dto.WeatherField;
+import mywild.wildweather.domain.weather.web.dto.WeatherGrouping;
+
+public class WeatherJdbcRepositoryImpl implements WeatherJdbcRepository {
+
+    static final int BATCH_SIZE = 1000;
+
+    private static final String INSERT_NEW_SQL = """
+        MERGE INTO "weather" w
+        USING (VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)) AS s(
+            station, date, category, temperature, wind_speed, wind_max, wind_direction,
+            rain_rate, rain_daily, pressure, humidity, uv_radiation_index, missing)
+        ON w.date = s.date AND w.station = s.station AND w.category = s.category
+        WHEN NOT MATCHED THEN INSERT (
+            station, date, category, temperature, wind_speed, wind_max, wind_direction,
+            rain_rate, rain_daily, pressure, humidity, uv_radiation_index, missing)
+        VALUES (
+            s.station, s.date, s.category, s.temperature, s.wind_speed, s.wind_max, s.wind_direction,
+            s.rain_rate, s.rain_daily, s.pressure, s.humidity, s.uv_radiation_index, s.missing)
+        """;
+
+    // The rows that already have the percentage are not matched, thus the update counts tell which days changed
+    private static final String UPDATE_MISSING_SQL = """
+        MERGE INTO "weather" w
+        USING (VALUES (?, ?, ?)) AS s(station, date, missing)
+        ON w.date = s.date AND w.station = s.station
+        WHEN MATCHED AND w.missing <> s.missing THEN UPDATE SET missing = s.missing
+        """;
+
+    private static final String FIND_GAPS_SQL = """
+        SELECT DATEADD(DAY, 1, prev_date) AS start_date, DATEADD(DAY, -1, date) AS end_date
+        FROM (
+            SELECT date, LAG(date) OVER (ORDER BY date) AS prev_date
+            FROM (SELECT DISTINCT date FROM "weather" WHERE station = ?) d
+        ) g
+        WHERE DATEDIFF(DAY, prev_date, date) > 1
+        ORDER BY date ASC
+        """;
+
+    // The series of dates covers all the gaps (the days between the gaps have rows, and are skipped)
+    private static final String INSERT_MISSING_DAYS_SQL = """
+        INSERT INTO "weather" (station, date, category, wind_direction, missing)
+        SELECT d.station, d.date, c.category, '', 100
+        FROM (
+            SELECT CAST(? AS VARCHAR) AS station, DATEADD(DAY, r.X, CAST(? AS DATE)) AS date
+            FROM SYSTEM_RANGE(0, ?) r
+        ) d
+        CROSS JOIN (VALUES %s) AS c(category)
+        WHERE NOT EXISTS (SELECT 1 FROM "weather" w WHERE w.station = d.station AND w.date = d.date)
+        """.formatted(Arrays.stream(WeatherCategory.values())
+            .map(category -> "('" + category.name() + "')")
+            .collect(Collectors.joining(", ")));
+
+    // Days before the station's first day are not missing (the station did not exist yet)
+    private static final String FIND_MISSING_DAYS_SQL = """
+        SELECT d.date
+        FROM (
+            SELECT DATEADD(DAY, r.X, CAST(? AS DATE)) AS date
+            FROM SYSTEM_RANGE(0, ?) r
+        ) d
+        WHERE d.date >= COALESCE((SELECT MIN(w.date) FROM "weather" w WHERE w.station = ?), CAST(? AS DATE))
+        AND NOT EXISTS (SELECT 1 FROM "weather" w WHERE w.station = ? AND w.date = d.date AND w.missing < 100)
+        ORDER BY d.date ASC
+        """;
+
+    private static final String SCAN_ALL_SQL = """
+        SELECT
+            station, date, category, temperature, wind_speed, wind_max, wind_direction,
+            rain_rate, rain_daily, pressure, humidity, uv_radiation_index, missing
+        FROM "weather"
+        ORDER BY station ASC, date ASC, category ASC
+        """;
+
+    private static final String SCAN_STATION_SQL = """
+        SELECT
+            station, date, category, temperature, wind_speed, wind_max, wind_direction,
+            rain_rate, rain_daily, pressure, humidity, uv_radiation_index, missing
+        FROM "weather"
+        WHERE station = ? AND date BETWEEN ? AND ?
+        ORDER BY date ASC, category ASC
+        """;
+
+    private static final String SEARCH_WEATHER_SQL = """
+        SELECT
+            id, station, date, category, temperature, wind_speed, wind_max, wind_direction,
+            rain_rate, rain_daily, pressure, humidity, uv_radiation_index, missing
+        FROM "weather"
+        """;
+
+    private static final String FIRST_DATES_SQL = """
+        SELECT station, MIN(date) AS first_date
+        FROM "weather"
+        """;
+
+    // The filters (and the kind of search) that are used by a search, as the bits of the shape of its query
+    private static final int SEARCH_STATIONS = 1;
+    private static final int SEARCH_CATEGORY = 1 << 1;
+    private static final int SEARCH_START_DATE = 1 << 2;
+    private static final int SEARCH_END_DATE = 1 << 3;
+    private static final int SEARCH_START_MONTH = 1 << 4;
+    private static final int SEARCH_END_MONTH = 1 << 5;
+    private static final int SEARCH_STATION = 1 << 6;
+    private static final int SEARCH_FIRST_DATES = 1 << 7;
+
+    // The SQL of a shape never changes, so that the database can reuse the prepared statement (and its plan)
+    private static final Map<Integer, String> SEARCH_WEATHER_SQL_CACHE = new ConcurrentHashMap<>();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${mywild.weather.stream-fetch-size}")
+    private int streamFetchSize;
+
+    @Override
+    @Transactional
+    public boolean[] insertNew(List<WeatherEntity> entities) {
+        var inserted = new boolean[entities.size()];
+        var batches = jdbcTemplate.batchUpdate(INSERT_NEW_SQL, entities, BATCH_SIZE, this::setInsertValues);
+        var index = 0;
+        for (var batch : batches) {
+            for (var count : batch) {
+                inserted[index++] = count > 0;
+            }
+        }
+        return inserted;
+    }
+
+    @Override
+    @Transactional
+    public boolean[] updateMissing(List<WeatherMissingDay> days) {
+        var updated = new boolean[days.size()];
+        var batches = jdbcTemplate.batchUpdate(UPDATE_MISSING_SQL, days, BATCH_SIZE, (statement, day) -> {
+            statement.setString(1, day.station());
+            statement.setDate(2, Date.valueOf(day.date()));
+            statement.setDouble(3, day.missing());
+        });
+        var index = 0;
+        for (var batch : batches) {
+            for (var count : batch) {
+                updated[index++] = count > 0;
+            }
+        }
+        return updated;
+    }
+
+    @Override
+    @Transactional
+    public List<WeatherGap> insertMissingDays(String station) {
+        var gaps = jdbcTemplate.query(FIND_GAPS_SQL,
+            (result, _) -> new WeatherGap(result.getDate(1).toLocalDate(), result.getDate(2).toLocalDate()), station);
+        if (!gaps.isEmpty()) {
+            var startDate = gaps.getFirst().startDate();
+            jdbcTemplate.update(INSERT_MISSING_DAYS_SQL, station, Date.valueOf(startDate),
+                ChronoUnit.DAYS.between(startDate, gaps.getLast().endDate()));
+        }
+        return gaps;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<LocalDate> findMissingDays(String station, LocalDate startDate, LocalDate endDate,
+            LocalDate defaultFirstDate) {
+        if (endDate.isBefore(startDate)) {
+            return List.of();
+        }
+        return jdbcTemplate.query(FIND_MISSING_DAYS_SQL, (result, _) -> result.getDate(1).toLocalDate(),
+            Date.valueOf(startDate), ChronoUnit.DAYS.between(startDate, endDate), station,
+            Date.valueOf(defaultFirstDate), station);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void scanAll(WeatherRowCallback callback) {
+        jdbcTemplate.query(SCAN_ALL_SQL, getScanHandler(callback));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void scanStation(String station, LocalDate startDate, LocalDate endDate, WeatherRowCallback callback) {
+        jdbcTemplate.query(SCAN_STATION_SQL, getScanHandler(callback),
+            station, Date.valueOf(startDate), Date.valueOf(endDate));
+    }
+
+    /**
+     * Pass the rows of a scan to the callback (the columns are in the order of SCAN_ALL_SQL).
+     */
+    private static RowCallbackHandler getScanHandler(WeatherRowCallback callback) {
+        var values = new double[WeatherRowCallback.VALUES];
+        return result -> {
+            values[WeatherRowCallback.TEMPERATURE] = getDouble(result, 4);
+            values[WeatherRowCallback.WIND_SPEED] = getDouble(result, 5);
+            values[WeatherRowCallback.WIND_MAX] = getDouble(result, 6);
+            values[WeatherRowCallback.RAIN_RATE] = getDouble(result, 8);
+            values[WeatherRowCallback.RAIN_DAILY] = getDouble(result, 9);
+            values[WeatherRowCallback.PRESSURE] = getDouble(result, 10);
+            values[WeatherRowCallback.HUMIDITY] = getDouble(result, 11);
+            values[WeatherRowCallback.UV_RADIATION_INDEX] = getDouble(result, 12);
+            values[WeatherRowCallback.MISSING] = getDouble(result, 13);
+            callback.accept(
+                result.getString(1),
+                result.getDate(2).toLocalDate(),
+                WeatherCategory.valueOf(result.getString(3)),
+                result.getString(7),
+                values);
+        };
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<WeatherEntity> searchWeather(
+            List<String> stations,
+            WeatherCategory category,
+            LocalDate startDate,
+            LocalDate endDate,
+            Integer startMonth,
+            Integer endMonth) {
+        var hasStations = stations != null && !stations.isEmpty();
+        var sql = getSearchSql((hasStations ? SEARCH_STATIONS : 0)
+            | getFilterShape(category, startDate, endDate, startMonth, endMonth));
+        return jdbcTemplate.query(sql, statement -> {
+            var index = 1;
+            if (hasStations) {
+                statement.setArray(index++, statement.getConnection().createArrayOf("VARCHAR", stations.toArray()));
+            }
+            setFilterValues(statement, index, category, startDate, endDate, startMonth, endMonth);
+        }, (result, _) -> mapEntity(result));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Map<String, LocalDate> findFirstDates(
+            List<String> stations,
+            WeatherCategory category,
+            LocalDate startDate,
+            LocalDate endDate,
+            Integer startMonth,
+            Integer endMonth) {
+        var hasStations = stations != null && !stations.isEmpty();
+        var sql = getSearchSql(SEARCH_FIRST_DATES | (hasStations ? SEARCH_STATIONS : 0)
+            | getFilterShape(category, startDate, endDate, startMonth, endMonth));
+        var firstDates = new LinkedHashMap<String, LocalDate>();
+        jdbcTemplate.query(sql, statement -> {
+            var index = 1;
+            if (hasStations) {
+                statement.setArray(index++, statement.getConnection().createArrayOf("VARCHAR", stations.toArray()));
+            }
+            setFilterValues(statement, index, category, startDate, endDate, startMonth, endMonth);
+        }, (ResultSet result) -> {
+            firstDates.put(result.getString(1), result.getDate(2).toLocalDate());
+        });
+        return firstDates;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamWeather(
+            String station,
+            WeatherCategory category,
+            LocalDate startDate,
+            LocalDate endDate,
+            Integer startMonth,
+            Integer endMonth,
+            Consumer<WeatherEntity> consumer) {
+        var sql = getSearchSql(SEARCH_STATION | getFilterShape(category, startDate, endDate, startMonth, endMonth));
+        jdbcTemplate.execute((Connection connection) -> {
+            // Let the database produce the rows while they are read, instead of building the whole result first
+            setLazyQueryExecution(connection, true);
+            try (var statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(streamFetchSize);
+                statement.setString(1, station);
+                setFilterValues(statement, 2, category, startDate, endDate, startMonth, endMonth);
+                try (var result = statement.executeQuery()) {
+                    // The rows are in the order of the (station, date) index, thus the categories of each day are sorted here
+                    var day = new ArrayList<WeatherEntity>(WeatherCategory.values().length);
+                    while (result.next()) {
+                        var entity = mapEntity(result);
+                        if (!day.isEmpty() && !day.getFirst().getDate().equals(entity.getDate())) {
+                            acceptDay(day, consumer);
+                        }
+                        day.add(entity);
+                    }
+                    acceptDay(day, consumer);
+                }
+            }
+            finally {
+                setLazyQueryExecution(connection, false);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * The search SQL with only the predicates of the filters that are used. The stations are bound as a single array,
+     * so that the SQL does not depend on the number of stations.
+     */
+    static String getSearchWeatherSql(
+            boolean stations,
+            boolean category,
+            boolean startDate,
+            boolean endDate,
+            boolean startMonth,
+            boolean endMonth) {
+        return getSearchSql((stations ? SEARCH_STATIONS : 0)
+            | (category ? SEARCH_CATEGORY : 0)
+            | (startDate ? SEARCH_START_DATE : 0)
+            | (endDate ? SEARCH_END_DATE : 0)
+            | (startMonth ? SEARCH_START_MONTH : 0)
+            | (endMonth ? SEARCH_END_MONTH : 0));
+    }
+
+    private static String getSearchSql(int shape) {
+        return SEARCH_WEATHER_SQL_CACHE.computeIfAbsent(shape, _ -> {
+            var conditions = new ArrayList<String>();
+            if ((shape & SEARCH_STATION) != 0) {
+                conditions.add("station = ?");
+            }
+            if ((shape & SEARCH_STATIONS) != 0) {
+                conditions.add("station = ANY(?)");
+            }
+            if ((shape & SEARCH_CATEGORY) != 0) {
+                conditions.add("category = ?");
+            }
+            if ((shape & SEARCH_START_DATE) != 0) {
+                conditions.add("date >= ?");
+            }
+            if ((shape & SEARCH_END_DATE) != 0) {
+                conditions.add("date <= ?");
+            }
+            if ((shape & SEARCH_START_MONTH) != 0) {
+                conditions.add("date_month >= ?");
+            }
+            if ((shape & SEARCH_END_MONTH) != 0) {
+                conditions.add("date_month <= ?");
+            }
+            var sql = new StringBuilder((shape & SEARCH_FIRST_DATES) != 0 ? FIRST_DATES_SQL : SEARCH_WEATHER_SQL);
+            if (!conditions.isEmpty()) {
+                sql.append("WHERE ").append(String.join(" AND ", conditions)).append('\n');
+            }
+            if ((shape & SEARCH_FIRST_DATES) != 0) {
+                sql.append("GROUP BY station\nORDER BY first_date ASC, station ASC\n");
+            }
+            else if ((shape & SEARCH_STATION) != 0) {
+                // The same order as the (station, date) index, so that the database doesn't have to sort the rows
+                sql.append("ORDER BY station ASC, date ASC\n");
+            }
+            else {
+                sql.append("ORDER BY date ASC, station ASC, category ASC\n");
+            }
+            return sql.toString();
+        });
+    }
+
+    private static int getFilterShape(
+            WeatherCategory category,
+            LocalDate startDate,
+            LocalDate endDate,
+            Integer startMonth,
+            Integer endMonth) {
+        return (category != null ? SEARCH_CATEGORY : 0)
+            | (startDate != null ? SEARCH_START_DATE : 0)
+            | (endDate != null ? SEARCH_END_DATE : 0)
+            | (startMonth != null ? SEARCH_START_MONTH : 0)
+            | (endMonth != null ? SEARCH_END_MONTH : 0);
+    }
+
+    private static void setFilterValues(
+            PreparedStatement statement,
+            int index,
+            WeatherCategory category,
+            LocalDate startDate,
+            LocalDate endDate,
+            Integer startMonth,
+            Integer endMonth) throws SQLException {
+        if (category != null) {
+            statement.setString(index++, category.name());
+        }
+        if (startDate != null) {
+            statement.setDate(index++, Date.valueOf(startDate));
+        }
+        if (endDate != null) {
+            statement.setDate(index++, Date.valueOf(endDate));
+        }
+        if (startMonth != null) {
+            statement.setInt(index++, startMonth);
+        }
+        if (endMonth != null) {
+            statement.setInt(index++, endMonth);
+        }
+    }
+
+    private static void acceptDay(List<WeatherEntity> day, Consumer<WeatherEntity> consumer) {
+        day.sort(Comparator.comparing(entity -> entity.getCategory().name()));
+        day.forEach(consumer);
+        day.clear();
+    }
+
+    private static void setLazyQueryExecution(Connection connection, boolean lazy) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            statement.execute("SET LAZY_QUERY_EXECUTION " + lazy);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<WeatherGroupRow> aggregateWeather(
+            List<String> stations,
+            WeatherCategory category,
+            WeatherGrouping grouping,
+            WeatherAggregate aggregate,
+            List<WeatherField> fields,
+            LocalDate startDate,
+            LocalDate endDate,
+            Integer startMonth,
+            Integer endMonth) {
+        var group = WeatherSql.getGroup(grouping);
+        var calcAverage = aggregate == null || aggregate == WeatherAggregate.AVERAGE;
+        var sql = new StringBuilder();
+        sql.append("SELECT station, YEAR(date) AS group_year, ").append(group).append(" AS group_bucket, category, MIN(date) AS first_date");
+        for (var field : fields) {
+            var value = WeatherSql.getAggregateValue(field);
+            if (calcAverage) {
+                sql.append(", CASE category WHEN 'H' THEN MAX(").append(value)
+                    .append(") WHEN 'L' THEN MIN(").append(value)
+                    .append(") ELSE SUM(").append(value).append(") END");
+            }
+            else {
+                sql.append(", SUM(").append(value).append(")");
+            }
+            sql.append(", COUNT(").append(value).append(")");
+        }
+        if (fields.contains(WeatherField.WIND_DIRECTION)) {
+            sql.append(", COUNT(CASE WHEN missing < 100 AND ").append(WeatherSql.UNKNOWN_WIND_DIRECTION).append(" THEN 1 END)");
+        }
+        sql.append(" FROM \"weather\"");
+        var params = new MapSqlParameterSource();
+        var conditions = new ArrayList<String>();
+        if (stations != null && !stations.isEmpty()) {
+            conditions.add("station IN (:stations)");
+            params.addValue("stations", stations);
+        }
+        if (category != null) {
+            conditions.add("category = :category");
+            params.addValue("category", category.name());
+        }
+        if (startDate != null) {
+            conditions.add("date >= :startDate");
+            params.addValue("startDate", startDate);
+        }
+        if (endDate != null) {
+            conditions.add("date <= :endDate");
+            params.addValue("endDate", endDate);
+        }
+        if (startMonth != null) {
+            conditions.add("date_month >= :startMonth");
+            params.addValue("startMonth", startMonth);
+        }
+        if (endMonth != null) {
+            conditions.add("date_month <= :endMonth");
+            params.addValue("endMonth", endMonth);
+        }
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        sql.append(" GROUP BY station, YEAR(date), ").append(group).append(", category");
+        sql.append(" ORDER BY station, group_year, group_bucket, first_date, category");
+        return new NamedParameterJdbcTemplate(jdbcTemplate).query(sql.toString(), params,
+            (result, _) -> WeatherSql.mapGroupRow(result, fields, calcAverage));
+    }
+
+    private void setInsertValues(PreparedStatement statement, WeatherEntity entity) throws SQLException {
+        statement.setString(1, entity.getStation());
+        statement.setDate(2, Date.valueOf(entity.getDate()));
+        statement.setString(3, entity.getCategory().name());
+        setDouble(statement, 4, entity.getTemperature());
+        setDouble(statement, 5, entity.getWindSpeed());
+        setDouble(statement, 6, entity.getWindMax());
+        statement.setString(7, entity.getWindDirection());
+        setDouble(statement, 8, entity.getRainRate());
+        setDouble(statement, 9, entity.getRainDaily());
+        setDouble(statement, 10, entity.getPressure());
+        setDouble(statement, 11, entity.getHumidity());
+        setDouble(statement, 12, entity.getUvRadiationIndex());
+        statement.setDouble(13, entity.getMissing());
+    }
+
+    private static WeatherEntity mapEntity(ResultSet result) throws SQLException {
+        return WeatherEntity.builder()
+            .id(result.getLong(1))
+            .station(result.getString(2))
+            .date(result.getDate(3).toLocalDate())
+            .category(WeatherCategory.valueOf(result.getString(4)))
+            .temperature(result.getObject(5, Double.class))
+            .windSpeed(result.getObject(6, Double.class))
+            .windMax(result.getObject(7, Double.class))
+            .windDirection(result.getString(8))
+            .rainRate(result.getObject(9, Double.class))
+            .rainDaily(result.getObject(10, Double.class))
+            .pressure(result.getObject(11, Double.class))
+            .humidity(result.getObject(12, Double.class))
+            .uvRadiationIndex(result.getObject(13, Double.class))
+            .missing(result.getDouble(14))
+            .build();
+    }
+
+    private static double getDouble(ResultSet result, int index) throws SQLException {
+        var value = result.getDouble(index);
+        return result.wasNull() ? Double.NaN : value;
+    }
+
+    private static void setDouble(PreparedStatement statement, int index, Double value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.DOUBLE);
+        }
+        else {
+            statement.setDouble(index, value);
+        }
+    }
+
+}
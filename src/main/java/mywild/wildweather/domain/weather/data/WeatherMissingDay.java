@@ -0,0 +1,12 @@
+package mywild.wildweather.domain.weather.data;
+
+import java.time.LocalDate;
+
+/**
+ * The percentage of records that are missing during a station's day (for all its categories).
+ */
+public record WeatherMissingDay(
+    String station,
+    LocalDate date,
+    double missing) {
+}
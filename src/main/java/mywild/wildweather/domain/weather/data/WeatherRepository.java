@@ -6,51 +6,16 @@ import org.springframework.data.jdbc.repository.query.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
-import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
 import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
 
 @Repository
-public interface WeatherRepository extends CrudRepository<WeatherEntity, Long> {
+public interface WeatherRepository extends CrudRepository<WeatherEntity, Long>, WeatherJdbcRepository, WeatherRollupRepository, WeatherStationRepository {
 
-    @Query("""
-        SELECT DISTINCT w.station
-        FROM "weather" w
-        ORDER BY w.station
-        """)
-    List<String> findStations();
-
-    @Query("""
-        SELECT *
-        FROM "weather" w
-        WHERE
-            ((:stations) IS NULL OR w.station IN (:stations))
-            AND (:category IS NULL OR w.category = :category)
-            AND (:startDate IS NULL OR w.date >= :startDate)
-            AND (:endDate IS NULL OR w.date <= :endDate)
-            AND (:startMonth IS NULL OR MONTH(w.date) >= :startMonth)
-            AND (:endMonth IS NULL OR MONTH(w.date) <= :endMonth)
-        ORDER BY w.date ASC, w.station ASC, w.category ASC
-        """)
-    List<WeatherEntity> searchWeather(
-        @Param("stations") List<String> stations,
-        @Param("category") WeatherCategory category,
-        @Param("startDate") LocalDate startDate,
-        @Param("endDate") LocalDate endDate,
-        @Param("startMonth") Integer startMonth,
-        @Param("endMonth") Integer endMonth);
-
-    List<WeatherEntity> findAllByStationOrderByDateAscCategoryAsc(
-        String station);
-        
-    List<WeatherEntity> findAllByDateAndStationOrderByDateAscCategoryAsc(
-        LocalDate date,
-        String station);
-
-    WeatherEntity findByDateAndStationAndCategory(
-        LocalDate date,
+    List<WeatherEntity> findAllByStationAndDateBetween(
         String station,
-        WeatherCategory category);
-    
+        LocalDate startDate,
+        LocalDate endDate);
+
     @Query("""
         SELECT w.date
         FROM \"weather\" w
@@ -60,15 +25,5 @@ public interface WeatherRepository extends CrudRepository<WeatherEntity, Long> {
         """)
     LocalDate findTopDateByStation(
         @Param("station") String station);
-    
-    @Query("""
-        SELECT w.date
-        FROM \"weather\" w
-        WHERE (:station IS NULL OR w.station = :station)
-        ORDER BY date ASC
-        LIMIT 1
-        """)
-    LocalDate findBottomDateByStation(
-        @Param("station") String station);
 
 }
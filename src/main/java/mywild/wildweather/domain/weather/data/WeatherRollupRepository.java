@@ -0,0 +1,50 @@
+package mywild.wildweather.domain.weather.data;
+
+import java.time.LocalDate;
+import java.util.List;
+import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+import mywild.wildweather.domain.weather.web.dto.WeatherAggregate;
+import mywild.wildweather.domain.weather.web.dto.WeatherField;
+import mywild.wildweather.domain.weather.web.dto.WeatherGrouping;
+
+/**
+ * The weekly, monthly and yearly count, sum, min and max of each station's fields, per category.
+ */
+public interface WeatherRollupRepository {
+
+    /**
+     * Recalculate the weeks, months and years of the station that overlap with the (changed) days.
+     */
+    void refreshRollups(String station, LocalDate startDate, LocalDate endDate);
+
+    void deleteAllRollups();
+
+    /**
+     * Calculate all the rollups when there is weather data without rollups (for example, data from before the rollups
+     * were added). This is done once, before the first ingestion, instead of during a query.
+     */
+    void initializeRollups();
+
+    /**
+     * Whether the rollups have been calculated (until then, the groups have to be aggregated from the days).
+     */
+    boolean isRollupsInitialized();
+
+    /**
+     * Read the aggregated groups, the same as WeatherJdbcRepository.aggregateWeather() would calculate them.
+     * The start and end dates should be the first and last days of a group (see WeatherBuckets), and the months can only
+     * be used with the MONTHLY grouping.
+     * @return The groups, ordered by station, year, group, first date and category.
+     */
+    List<WeatherGroupRow> findRollups(
+        List<String> stations,
+        WeatherCategory category,
+        WeatherGrouping grouping,
+        WeatherAggregate aggregate,
+        List<WeatherField> fields,
+        LocalDate startDate,
+        LocalDate endDate,
+        Integer startMonth,
+        Integer endMonth);
+
+}
@@ -0,0 +1,189 @@
+package mywild.wildweather.domain.weather.data;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+import mywild.wildweather.domain.weather.web.dto.WeatherAggregate;
+import mywild.wildweather.domain.weather.web.dto.WeatherField;
+import mywild.wildweather.domain.weather.web.dto.WeatherGrouping;
+
+@Slf4j
+public class WeatherRollupRepositoryImpl implements WeatherRollupRepository {
+
+    private static final List<WeatherGrouping> GROUPINGS = List.of(
+        WeatherGrouping.WEEKLY, WeatherGrouping.MONTHLY, WeatherGrouping.YEARLY);
+
+    private static final String DELETE_SQL = """
+        DELETE FROM "weather_rollup"
+        WHERE station = ? AND resolution = ? AND bucket_start BETWEEN ? AND ?
+        """;
+
+    private static final Map<WeatherGrouping, String> INSERT_SQL = new EnumMap<>(WeatherGrouping.class);
+    static {
+        for (var grouping : GROUPINGS) {
+            var columns = new StringBuilder("station, resolution, group_year, group_bucket, category, bucket_start, first_date");
+            var values = new StringBuilder("station, ?, YEAR(date), ")
+                .append(WeatherSql.getGroup(grouping)).append(", category, MIN(")
+                .append(getBucketStart(grouping)).append("), MIN(date)");
+            for (var field : WeatherField.values()) {
+                var column = WeatherSql.getColumn(field);
+                var value = WeatherSql.getAggregateValue(field);
+                columns.append(", ").append(column).append("_count, ").append(column).append("_sum, ")
+                    .append(column).append("_min, ").append(column).append("_max");
+                values.append(", COUNT(").append(value).append("), SUM(").append(value)
+                    .append("), MIN(").append(value).append("), MAX(").append(value).append(")");
+            }
+            columns.append(", wind_direction_unknown");
+            values.append(", COUNT(CASE WHEN missing < 100 AND ").append(WeatherSql.UNKNOWN_WIND_DIRECTION).append(" THEN 1 END)");
+            INSERT_SQL.put(grouping, "INSERT INTO \"weather_rollup\" (" + columns + ") SELECT " + values
+                + " FROM \"weather\" WHERE station = ? AND date BETWEEN ? AND ?"
+                + " GROUP BY station, YEAR(date), " + WeatherSql.getGroup(grouping) + ", category");
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private volatile boolean isInitialized = false;
+
+    @Override
+    @Transactional
+    public void refreshRollups(String station, LocalDate startDate, LocalDate endDate) {
+        // The other stations' rollups are calculated first, because their rollups are only calculated when there are none
+        initializeRollups();
+        for (var grouping : GROUPINGS) {
+            var bucketStart = WeatherBuckets.getStart(grouping, startDate);
+            var bucketEnd = WeatherBuckets.getEnd(grouping, endDate);
+            jdbcTemplate.update(DELETE_SQL, station, grouping.name(), bucketStart, bucketEnd);
+            jdbcTemplate.update(INSERT_SQL.get(grouping), grouping.name(), station, bucketStart, bucketEnd);
+        }
+    }
+
+    @Override
+    @Transactional
+    public void deleteAllRollups() {
+        jdbcTemplate.update("DELETE FROM \"weather_rollup\"");
+    }
+
+    @Override
+    @Transactional
+    public List<WeatherGroupRow> findRollups(
+            List<String> stations,
+            WeatherCategory category,
+            WeatherGrouping grouping,
+            WeatherAggregate aggregate,
+            List<WeatherField> fields,
+            LocalDate startDate,
+            LocalDate endDate,
+            Integer startMonth,
+            Integer endMonth) {
+        if (!WeatherBuckets.isSupported(grouping)) {
+            throw new IllegalArgumentException("Unsupported grouping: " + grouping);
+        }
+        if ((startMonth != null || endMonth != null) && grouping != WeatherGrouping.MONTHLY) {
+            throw new IllegalArgumentException("Months can only be used with the MONTHLY grouping.");
+        }
+        var calcAverage = aggregate == null || aggregate == WeatherAggregate.AVERAGE;
+        var sql = new StringBuilder("SELECT station, group_year, group_bucket, category, first_date");
+        for (var field : fields) {
+            var column = WeatherSql.getColumn(field);
+            if (calcAverage) {
+                sql.append(", CASE category WHEN 'H' THEN ").append(column)
+                    .append("_max WHEN 'L' THEN ").append(column)
+                    .append("_min ELSE ").append(column).append("_sum END");
+            }
+            else {
+                sql.append(", ").append(column).append("_sum");
+            }
+            sql.append(", ").append(column).append("_count");
+        }
+        if (fields.contains(WeatherField.WIND_DIRECTION)) {
+            sql.append(", wind_direction_unknown");
+        }
+        sql.append(" FROM \"weather_rollup\" WHERE resolution = :resolution");
+        var params = new MapSqlParameterSource();
+        params.addValue("resolution", grouping.name());
+        if (stations != null && !stations.isEmpty()) {
+            sql.append(" AND station IN (:stations)");
+            params.addValue("stations", stations);
+        }
+        if (category != null) {
+            sql.append(" AND category = :category");
+            params.addValue("category", category.name());
+        }
+        if (startDate != null) {
+            sql.append(" AND bucket_start >= :startDate");
+            params.addValue("startDate", startDate);
+        }
+        if (endDate != null) {
+            sql.append(" AND bucket_start <= :endDate");
+            params.addValue("endDate", endDate);
+        }
+        if (startMonth != null) {
+            sql.append(" AND group_bucket >= :startMonth");
+            params.addValue("startMonth", startMonth);
+        }
+        if (endMonth != null) {
+            sql.append(" AND group_bucket <= :endMonth");
+            params.addValue("endMonth", endMonth);
+        }
+        sql.append(" ORDER BY station, group_year, group_bucket, first_date, category");
+        return new NamedParameterJdbcTemplate(jdbcTemplate).query(sql.toString(), params,
+            (result, _) -> WeatherSql.mapGroupRow(result, fields, calcAverage));
+    }
+
+    @Override
+    public void initializeRollups() {
+        if (isInitialized) {
+            return;
+        }
+        synchronized (this) {
+            if (!isInitialized) {
+                var hasRollups = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM (SELECT 1 FROM \"weather_rollup\" LIMIT 1)", Integer.class) > 0;
+                if (!hasRollups) {
+                    var stationRanges = jdbcTemplate.queryForList(
+                        "SELECT station, MIN(date) AS start_date, MAX(date) AS end_date FROM \"weather\" GROUP BY station");
+                    var start = System.currentTimeMillis();
+                    // Mark as initialized first, because refreshing the rollups also initializes them
+                    isInitialized = true;
+                    for (var stationRange : stationRanges) {
+                        refreshRollups(
+                            (String) stationRange.get("station"),
+                            ((Date) stationRange.get("start_date")).toLocalDate(),
+                            ((Date) stationRange.get("end_date")).toLocalDate());
+                    }
+                    if (!stationRanges.isEmpty()) {
+                        log.info("Calculated the weather rollups of {} stations in {} ms",
+                            stationRanges.size(), System.currentTimeMillis() - start);
+                    }
+                }
+                isInitialized = true;
+            }
+        }
+    }
+
+    @Override
+    public boolean isRollupsInitialized() {
+        return isInitialized;
+    }
+
+    private static String getBucketStart(WeatherGrouping grouping) {
+        return switch (grouping) {
+            case WEEKLY -> "GREATEST(DATEADD(DAY, 1 - ISO_DAY_OF_WEEK(date), date), DATEADD(DAY, 1 - DAY_OF_YEAR(date), date))";
+            case MONTHLY -> "DATEADD(DAY, 1 - DAY_OF_MONTH(date), date)";
+            case YEARLY -> "DATEADD(DAY, 1 - DAY_OF_YEAR(date), date)";
+            case null, default -> throw new IllegalArgumentException("Unsupported grouping: " + grouping);
+        };
+    }
+
+}
@@ -0,0 +1,26 @@
+package mywild.wildweather.domain.weather.data;
+
+import java.time.LocalDate;
+import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+
+/**
+ * Receives the weather table's rows one at a time, without creating an entity per row.
+ * The values array is reused between rows, and contains NaN for null values.
+ */
+@FunctionalInterface
+public interface WeatherRowCallback {
+
+    int TEMPERATURE = 0;
+    int WIND_SPEED = 1;
+    int WIND_MAX = 2;
+    int RAIN_RATE = 3;
+    int RAIN_DAILY = 4;
+    int PRESSURE = 5;
+    int HUMIDITY = 6;
+    int UV_RADIATION_INDEX = 7;
+    int MISSING = 8;
+    int VALUES = 9;
+
+    void accept(String station, LocalDate date, WeatherCategory category, String windDirection, double[] values);
+
+}
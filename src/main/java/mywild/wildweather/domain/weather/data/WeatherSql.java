@@ -0,0 +1,114 @@
+package mywild.wildweather.domain.weather.data;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+import mywild.wildweather.domain.weather.web.dto.WeatherField;
+import mywild.wildweather.domain.weather.web.dto.WeatherGrouping;
+
+/**
+ * SQL snippets that are shared by the queries that aggregate the weather table.
+ */
+final class WeatherSql {
+
+    private WeatherSql() {
+        // prevent instantiation
+    }
+
+    // The same as WeekFields.ISO.weekOfYear(): weeks start on Monday, and week 1 is the first week with at least 4 days
+    // in the year (the days before it are in week 0). The day of the week of the 1st of January is calculated first.
+    static final String WEEK_OF_YEAR = """
+        ((DAY_OF_YEAR(date) - 1 + MOD(MOD(ISO_DAY_OF_WEEK(date) - DAY_OF_YEAR(date), 7) + 7, 7)) / 7
+            + CASE WHEN MOD(MOD(ISO_DAY_OF_WEEK(date) - DAY_OF_YEAR(date), 7) + 7, 7) <= 3 THEN 1 ELSE 0 END)""";
+
+    // The same as Conversions.directionToDegrees(), except that unknown directions are null (they are counted separately)
+    private static final String[] WIND_DIRECTIONS = {
+        "N", "NNE", "NE", "ENE", "E", "ESE", "SE", "SSE", "S", "SSW", "SW", "WSW", "W", "WNW", "NW", "NNW" };
+    static final String WIND_DIRECTION_DEGREES;
+    static final String UNKNOWN_WIND_DIRECTION;
+    static {
+        var sql = new StringBuilder("CASE WHEN wind_direction IS NULL OR TRIM(wind_direction) = '' THEN 0");
+        for (int i = 0; i < WIND_DIRECTIONS.length; i++) {
+            sql.append(" WHEN wind_direction = '").append(WIND_DIRECTIONS[i]).append("' THEN ").append(i * 22.5);
+        }
+        sql.append(" END");
+        WIND_DIRECTION_DEGREES = sql.toString();
+        UNKNOWN_WIND_DIRECTION = "TRIM(wind_direction) <> '' AND wind_direction NOT IN ('"
+            + String.join("', '", WIND_DIRECTIONS) + "')";
+    }
+
+    /**
+     * The group (week, month or year) of the date column.
+     */
+    static String getGroup(WeatherGrouping grouping) {
+        return switch (grouping) {
+            case WEEKLY -> WEEK_OF_YEAR;
+            case MONTHLY -> "date_month";
+            case YEARLY -> "YEAR(date)";
+            case null, default -> throw new IllegalArgumentException("Unsupported grouping: " + grouping);
+        };
+    }
+
+    /**
+     * The value of the field to aggregate, which is null when the day should not be included.
+     */
+    static String getAggregateValue(WeatherField field) {
+        return switch (field) {
+            case MISSING -> "missing";
+            case WIND_DIRECTION -> "CASE WHEN missing < 100 THEN " + WIND_DIRECTION_DEGREES + " END";
+            default -> "CASE WHEN missing < 100 THEN " + getColumn(field) + " END";
+        };
+    }
+
+    static String getColumn(WeatherField field) {
+        return switch (field) {
+            case TEMPERATURE -> "temperature";
+            case WIND_SPEED -> "wind_speed";
+            case WIND_MAX -> "wind_max";
+            case WIND_DIRECTION -> "wind_direction";
+            case RAIN_RATE -> "rain_rate";
+            case RAIN_DAILY -> "rain_daily";
+            case PRESSURE -> "pressure";
+            case HUMIDITY -> "humidity";
+            case UV_RADIATION_INDEX -> "uv_radiation_index";
+            case MISSING -> "missing";
+        };
+    }
+
+    /**
+     * Map a row with the columns: station, year, group, category, first date, (value, count) for each field, and the
+     * number of unknown wind directions (only when the wind direction was requested).
+     * The average value is calculated from the sum and count, because the database's AVG() is very slow for DECFLOAT.
+     */
+    static WeatherGroupRow mapGroupRow(ResultSet result, List<WeatherField> fields, boolean calcAverage) throws SQLException {
+        var category = WeatherCategory.valueOf(result.getString(4));
+        var values = new Double[fields.size()];
+        for (int i = 0; i < values.length; i++) {
+            var value = result.getDouble(6 + i * 2);
+            if (result.wasNull()) {
+                values[i] = null;
+            }
+            else if (calcAverage && category == WeatherCategory.A) {
+                values[i] = value / result.getInt(7 + i * 2);
+            }
+            else {
+                values[i] = value;
+            }
+        }
+        // Unknown wind directions count as negative infinity, which the database can't calculate with
+        var windDirectionIndex = fields.indexOf(WeatherField.WIND_DIRECTION);
+        if (windDirectionIndex >= 0 && result.getInt(6 + values.length * 2) > 0
+                && !(calcAverage && category == WeatherCategory.H && values[windDirectionIndex] != null)) {
+            values[windDirectionIndex] = Double.NEGATIVE_INFINITY;
+        }
+        return new WeatherGroupRow(
+            result.getString(1),
+            result.getInt(2),
+            result.getInt(3),
+            category,
+            result.getDate(5).toLocalDate(),
+            values);
+    }
+
+}
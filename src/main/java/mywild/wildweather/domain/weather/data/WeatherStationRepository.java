@@ -0,0 +1,23 @@
+package mywild.wildweather.domain.weather.data;
+
+import java.util.List;
+
+/**
+ * The catalog of the weather stations, which is kept up to date during ingestion.
+ */
+public interface WeatherStationRepository {
+
+    /**
+     * Recalculate the station's dates and counts from its weather rows (or remove the station when it has no rows).
+     * @param source The CSV file that added days for the station, or null to keep the current source.
+     */
+    void refreshStation(String station, String source);
+
+    void deleteAllStations();
+
+    /**
+     * Read the catalog, ordered by station.
+     */
+    List<WeatherStationRow> findStationCatalog();
+
+}
@@ -0,0 +1,104 @@
+package mywild.wildweather.domain.weather.data;
+
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class WeatherStationRepositoryImpl implements WeatherStationRepository {
+
+    private static final String STATION_VALUES_SQL = """
+        SELECT
+            station, MIN(date), MAX(date), COUNT(*), COUNT(DISTINCT CASE WHEN missing >= 100 THEN date END)
+        """;
+
+    private static final String REFRESH_SQL = """
+        MERGE INTO "weather_station" (station, first_date, last_date, row_count, missing_days, source, updated) KEY (station)
+        """ + STATION_VALUES_SQL + """
+            , COALESCE(CAST(? AS VARCHAR), (SELECT s.source FROM "weather_station" s WHERE s.station = w.station)), LOCALTIMESTAMP
+        FROM "weather" w
+        WHERE station = ?
+        GROUP BY station
+        """;
+
+    private static final String DELETE_SQL = """
+        DELETE FROM "weather_station"
+        WHERE station = ?
+        """;
+
+    private static final String INITIALIZE_SQL = """
+        INSERT INTO "weather_station" (station, first_date, last_date, row_count, missing_days, source, updated)
+        """ + STATION_VALUES_SQL + """
+            , NULL, LOCALTIMESTAMP
+        FROM "weather"
+        GROUP BY station
+        """;
+
+    private static final String FIND_SQL = """
+        SELECT station, first_date, last_date, row_count, missing_days, source
+        FROM "weather_station"
+        ORDER BY station
+        """;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private volatile boolean isInitialized = false;
+
+    @Override
+    @Transactional
+    public void refreshStation(String station, String source) {
+        initialize();
+        if (jdbcTemplate.update(REFRESH_SQL, source, station) == 0) {
+            // All the station's weather rows were deleted
+            jdbcTemplate.update(DELETE_SQL, station);
+        }
+    }
+
+    @Override
+    @Transactional
+    public void deleteAllStations() {
+        jdbcTemplate.update("DELETE FROM \"weather_station\"");
+    }
+
+    @Override
+    @Transactional
+    public List<WeatherStationRow> findStationCatalog() {
+        initialize();
+        return jdbcTemplate.query(FIND_SQL, (result, _) -> new WeatherStationRow(
+            result.getString(1),
+            result.getDate(2).toLocalDate(),
+            result.getDate(3).toLocalDate(),
+            result.getLong(4),
+            result.getInt(5),
+            result.getString(6)));
+    }
+
+    /**
+     * Fill the catalog when there is weather data without a catalog (for example, data from before the catalog was
+     * added).
+     */
+    private void initialize() {
+        if (isInitialized) {
+            return;
+        }
+        synchronized (this) {
+            if (!isInitialized) {
+                var hasStations = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM (SELECT 1 FROM \"weather_station\" LIMIT 1)", Integer.class) > 0;
+                if (!hasStations) {
+                    var start = System.currentTimeMillis();
+                    var stations = jdbcTemplate.update(INITIALIZE_SQL);
+                    if (stations > 0) {
+                        log.info("Added {} stations to the station catalog in {} ms",
+                            stations, System.currentTimeMillis() - start);
+                    }
+                }
+                isInitialized = true;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,16 @@
+package mywild.wildweather.domain.weather.data;
+
+import java.time.LocalDate;
+
+/**
+ * A station in the station catalog, with the range and number of its weather rows.
+ * The source is null when the station was added to the catalog from existing data.
+ */
+public record WeatherStationRow(
+    String station,
+    LocalDate firstDate,
+    LocalDate lastDate,
+    long rowCount,
+    int missingDays,
+    String source) {
+}
@@ -0,0 +1,37 @@
+package mywild.wildweather.domain.weather.data.entity;
+
+import java.time.LocalDateTime;
+import org.springframework.data.relational.core.mapping.Table;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import lombok.experimental.SuperBuilder;
+import mywild.wildweather.framework.data.BaseEntity;
+
+@ToString(callSuper = true)
+@Getter
+@Setter
+@SuperBuilder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Table("csv_files")
+public class CsvFileEntity extends BaseEntity {
+
+    @NotNull
+    @NotBlank
+    private String name;
+
+    @NotNull
+    private LocalDateTime processed;
+
+    private Long size;
+
+    private Long lastModified;
+
+    private String hash;
+
+}
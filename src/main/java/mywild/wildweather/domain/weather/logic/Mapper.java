@@ -1,13 +1,13 @@
 package mywild.wildweather.domain.weather.logic;
 
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.WeekFields;
+import java.time.LocalDate;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+import mywild.wildweather.domain.weather.data.WeatherGroupRow;
 import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
 import mywild.wildweather.domain.weather.web.dto.WeatherAggregate;
 import mywild.wildweather.domain.weather.web.dto.WeatherDataDto;
@@ -20,77 +20,68 @@ final public class Mapper {
         // prevent instantiation
     }
 
+    /**
+     * Aggregate the daily rows, which are expected to be ordered by date (at least per station).
+     */
     static WeatherDataDto mapEntitiesToDto(
             WeatherGrouping grouping,
             WeatherAggregate aggregate,
             Set<WeatherField> weatherFields,
             List<WeatherEntity> entities) {
-        var calcAverage = aggregate == null || aggregate == WeatherAggregate.AVERAGE;
-        Map<String, Integer> daysWithDataPerGroupAndField = new HashMap<>();
-        var weatherData = new WeatherDataDto();
+        var aggregator = new WeatherAggregator(grouping, aggregate, weatherFields);
+        // One value per field, in the [field][index] layout of the aggregator
+        var values = new double[WeatherAggregator.FIELDS.length][1];
         for (var weatherDay : entities) {
-            var station = weatherDay.getStation();
-            var year = weatherDay.getDate().getYear();
-            var group = grouping == WeatherGrouping.DAILY ? weatherDay.getDate().format(DateTimeFormatter.ISO_LOCAL_DATE)
-                : grouping == WeatherGrouping.WEEKLY ? String.format("%02d", weatherDay.getDate().get(WeekFields.ISO.weekOfYear()))
-                : grouping == WeatherGrouping.MONTHLY ? String.format("%02d", weatherDay.getDate().getMonthValue())
-                : grouping == WeatherGrouping.YEARLY ? String.valueOf(weatherDay.getDate().getYear())
-                    : weatherDay.getDate().format(DateTimeFormatter.ISO_LOCAL_DATE);
-            var category = weatherDay.getCategory();
-            var groupMap = weatherData.getWeather().computeIfAbsent(station, _ -> new LinkedHashMap<>())
-                        .computeIfAbsent(year, _ -> new LinkedHashMap<>())
+            values[WeatherField.TEMPERATURE.ordinal()][0] = toDouble(weatherDay.getTemperature());
+            values[WeatherField.WIND_SPEED.ordinal()][0] = toDouble(weatherDay.getWindSpeed());
+            values[WeatherField.WIND_MAX.ordinal()][0] = toDouble(weatherDay.getWindMax());
+            values[WeatherField.WIND_DIRECTION.ordinal()][0] = Conversions.directionToDegrees(weatherDay.getWindDirection());
+            values[WeatherField.RAIN_RATE.ordinal()][0] = toDouble(weatherDay.getRainRate());
+            values[WeatherField.RAIN_DAILY.ordinal()][0] = toDouble(weatherDay.getRainDaily());
+            values[WeatherField.PRESSURE.ordinal()][0] = toDouble(weatherDay.getPressure());
+            values[WeatherField.HUMIDITY.ordinal()][0] = toDouble(weatherDay.getHumidity());
+            values[WeatherField.UV_RADIATION_INDEX.ordinal()][0] = toDouble(weatherDay.getUvRadiationIndex());
+            values[WeatherField.MISSING.ordinal()][0] = toDouble(weatherDay.getMissing());
+            aggregator.add(aggregator.getStation(weatherDay.getStation()), weatherDay.getDate(),
+                WeatherAggregator.getCategoryIndex(weatherDay.getCategory()), values, 0);
+        }
+        return aggregator.finish();
+    }
+
+    /**
+     * Map the groups that were already aggregated by the database, in the same order as mapEntitiesToDto() would have
+     * (the stations are ordered by their first day, and each group's categories by their first day).
+     */
+    static WeatherDataDto mapGroupsToDto(
+            WeatherGrouping grouping,
+            List<WeatherField> weatherFields,
+            List<WeatherGroupRow> groups) {
+        Map<String, LocalDate> stationFirstDates = new HashMap<>();
+        for (var group : groups) {
+            stationFirstDates.merge(group.station(), group.firstDate(), (a, b) -> a.isBefore(b) ? a : b);
+        }
+        var orderedGroups = groups.stream()
+            .sorted(Comparator.<WeatherGroupRow, LocalDate>comparing(group -> stationFirstDates.get(group.station()))
+                .thenComparing(WeatherGroupRow::station))
+            .toList();
+        var weatherData = new WeatherDataDto();
+        for (var weatherGroup : orderedGroups) {
+            var group = grouping == WeatherGrouping.YEARLY ? String.valueOf(weatherGroup.year())
+                : String.format("%02d", weatherGroup.group());
+            var groupMap = weatherData.getWeather().computeIfAbsent(weatherGroup.station(), _ -> new LinkedHashMap<>())
+                        .computeIfAbsent(weatherGroup.year(), _ -> new LinkedHashMap<>())
                             .computeIfAbsent(group, _ -> new LinkedHashMap<>());
-            WeatherFieldExtractor.EXTRACTORS.forEach((field, extractor) -> {
-                if (weatherFields == null || weatherFields.isEmpty() || weatherFields.contains(field)) {
-                    var fieldMap = groupMap.computeIfAbsent(field.getKey(), _ -> new LinkedHashMap<>());
-                    var value = extractor.apply(weatherDay);
-                    if ((value != null && weatherDay.getMissing() < 100) || field == WeatherField.MISSING) {
-                        if (category == WeatherCategory.H) {
-                            fieldMap.merge(category, value, calcAverage ? Math::max : Double::sum);
-                        }
-                        else if (category == WeatherCategory.L) {
-                            fieldMap.merge(category, value, calcAverage ? Math::min : Double::sum);
-                        }
-                        else {
-                            fieldMap.merge(category, value, Double::sum);
-                            daysWithDataPerGroupAndField.merge(getDaysPerGroupAndFieldKey(station, year, group, field), 1, Integer::sum);
-                        }
-                    }
-                    else {
-                        fieldMap.putIfAbsent(category, null);
-                    }
-                }
-            });
+            for (int i = 0; i < weatherFields.size(); i++) {
+                var value = weatherGroup.values()[i];
+                groupMap.computeIfAbsent(weatherFields.get(i).getKey(), _ -> new LinkedHashMap<>())
+                    .put(weatherGroup.category(), value != null ? Conversions.roundToOneDecimal(value) : null);
+            }
         }
-        weatherData.getWeather().forEach((station, yearMap) -> {
-            yearMap.forEach((year, groupMap) -> {
-                groupMap.forEach((group, fieldMap) -> {
-                    fieldMap.forEach((field, categoryMap) -> {
-                        categoryMap.replaceAll((category, total) -> {
-                            if (total != null) {
-                                if (calcAverage && category == WeatherCategory.A) {
-                                    var weatherField = WeatherField.fromKey(field);
-                                    var key = getDaysPerGroupAndFieldKey(station, year, group, weatherField);
-                                    var days = daysWithDataPerGroupAndField.getOrDefault(key, 1);
-                                    return Conversions.roundToOneDecimal(total / (double) days);
-                                }
-                                else {
-                                    return Conversions.roundToOneDecimal(total);
-                                }
-                            }
-                            else {
-                                return null;
-                            }
-                        });
-                    });
-                });
-            });
-        });
         return weatherData;
     }
 
-    private static String getDaysPerGroupAndFieldKey(String station, int year, String group, WeatherField field) {
-        return station + "-" + year + "-" + group + "-" + field;
+    private static double toDouble(Double value) {
+        return value != null ? value : Double.NaN;
     }
     
 }
@@ -0,0 +1,248 @@
+package mywild.wildweather.domain.weather.logic;
+
+import java.time.LocalDate;
+import java.time.temporal.WeekFields;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+import mywild.wildweather.domain.weather.web.dto.WeatherAggregate;
+import mywild.wildweather.domain.weather.web.dto.WeatherDataDto;
+import mywild.wildweather.domain.weather.web.dto.WeatherField;
+import mywild.wildweather.domain.weather.web.dto.WeatherGrouping;
+
+/**
+ * Aggregates daily weather values into the groups of a {@link WeatherDataDto}, using primitive accumulators.
+ * <p>
+ * Each station's days must be added in date order, so that a group is complete as soon as a day from the next group is
+ * added. Fields and categories are dense indexes into flat arrays, and a group is identified by its year and a number
+ * (the epoch day, week, month or zero), thus nothing is allocated per day: the maps of the DTO are only created when a
+ * station is first seen and when a group is complete.
+ */
+final class WeatherAggregator {
+
+    static final WeatherField[] FIELDS = WeatherField.values();
+
+    // Same order in which the database returns the categories of a day
+    static final WeatherCategory[] CATEGORIES = { WeatherCategory.A, WeatherCategory.H, WeatherCategory.L };
+
+    static final int MISSING = WeatherField.MISSING.ordinal();
+
+    private static final int SUM = 0;
+    private static final int MAX = 1;
+    private static final int MIN = 2;
+
+    // The keys of the weeks (up to 53) and months
+    private static final String[] TWO_DIGIT_KEYS = new String[54];
+    static {
+        for (int i = 0; i < TWO_DIGIT_KEYS.length; i++) {
+            TWO_DIGIT_KEYS[i] = String.format("%02d", i);
+        }
+    }
+
+    private final WeatherDataDto weatherData = new WeatherDataDto();
+    private final WeatherGrouping grouping;
+    private final boolean calcAverage;
+    private final int[] fields;
+    private final int[] operations = new int[CATEGORIES.length];
+    private final Map<String, Station> stationsByName = new HashMap<>();
+    private final List<Station> stations = new ArrayList<>();
+    private Station lastStation;
+    private LocalDate lastDate;
+    private int lastYear;
+    private long lastGroup;
+
+    WeatherAggregator(WeatherGrouping grouping, WeatherAggregate aggregate, Set<WeatherField> weatherFields) {
+        this.grouping = grouping;
+        this.calcAverage = aggregate == null || aggregate == WeatherAggregate.AVERAGE;
+        this.fields = getFieldIndexes(weatherFields);
+        for (int c = 0; c < CATEGORIES.length; c++) {
+            operations[c] = calcAverage && CATEGORIES[c] == WeatherCategory.H ? MAX
+                : calcAverage && CATEGORIES[c] == WeatherCategory.L ? MIN
+                    : SUM;
+        }
+    }
+
+    /**
+     * The indexes of the selected fields (all the fields when none are selected), in the order of the DTO.
+     */
+    static int[] getFieldIndexes(Set<WeatherField> weatherFields) {
+        var indexes = new int[FIELDS.length];
+        var count = 0;
+        for (var field : FIELDS) {
+            if (weatherFields == null || weatherFields.isEmpty() || weatherFields.contains(field)) {
+                indexes[count++] = field.ordinal();
+            }
+        }
+        return Arrays.copyOf(indexes, count);
+    }
+
+    static int getCategoryIndex(WeatherCategory category) {
+        return switch (category) {
+            case A -> 0;
+            case H -> 1;
+            case L -> 2;
+        };
+    }
+
+    /**
+     * The station's accumulators. The station is added to the DTO when its first day is added, so the stations appear
+     * in the order in which their first day was added.
+     */
+    Station getStation(String name) {
+        if (lastStation != null && lastStation.name.equals(name)) {
+            return lastStation;
+        }
+        var station = stationsByName.get(name);
+        if (station == null) {
+            station = new Station(name);
+            stationsByName.put(name, station);
+            stations.add(station);
+        }
+        lastStation = station;
+        return station;
+    }
+
+    /**
+     * Add one category of a station's day.
+     * @param category The index of the category in {@link #CATEGORIES}.
+     * @param fieldColumns The values, indexed by [field][index] (NaN for null values).
+     */
+    void add(Station station, LocalDate date, int category, double[][] fieldColumns, int index) {
+        if (date != lastDate && !date.equals(lastDate)) {
+            lastDate = date;
+            lastYear = date.getYear();
+            lastGroup = getGroup(date);
+        }
+        if (!station.isStarted || station.year != lastYear || station.group != lastGroup) {
+            station.flush();
+            station.start(date, lastYear, lastGroup);
+        }
+        station.add(category, fieldColumns, index);
+    }
+
+    /**
+     * Complete the last group of each station.
+     */
+    WeatherDataDto finish() {
+        for (var station : stations) {
+            station.flush();
+        }
+        return weatherData;
+    }
+
+    private long getGroup(LocalDate date) {
+        return grouping == WeatherGrouping.WEEKLY ? date.get(WeekFields.ISO.weekOfYear())
+            : grouping == WeatherGrouping.MONTHLY ? date.getMonthValue()
+            : grouping == WeatherGrouping.YEARLY ? 0
+                : date.toEpochDay();
+    }
+
+    private String getGroupKey(LocalDate date, long group) {
+        return grouping == WeatherGrouping.WEEKLY || grouping == WeatherGrouping.MONTHLY ? TWO_DIGIT_KEYS[(int) group]
+            : grouping == WeatherGrouping.YEARLY ? String.valueOf(date.getYear())
+                // Same as DateTimeFormatter.ISO_LOCAL_DATE for the years 0 to 9999
+                : date.toString();
+    }
+
+    /**
+     * One station's accumulators of the group that is being aggregated, indexed by [field * categories + category].
+     */
+    final class Station {
+
+        private final String name;
+        private Map<Integer, Map<String, Map<String, Map<WeatherCategory, Double>>>> yearMap;
+        private final double[] totals = new double[fields.length * CATEGORIES.length];
+        private final boolean[] hasValue = new boolean[totals.length];
+        private final int[] daysWithData = new int[fields.length];
+        private final boolean[] hasCategory = new boolean[CATEGORIES.length];
+        // The categories in the order in which they were first seen in the group
+        private final int[] categoryOrder = new int[CATEGORIES.length];
+        private int categoryCount;
+        private LocalDate firstDate;
+        private int year;
+        private long group;
+        private boolean isStarted;
+
+        private Station(String name) {
+            this.name = name;
+        }
+
+        private void start(LocalDate date, int dateYear, long dateGroup) {
+            if (yearMap == null) {
+                yearMap = weatherData.getWeather().computeIfAbsent(name, _ -> new LinkedHashMap<>());
+            }
+            firstDate = date;
+            year = dateYear;
+            group = dateGroup;
+            isStarted = true;
+            Arrays.fill(hasValue, false);
+            Arrays.fill(daysWithData, 0);
+            Arrays.fill(hasCategory, false);
+            categoryCount = 0;
+        }
+
+        private void add(int c, double[][] fieldColumns, int index) {
+            if (!hasCategory[c]) {
+                hasCategory[c] = true;
+                categoryOrder[categoryCount++] = c;
+            }
+            var missing = fieldColumns[MISSING][index];
+            var operation = operations[c];
+            for (int f = 0; f < fields.length; f++) {
+                var field = fields[f];
+                var value = fieldColumns[field][index];
+                if ((!Double.isNaN(value) && missing < 100) || field == MISSING) {
+                    var slot = f * CATEGORIES.length + c;
+                    if (!hasValue[slot]) {
+                        hasValue[slot] = true;
+                        totals[slot] = value;
+                    }
+                    else if (operation == MAX) {
+                        totals[slot] = Math.max(totals[slot], value);
+                    }
+                    else if (operation == MIN) {
+                        totals[slot] = Math.min(totals[slot], value);
+                    }
+                    else {
+                        totals[slot] += value;
+                    }
+                    if (c == 0) {
+                        daysWithData[f]++;
+                    }
+                }
+            }
+        }
+
+        private void flush() {
+            if (!isStarted) {
+                return;
+            }
+            var groupMap = yearMap.computeIfAbsent(year, _ -> new LinkedHashMap<>())
+                .computeIfAbsent(getGroupKey(firstDate, group), _ -> new LinkedHashMap<>());
+            for (int f = 0; f < fields.length; f++) {
+                var fieldMap = groupMap.computeIfAbsent(FIELDS[fields[f]].getKey(), _ -> new LinkedHashMap<>());
+                for (int i = 0; i < categoryCount; i++) {
+                    var c = categoryOrder[i];
+                    var slot = f * CATEGORIES.length + c;
+                    if (!hasValue[slot]) {
+                        fieldMap.putIfAbsent(CATEGORIES[c], null);
+                    }
+                    else if (calcAverage && c == 0) {
+                        fieldMap.put(CATEGORIES[c], Conversions.roundToOneDecimal(totals[slot] / daysWithData[f]));
+                    }
+                    else {
+                        fieldMap.put(CATEGORIES[c], Conversions.roundToOneDecimal(totals[slot]));
+                    }
+                }
+            }
+            isStarted = false;
+        }
+
+    }
+
+}
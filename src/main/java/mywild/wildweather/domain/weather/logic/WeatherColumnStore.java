@@ -0,0 +1,383 @@
+package mywild.wildweather.domain.weather.logic;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import lombok.extern.slf4j.Slf4j;
+import mywild.wildweather.domain.weather.data.WeatherDataChangedEvent;
+import mywild.wildweather.domain.weather.data.WeatherRepository;
+import mywild.wildweather.domain.weather.data.WeatherRowCallback;
+import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+import mywild.wildweather.domain.weather.web.dto.WeatherAggregate;
+import mywild.wildweather.domain.weather.web.dto.WeatherDataDto;
+import mywild.wildweather.domain.weather.web.dto.WeatherField;
+import mywild.wildweather.domain.weather.web.dto.WeatherGrouping;
+
+/**
+ * Keeps a read-only, column oriented copy of the daily weather data in memory, that answers the DAILY weather queries
+ * (the other groupings are read from the database's rollups).
+ * <p>
+ * Each station's data is stored as one primitive array per category and field, indexed by the number of days since the
+ * station's first day (NaN is used for null values, and for days without data). The copy is loaded in the background at
+ * startup. Whenever new data has been committed, only the changed days of the changed stations are read again, into new
+ * columns for those stations. The snapshot is replaced in a single step, so queries always see a consistent snapshot.
+ * <p>
+ * Queries produce exactly the same result as mapping the rows from the database with the {@link Mapper}.
+ */
+@Slf4j
+@Component
+public class WeatherColumnStore {
+
+    private static final WeatherField[] FIELDS = WeatherAggregator.FIELDS;
+
+    private static final WeatherCategory[] CATEGORIES = WeatherAggregator.CATEGORIES;
+
+    private static final int MISSING = WeatherAggregator.MISSING;
+
+    private static final int INITIAL_DAYS = 366;
+
+    private final AtomicInteger refreshRequests = new AtomicInteger(0);
+
+    private final AtomicBoolean isReloadRequested = new AtomicBoolean(false);
+
+    private final Map<String, NavigableMap<LocalDate, LocalDate>> changedDays = new ConcurrentHashMap<>();
+
+    @Autowired
+    private WeatherRepository repo;
+
+    private volatile NavigableMap<String, StationColumns> snapshot;
+
+    /**
+     * Whether the data has been loaded and can be queried.
+     */
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void onApplicationReady() {
+        isReloadRequested.set(true);
+        requestRefresh();
+    }
+
+    @EventListener
+    void onWeatherDataChanged(WeatherDataChangedEvent event) {
+        if (event.changedDays() == null) {
+            isReloadRequested.set(true);
+        }
+        else {
+            event.changedDays().forEach((station, ranges) -> changedDays.merge(station, ranges, (pending, added) -> {
+                var merged = new TreeMap<>(pending);
+                added.forEach((startDate, endDate) -> merged.merge(startDate, endDate,
+                    (end1, end2) -> end1.isAfter(end2) ? end1 : end2));
+                return merged;
+            }));
+        }
+        requestRefresh();
+    }
+
+    /**
+     * Refresh the data in the background. Requests received while busy are combined into a single follow-up refresh.
+     */
+    private void requestRefresh() {
+        if (refreshRequests.getAndIncrement() == 0) {
+            Thread.ofVirtual().name("weather-column-store").start(() -> {
+                int handled;
+                do {
+                    handled = refreshRequests.get();
+                    refresh();
+                }
+                while (!refreshRequests.compareAndSet(handled, 0));
+            });
+        }
+    }
+
+    private void refresh() {
+        if (isReloadRequested.getAndSet(false) || snapshot == null) {
+            // The changes that were committed so far are included in the reload
+            changedDays.clear();
+            reload();
+            return;
+        }
+        Map<String, NavigableMap<LocalDate, LocalDate>> stationChanges = new HashMap<>();
+        for (var station : List.copyOf(changedDays.keySet())) {
+            stationChanges.put(station, changedDays.remove(station));
+        }
+        if (!stationChanges.isEmpty()) {
+            update(stationChanges);
+        }
+    }
+
+    void reload() {
+        try {
+            var start = System.currentTimeMillis();
+            var builder = new SnapshotBuilder();
+            repo.scanAll(builder);
+            var stations = builder.build();
+            snapshot = stations;
+            log.info("Loaded {} stations ({} days) into the weather column store in {} ms",
+                stations.size(), builder.days, System.currentTimeMillis() - start);
+        }
+        catch (RuntimeException ex) {
+            log.error("Could not load the weather column store: {}", ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Read the changed days of the stations again, and replace the columns of those stations (the other stations keep
+     * their columns).
+     * @param stationChanges The changed date ranges of each station (start date to end date, inclusive).
+     */
+    void update(Map<String, NavigableMap<LocalDate, LocalDate>> stationChanges) {
+        try {
+            var start = System.currentTimeMillis();
+            var stations = new TreeMap<>(snapshot);
+            var days = 0L;
+            for (var stationChange : stationChanges.entrySet()) {
+                days += updateStation(stations, stationChange.getKey(), stationChange.getValue());
+            }
+            snapshot = Collections.unmodifiableNavigableMap(stations);
+            log.info("Updated {} stations ({} days) in the weather column store in {} ms",
+                stationChanges.size(), days, System.currentTimeMillis() - start);
+        }
+        catch (RuntimeException ex) {
+            // Answer the queries from the database, until the next change reloads all the data
+            snapshot = null;
+            log.error("Could not update the weather column store: {}", ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Copy the station's columns, widened to include the changed days, and read the changed days into them.
+     * @return The number of changed days.
+     */
+    private long updateStation(NavigableMap<String, StationColumns> stations, String station,
+            NavigableMap<LocalDate, LocalDate> ranges) {
+        var current = stations.get(station);
+        var firstDay = ranges.firstKey().toEpochDay();
+        var lastDay = Long.MIN_VALUE;
+        for (var endDate : ranges.values()) {
+            lastDay = Math.max(lastDay, endDate.toEpochDay());
+        }
+        if (current != null) {
+            firstDay = Math.min(firstDay, current.firstDay());
+            lastDay = Math.max(lastDay, current.firstDay() + current.days() - 1);
+        }
+        var stationDays = Math.toIntExact(lastDay - firstDay + 1);
+        var columns = new double[CATEGORIES.length][FIELDS.length][];
+        for (int c = 0; c < CATEGORIES.length; c++) {
+            for (int f = 0; f < FIELDS.length; f++) {
+                columns[c][f] = newColumn(stationDays);
+                if (current != null) {
+                    System.arraycopy(current.columns()[c][f], 0, columns[c][f],
+                        (int) (current.firstDay() - firstDay), current.days());
+                }
+            }
+        }
+        var days = 0L;
+        var columnsFirstDay = firstDay;
+        for (var range : ranges.entrySet()) {
+            var fromIndex = (int) (range.getKey().toEpochDay() - firstDay);
+            var toIndex = (int) (range.getValue().toEpochDay() - firstDay) + 1;
+            for (var categoryColumns : columns) {
+                for (var column : categoryColumns) {
+                    Arrays.fill(column, fromIndex, toIndex, Double.NaN);
+                }
+            }
+            repo.scanStation(station, range.getKey(), range.getValue(), (_, date, category, windDirection, values) ->
+                setValues(columns[WeatherAggregator.getCategoryIndex(category)],
+                    (int) (date.toEpochDay() - columnsFirstDay), windDirection, values));
+            days += toIndex - fromIndex;
+        }
+        // Drop the days without rows at both ends (or the whole station)
+        var fromIndex = 0;
+        while (fromIndex < stationDays && !hasRows(columns, fromIndex)) {
+            fromIndex++;
+        }
+        var toIndex = stationDays;
+        while (toIndex > fromIndex && !hasRows(columns, toIndex - 1)) {
+            toIndex--;
+        }
+        if (fromIndex == toIndex) {
+            stations.remove(station);
+            return days;
+        }
+        for (var categoryColumns : columns) {
+            for (int f = 0; f < FIELDS.length; f++) {
+                categoryColumns[f] = Arrays.copyOfRange(categoryColumns[f], fromIndex, toIndex);
+            }
+        }
+        stations.put(station, new StationColumns(station, firstDay + fromIndex, toIndex - fromIndex, columns));
+        return days;
+    }
+
+    private static boolean hasRows(double[][][] columns, int index) {
+        for (var categoryColumns : columns) {
+            if (!Double.isNaN(categoryColumns[MISSING][index])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public WeatherDataDto getWeather(
+            List<String> stations,
+            WeatherGrouping grouping,
+            WeatherCategory category,
+            WeatherAggregate aggregate,
+            Set<WeatherField> weatherFields,
+            LocalDate startDate, LocalDate endDate,
+            Integer startMonth, Integer endMonth) {
+        var data = snapshot;
+        var selectedStations = new ArrayList<StationColumns>();
+        if (stations == null || stations.isEmpty()) {
+            selectedStations.addAll(data.values());
+        }
+        else {
+            for (var station : data.values()) {
+                if (stations.contains(station.name())) {
+                    selectedStations.add(station);
+                }
+            }
+        }
+        var aggregator = new WeatherAggregator(grouping, aggregate, weatherFields);
+        var groups = new WeatherAggregator.Station[selectedStations.size()];
+        long fromDay = Long.MAX_VALUE;
+        long toDay = Long.MIN_VALUE;
+        for (int s = 0; s < groups.length; s++) {
+            var station = selectedStations.get(s);
+            groups[s] = aggregator.getStation(station.name());
+            fromDay = Math.min(fromDay, station.firstDay());
+            toDay = Math.max(toDay, station.firstDay() + station.days() - 1);
+        }
+        if (startDate != null) {
+            fromDay = Math.max(fromDay, startDate.toEpochDay());
+        }
+        if (endDate != null) {
+            toDay = Math.min(toDay, endDate.toEpochDay());
+        }
+        // Visit the days in the same order as the database query (date, station, category)
+        for (long day = fromDay; day <= toDay; day++) {
+            var date = LocalDate.ofEpochDay(day);
+            var month = date.getMonthValue();
+            if ((startMonth != null && month < startMonth) || (endMonth != null && month > endMonth)) {
+                continue;
+            }
+            for (int s = 0; s < groups.length; s++) {
+                var station = selectedStations.get(s);
+                var index = (int) (day - station.firstDay());
+                if (index < 0 || index >= station.days()) {
+                    continue;
+                }
+                for (int c = 0; c < CATEGORIES.length; c++) {
+                    if ((category == null || category == CATEGORIES[c])
+                            && !Double.isNaN(station.columns()[c][MISSING][index])) {
+                        aggregator.add(groups[s], date, c, station.columns()[c], index);
+                    }
+                }
+            }
+        }
+        return aggregator.finish();
+    }
+
+    private record StationColumns(String name, long firstDay, int days, double[][][] columns) {
+        // The columns are indexed by [category][field][day]
+    }
+
+    /**
+     * Builds the columns from the rows, which are expected to be ordered by station and date.
+     */
+    private static class SnapshotBuilder implements WeatherRowCallback {
+
+        private final NavigableMap<String, StationColumns> stations = new TreeMap<>();
+        private String station;
+        private long firstDay;
+        private int stationDays;
+        private double[][][] columns;
+        private long days;
+
+        @Override
+        public void accept(String station, LocalDate date, WeatherCategory category, String windDirection, double[] values) {
+            if (!station.equals(this.station)) {
+                finishStation();
+                this.station = station;
+                this.firstDay = date.toEpochDay();
+                this.stationDays = 0;
+                this.columns = new double[CATEGORIES.length][FIELDS.length][];
+                for (var categoryColumns : columns) {
+                    for (int f = 0; f < FIELDS.length; f++) {
+                        categoryColumns[f] = newColumn(INITIAL_DAYS);
+                    }
+                }
+            }
+            var index = (int) (date.toEpochDay() - firstDay);
+            if (index >= columns[0][0].length) {
+                var capacity = Math.max(index + 1, columns[0][0].length * 2);
+                for (var categoryColumns : columns) {
+                    for (int f = 0; f < FIELDS.length; f++) {
+                        var column = newColumn(capacity);
+                        System.arraycopy(categoryColumns[f], 0, column, 0, stationDays);
+                        categoryColumns[f] = column;
+                    }
+                }
+            }
+            stationDays = Math.max(stationDays, index + 1);
+            setValues(columns[WeatherAggregator.getCategoryIndex(category)], index, windDirection, values);
+        }
+
+        NavigableMap<String, StationColumns> build() {
+            finishStation();
+            return Collections.unmodifiableNavigableMap(stations);
+        }
+
+        private void finishStation() {
+            if (station != null) {
+                for (var categoryColumns : columns) {
+                    for (int f = 0; f < FIELDS.length; f++) {
+                        categoryColumns[f] = Arrays.copyOf(categoryColumns[f], stationDays);
+                    }
+                }
+                stations.put(station, new StationColumns(station, firstDay, stationDays, columns));
+                days += stationDays;
+            }
+        }
+
+    }
+
+    /**
+     * Set the values of a row in its category's columns.
+     */
+    private static void setValues(double[][] categoryColumns, int index, String windDirection, double[] values) {
+        categoryColumns[WeatherField.TEMPERATURE.ordinal()][index] = values[WeatherRowCallback.TEMPERATURE];
+        categoryColumns[WeatherField.WIND_SPEED.ordinal()][index] = values[WeatherRowCallback.WIND_SPEED];
+        categoryColumns[WeatherField.WIND_MAX.ordinal()][index] = values[WeatherRowCallback.WIND_MAX];
+        categoryColumns[WeatherField.WIND_DIRECTION.ordinal()][index] = Conversions.directionToDegrees(windDirection);
+        categoryColumns[WeatherField.RAIN_RATE.ordinal()][index] = values[WeatherRowCallback.RAIN_RATE];
+        categoryColumns[WeatherField.RAIN_DAILY.ordinal()][index] = values[WeatherRowCallback.RAIN_DAILY];
+        categoryColumns[WeatherField.PRESSURE.ordinal()][index] = values[WeatherRowCallback.PRESSURE];
+        categoryColumns[WeatherField.HUMIDITY.ordinal()][index] = values[WeatherRowCallback.HUMIDITY];
+        categoryColumns[WeatherField.UV_RADIATION_INDEX.ordinal()][index] = values[WeatherRowCallback.UV_RADIATION_INDEX];
+        categoryColumns[WeatherField.MISSING.ordinal()][index] = values[WeatherRowCallback.MISSING];
+    }
+
+    private static double[] newColumn(int capacity) {
+        var column = new double[capacity];
+        Arrays.fill(column, Double.NaN);
+        return column;
+    }
+
+}
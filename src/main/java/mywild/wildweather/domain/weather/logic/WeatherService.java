@@ -1,16 +1,25 @@
 package mywild.wildweather.domain.weather.logic;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.validation.annotation.Validated;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
+import mywild.wildweather.domain.weather.data.WeatherBuckets;
 import mywild.wildweather.domain.weather.data.WeatherRepository;
+import mywild.wildweather.domain.weather.data.WeatherStationRow;
 import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
 import mywild.wildweather.domain.weather.web.dto.WeatherAggregate;
 import mywild.wildweather.domain.weather.web.dto.WeatherDataDto;
 import mywild.wildweather.domain.weather.web.dto.WeatherField;
@@ -28,6 +37,12 @@ public class WeatherService {
     @Autowired
     private WeatherRepository repo;
 
+    @Autowired
+    private WeatherColumnStore columnStore;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     public @Valid WeatherDataDto getWeather(
             List<String> stations,
             WeatherGrouping grouping,
@@ -36,27 +51,129 @@ public class WeatherService {
             Set<WeatherField> weatherFields,
             LocalDate startDate, LocalDate endDate,
             Integer startMonth, Integer endMonth) {
+        if (WeatherBuckets.isSupported(grouping)) {
+            // Let the database aggregate the days, instead of loading each day
+            var fields = WeatherFieldExtractor.EXTRACTORS.keySet().stream()
+                .filter(field -> weatherFields == null || weatherFields.isEmpty() || weatherFields.contains(field))
+                .toList();
+            if (canUseRollups(grouping, startDate, endDate, startMonth, endMonth)) {
+                return Mapper.mapGroupsToDto(grouping, fields,
+                    repo.findRollups(stations, category, grouping, aggregate, fields, startDate, endDate, startMonth, endMonth));
+            }
+            return Mapper.mapGroupsToDto(grouping, fields,
+                repo.aggregateWeather(stations, category, grouping, aggregate, fields, startDate, endDate, startMonth, endMonth));
+        }
+        // The daily values are read from memory, once the column store has been loaded
+        if (columnStore.isLoaded()) {
+            return columnStore.getWeather(stations, grouping, category, aggregate, weatherFields,
+                startDate, endDate, startMonth, endMonth);
+        }
         return Mapper.mapEntitiesToDto(grouping, aggregate, weatherFields,
             repo.searchWeather(stations, category, startDate, endDate, startMonth, endMonth));
     }
 
+    /**
+     * Write the same JSON as getWeather() would return, one station and year at a time, so that only one year's rows
+     * are in memory at a time. The weekly, monthly and yearly groupings are small enough to be written at once.
+     */
+    public void streamWeather(
+            List<String> stations,
+            WeatherGrouping grouping,
+            WeatherCategory category,
+            WeatherAggregate aggregate,
+            Set<WeatherField> weatherFields,
+            LocalDate startDate, LocalDate endDate,
+            Integer startMonth, Integer endMonth,
+            OutputStream output) throws IOException {
+        if (WeatherBuckets.isSupported(grouping)) {
+            objectMapper.writeValue(output, getWeather(stations, grouping, category, aggregate, weatherFields,
+                startDate, endDate, startMonth, endMonth));
+            return;
+        }
+        try (var generator = objectMapper.getFactory().createGenerator(output)) {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("weather");
+            // The stations are in the same order as when all the rows are mapped at once
+            for (var station : repo.findFirstDates(stations, category, startDate, endDate, startMonth, endMonth).keySet()) {
+                generator.writeObjectFieldStart(station);
+                var yearRows = new ArrayList<WeatherEntity>();
+                try {
+                    repo.streamWeather(station, category, startDate, endDate, startMonth, endMonth, entity -> {
+                        if (!yearRows.isEmpty() && yearRows.getLast().getDate().getYear() != entity.getDate().getYear()) {
+                            writeYear(generator, grouping, aggregate, weatherFields, yearRows);
+                        }
+                        yearRows.add(entity);
+                    });
+                }
+                catch (UncheckedIOException ex) {
+                    throw ex.getCause();
+                }
+                writeYear(generator, grouping, aggregate, weatherFields, yearRows);
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Map the rows of one station's year and write (and flush) them, then clear the rows for the next year.
+     */
+    private void writeYear(
+            JsonGenerator generator,
+            WeatherGrouping grouping,
+            WeatherAggregate aggregate,
+            Set<WeatherField> weatherFields,
+            List<WeatherEntity> yearRows) {
+        if (yearRows.isEmpty()) {
+            return;
+        }
+        var weatherData = Mapper.mapEntitiesToDto(grouping, aggregate, weatherFields, yearRows);
+        try {
+            for (var yearMap : weatherData.getWeather().values()) {
+                for (var year : yearMap.entrySet()) {
+                    generator.writeFieldName(String.valueOf(year.getKey()));
+                    objectMapper.writeValue(generator, year.getValue());
+                }
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        yearRows.clear();
+    }
+
+    /**
+     * The rollups can only be used once they have been calculated, and when the filters include or exclude complete
+     * groups.
+     */
+    private boolean canUseRollups(
+            WeatherGrouping grouping,
+            LocalDate startDate, LocalDate endDate,
+            Integer startMonth, Integer endMonth) {
+        return repo.isRollupsInitialized()
+            && (startDate == null || startDate.equals(WeatherBuckets.getStart(grouping, startDate)))
+            && (endDate == null || endDate.equals(WeatherBuckets.getEnd(grouping, endDate)))
+            && ((startMonth == null && endMonth == null) || grouping == WeatherGrouping.MONTHLY);
+    }
+
     public List<String> getWeatherStations() {
-        return repo.findStations();
+        return repo.findStationCatalog().stream()
+            .map(WeatherStationRow::station)
+            .toList();
     }
 
     public List<WeatherStationDto> getWeatherStatus() {
-        var stations = repo.findStations();
-        return stations.stream()
-            .<WeatherStationDto>map(station -> {
-                var startDate = repo.findBottomDateByStation(station);
-                var endDate = repo.findTopDateByStation(station);
-                return WeatherStationDto.builder()
-                    .station(station)
-                    .startDate(startDate)
-                    .endDate(endDate)
-                    .isMyStation(myStations.contains(station))
-                    .build();
-            })
+        return repo.findStationCatalog().stream()
+            .<WeatherStationDto>map(station -> WeatherStationDto.builder()
+                .station(station.station())
+                .startDate(station.firstDate())
+                .endDate(station.lastDate())
+                .rowCount(station.rowCount())
+                .missingDays(station.missingDays())
+                .source(station.source())
+                .isMyStation(myStations.contains(station.station()))
+                .build())
             .toList();
     }
 
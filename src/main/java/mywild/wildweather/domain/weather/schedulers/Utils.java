@@ -1,5 +1,7 @@
 package mywild.wildweather.domain.weather.schedulers;
 
+import java.net.URI;
+import java.nio.file.FileSystems;
 import java.nio.file.Path;
 
 final public class Utils {
@@ -8,8 +10,18 @@ final public class Utils {
         // prevent instantiation
     }
 
+    /**
+     * The station is the name of the file's folder. The entries of a zip archive are in the archive's folders, and the
+     * entries at the root of the archive are in the archive's own folder (as if the archive was extracted in place).
+     */
     public static String getStationName(Path path) {
         var stationPath = path.getParent();
+        if (stationPath != null && stationPath.getFileName() == null) {
+            var archive = getArchive(path);
+            if (archive != null) {
+                stationPath = archive.getParent();
+            }
+        }
         if (stationPath == null) {
             return "UNKNOWN";
         }
@@ -20,4 +32,21 @@ final public class Utils {
         return stationName.toString();
     }
 
+    /**
+     * The zip archive that contains the path, or null if the path is not an archive entry.
+     */
+    private static Path getArchive(Path path) {
+        if (path.getFileSystem() == FileSystems.getDefault()) {
+            return null;
+        }
+        // The zip file system's URIs are jar:<archive URI>!/<entry>
+        var uri = path.toUri();
+        var archiveUri = uri.getRawSchemeSpecificPart();
+        var separator = archiveUri.indexOf("!/");
+        if (!"jar".equals(uri.getScheme()) || separator < 0) {
+            return null;
+        }
+        return Path.of(URI.create(archiveUri.substring(0, separator)));
+    }
+
 }
@@ -15,15 +15,16 @@ import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import org.slf4j.helpers.MessageFormatter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import io.github.bucket4j.Bucket;
 import lombok.extern.slf4j.Slf4j;
 import mywild.ambientweather.openapi.client.api.AmbientWeatherApi;
 import mywild.wildweather.domain.weather.data.WeatherRepository;
-import mywild.wildweather.domain.weather.schedulers.Utils;
 
 /**
  * https://ambientweather.net/account/keys
@@ -39,14 +40,34 @@ public class AmbientWeatherApiScheduler {
 
     private static final int EXPECTED_RECORDS_PER_DAY = 24 * (60 / 5); // 288 (Every 5 minutes)
 
+    private static final int DAYS_PER_REQUEST = 1; // The records of a day are the most that a request returns
+
     private static final AtomicBoolean IS_RUNNING = new AtomicBoolean(false);
 
     @Value("${mywild.csv.folder}")
     private String csvRootFolder;
 
+    @Value("${mywild.ambient-weather.app-key}")
+    private String appKey;
+
+    @Value("${mywild.ambient-weather.api-key}")
+    private String apiKey;
+
+    @Value("${mywild.ambient-weather.app-key-requests-per-second}")
+    private int appKeyRequestsPerSecond;
+
+    @Value("${mywild.ambient-weather.api-key-requests-per-second}")
+    private int apiKeyRequestsPerSecond;
+
+    @Value("${mywild.ambient-weather.backfill-days}")
+    private int backfillDays;
+
     @Autowired
     private AmbientWeatherApi api;
 
+    @Autowired
+    private ApiFetchEngine fetchEngine;
+
     @Autowired
     private WeatherRepository repo;
 
@@ -59,7 +80,6 @@ public class AmbientWeatherApiScheduler {
         return IS_RUNNING.get();
     }
 
-    @SuppressWarnings("null")
     @Async
     public void processApiData() {
         if (!IS_RUNNING.compareAndSet(false, true)) {
@@ -74,83 +94,28 @@ public class AmbientWeatherApiScheduler {
                 .filter(Files::isRegularFile)
                 .filter(path -> path.toString().endsWith(AW_CSV_PREFIX + "-mac-address.txt"))
                 .toList();
+            // Plan all the stations first, to know up front how many requests are needed
+            Map<Path, BackfillPlanner.BackfillPlan> plans = new LinkedHashMap<>();
+            var lastDay = LocalDate.now(ZoneOffset.UTC).minusDays(1); // Yesterday
             for (var macAddressPath : macAddressFiles) {
-                var station = Utils.getStationName(macAddressPath);
-                LocalDate mostRecentDatabaseDate = repo.findTopDateByStation(station);
-                var readRecords = 0;
-                var processedDays = 0;
-                try (var reader = Files.newBufferedReader(macAddressPath)) {
-                    var stationMacAddress = reader.readLine();
-                    log.info("----------------");
-                    log.info("Processing Ambient Weather API : {}", station);
-                    OffsetDateTime apiEndDate = LocalDate.now(ZoneOffset.UTC).atStartOfDay().atOffset(ZoneOffset.UTC).minusSeconds(1); // Yesterday midnight
-                    do {
-                        var summaryCsvPath = CsvWriter.getCsvPath(AW_CSV_PREFIX,
-                            macAddressPath.getParent(), apiEndDate.toLocalDate(), null);
-                        if (summaryCsvPath != null && !Files.exists(summaryCsvPath)) {
-                            // Fetch the API data
-                            log.info("   Fetching data for : {}", apiEndDate.toLocalDate());
-                            var data = api.getDeviceData(stationMacAddress, apiEndDate, EXPECTED_RECORDS_PER_DAY);
-                            // Calculate the daily low/ave/high values
-                            Map<Integer, Double> low = new LinkedHashMap<>();
-                            Map<Integer, Double> high = new LinkedHashMap<>();
-                            Map<Integer, List<Double>> average = new LinkedHashMap<>();
-                            for (var dataRecord : data) {
-                                var recordDate = dataRecord.getDate().toLocalDate();
-                                if (recordDate.equals(apiEndDate.toLocalDate())) {
-                                    processValue(low, high, average, 0, Conversions.fahToCel(dataRecord.getTempf()));
-                                    processValue(low, high, average, 1, Conversions.mphToKmh(dataRecord.getWindspeedmph()));
-                                    processValue(low, high, average, 2, Conversions.mphToKmh(dataRecord.getWindgustmph()));
-                                    processValue(low, high, average, 3, dataRecord.getWinddir());
-                                    processValue(low, high, average, 4, Conversions.inToMm(dataRecord.getHourlyrainin()));
-                                    processValue(low, high, average, 5, Conversions.inToMm(dataRecord.getDailyrainin()));
-                                    processValue(low, high, average, 6, Conversions.inHgToHpa(dataRecord.getBaromrelin()));
-                                    processValue(low, high, average, 7, dataRecord.getHumidity());
-                                    processValue(low, high, average, 8, dataRecord.getUv());
-                                    readRecords++;
-                                }
-                                else {
-                                    log.debug("   Not processing records for date {} while busy processing {}",
-                                        recordDate, apiEndDate.toLocalDate());
-                                    break;
-                                }
-                            }
-                            // Save the record to a CSV file
-                            if (readRecords >= 1) {
-                                Map<Integer, Double> calculatedAverage = getCalculatedAverage(average);
-                                CsvWriter.writeSingleDayCsvFile(
-                                    summaryCsvPath, 
-                                    apiEndDate.toLocalDate(),
-                                    new ArrayList<>(calculatedAverage.values()),
-                                    new ArrayList<>(high.values()),
-                                    new ArrayList<>(low.values()));
-                            }
-                            processedDays++;
-                            // Sleep for 2 seconds to comply with API guidelines (of 1 request per second)
-                            Thread.sleep(Duration.ofSeconds(2));
-                        }
-                        else {
-                            log.info("   Skip {} - Found CSV file : {}",
-                                apiEndDate.toLocalDate(), 
-                                summaryCsvPath.getParent().getParent().relativize(summaryCsvPath).toString());
-                        }
-                        apiEndDate = apiEndDate.minusDays(1);
-                    }
-                    while (mostRecentDatabaseDate.isEqual(apiEndDate.toLocalDate())
-                        || mostRecentDatabaseDate.isBefore(apiEndDate.toLocalDate()));
-                }
-                catch (InterruptedException ex) {
-                    log.warn("Processing interrupted!", ex);
-                }
-                finally {
-                    log.info("   Read Records   : {}", readRecords);
-                    log.info("   Processed Days : {}", processedDays);
-                }
+                plans.put(macAddressPath, BackfillPlanner.plan(repo, AW_CSV_PREFIX, macAddressPath, lastDay,
+                    backfillDays, DAYS_PER_REQUEST, List.of()));
             }
+            BackfillPlanner.logPlans("Ambient Weather API", plans.values());
+            // Each request counts towards the limits of both keys
+            var appKeyBucket = fetchEngine.getBucket("ambient-weather-app", appKey,
+                List.of(ApiFetchEngine.spreadLimit(appKeyRequestsPerSecond, Duration.ofSeconds(1))));
+            var apiKeyBucket = fetchEngine.getBucket("ambient-weather", apiKey,
+                List.of(ApiFetchEngine.spreadLimit(apiKeyRequestsPerSecond, Duration.ofSeconds(1))));
+            fetchEngine.fetchAll("aw-api", List.copyOf(plans.keySet()),
+                macAddressPath -> processStation(macAddressPath, plans.get(macAddressPath), appKeyBucket, apiKeyBucket));
         }
         catch (IOException ex) {
             log.error(ex.getMessage(), ex);
         }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
         finally {
             log.info("****************************************");
             log.info("Processed all Ambient Weather API data");
@@ -159,6 +124,78 @@ public class AmbientWeatherApiScheduler {
         }
     }
 
+    /**
+     * Fetch the station's planned days, the most recent days first.
+     * @param keyBuckets The buckets of the keys, that limit the requests of all the stations.
+     */
+    private void processStation(Path macAddressPath, BackfillPlanner.BackfillPlan plan, Bucket... keyBuckets)
+            throws IOException, InterruptedException {
+        var station = plan.station();
+        var readRecords = 0;
+        var processedDays = 0;
+        try (var reader = Files.newBufferedReader(macAddressPath)) {
+            var stationMacAddress = reader.readLine();
+            log.info("Processing Ambient Weather API : {}", station);
+            for (var request : plan.requests().reversed()) {
+                var date = request.startDate(); // A request is a single day
+                var summaryCsvPath = CsvWriter.getCsvPath(AW_CSV_PREFIX, macAddressPath.getParent(), date, null);
+                OffsetDateTime apiEndDate = date.plusDays(1).atStartOfDay().atOffset(ZoneOffset.UTC).minusSeconds(1); // Midnight
+                // Fetch the API data
+                ApiFetchEngine.acquire(keyBuckets);
+                log.info("   Fetching data for {} : {}", station, date);
+                var data = api.getDeviceData(stationMacAddress, apiEndDate, EXPECTED_RECORDS_PER_DAY);
+                // Calculate the daily low/ave/high values
+                Map<Integer, Double> low = new LinkedHashMap<>();
+                Map<Integer, Double> high = new LinkedHashMap<>();
+                Map<Integer, List<Double>> average = new LinkedHashMap<>();
+                var dayRecords = 0;
+                for (var dataRecord : data) {
+                    var recordDate = dataRecord.getDate().toLocalDate();
+                    if (recordDate.equals(date)) {
+                        processValue(low, high, average, 0, Conversions.fahToCel(dataRecord.getTempf()));
+                        processValue(low, high, average, 1, Conversions.mphToKmh(dataRecord.getWindspeedmph()));
+                        processValue(low, high, average, 2, Conversions.mphToKmh(dataRecord.getWindgustmph()));
+                        processValue(low, high, average, 3, dataRecord.getWinddir());
+                        processValue(low, high, average, 4, Conversions.inToMm(dataRecord.getHourlyrainin()));
+                        processValue(low, high, average, 5, Conversions.inToMm(dataRecord.getDailyrainin()));
+                        processValue(low, high, average, 6, Conversions.inHgToHpa(dataRecord.getBaromrelin()));
+                        processValue(low, high, average, 7, dataRecord.getHumidity());
+                        processValue(low, high, average, 8, dataRecord.getUv());
+                        dayRecords++;
+                    }
+                    else {
+                        log.debug("   Not processing records for date {} while busy processing {}", recordDate, date);
+                        break;
+                    }
+                }
+                // Save the record to a CSV file
+                if (dayRecords >= 1) {
+                    Map<Integer, Double> calculatedAverage = getCalculatedAverage(average);
+                    CsvWriter.writeSingleDayCsvFile(
+                        summaryCsvPath, 
+                        date,
+                        new ArrayList<>(calculatedAverage.values()),
+                        new ArrayList<>(high.values()),
+                        new ArrayList<>(low.values()));
+                }
+                else {
+                    // Record the day without data, so that it is not fetched again every night
+                    CsvWriter.writeEmptyCsvFile(summaryCsvPath);
+                }
+                readRecords += dayRecords;
+                processedDays++;
+            }
+        }
+        finally {
+            StringBuilder logBuilder = new StringBuilder();
+            logBuilder.append("----------------").append(System.lineSeparator());
+            logBuilder.append(MessageFormatter.format("Processed Ambient Weather API : {}", station).getMessage()).append(System.lineSeparator());
+            logBuilder.append(MessageFormatter.format("   Read Records   : {}", readRecords).getMessage()).append(System.lineSeparator());
+            logBuilder.append(MessageFormatter.format("   Processed Days : {}", processedDays).getMessage()).append(System.lineSeparator());
+            log.info(logBuilder.toString());
+        }
+    }
+
     private void processValue(
             Map<Integer, Double> low,
             Map<Integer, Double> high,
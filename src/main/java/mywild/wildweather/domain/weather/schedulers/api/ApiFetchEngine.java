@@ -0,0 +1,96 @@
+package mywild.wildweather.domain.weather.schedulers.api;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import org.springframework.stereotype.Component;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fetches the API data of several stations at the same time (on virtual threads). The requests are limited by a token
+ * bucket per API key, that is shared by all the stations (and runs) that use the key, so that the requests are sent as
+ * fast as the provider allows (instead of sleeping between requests).
+ */
+@Slf4j
+@Component
+public class ApiFetchEngine {
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    interface StationFetch<T> {
+        void fetch(T station) throws IOException, InterruptedException;
+    }
+
+    /**
+     * A limit that spreads the requests evenly over the period (without a burst at the start of the period).
+     */
+    static Bandwidth spreadLimit(long requests, Duration period) {
+        return Bandwidth.builder()
+            .capacity(1)
+            .refillGreedy(requests, period)
+            .build();
+    }
+
+    /**
+     * A limit that allows all the requests of the period at once.
+     */
+    static Bandwidth burstLimit(long requests, Duration period) {
+        return Bandwidth.builder()
+            .capacity(requests)
+            .refillGreedy(requests, period)
+            .build();
+    }
+
+    /**
+     * The bucket of the API key, that is created with the limits when the key is first used.
+     */
+    Bucket getBucket(String provider, String apiKey, List<Bandwidth> limits) {
+        return buckets.computeIfAbsent(provider + ":" + apiKey, _ -> {
+            var builder = Bucket.builder();
+            limits.forEach(builder::addLimit);
+            return builder.build();
+        });
+    }
+
+    /**
+     * Wait until each of the buckets allows another request.
+     */
+    static void acquire(Bucket... keyBuckets) throws InterruptedException {
+        for (var bucket : keyBuckets) {
+            bucket.asBlocking().consume(1);
+        }
+    }
+
+    /**
+     * Fetch the data of all the stations at the same time, and wait until they are done. A station that fails does not
+     * stop the other stations.
+     */
+    <T> void fetchAll(String name, List<T> stations, StationFetch<T> fetch) throws InterruptedException {
+        try (var executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory())) {
+            for (var station : stations) {
+                executor.execute(() -> {
+                    try {
+                        fetch.fetch(station);
+                    }
+                    catch (InterruptedException ex) {
+                        log.warn("Processing interrupted!", ex);
+                        Thread.currentThread().interrupt();
+                    }
+                    catch (IOException | RuntimeException ex) {
+                        log.error("Could not fetch the data of {}: {}", station, ex.getMessage(), ex);
+                    }
+                });
+            }
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+package mywild.wildweather.domain.weather.schedulers.api;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.slf4j.helpers.MessageFormatter;
+import lombok.extern.slf4j.Slf4j;
+import mywild.wildweather.domain.weather.data.WeatherRepository;
+import mywild.wildweather.domain.weather.schedulers.Utils;
+
+/**
+ * Plans the days that the API schedulers fetch for a station: the days without data in the weather table, that are
+ * not in any of the source's CSV files in the station's folder either. All the source's files are excluded, whether
+ * they were processed or not: the files that were fetched but not processed yet, the files of days that were dropped
+ * while processing, and the empty files of days that the API returned no data for. The folder is listed instead of
+ * reading the processed files from the csv_files table, because that table does not know about the files that were
+ * not processed yet. The missing days are found with a single query and a single listing of the folder (instead of
+ * checking for a CSV file per day), and are batched into as few requests as the API allows.
+ */
+@Slf4j
+final public class BackfillPlanner {
+
+    private BackfillPlanner() {
+        // prevent instantiation
+    }
+
+    /**
+     * The requests to fetch the missing days of a station, ordered by date.
+     */
+    record BackfillPlan(
+        String station,
+        int missingDays,
+        List<DateRange> requests
+    ) {
+        // Record automatically generates: equals, hashCode and toString
+    }
+
+    /**
+     * Plan the missing days of the station, from the last day back to the backfill days (or the station's first day).
+     * @param configPath The station's API file, in the station's folder.
+     * @param maxDaysPerRequest The number of days that the API returns per request.
+     * @param skippedDays The days that must not be fetched.
+     */
+    static BackfillPlan plan(WeatherRepository repo, String source, Path configPath, LocalDate lastDay,
+            int backfillDays, int maxDaysPerRequest, Collection<LocalDate> skippedDays) throws IOException {
+        var station = Utils.getStationName(configPath);
+        var csvFiles = findCsvFiles(source, configPath.getParent());
+        // A station without rows starts at its first CSV file (or only fetches the last day)
+        var firstCsvDay = csvFiles.stream().map(DateRange::startDate).min(LocalDate::compareTo).orElse(lastDay);
+        var missingDays = new ArrayList<LocalDate>();
+        var fetchedDays = getDays(csvFiles);
+        for (var day : repo.findMissingDays(station, lastDay.minusDays(backfillDays - 1), lastDay, firstCsvDay)) {
+            if (!fetchedDays.contains(day) && !skippedDays.contains(day)) {
+                missingDays.add(day);
+            }
+        }
+        return new BackfillPlan(station, missingDays.size(), batch(missingDays, maxDaysPerRequest));
+    }
+
+    /**
+     * Cover the days with the fewest requests (each request starts at the first day that is not covered yet).
+     * @param days The days, ordered by date.
+     */
+    static List<DateRange> batch(List<LocalDate> days, int maxDaysPerRequest) {
+        List<DateRange> requests = new ArrayList<>();
+        LocalDate startDate = null;
+        LocalDate endDate = null;
+        for (var day : days) {
+            if (startDate != null && ChronoUnit.DAYS.between(startDate, day) < maxDaysPerRequest) {
+                endDate = day;
+                continue;
+            }
+            if (startDate != null) {
+                requests.add(new DateRange(startDate, endDate));
+            }
+            startDate = day;
+            endDate = day;
+        }
+        if (startDate != null) {
+            requests.add(new DateRange(startDate, endDate));
+        }
+        return requests;
+    }
+
+    static void logPlans(String source, Collection<BackfillPlan> plans) {
+        StringBuilder logBuilder = new StringBuilder();
+        logBuilder.append(MessageFormatter.format("Planned {} :", source).getMessage()).append(System.lineSeparator());
+        for (var plan : plans) {
+            logBuilder.append(MessageFormatter.arrayFormat("   {} : {} requests for {} missing days",
+                new Object[] { plan.station(), plan.requests().size(), plan.missingDays() }).getMessage())
+                .append(System.lineSeparator());
+        }
+        logBuilder.append(MessageFormatter.format("   Total Requests : {}",
+            plans.stream().mapToInt(plan -> plan.requests().size()).sum()).getMessage()).append(System.lineSeparator());
+        logBuilder.append(MessageFormatter.format("   Missing Days   : {}",
+            plans.stream().mapToInt(BackfillPlan::missingDays).sum()).getMessage()).append(System.lineSeparator());
+        log.info(logBuilder.toString());
+    }
+
+    /**
+     * The dates of the source's CSV files in the folder. A file of several days only covers the days before it was
+     * written (the file of the current month is named after the whole month, but only has the days up to when it was
+     * fetched).
+     */
+    private static List<DateRange> findCsvFiles(String source, Path folder) throws IOException {
+        List<DateRange> csvFiles = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(folder)) {
+            for (var path : paths.toList()) {
+                var dates = CsvWriter.getCsvDates(source, path);
+                if (dates != null) {
+                    var endDate = dates.endDate();
+                    if (endDate.isAfter(dates.startDate())) {
+                        var writtenDay = LocalDate.ofInstant(
+                            Files.getLastModifiedTime(path).toInstant(), ZoneId.systemDefault());
+                        if (!endDate.isBefore(writtenDay)) {
+                            endDate = writtenDay.minusDays(1);
+                        }
+                    }
+                    if (!endDate.isBefore(dates.startDate())) {
+                        csvFiles.add(new DateRange(dates.startDate(), endDate));
+                    }
+                }
+            }
+        }
+        return csvFiles;
+    }
+
+    private static Set<LocalDate> getDays(List<DateRange> dateRanges) {
+        Set<LocalDate> days = new HashSet<>();
+        for (var dateRange : dateRanges) {
+            dateRange.startDate().datesUntil(dateRange.endDate().plusDays(1)).forEach(days::add);
+        }
+        return days;
+    }
+
+}
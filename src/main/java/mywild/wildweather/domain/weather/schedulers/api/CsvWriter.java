@@ -7,6 +7,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.stream.Stream;
 import org.apache.commons.csv.CSVFormat;
@@ -46,6 +47,28 @@ final public class CsvWriter {
         return parentPath.resolve(SUMMARY_CSV_PREFIX.replace("{SOURCE}", source)
             + csvStartDateStamp + csvEndDateStamp + ".csv");
     }
+
+    /**
+     * The dates in the name of a CSV file (as named by {@link #getCsvPath}), or null if the file is not a CSV file of
+     * the source.
+     */
+    public static DateRange getCsvDates(String source, Path path) {
+        var prefix = SUMMARY_CSV_PREFIX.replace("{SOURCE}", source);
+        var fileName = path.getFileName().toString();
+        if (!fileName.startsWith(prefix) || !fileName.endsWith(".csv")) {
+            return null;
+        }
+        var dateStamps = fileName.substring(prefix.length(), fileName.length() - ".csv".length()).split("-");
+        try {
+            var startDate = LocalDate.parse(dateStamps[0], CSV_NAME_DATE_FORMAT);
+            return new DateRange(startDate,
+                dateStamps.length > 1 ? LocalDate.parse(dateStamps[1], CSV_NAME_DATE_FORMAT) : startDate);
+        }
+        catch (DateTimeParseException ex) {
+            log.warn("   Unexpected CSV file name : {}", path);
+            return null;
+        }
+    }
     
     public static void writeSingleDayCsvFile(
             Path path,
@@ -88,6 +111,28 @@ final public class CsvWriter {
         }
     }
 
+    /**
+     * Write a CSV file with only the headers, for the days that the API returned no data for. The file records that the
+     * days were fetched, so that they are not planned again (delete the file to fetch the days again).
+     */
+    public static void writeEmptyCsvFile(Path path) {
+        log.debug("Writing empty CSV file: {}", path);
+        if (!Files.exists(path)) {
+            try (
+                FileWriter writer = new FileWriter(path.toFile(), Charset.defaultCharset());
+                CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT.builder().setHeader(CSV_HEADERS).get())
+            ) {
+                printer.flush();
+            }
+            catch (IOException ex) {
+                log.error(ex.getMessage(), ex);
+            }
+        }
+        else {
+            log.warn("   CSV file already exists : {}", path);
+        }
+    }
+
     public static void writeMultiDayCsvFile(
             Path path,
             List<LocalDate> dates,
@@ -0,0 +1,13 @@
+package mywild.wildweather.domain.weather.schedulers.api;
+
+import java.time.LocalDate;
+
+/**
+ * The days from the start date to the end date (inclusive).
+ */
+public record DateRange(
+    LocalDate startDate,
+    LocalDate endDate
+) {
+    // Record automatically generates: equals, hashCode and toString
+}
@@ -7,16 +7,21 @@ import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
+import org.slf4j.helpers.MessageFormatter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import io.github.bucket4j.Bucket;
 import lombok.extern.slf4j.Slf4j;
 import mywild.weatherunderground.openapi.client.api.WeatherUndergroundApi;
 import mywild.weatherunderground.openapi.client.model.FormatEnum;
@@ -40,6 +45,8 @@ public class WeatherUndergroundApiScheduler {
 
     private static final int STOP_AT_EMPTY_RESPONSES = 24; // Months without data
 
+    private static final int MAX_DAYS_PER_REQUEST = 31; // The longest date range that a request accepts
+
     private static final DateTimeFormatter API_DATE_FORMAT =  DateTimeFormatter.ofPattern("yyyyMMdd");
 
     private static final DateTimeFormatter BAD_DAYS_DATE_FORMAT =  DateTimeFormatter.ofPattern("yyyy-MM-dd");
@@ -49,9 +56,24 @@ public class WeatherUndergroundApiScheduler {
     @Value("${mywild.csv.folder}")
     private String csvRootFolder;
 
+    @Value("${mywild.weather-underground.api-key}")
+    private String apiKey;
+
+    @Value("${mywild.weather-underground.requests-per-minute}")
+    private int requestsPerMinute;
+
+    @Value("${mywild.weather-underground.requests-per-day}")
+    private int requestsPerDay;
+
+    @Value("${mywild.weather-underground.backfill-days}")
+    private int backfillDays;
+
     @Autowired
     private WeatherUndergroundApi api;
 
+    @Autowired
+    private ApiFetchEngine fetchEngine;
+
     @Autowired
     private WeatherRepository repo;
 
@@ -64,7 +86,6 @@ public class WeatherUndergroundApiScheduler {
         return IS_RUNNING.get();
     }
 
-    @SuppressWarnings("null")
     @Async
     public void processApiData(boolean fetchAllData) {
         if (!IS_RUNNING.compareAndSet(false, true)) {
@@ -79,142 +100,33 @@ public class WeatherUndergroundApiScheduler {
                 .filter(Files::isRegularFile)
                 .filter(path -> path.toString().endsWith(WU_CSV_PREFIX + "-station-id.txt"))
                 .toList();
+            // Plan all the stations first, to know up front how many requests are needed (the stations without data,
+            // or all the stations when all the data is fetched, search back month by month for the station's history)
+            Map<Path, BackfillPlanner.BackfillPlan> plans = new LinkedHashMap<>();
+            var lastDay = LocalDate.now().minusDays(1); // Yesterday
             for (var stationIdPath : stationIdFiles) {
-                var station = Utils.getStationName(stationIdPath);
-                LocalDate mostRecentDatabaseDate = repo.findTopDateByStation(station);
-                var readRecords = 0;
-                var processedMonths = 0;
-                var consecutiveEmptyResponses = 0;
-                try (var reader = Files.newBufferedReader(stationIdPath)) {
-                    var stationId = reader.readLine();
-                    if (stationId != null && stationId.equalsIgnoreCase("SKIP")) {
-                        log.info("Skipping Weather Underground API fetching for : {}", station);
-                        continue;
-                    }
-                    var apiFileContent = reader.readAllLines();
-                    List<String> badDays = null;
-                    if (apiFileContent.size() > 2) {
-                        badDays = List.of(apiFileContent.get(2).split(",\\s*"));
-                    }
-                    log.info("----------------");
-                    log.info("Processing Weather Underground API : {} -> {}", stationId, station);
-                    LocalDate currentDate = LocalDate.now();
-                    LocalDate apiEndDate = currentDate.minusDays(1); // Yesterday midnight
-                    LocalDate apiStarDate = LocalDate.now().withDayOfMonth(1); // Start of the current month
-                    do {
-                        var summaryCsvPath = CsvWriter.getCsvPath(WU_CSV_PREFIX,
-                            stationIdPath.getParent(), apiStarDate, apiEndDate.with(TemporalAdjusters.lastDayOfMonth()));
-                        // Only generate files for observation months that are new, or for the current month
-                        if (fetchAllData
-                                || apiEndDate.equals(currentDate.minusDays(1))
-                                || (summaryCsvPath != null && !Files.exists(summaryCsvPath))) {
-                            // Fetch the API data
-                            log.info("   Fetching data for {} : {} to {}", stationId, apiStarDate.format(API_DATE_FORMAT), apiEndDate.format(API_DATE_FORMAT));
-                            // Example URL:
-                            // https://api.weather.com/v2/pws/history/daily?startDate=20250101&endDate=20250131&format=json&units=m&numericPrecision=decimal&stationId=<STATION>&apiKey=<APIKEY>
-                            var httpData = api.getDailyWithHttpInfo(stationId, FormatEnum.JSON, UnitsEnum.METRIC, 
-                                null, apiStarDate.format(API_DATE_FORMAT), apiEndDate.format(API_DATE_FORMAT),
-                                NumericPrecisionEnum.DECIMAL);
-                            var data = httpData.getData();
-                            if (data != null && data.getObservations() != null && !data.getObservations().isEmpty()) {
-                                // Calculate the daily low/ave/high values
-                                List<LocalDate> dates = new ArrayList<>();
-                                List<List<Double>> lows = new ArrayList<>();
-                                List<List<Double>> averages = new ArrayList<>();
-                                List<List<Double>> highs = new ArrayList<>();
-                                for (var dataRecord : data.getObservations()) {
-                                    List<Double> low = new ArrayList<>();
-                                    List<Double> average = new ArrayList<>();
-                                    List<Double> high = new ArrayList<>();
-                                    var recordDate = dataRecord.getObsTimeUtc().toLocalDate();
-                                    if (badDays == null || !badDays.contains(dataRecord.getObsTimeUtc().toLocalDate().format(BAD_DAYS_DATE_FORMAT))) {
-                                        low     .add(dataRecord.getMetric().getTempLow());
-                                        average .add(dataRecord.getMetric().getTempAvg());
-                                        high    .add(dataRecord.getMetric().getTempHigh());
-                                        low     .add(dataRecord.getMetric().getWindspeedLow());
-                                        average .add(dataRecord.getMetric().getWindspeedAvg());
-                                        high    .add(dataRecord.getMetric().getWindspeedHigh());
-                                        low     .add(dataRecord.getMetric().getWindgustLow());
-                                        average .add(dataRecord.getMetric().getWindgustAvg());
-                                        high    .add(dataRecord.getMetric().getWindgustHigh());
-                                        low     .add(dataRecord.getWinddirAvg());
-                                        average .add(dataRecord.getWinddirAvg());
-                                        high    .add(dataRecord.getWinddirAvg());
-                                        low     .add(dataRecord.getMetric().getPrecipRate());
-                                        average .add(dataRecord.getMetric().getPrecipRate());
-                                        high    .add(dataRecord.getMetric().getPrecipRate());
-                                        low     .add(dataRecord.getMetric().getPrecipTotal());
-                                        average .add(dataRecord.getMetric().getPrecipTotal());
-                                        high    .add(dataRecord.getMetric().getPrecipTotal());
-                                        low     .add(dataRecord.getMetric().getPressureMin());
-                                        average .add(dataRecord.getMetric().getPressureTrend());
-                                        high    .add(dataRecord.getMetric().getPressureMax());
-                                        low     .add(dataRecord.getHumidityLow());
-                                        average .add(dataRecord.getHumidityAvg());
-                                        high    .add(dataRecord.getHumidityHigh());
-                                        low     .add(0.0);
-                                        average .add(dataRecord.getUvHigh() != null ? dataRecord.getUvHigh() / 2.0 : null);
-                                        high    .add(dataRecord.getUvHigh());
-                                        readRecords++;
-                                        dates.add(recordDate);
-                                        lows.add(low);
-                                        averages.add(average);
-                                        highs.add(high);
-                                    }
-                                    else {
-                                        log.info("       Skip known bad day : {}", recordDate);
-                                    }
-                                }
-                                // Save the record to a CSV file
-                                if (readRecords >= 1) {
-                                    CsvWriter.writeMultiDayCsvFile(
-                                        summaryCsvPath, 
-                                        dates,
-                                        averages,
-                                        highs,
-                                        lows);
-                                }
-                                consecutiveEmptyResponses = 0;
-                            }
-                            else {
-                                consecutiveEmptyResponses++;
-                                log.info("       No data returned (count: {}) : {} - {}",
-                                    consecutiveEmptyResponses, 
-                                    httpData.getStatusCode(), 
-                                    httpData.getData() == null ? "Response was null" 
-                                        : httpData.getData().getObservations() == null ? "Observations was null"
-                                            : "Observations was empty");
-                            }
-                            processedMonths++;
-                            // Sleep for 1 seconds to not spam the api too much
-                            Thread.sleep(Duration.ofSeconds(1));
-                        }
-                        else {
-                            log.debug("   Skip {} - Found CSV file : {}",
-                                apiEndDate, 
-                                summaryCsvPath.getParent().getParent().relativize(summaryCsvPath).toString());
-                        }
-                        apiStarDate = apiStarDate.minusMonths(1);
-                        apiEndDate = apiStarDate.plusMonths(1).minusDays(1);
-                    }
-                    while (
-                        (consecutiveEmptyResponses < STOP_AT_EMPTY_RESPONSES)
-                        && (fetchAllData || mostRecentDatabaseDate == null
-                            || mostRecentDatabaseDate.withDayOfMonth(1).isBefore(apiStarDate))
-                    );
-                }
-                catch (InterruptedException ex) {
-                    log.warn("Processing interrupted!", ex);
-                }
-                finally {
-                    log.info("   Read Records   : {}", readRecords);
-                    log.info("   Processed Months : {}", processedMonths);
+                var stationFile = Files.readAllLines(stationIdPath);
+                if (!fetchAllData && !isSkipped(stationFile)
+                        && repo.findTopDateByStation(Utils.getStationName(stationIdPath)) != null) {
+                    plans.put(stationIdPath, BackfillPlanner.plan(repo, WU_CSV_PREFIX, stationIdPath, lastDay,
+                        backfillDays, MAX_DAYS_PER_REQUEST, getBadDays(stationFile)));
                 }
             }
+            if (!plans.isEmpty()) {
+                BackfillPlanner.logPlans("Weather Underground API", plans.values());
+            }
+            var keyBucket = fetchEngine.getBucket("weather-underground", apiKey, List.of(
+                ApiFetchEngine.spreadLimit(requestsPerMinute, Duration.ofMinutes(1)),
+                ApiFetchEngine.burstLimit(requestsPerDay, Duration.ofDays(1))));
+            fetchEngine.fetchAll("wu-api", stationIdFiles,
+                stationIdPath -> processStation(stationIdPath, fetchAllData, plans.get(stationIdPath), keyBucket));
         }
         catch (IOException ex) {
             log.error(ex.getMessage(), ex);
         }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
         finally {
             log.info("********************************************");
             log.info("Processed all Weather Underground API data");
@@ -223,4 +135,184 @@ public class WeatherUndergroundApiScheduler {
         }
     }
 
+    /**
+     * Fetch the station's planned days (the most recent days first), or search back month by month for the station's
+     * history if there is no plan.
+     * @param keyBucket The bucket of the API key, that limits the requests of all the stations.
+     */
+    @SuppressWarnings("null")
+    private void processStation(Path stationIdPath, boolean fetchAllData, BackfillPlanner.BackfillPlan plan,
+            Bucket keyBucket) throws IOException, InterruptedException {
+        var station = Utils.getStationName(stationIdPath);
+        var readRecords = 0;
+        var processedRequests = 0;
+        var stationFile = Files.readAllLines(stationIdPath);
+        if (isSkipped(stationFile)) {
+            log.info("Skipping Weather Underground API fetching for : {}", station);
+            return;
+        }
+        var stationId = stationFile.getFirst();
+        var badDays = getBadDays(stationFile);
+        log.info("Processing Weather Underground API : {} -> {}", stationId, station);
+        try {
+            if (plan != null) {
+                for (var request : plan.requests().reversed()) {
+                    var summaryCsvPath = CsvWriter.getCsvPath(WU_CSV_PREFIX,
+                        stationIdPath.getParent(), request.startDate(), request.endDate());
+                    var records = fetchDays(summaryCsvPath, stationId, badDays, request.startDate(),
+                        request.endDate(), keyBucket);
+                    if (records == 0) {
+                        // Record the days without data, so that they are not fetched again every night (the search
+                        // back through the station's history below stops at the months without data instead)
+                        CsvWriter.writeEmptyCsvFile(summaryCsvPath);
+                    }
+                    readRecords += records;
+                    processedRequests++;
+                }
+                return;
+            }
+            var consecutiveEmptyResponses = 0;
+            LocalDate currentDate = LocalDate.now();
+            LocalDate apiEndDate = currentDate.minusDays(1); // Yesterday midnight
+            LocalDate apiStarDate = LocalDate.now().withDayOfMonth(1); // Start of the current month
+            do {
+                var summaryCsvPath = CsvWriter.getCsvPath(WU_CSV_PREFIX,
+                    stationIdPath.getParent(), apiStarDate, apiEndDate.with(TemporalAdjusters.lastDayOfMonth()));
+                // Only generate files for observation months that are new, or for the current month
+                if (fetchAllData
+                        || apiEndDate.equals(currentDate.minusDays(1))
+                        || !Files.exists(summaryCsvPath)) {
+                    var records = fetchDays(summaryCsvPath, stationId, badDays, apiStarDate, apiEndDate, keyBucket);
+                    consecutiveEmptyResponses = records > 0 ? 0 : consecutiveEmptyResponses + 1;
+                    readRecords += records;
+                    processedRequests++;
+                }
+                else {
+                    log.debug("   Skip {} - Found CSV file : {}",
+                        apiEndDate, 
+                        summaryCsvPath.getParent().getParent().relativize(summaryCsvPath).toString());
+                }
+                apiStarDate = apiStarDate.minusMonths(1);
+                apiEndDate = apiStarDate.plusMonths(1).minusDays(1);
+            }
+            while (consecutiveEmptyResponses < STOP_AT_EMPTY_RESPONSES);
+        }
+        finally {
+            StringBuilder logBuilder = new StringBuilder();
+            logBuilder.append("----------------").append(System.lineSeparator());
+            logBuilder.append(MessageFormatter.format("Processed Weather Underground API : {}", station).getMessage()).append(System.lineSeparator());
+            logBuilder.append(MessageFormatter.format("   Read Records   : {}", readRecords).getMessage()).append(System.lineSeparator());
+            logBuilder.append(MessageFormatter.format("   Processed Requests : {}", processedRequests).getMessage()).append(System.lineSeparator());
+            log.info(logBuilder.toString());
+        }
+    }
+
+    /**
+     * Fetch the days of the date range, and write them to the CSV file.
+     * @return The number of records that were read.
+     */
+    @SuppressWarnings("null")
+    private int fetchDays(Path summaryCsvPath, String stationId, List<LocalDate> badDays, LocalDate apiStarDate,
+            LocalDate apiEndDate, Bucket keyBucket) throws InterruptedException {
+        var readRecords = 0;
+        // Fetch the API data
+        ApiFetchEngine.acquire(keyBucket);
+        log.info("   Fetching data for {} : {} to {}", stationId, apiStarDate.format(API_DATE_FORMAT), apiEndDate.format(API_DATE_FORMAT));
+        // Example URL:
+        // https://api.weather.com/v2/pws/history/daily?startDate=20250101&endDate=20250131&format=json&units=m&numericPrecision=decimal&stationId=<STATION>&apiKey=<APIKEY>
+        var httpData = api.getDailyWithHttpInfo(stationId, FormatEnum.JSON, UnitsEnum.METRIC, 
+            null, apiStarDate.format(API_DATE_FORMAT), apiEndDate.format(API_DATE_FORMAT),
+            NumericPrecisionEnum.DECIMAL);
+        var data = httpData.getData();
+        if (data != null && data.getObservations() != null && !data.getObservations().isEmpty()) {
+            // Calculate the daily low/ave/high values
+            List<LocalDate> dates = new ArrayList<>();
+            List<List<Double>> lows = new ArrayList<>();
+            List<List<Double>> averages = new ArrayList<>();
+            List<List<Double>> highs = new ArrayList<>();
+            for (var dataRecord : data.getObservations()) {
+                List<Double> low = new ArrayList<>();
+                List<Double> average = new ArrayList<>();
+                List<Double> high = new ArrayList<>();
+                var recordDate = dataRecord.getObsTimeUtc().toLocalDate();
+                if (!badDays.contains(recordDate)) {
+                    low     .add(dataRecord.getMetric().getTempLow());
+                    average .add(dataRecord.getMetric().getTempAvg());
+                    high    .add(dataRecord.getMetric().getTempHigh());
+                    low     .add(dataRecord.getMetric().getWindspeedLow());
+                    average .add(dataRecord.getMetric().getWindspeedAvg());
+                    high    .add(dataRecord.getMetric().getWindspeedHigh());
+                    low     .add(dataRecord.getMetric().getWindgustLow());
+                    average .add(dataRecord.getMetric().getWindgustAvg());
+                    high    .add(dataRecord.getMetric().getWindgustHigh());
+                    low     .add(dataRecord.getWinddirAvg());
+                    average .add(dataRecord.getWinddirAvg());
+                    high    .add(dataRecord.getWinddirAvg());
+                    low     .add(dataRecord.getMetric().getPrecipRate());
+                    average .add(dataRecord.getMetric().getPrecipRate());
+                    high    .add(dataRecord.getMetric().getPrecipRate());
+                    low     .add(dataRecord.getMetric().getPrecipTotal());
+                    average .add(dataRecord.getMetric().getPrecipTotal());
+                    high    .add(dataRecord.getMetric().getPrecipTotal());
+                    low     .add(dataRecord.getMetric().getPressureMin());
+                    average .add(dataRecord.getMetric().getPressureTrend());
+                    high    .add(dataRecord.getMetric().getPressureMax());
+                    low     .add(dataRecord.getHumidityLow());
+                    average .add(dataRecord.getHumidityAvg());
+                    high    .add(dataRecord.getHumidityHigh());
+                    low     .add(0.0);
+                    average .add(dataRecord.getUvHigh() != null ? dataRecord.getUvHigh() / 2.0 : null);
+                    high    .add(dataRecord.getUvHigh());
+                    readRecords++;
+                    dates.add(recordDate);
+                    lows.add(low);
+                    averages.add(average);
+                    highs.add(high);
+                }
+                else {
+                    log.info("       Skip known bad day : {}", recordDate);
+                }
+            }
+            // Save the record to a CSV file
+            if (readRecords >= 1) {
+                CsvWriter.writeMultiDayCsvFile(
+                    summaryCsvPath, 
+                    dates,
+                    averages,
+                    highs,
+                    lows);
+            }
+        }
+        else {
+            log.info("       No data returned : {} - {}",
+                httpData.getStatusCode(), 
+                httpData.getData() == null ? "Response was null" 
+                    : httpData.getData().getObservations() == null ? "Observations was null"
+                        : "Observations was empty");
+        }
+        return readRecords;
+    }
+
+    private static boolean isSkipped(List<String> stationFile) {
+        return !stationFile.isEmpty() && stationFile.getFirst().equalsIgnoreCase("SKIP");
+    }
+
+    /**
+     * The known bad days of the station, on the fourth line of the station's file (the days are comma separated).
+     */
+    private static List<LocalDate> getBadDays(List<String> stationFile) {
+        List<LocalDate> badDays = new ArrayList<>();
+        if (stationFile.size() > 3) {
+            for (var badDay : stationFile.get(3).split(",\\s*")) {
+                try {
+                    badDays.add(LocalDate.parse(badDay.strip(), BAD_DAYS_DATE_FORMAT));
+                }
+                catch (DateTimeParseException ex) {
+                    log.warn("   Invalid bad day : {}", badDay);
+                }
+            }
+        }
+        return badDays;
+    }
+
 }
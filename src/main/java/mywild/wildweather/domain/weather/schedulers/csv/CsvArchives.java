@@ -0,0 +1,78 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The zip archives of CSV files that are opened during a run. The archives are not extracted: their entries are paths
+ * of the zip file system, that are decompressed while they are read. The archives are closed at the end of the run.
+ */
+@Slf4j
+final class CsvArchives implements AutoCloseable {
+
+    private final Map<Path, FileSystem> archives = new HashMap<>();
+
+    /**
+     * The CSV files in the archive (in the archive's folders, or at its root).
+     * @return No files if the archive could not be read.
+     */
+    synchronized List<Path> listCsvFiles(Path archive) {
+        try {
+            var fileSystem = archives.get(archive);
+            if (fileSystem == null) {
+                fileSystem = FileSystems.newFileSystem(archive);
+                archives.put(archive, fileSystem);
+            }
+            try (var paths = Files.walk(fileSystem.getPath("/"))) {
+                return paths
+                    .filter(CsvUtils::isCsvFile)
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .toList();
+            }
+        }
+        catch (IOException | RuntimeException ex) {
+            log.error("Could not read the CSV archive {}: {}", archive, ex.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Replace the archives by their CSV files.
+     */
+    List<Path> expand(Collection<Path> files) {
+        List<Path> csvFiles = new ArrayList<>();
+        for (var file : files) {
+            if (CsvUtils.isCsvArchive(file)) {
+                csvFiles.addAll(listCsvFiles(file));
+            }
+            else {
+                csvFiles.add(file);
+            }
+        }
+        return csvFiles;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (var fileSystem : archives.values()) {
+            try {
+                fileSystem.close();
+            }
+            catch (IOException ex) {
+                log.error(ex.getMessage(), ex);
+            }
+        }
+        archives.clear();
+    }
+
+}
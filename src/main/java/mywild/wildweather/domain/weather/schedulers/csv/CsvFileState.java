@@ -0,0 +1,69 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+
+/**
+ * The state of a CSV file when it was processed. The size and last modified time are compared first, and only when
+ * they differ is the content hashed, to see whether the file really changed.
+ * @param size The size in bytes (-1 when unknown).
+ * @param lastModified The last modified time in epoch milliseconds (-1 when unknown).
+ * @param hash The SHA-256 of the (decompressed) content (null when unknown).
+ */
+record CsvFileState(
+    long size,
+    long lastModified,
+    String hash
+) {
+
+    /**
+     * For files that were processed before their state was recorded (or without reading the file).
+     */
+    static final CsvFileState UNKNOWN = new CsvFileState(-1, -1, null);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    boolean isKnown() {
+        return hash != null;
+    }
+
+    boolean hasSameAttributes(BasicFileAttributes attributes) {
+        return size == attributes.size() && lastModified == attributes.lastModifiedTime().toMillis();
+    }
+
+    /**
+     * The hashes are of the decompressed content, thus a file that was compressed (or put in an archive) since it was
+     * processed has the same content.
+     */
+    boolean hasSameContent(CsvFileState other) {
+        return isKnown() && Objects.equals(hash, other.hash);
+    }
+
+    static CsvFileState read(Path csvFile, BasicFileAttributes attributes) throws IOException {
+        return new CsvFileState(attributes.size(), attributes.lastModifiedTime().toMillis(), hash(csvFile));
+    }
+
+    static String hash(Path csvFile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        try (var input = CsvUtils.newInputStream(csvFile)) {
+            var buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+}
@@ -0,0 +1,101 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Finds the CSV files in the folder tree, remembering each folder's last modified time and entries.
+ * <p>
+ * A folder's last modified time changes when files are added, removed or replaced in it (but not when a file's content
+ * is changed in place). Thus a folder that did not change, and whose files were all processed, is not listed again: only
+ * its known subfolders are checked, and its files are not stat-ed. A full scan lists all the folders (to also find files
+ * that were changed in place).
+ * <p>
+ * The CSV files can be compressed (.csv.gz), and the zip archives in the folders are listed as their CSV files.
+ */
+final class CsvFolderScanner {
+
+    private final Map<Path, Folder> folders = new ConcurrentHashMap<>();
+
+    private record Folder(
+        FileTime lastModified,
+        List<Path> subfolders,
+        List<Path> csvFiles
+    ) {
+        // Record automatically generates: equals, hashCode and toString
+    }
+
+    /**
+     * The CSV files of the folders that changed (or of all the folders during a full scan).
+     * @param isProcessed Whether a CSV file has been processed (the folders with unprocessed files are listed again).
+     * @param archives Opens the zip archives of the folders that are listed, to list their CSV files.
+     */
+    List<Path> scan(Path root, boolean isFullScan, Predicate<Path> isProcessed, CsvArchives archives) throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new NoSuchFileException(root.toString());
+        }
+        List<Path> csvFiles = new ArrayList<>();
+        Set<Path> visited = new HashSet<>();
+        scanFolder(root, isFullScan, isProcessed, archives, csvFiles, visited);
+        // Forget the folders that were removed
+        folders.keySet().retainAll(visited);
+        return csvFiles;
+    }
+
+    void clear() {
+        folders.clear();
+    }
+
+    private void scanFolder(Path folder, boolean isFullScan, Predicate<Path> isProcessed, CsvArchives archives,
+            List<Path> csvFiles, Set<Path> visited) throws IOException {
+        FileTime lastModified;
+        try {
+            lastModified = Files.getLastModifiedTime(folder, LinkOption.NOFOLLOW_LINKS);
+        }
+        catch (NoSuchFileException ex) {
+            // A known subfolder that was removed
+            return;
+        }
+        visited.add(folder);
+        var known = folders.get(folder);
+        if (!isFullScan && known != null && known.lastModified().equals(lastModified)
+                && known.csvFiles().stream().allMatch(isProcessed)) {
+            for (var subfolder : known.subfolders()) {
+                scanFolder(subfolder, false, isProcessed, archives, csvFiles, visited);
+            }
+            return;
+        }
+        List<Path> subfolders = new ArrayList<>();
+        List<Path> folderCsvFiles = new ArrayList<>();
+        try (var entries = Files.newDirectoryStream(folder)) {
+            for (var entry : entries) {
+                if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    subfolders.add(entry);
+                }
+                else if (CsvUtils.isCsvFile(entry) && Files.isRegularFile(entry)) {
+                    folderCsvFiles.add(entry);
+                }
+                else if (CsvUtils.isCsvArchive(entry) && Files.isRegularFile(entry)) {
+                    folderCsvFiles.addAll(archives.listCsvFiles(entry));
+                }
+            }
+        }
+        folders.put(folder, new Folder(lastModified, List.copyOf(subfolders), List.copyOf(folderCsvFiles)));
+        csvFiles.addAll(folderCsvFiles);
+        for (var subfolder : subfolders) {
+            scanFolder(subfolder, isFullScan, isProcessed, archives, csvFiles, visited);
+        }
+    }
+
+}
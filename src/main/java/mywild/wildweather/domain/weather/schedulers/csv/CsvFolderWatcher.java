@@ -0,0 +1,186 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Watches the CSV folders for new and changed CSV files, so that they are processed within seconds (instead of waiting
+ * for the hourly scheduled scan).
+ * <p>
+ * The files are usually written in bursts (a file is modified several times while it is being copied, and exports add
+ * several files at once), thus the changed files are collected until no events were received for the debounce delay,
+ * and are then processed together. When events were lost (overflow), a full scan is done instead.
+ */
+@Slf4j
+@Component
+public class CsvFolderWatcher {
+
+    private static final AtomicBoolean IS_WATCHING = new AtomicBoolean(false);
+
+    @Value("${mywild.csv.folder}")
+    private String csvRootFolder;
+
+    @Value("${mywild.csv.watch}")
+    private boolean enabled;
+
+    @Value("${mywild.csv.watch-debounce}")
+    private int debounceSeconds;
+
+    @Autowired
+    private WeatherCsvScheduler csvScheduler;
+
+    private WatchService watchService;
+
+    /**
+     * Whether the folders are being watched (then the scheduled scans are only done as a safety net).
+     */
+    static boolean isWatching() {
+        return IS_WATCHING.get();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void onApplicationReady() {
+        if (enabled) {
+            start();
+        }
+    }
+
+    synchronized void start() {
+        if (watchService != null) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            var root = Paths.get(csvRootFolder);
+            var folders = register(watchService, root, null);
+            log.info("Watching {} CSV folders in : {}", folders, csvRootFolder);
+            IS_WATCHING.set(true);
+            var service = watchService;
+            Thread.ofVirtual().name("csv-watcher").start(() -> watch(service));
+        }
+        catch (IOException ex) {
+            log.error("Could not watch the CSV folders, they will only be scanned on schedule: {}", ex.getMessage(), ex);
+            stop();
+        }
+    }
+
+    @PreDestroy
+    synchronized void stop() {
+        IS_WATCHING.set(false);
+        if (watchService != null) {
+            try {
+                watchService.close();
+            }
+            catch (IOException ex) {
+                log.error(ex.getMessage(), ex);
+            }
+            watchService = null;
+        }
+    }
+
+    private void watch(WatchService service) {
+        Set<Path> changedCsvFiles = new LinkedHashSet<>();
+        var isOverflow = false;
+        try {
+            while (true) {
+                var key = changedCsvFiles.isEmpty() && !isOverflow
+                    ? service.take()
+                    : service.poll(debounceSeconds, TimeUnit.SECONDS);
+                if (key == null) {
+                    // No more events during the debounce delay (the files are kept when the scheduler is busy)
+                    if (!csvScheduler.isRunning() && (isOverflow
+                            ? csvScheduler.processCsvFiles(true)
+                            : csvScheduler.processCsvFiles(List.copyOf(changedCsvFiles)))) {
+                        changedCsvFiles.clear();
+                        isOverflow = false;
+                    }
+                    continue;
+                }
+                var folder = (Path) key.watchable();
+                for (var event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        log.warn("Missed some events of the CSV folder {}, all the folders will be scanned", folder);
+                        isOverflow = true;
+                        continue;
+                    }
+                    var path = folder.resolve((Path) event.context());
+                    if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                        if (event.kind() == ENTRY_CREATE) {
+                            // A new (station) folder, that may already contain files
+                            try {
+                                register(service, path, changedCsvFiles);
+                            }
+                            catch (IOException ex) {
+                                log.warn("Could not watch the new CSV folder {}: {}", path, ex.getMessage());
+                            }
+                        }
+                    }
+                    else if (isCsvFile(path)) {
+                        changedCsvFiles.add(path);
+                    }
+                }
+                key.reset();
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ClosedWatchServiceException ex) {
+            log.debug("Stopped watching the CSV folders");
+        }
+        catch (RuntimeException ex) {
+            log.error("Stopped watching the CSV folders, they will only be scanned on schedule: {}", ex.getMessage(), ex);
+            stop();
+        }
+    }
+
+    /**
+     * Watch the folder and its subfolders.
+     * @param csvFiles Receives the CSV files that are already in the folders (null to ignore them).
+     * @return The number of folders.
+     */
+    private static int register(WatchService service, Path folder, Set<Path> csvFiles) throws IOException {
+        folder.register(service, ENTRY_CREATE, ENTRY_MODIFY);
+        var folders = 1;
+        try (var entries = Files.newDirectoryStream(folder)) {
+            for (var entry : entries) {
+                if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    folders += register(service, entry, csvFiles);
+                }
+                else if (csvFiles != null && isCsvFile(entry)) {
+                    csvFiles.add(entry);
+                }
+            }
+        }
+        return folders;
+    }
+
+    /**
+     * Whether the file is a CSV file (that may be compressed), or an archive of CSV files.
+     */
+    private static boolean isCsvFile(Path path) {
+        return (CsvUtils.isCsvFile(path) || CsvUtils.isCsvArchive(path)) && Files.isRegularFile(path);
+    }
+
+}
@@ -2,27 +2,104 @@ package mywild.wildweather.domain.weather.schedulers.csv;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
-import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.csv.CSVParser;
 import lombok.extern.slf4j.Slf4j;
 import mywild.wildweather.domain.weather.schedulers.Utils;
 
 @Slf4j
 final public class CsvUtils {
 
+    private static final String GZIP_SUFFIX = ".gz";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     private CsvUtils() {
         // prevent instantiation
     }
 
+    /**
+     * The name of the CSV file, which is the same for the compressed file (.csv.gz) or the archive entry, so that a
+     * file that was processed is not processed again once it is compressed.
+     */
     static String getCsvName(Path path) {
-        return Utils.getStationName(path) + " -> " + path.getFileName();
+        var fileName = path.getFileName().toString();
+        if (fileName.toLowerCase(Locale.ROOT).endsWith(".csv" + GZIP_SUFFIX)) {
+            fileName = fileName.substring(0, fileName.length() - GZIP_SUFFIX.length());
+        }
+        return Utils.getStationName(path) + " -> " + fileName;
+    }
+
+    /**
+     * Whether the file is a CSV file (.csv), or a compressed CSV file (.csv.gz).
+     */
+    static boolean isCsvFile(Path path) {
+        var fileName = path.getFileName();
+        if (fileName == null) {
+            return false;
+        }
+        var name = fileName.toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".csv") || name.endsWith(".csv" + GZIP_SUFFIX);
+    }
+
+    /**
+     * Whether the file is a zip archive of CSV files.
+     */
+    static boolean isCsvArchive(Path path) {
+        var fileName = path.getFileName();
+        return fileName != null && fileName.toString().toLowerCase(Locale.ROOT).endsWith(".zip");
+    }
+
+    /**
+     * Whether the file can only be read as a stream, from its start (it is compressed, or it is an archive entry).
+     */
+    static boolean isCompressed(Path path) {
+        return path.getFileSystem() != FileSystems.getDefault()
+            || path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(GZIP_SUFFIX);
+    }
+
+    /**
+     * The content of the file, which is decompressed while it is read (for .gz files, and for archive entries).
+     */
+    static InputStream newInputStream(Path path) throws IOException {
+        var input = Files.newInputStream(path);
+        if (!path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(GZIP_SUFFIX)) {
+            return input;
+        }
+        try {
+            return new GZIPInputStream(input, BUFFER_SIZE);
+        }
+        catch (IOException ex) {
+            input.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Read the (decompressed) content of the file as UTF-8, failing on malformed input like Files.newBufferedReader().
+     */
+    static BufferedReader newBufferedReader(Path path) throws IOException {
+        if (!isCompressed(path)) {
+            return Files.newBufferedReader(path);
+        }
+        return new BufferedReader(new InputStreamReader(newInputStream(path), StandardCharsets.UTF_8.newDecoder()),
+            BUFFER_SIZE);
     }
 
     static String[] getHeaders(BufferedReader reader) throws IOException {
-        String headerLine = reader.readLine();
+        return getHeaders(reader.readLine());
+    }
+
+    static String[] getHeaders(String headerLine) {
         String[] headers = headerLine != null ? headerLine.split(",") : new String[] {};
         for (int i = 0; i < headers.length; i++) {
             var header = headers[i].replace("\"", "");
@@ -42,17 +119,19 @@ final public class CsvUtils {
         return headers;
     }
 
-    static List<CSVRecord> getRecords(BufferedReader reader, String[] headers) throws IOException {
-        List<CSVRecord> records = CSVFormat.Builder
+    /**
+     * The records are parsed one at a time while iterating over the parser, so a file is never in memory all at once.
+     * Closing the parser also closes the reader.
+     */
+    static CSVParser parseRecords(BufferedReader reader, String[] headers) throws IOException {
+        return CSVFormat.Builder
             .create()
             .setHeader(headers)
             .setSkipHeaderRecord(false) // getHeaders() will already read teh header and move the reader to the first data line
             .setIgnoreEmptyLines(true)
             .setTrim(true)
             .get()
-            .parse(reader).getRecords();
-        log.trace("Records: {}", records.size());
-        return records;
+            .parse(reader);
     }
-    
+
 }
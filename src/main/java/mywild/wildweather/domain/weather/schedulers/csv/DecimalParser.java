@@ -0,0 +1,162 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+/**
+ * Parses the numbers of the CSV cells without creating objects or throwing exceptions.
+ * <p>
+ * The cells of the exported files are short plain decimals (like -12.5 or 1015.2), which are parsed directly from the
+ * characters: the digits are collected in a long and divided once by a power of ten. Both are exact doubles when there
+ * are at most 15 significant digits and 22 decimals, so the single division is correctly rounded and the result is
+ * always the same as Double.parseDouble(). Longer numbers and exponents are checked here and then passed on to
+ * Double.parseDouble(). Anything else (like "--" or "1.2.3") is reported as invalid, instead of throwing a
+ * NumberFormatException.
+ */
+final class DecimalParser {
+
+    private static final int MAX_FAST_DIGITS = 15;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private DecimalParser() {
+        // prevent instantiation
+    }
+
+    /**
+     * Parse the text into values[index]. A null or blank text is stored as NaN.
+     * @return False if the text is not a number (then NaN is stored).
+     */
+    static boolean parse(CharSequence text, double[] values, int index) {
+        if (text == null) {
+            values[index] = Double.NaN;
+            return true;
+        }
+        return parse(text, 0, text.length(), values, index);
+    }
+
+    /**
+     * Parse text[start, end) into values[index]. A blank text is stored as NaN.
+     * @return False if the text is not a number (then NaN is stored).
+     */
+    static boolean parse(CharSequence text, int start, int end, double[] values, int index) {
+        // Skip the whitespace, like Double.parseDouble()
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        values[index] = Double.NaN;
+        if (start == end) {
+            return true;
+        }
+        var position = start;
+        var c = text.charAt(position);
+        var isNegative = c == '-';
+        if (c == '-' || c == '+') {
+            position++;
+        }
+        if (position < end && (text.charAt(position) == 'N' || text.charAt(position) == 'I')) {
+            return parseSpecial(text, position, end, isNegative, values, index);
+        }
+        long mantissa = 0;
+        var significantDigits = 0;
+        var decimals = 0;
+        var hasDigits = false;
+        var hasPoint = false;
+        var isFast = true;
+        for (; position < end; position++) {
+            c = text.charAt(position);
+            if (c >= '0' && c <= '9') {
+                hasDigits = true;
+                if (mantissa != 0 || c != '0') {
+                    significantDigits++;
+                }
+                if (significantDigits > MAX_FAST_DIGITS) {
+                    isFast = false;
+                }
+                else {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (hasPoint) {
+                        decimals++;
+                    }
+                }
+            }
+            else if (c == '.' && !hasPoint) {
+                hasPoint = true;
+            }
+            else {
+                break;
+            }
+        }
+        if (!hasDigits) {
+            return false;
+        }
+        if (position < end) {
+            // Only an exponent or a type suffix may follow the digits
+            if (!isExponentOrSuffix(text, position, end)) {
+                return false;
+            }
+            isFast = false;
+        }
+        if (!isFast || decimals >= POWERS_OF_TEN.length) {
+            values[index] = Double.parseDouble(text.subSequence(start, end).toString());
+            return true;
+        }
+        var value = decimals == 0 ? (double) mantissa : mantissa / POWERS_OF_TEN[decimals];
+        values[index] = isNegative ? -value : value;
+        return true;
+    }
+
+    /**
+     * Check for [eE][+-]digits followed by an optional [fFdD], or only [fFdD].
+     */
+    private static boolean isExponentOrSuffix(CharSequence text, int position, int end) {
+        var c = text.charAt(position);
+        if (c == 'e' || c == 'E') {
+            position++;
+            if (position < end && (text.charAt(position) == '+' || text.charAt(position) == '-')) {
+                position++;
+            }
+            var digitsStart = position;
+            while (position < end && text.charAt(position) >= '0' && text.charAt(position) <= '9') {
+                position++;
+            }
+            if (position == digitsStart) {
+                return false;
+            }
+            if (position == end) {
+                return true;
+            }
+            c = text.charAt(position);
+        }
+        return position == end - 1 && (c == 'f' || c == 'F' || c == 'd' || c == 'D');
+    }
+
+    private static boolean parseSpecial(CharSequence text, int position, int end, boolean isNegative, double[] values,
+            int index) {
+        if (matches(text, position, end, "NaN")) {
+            values[index] = Double.NaN;
+            return true;
+        }
+        if (matches(text, position, end, "Infinity")) {
+            values[index] = isNegative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean matches(CharSequence text, int position, int end, String expected) {
+        if (end - position != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (text.charAt(position + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,445 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads only the Date column of fine scale (5 minute) CSV files.
+ * <p>
+ * The file is memory-mapped and the lines are scanned straight from the bytes. The timestamps are parsed by hand for the
+ * ISO format that the files use (for example 2024-10-02T23:55:00-07:00), and only other formats (like a zone region)
+ * fall back to ZonedDateTime.parse(). Nothing is allocated per line: every line's timestamp is passed to the consumer
+ * in the same object.
+ * <p>
+ * A large file can be split into line-aligned ranges, that are read separately (and in parallel). Compressed files
+ * (.csv.gz, and the entries of zip archives) are decompressed while they are read, as a single range.
+ */
+final class FineScaleReader {
+
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    // Compressed files are decompressed into a smaller (heap) buffer
+    private static final int STREAM_WINDOW_SIZE = 1024 * 1024;
+
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    // The Date column of a range that starts with the file's header
+    private static final int HEADER_NOT_READ = -2;
+
+    private FineScaleReader() {
+        // prevent instantiation
+    }
+
+    @FunctionalInterface
+    interface TimestampConsumer {
+        void accept(Timestamp timestamp);
+    }
+
+    /**
+     * The timestamp of a line, which is only valid during the call to the consumer.
+     */
+    static final class Timestamp {
+
+        private long epochSecond;
+        private int offsetSeconds;
+
+        long epochSecond() {
+            return epochSecond;
+        }
+
+        int offsetSeconds() {
+            return offsetSeconds;
+        }
+
+        /**
+         * The day in the timestamp's own offset.
+         */
+        long epochDay() {
+            return Math.floorDiv(epochSecond + offsetSeconds, SECONDS_PER_DAY);
+        }
+
+        /**
+         * Identifies the timestamp as it is written in the file (thus the same instant in another offset is a different
+         * key). The offsets are at most 18 hours, which fits in 17 bits.
+         */
+        long key() {
+            return (epochSecond << 17) | (offsetSeconds + (1 << 16));
+        }
+
+        /**
+         * Set the timestamp from its key.
+         */
+        Timestamp setKey(long key) {
+            epochSecond = key >> 17;
+            offsetSeconds = (int) (key & ((1 << 17) - 1)) - (1 << 16);
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return OffsetDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneOffset.ofTotalSeconds(offsetSeconds))
+                .toString();
+        }
+
+    }
+
+    /**
+     * A line-aligned byte range of a file's records (after the header).
+     * @param dateColumn The index of the Date column.
+     */
+    record Range(
+        int dateColumn,
+        long start,
+        long end
+    ) {
+        // Record automatically generates: equals, hashCode and toString
+    }
+
+    /**
+     * Pass the timestamp of each line to the consumer, in the order of the file. Empty lines are skipped.
+     */
+    static void read(Path csvFile, TimestampConsumer consumer) throws IOException {
+        for (var range : split(csvFile, Long.MAX_VALUE)) {
+            read(csvFile, range, consumer);
+        }
+    }
+
+    /**
+     * Split the file's records into ranges of about the given size, that start and end at line boundaries (so that the
+     * ranges can be read in parallel, and give the same lines as the whole file).
+     * @return No ranges if the file is empty.
+     */
+    static List<Range> split(Path csvFile, long rangeSize) throws IOException {
+        if (CsvUtils.isCompressed(csvFile)) {
+            // A compressed file can only be read from its start, thus its header is read with its records
+            return List.of(new Range(HEADER_NOT_READ, 0, Long.MAX_VALUE));
+        }
+        try (var channel = FileChannel.open(csvFile, StandardOpenOption.READ)) {
+            var size = channel.size();
+            if (size == 0) {
+                return List.of();
+            }
+            // The header
+            var limit = (int) Math.min(WINDOW_SIZE, size);
+            var buffer = channel.map(MapMode.READ_ONLY, 0, limit);
+            var headerStart = getBomLength(buffer, limit);
+            var headerEnd = indexOf(buffer, (byte) '\n', headerStart, limit);
+            if (headerEnd < 0 && limit < size) {
+                throw new IOException("A line is longer than " + WINDOW_SIZE + " bytes in: " + csvFile);
+            }
+            var dataStart = headerEnd < 0 ? size : headerEnd + 1;
+            var end = headerEnd < 0 ? limit : headerEnd;
+            end = end > headerStart && buffer.get(end - 1) == '\r' ? end - 1 : end;
+            var dateColumn = getDateColumn(buffer, headerStart, end);
+            // The records
+            List<Range> ranges = new ArrayList<>();
+            var rangeStart = dataStart;
+            while (size - rangeStart > rangeSize) {
+                var rangeEnd = findNextLine(channel, rangeStart + rangeSize, size);
+                if (rangeEnd >= size) {
+                    break;
+                }
+                ranges.add(new Range(dateColumn, rangeStart, rangeEnd));
+                rangeStart = rangeEnd;
+            }
+            ranges.add(new Range(dateColumn, rangeStart, size));
+            return ranges;
+        }
+    }
+
+    /**
+     * The position after the first new line at or after the position (or the size when there is none).
+     */
+    private static long findNextLine(FileChannel channel, long position, long size) throws IOException {
+        var buffer = ByteBuffer.allocate(8 * 1024);
+        while (position < size) {
+            buffer.clear();
+            var count = channel.read(buffer, position);
+            if (count <= 0) {
+                break;
+            }
+            var index = indexOf(buffer, (byte) '\n', 0, count);
+            if (index >= 0) {
+                return position + index + 1;
+            }
+            position += count;
+        }
+        return size;
+    }
+
+    /**
+     * Pass the timestamp of each line of the range to the consumer, in the order of the file. Empty lines are skipped.
+     */
+    static void read(Path csvFile, Range range, TimestampConsumer consumer) throws IOException {
+        if (range.dateColumn() == HEADER_NOT_READ) {
+            readStream(csvFile, consumer);
+            return;
+        }
+        try (var channel = FileChannel.open(csvFile, StandardOpenOption.READ)) {
+            var timestamp = new Timestamp();
+            var position = range.start();
+            while (position < range.end()) {
+                var limit = (int) Math.min(WINDOW_SIZE, range.end() - position);
+                var isLastWindow = position + limit == range.end();
+                var buffer = channel.map(MapMode.READ_ONLY, position, limit);
+                var lineStart = readLines(csvFile, buffer, 0, limit, isLastWindow, range.dateColumn(), timestamp, consumer);
+                if (lineStart == 0 && !isLastWindow) {
+                    throw new IOException("A line is longer than " + WINDOW_SIZE + " bytes in: " + csvFile);
+                }
+                position += Math.min(lineStart, limit);
+            }
+        }
+    }
+
+    /**
+     * Read a compressed file, that is decompressed into a buffer that is refilled after its complete lines are read.
+     */
+    private static void readStream(Path csvFile, TimestampConsumer consumer) throws IOException {
+        try (var input = CsvUtils.newInputStream(csvFile)) {
+            var timestamp = new Timestamp();
+            var buffer = ByteBuffer.allocate(STREAM_WINDOW_SIZE);
+            var limit = input.readNBytes(buffer.array(), 0, STREAM_WINDOW_SIZE);
+            if (limit == 0) {
+                return;
+            }
+            var isLastWindow = limit < STREAM_WINDOW_SIZE;
+            // The header
+            var headerStart = getBomLength(buffer, limit);
+            var headerEnd = indexOf(buffer, (byte) '\n', headerStart, limit);
+            if (headerEnd < 0 && !isLastWindow) {
+                throw new IOException("A line is longer than " + STREAM_WINDOW_SIZE + " bytes in: " + csvFile);
+            }
+            var end = headerEnd < 0 ? limit : headerEnd;
+            end = end > headerStart && buffer.get(end - 1) == '\r' ? end - 1 : end;
+            var dateColumn = getDateColumn(buffer, headerStart, end);
+            var lineStart = headerEnd < 0 ? limit : headerEnd + 1;
+            // The records
+            while (true) {
+                lineStart = readLines(csvFile, buffer, lineStart, limit, isLastWindow, dateColumn, timestamp, consumer);
+                if (isLastWindow) {
+                    return;
+                }
+                if (lineStart == 0) {
+                    throw new IOException("A line is longer than " + STREAM_WINDOW_SIZE + " bytes in: " + csvFile);
+                }
+                // Move the start of the next line to the start of the buffer, and fill the rest
+                var remaining = limit - lineStart;
+                System.arraycopy(buffer.array(), lineStart, buffer.array(), 0, remaining);
+                var read = input.readNBytes(buffer.array(), remaining, STREAM_WINDOW_SIZE - remaining);
+                limit = remaining + read;
+                isLastWindow = limit < STREAM_WINDOW_SIZE;
+                lineStart = 0;
+            }
+        }
+    }
+
+    /**
+     * Pass the timestamp of each complete line of the buffer to the consumer (and of the last line when it is the last
+     * window).
+     * @return The start of the first line that is not complete.
+     */
+    private static int readLines(Path csvFile, ByteBuffer buffer, int lineStart, int limit, boolean isLastWindow,
+            int dateColumn, Timestamp timestamp, TimestampConsumer consumer) throws IOException {
+        while (lineStart < limit) {
+            var lineEnd = indexOf(buffer, (byte) '\n', lineStart, limit);
+            if (lineEnd < 0) {
+                if (!isLastWindow) {
+                    // Continue the line in the next window
+                    break;
+                }
+                lineEnd = limit;
+            }
+            var end = lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            if (!isBlank(buffer, lineStart, end)) {
+                if (dateColumn < 0) {
+                    throw new IOException("The file does not have a Date column: " + csvFile);
+                }
+                parseDateColumn(buffer, lineStart, end, dateColumn, timestamp);
+                consumer.accept(timestamp);
+            }
+            lineStart = lineEnd + 1;
+        }
+        return lineStart;
+    }
+
+    private static int getDateColumn(ByteBuffer buffer, int start, int end) {
+        var headers = CsvUtils.getHeaders(decode(buffer, start, end));
+        return Arrays.asList(headers).indexOf("Date");
+    }
+
+    private static void parseDateColumn(ByteBuffer buffer, int start, int end, int column, Timestamp timestamp) {
+        // Find the column, skipping the commas inside quotes
+        var fieldStart = start;
+        var fieldEnd = end;
+        var currentColumn = 0;
+        var isQuoted = false;
+        for (int i = start; i < end; i++) {
+            var b = buffer.get(i);
+            if (b == '"') {
+                isQuoted = !isQuoted;
+            }
+            else if (b == ',' && !isQuoted) {
+                if (currentColumn == column) {
+                    fieldEnd = i;
+                    break;
+                }
+                currentColumn++;
+                fieldStart = i + 1;
+            }
+        }
+        if (currentColumn != column) {
+            fieldStart = end;
+            fieldEnd = end;
+        }
+        while (fieldStart < fieldEnd && isSpace(buffer.get(fieldStart))) {
+            fieldStart++;
+        }
+        while (fieldEnd > fieldStart && isSpace(buffer.get(fieldEnd - 1))) {
+            fieldEnd--;
+        }
+        if (fieldEnd - fieldStart >= 2 && buffer.get(fieldStart) == '"' && buffer.get(fieldEnd - 1) == '"') {
+            fieldStart++;
+            fieldEnd--;
+        }
+        if (!parseTimestamp(buffer, fieldStart, fieldEnd, timestamp)) {
+            var dateTime = ZonedDateTime.parse(decode(buffer, fieldStart, fieldEnd));
+            timestamp.epochSecond = dateTime.toEpochSecond();
+            timestamp.offsetSeconds = dateTime.getOffset().getTotalSeconds();
+        }
+    }
+
+    /**
+     * Parse yyyy-MM-ddTHH:mm[:ss] followed by Z or +HH:MM[:ss].
+     * @return False if the text has another format, or invalid values.
+     */
+    static boolean parseTimestamp(ByteBuffer buffer, int start, int end, Timestamp timestamp) {
+        if (end - start < 17
+                || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-' || buffer.get(start + 10) != 'T'
+                || buffer.get(start + 13) != ':') {
+            return false;
+        }
+        var year = getDigits(buffer, start, 4);
+        var month = getDigits(buffer, start + 5, 2);
+        var day = getDigits(buffer, start + 8, 2);
+        var hour = getDigits(buffer, start + 11, 2);
+        var minute = getDigits(buffer, start + 14, 2);
+        var second = 0;
+        var position = start + 16;
+        if (buffer.get(position) == ':') {
+            if (end - position < 4) {
+                return false;
+            }
+            second = getDigits(buffer, position + 1, 2);
+            position += 3;
+        }
+        int offset;
+        var sign = buffer.get(position);
+        if (sign == 'Z' && position + 1 == end) {
+            offset = 0;
+        }
+        else if ((sign == '+' || sign == '-') && (end - position == 6 || end - position == 9)
+                && buffer.get(position + 3) == ':' && (end - position == 6 || buffer.get(position + 6) == ':')) {
+            var offsetHours = getDigits(buffer, position + 1, 2);
+            var offsetMinutes = getDigits(buffer, position + 4, 2);
+            var offsetSeconds = end - position == 9 ? getDigits(buffer, position + 7, 2) : 0;
+            if (offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59
+                    || offsetSeconds < 0 || offsetSeconds > 59) {
+                return false;
+            }
+            offset = (sign == '-' ? -1 : 1) * (offsetHours * 3600 + offsetMinutes * 60 + offsetSeconds);
+        }
+        else {
+            return false;
+        }
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > getDaysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return false;
+        }
+        timestamp.epochSecond = getEpochDay(year, month, day) * SECONDS_PER_DAY
+            + hour * 3600 + minute * 60 + second - offset;
+        timestamp.offsetSeconds = offset;
+        return true;
+    }
+
+    /**
+     * The same as LocalDate.of(year, month, day).toEpochDay(), without creating the date.
+     */
+    static long getEpochDay(int year, int month, int day) {
+        // Count the years from March, so that the leap day is the last day of the year
+        long y = month <= 2 ? year - 1 : year;
+        var era = Math.floorDiv(y, 400);
+        var yearOfEra = y - era * 400;
+        var dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        var dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int getDaysInMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    /**
+     * The value of the digits, or -1 if they are not all digits.
+     */
+    private static int getDigits(ByteBuffer buffer, int start, int count) {
+        var value = 0;
+        for (int i = start; i < start + count; i++) {
+            var digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isBlank(ByteBuffer buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isSpace(buffer.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static int getBomLength(ByteBuffer buffer, int limit) {
+        return limit >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF
+            ? 3 : 0;
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int end) {
+        var bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
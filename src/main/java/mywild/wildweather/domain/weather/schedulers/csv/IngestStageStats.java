@@ -0,0 +1,19 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+/**
+ * The throughput of a stage of the last CSV ingest run.
+ * @param stage The stage's name.
+ * @param rows The number of rows that the stage handled.
+ * @param millis The time from when the stage started its first row until it finished its last row.
+ */
+public record IngestStageStats(
+    String stage,
+    long rows,
+    long millis
+) {
+
+    public long rowsPerSecond() {
+        return millis > 0 ? rows * 1000 / millis : rows;
+    }
+
+}
@@ -4,26 +4,27 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
-import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
-import org.apache.commons.csv.CSVRecord;
+import java.util.concurrent.Semaphore;
 import org.slf4j.helpers.MessageFormatter;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Component;
 import lombok.extern.slf4j.Slf4j;
+import mywild.wildweather.domain.weather.data.WeatherMissingDay;
 import mywild.wildweather.domain.weather.data.WeatherRepository;
-import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
-import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
-import mywild.wildweather.domain.weather.schedulers.SchedulerThreadFactory;
 import mywild.wildweather.domain.weather.schedulers.Utils;
 
 @Slf4j
@@ -32,135 +33,292 @@ public class ProcessFullFiles {
 
     private static final int EXPECTED_RECORDS_PER_DAY = 24 * (60 / 5); // Every 5 minutes
 
+    // The larger files are split into ranges of about this size, that are parsed in parallel
+    private static final long RANGE_SIZE = 4L * 1024 * 1024;
+
     @Autowired
     private WeatherRepository repo;
     
     void processAllFineScaleFiles(List<Path> csvFiles) throws InterruptedException {
-        Set<String> detectDuplicateRecords = ConcurrentHashMap.newKeySet();
-        ConcurrentMap<RecordsPerDateKey, Integer> recordsPerDate = new ConcurrentHashMap<>();
-        List<Callable<Void>> tasks = new ArrayList<>();
-        for (var csvFile : csvFiles) {
-            tasks.add(() -> {
-                var csvName = CsvUtils.getCsvName(csvFile);
-                var goodRecords = 0;
-                var duplicates = 0;
-                var gapRecords = 0;
-                var errors = 0;
-                try (var reader = Files.newBufferedReader(csvFile)) {
-                    StringBuilder logBuilder = new StringBuilder();
-                    logBuilder.append("----------------").append(System.lineSeparator());
-                    logBuilder.append(MessageFormatter.format("Processing Delayed File : {}", csvName).getMessage()).append(System.lineSeparator());
+        // Each file is indexed on its own, and then merged into the index of its station
+        ConcurrentMap<String, RecordIndex> stationIndexes = new ConcurrentHashMap<>();
+        // The ranges of all the files (the largest files first) are parsed in parallel, and each file's ranges are then
+        // counted in order. The permits limit the ranges that are parsed but not yet counted.
+        var permits = new Semaphore(2 * Runtime.getRuntime().availableProcessors());
+        try (var rangeExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("f-csv-range-", 1).factory());
+                var fileExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("f-csv-", 1).factory())) {
+            for (var csvFile : sortLargestFirst(csvFiles)) {
+                List<FineScaleReader.Range> ranges = List.of();
+                IOException splitError = null;
+                try {
+                    ranges = FineScaleReader.split(csvFile, RANGE_SIZE);
+                }
+                catch (IOException ex) {
+                    splitError = ex;
+                }
+                // The file's ranges are counted while the next ranges are being parsed
+                List<CompletableFuture<ParsedRange>> parsedRanges = new ArrayList<>();
+                ranges.forEach(_ -> parsedRanges.add(new CompletableFuture<>()));
+                var error = splitError;
+                fileExecutor.execute(() -> {
                     try {
-                        String[] headers = CsvUtils.getHeaders(reader);
-                        ZonedDateTime prevDateTime = null;
-                        // TODO: Maybe just use normal file reading, line by line (only first 25 chars are needed), might be faster / less memory?
-                        for (CSVRecord record : CsvUtils.getRecords(reader, headers)) {
-                            var dateTime = ZonedDateTime.parse(record.get("Date"));
-                            var date = dateTime.toLocalDate();
-                            var station = Utils.getStationName(csvFile);
-                            var duplicateKey = station + "_" + record.get("Date");
-                            if (detectDuplicateRecords.add(duplicateKey)) {
-                                recordsPerDate.compute(new RecordsPerDateKey(station, date), (_, v) -> v == null ? 1 : v + 1);
-                                // The CSV file's dates should be in descending order (every 5 mins), thus it is possible to easily detect gaps
-                                if (prevDateTime == null || dateTime.plusMinutes(9).isAfter(prevDateTime)) {
-                                    goodRecords++;
-                                }
-                                else {
-                                    log.trace("Large time gap : Prev {} vs Current {}", prevDateTime, dateTime);
-                                    gapRecords++;
-                                }
-                            }
-                            else {
-                                log.trace("Duplicate: {}", duplicateKey);
-                                duplicates++;
-                            }
-                            prevDateTime = dateTime;
-                        }
+                        countRecords(csvFile, parsedRanges, error, permits, stationIndexes);
                     }
-                    catch (IOException ex) {
-                        log.error(ex.getMessage(), ex);
-                        errors++;
+                    catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
                     }
-                    logBuilder.append(MessageFormatter.format("   Good Records : {}", goodRecords).getMessage()).append(System.lineSeparator());
-                    logBuilder.append(MessageFormatter.format("   Gap Records  : {}", gapRecords).getMessage()).append(System.lineSeparator());
-                    logBuilder.append(MessageFormatter.format("   Duplicates   : {}", duplicates).getMessage()).append(System.lineSeparator());
-                    logBuilder.append(MessageFormatter.format("   Errors       : {}", errors).getMessage()).append(System.lineSeparator());
-                    log.info(logBuilder.toString());
+                });
+                for (int i = 0; i < ranges.size(); i++) {
+                    var range = ranges.get(i);
+                    permits.acquire();
+                    parsedRanges.get(i).completeAsync(() -> ParsedRange.parse(csvFile, range), rangeExecutor);
                 }
-                WeatherCsvScheduler.markFileAsProcessed(csvName);
-                return null;
-            });
-        }
-        ExecutorService executor = Executors.newFixedThreadPool(
-            Runtime.getRuntime().availableProcessors(), 
-            new SchedulerThreadFactory("f-csv-"));
-        executor.invokeAll(tasks);
-        executor.shutdown();
+            }
+        }
         // Calculate missing percentage
-        if (!recordsPerDate.entrySet().isEmpty()) {
-            log.info("----------------");
-            log.info("Updating database entities to indicate percentage of missing records per day...");
-            var updated = 0;
-            var missing = 0;
-            for (var entry : recordsPerDate.entrySet()) {
-                try {
-                    var entities = repo.findAllByDateAndStationOrderByDateAscCategoryAsc(entry.getKey().date(), entry.getKey().station());
-                    for (var temp : entities) {
-                        if (temp.getDate().equals(entry.getKey().date())) {
-                            if (entry.getValue() < EXPECTED_RECORDS_PER_DAY) {
-                                temp.setMissing((double) Math.round((EXPECTED_RECORDS_PER_DAY - entry.getValue()) / (double) EXPECTED_RECORDS_PER_DAY * 100.0));
-                                missing++;
-                            }
-                            else if (entry.getValue() > EXPECTED_RECORDS_PER_DAY) {
-                                log.warn("More days counted ({}) than expected ({}) for : {} on {}", 
-                                    entry.getValue(), EXPECTED_RECORDS_PER_DAY, entry.getKey().station(), entry.getKey().date());
-                            }
-                        }
-                    }
-                    repo.saveAll(entities);
-                    updated = updated + entities.size();
+        Map<String, List<WeatherMissingDay>> missingDays = new HashMap<>();
+        for (var entry : stationIndexes.entrySet()) {
+            var station = entry.getKey();
+            var dayCounts = entry.getValue().countDays();
+            for (int i = 0; i < dayCounts.counts().length; i++) {
+                var count = dayCounts.counts()[i];
+                if (count > 0 && count < EXPECTED_RECORDS_PER_DAY) {
+                    missingDays.computeIfAbsent(station, _ -> new ArrayList<>()).add(new WeatherMissingDay(station,
+                        LocalDate.ofEpochDay(dayCounts.firstDay() + i),
+                        (double) Math.round((EXPECTED_RECORDS_PER_DAY - count) / (double) EXPECTED_RECORDS_PER_DAY * 100.0)));
                 }
-                catch (RuntimeException ex) {
-                    log.error(ex.getMessage(), ex);
+                else if (count > EXPECTED_RECORDS_PER_DAY) {
+                    log.warn("More days counted ({}) than expected ({}) for : {} on {}",
+                        count, EXPECTED_RECORDS_PER_DAY, station, LocalDate.ofEpochDay(dayCounts.firstDay() + i));
                 }
             }
-            log.info("   Days Updated              : {}", updated);
-            log.info("   Days with Missing records : {}", missing);
         }
-        // Insert missing days
+        // Update the missing percentages and insert the completely missing days, of all the stations in parallel
         log.info("----------------");
-        log.info("Updating database entities to insert completely missing days...");
-        for (var station : repo.findStations()) {
-            log.info("Processing station : {}", station);
-            var newDays = 0;
-            var entities = repo.findAllByStationOrderByDateAscCategoryAsc(station);
-            LocalDate prevDate = entities.get(0).getDate();
-            for (var weather : entities) {
-                try {
-                    if (prevDate.plusDays(1).isBefore(weather.getDate())) {
-                        for (var i = 1; i < ChronoUnit.DAYS.between(prevDate, weather.getDate()); i++) {
-                            for (var category : WeatherCategory.values()) {
-                                repo.save(
-                                    WeatherEntity.builder()
-                                        .station(station)
-                                        .date(prevDate.plusDays(i))
-                                        .category(category)
-                                        .windDirection("")
-                                        .missing(100.0)
-                                    .build()
-                                );
-                            }
-                            newDays++;
-                        }
+        log.info("Updating database entities to indicate percentage of missing records per day, and to insert completely missing days...");
+        // The station catalog was refreshed after the summary files, thus it has all the stations with weather rows
+        Set<String> stations = new TreeSet<>();
+        repo.findStationCatalog().forEach(row -> stations.add(row.station()));
+        stations.addAll(missingDays.keySet());
+        try (var stationExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("f-csv-station-", 1).factory())) {
+            for (var station : stations) {
+                var stationMissingDays = missingDays.getOrDefault(station, List.of());
+                stationExecutor.execute(() -> updateStation(station, stationMissingDays));
+            }
+        }
+    }
+
+    private void updateStation(String station, List<WeatherMissingDay> missingDays) {
+        var updated = 0;
+        var newDays = 0L;
+        try (var _ = StationLocks.lock(List.of(station))) {
+            if (!missingDays.isEmpty()) {
+                var isUpdated = repo.updateMissing(missingDays);
+                for (int i = 0; i < isUpdated.length; i++) {
+                    if (isUpdated[i]) {
+                        WeatherCsvScheduler.markWeatherAsChanged(station, missingDays.get(i).date(), missingDays.get(i).date());
+                        updated++;
                     }
                 }
-                catch (IllegalArgumentException | OptimisticLockingFailureException ex) {
-                    log.error(ex.getMessage(), ex);
+            }
+            for (var gap : repo.insertMissingDays(station)) {
+                WeatherCsvScheduler.markWeatherAsChanged(station, gap.startDate(), gap.endDate());
+                newDays += ChronoUnit.DAYS.between(gap.startDate(), gap.endDate()) + 1;
+            }
+        }
+        catch (RuntimeException ex) {
+            log.error(ex.getMessage(), ex);
+        }
+        StringBuilder logBuilder = new StringBuilder();
+        logBuilder.append(MessageFormatter.format("Processing station : {}", station).getMessage()).append(System.lineSeparator());
+        logBuilder.append(MessageFormatter.format("   Days with Missing records : {}", missingDays.size()).getMessage()).append(System.lineSeparator());
+        logBuilder.append(MessageFormatter.format("   Days Updated              : {}", updated).getMessage()).append(System.lineSeparator());
+        logBuilder.append(MessageFormatter.format("   Missing Days Inserted     : {}", newDays).getMessage()).append(System.lineSeparator());
+        log.info(logBuilder.toString());
+    }
+
+    private static List<Path> sortLargestFirst(List<Path> csvFiles) {
+        Map<Path, Long> sizes = new HashMap<>();
+        for (var csvFile : csvFiles) {
+            try {
+                sizes.put(csvFile, Files.size(csvFile));
+            }
+            catch (IOException ex) {
+                // The error is reported when the file is read
+                sizes.put(csvFile, 0L);
+            }
+        }
+        List<Path> sorted = new ArrayList<>(csvFiles);
+        sorted.sort(Comparator.comparing((Path csvFile) -> sizes.get(csvFile)).reversed());
+        return sorted;
+    }
+
+    /**
+     * Count the records of the file's ranges in the order of the file, as if the file was read at once (the duplicates,
+     * the gaps between the ranges and the days that span several ranges give the same counts).
+     */
+    private static void countRecords(Path csvFile, List<CompletableFuture<ParsedRange>> ranges, IOException splitError,
+            Semaphore permits, ConcurrentMap<String, RecordIndex> stationIndexes) throws InterruptedException {
+        var csvName = CsvUtils.getCsvName(csvFile);
+        var station = Utils.getStationName(csvFile);
+        var counter = new RecordCounter(station);
+        var errors = 0;
+        StringBuilder logBuilder = new StringBuilder();
+        logBuilder.append("----------------").append(System.lineSeparator());
+        logBuilder.append(MessageFormatter.format("Processing Delayed File : {}", csvName).getMessage()).append(System.lineSeparator());
+        var index = 0;
+        try {
+            if (splitError != null) {
+                throw splitError;
+            }
+            var timestamp = new FineScaleReader.Timestamp();
+            for (; index < ranges.size(); index++) {
+                ParsedRange range;
+                try {
+                    range = ranges.get(index).get();
+                }
+                catch (ExecutionException ex) {
+                    throw new IllegalStateException(ex.getCause());
+                }
+                finally {
+                    permits.release();
                 }
-                prevDate = weather.getDate();
+                for (int i = 0; i < range.size; i++) {
+                    counter.accept(timestamp.setKey(range.keys[i]));
+                }
+                // The lines before a failure are counted, like when the file is read at once
+                range.throwFailure();
+            }
+        }
+        catch (IOException | RuntimeException ex) {
+            log.error(ex.getMessage(), ex);
+            errors++;
+        }
+        finally {
+            // The ranges after a failure are not counted, but their permits are only released once they are parsed
+            for (index++; index < ranges.size(); index++) {
+                ranges.get(index).exceptionally(_ -> null).join();
+                permits.release();
             }
-            log.info("   Missing Days Inserted  : {}", newDays);
         }
+        var stationIndex = stationIndexes.computeIfAbsent(station, _ -> new RecordIndex());
+        synchronized (stationIndex) {
+            counter.addTo(stationIndex);
+        }
+        logBuilder.append(MessageFormatter.format("   Good Records : {}", counter.goodRecords).getMessage()).append(System.lineSeparator());
+        logBuilder.append(MessageFormatter.format("   Gap Records  : {}", counter.gapRecords).getMessage()).append(System.lineSeparator());
+        logBuilder.append(MessageFormatter.format("   Duplicates   : {}", counter.duplicates).getMessage()).append(System.lineSeparator());
+        logBuilder.append(MessageFormatter.format("   Errors       : {}", errors).getMessage()).append(System.lineSeparator());
+        log.info(logBuilder.toString());
+        if (splitError != null) {
+            // The file could not be opened (it may still be being written), thus it is tried again during the next run
+            log.warn("Could not read the file {}, it will be processed again during the next run.", csvName);
+            return;
+        }
+        WeatherCsvScheduler.markFileAsProcessed(csvName);
+    }
+
+    /**
+     * The timestamp keys of a range's lines, in the order of the file.
+     */
+    private static final class ParsedRange implements FineScaleReader.TimestampConsumer {
+
+        private long[] keys = new long[1024];
+        private int size;
+        private Exception failure;
+
+        /**
+         * Parse the range, keeping the keys of the lines before a failure (the failure is thrown when the range is
+         * counted, so that the earlier ranges are counted first).
+         */
+        static ParsedRange parse(Path csvFile, FineScaleReader.Range range) {
+            var parsed = new ParsedRange();
+            try {
+                FineScaleReader.read(csvFile, range, parsed);
+            }
+            catch (IOException | RuntimeException ex) {
+                parsed.failure = ex;
+            }
+            return parsed;
+        }
+
+        @Override
+        public void accept(FineScaleReader.Timestamp timestamp) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            keys[size++] = timestamp.key();
+        }
+
+        void throwFailure() throws IOException {
+            if (failure instanceof IOException ex) {
+                throw ex;
+            }
+            if (failure instanceof RuntimeException ex) {
+                throw ex;
+            }
+        }
+
+    }
+
+    /**
+     * Indexes a file's records, and detects the duplicates and the gaps between records.
+     */
+    private static class RecordCounter implements FineScaleReader.TimestampConsumer {
+
+        private final String station;
+        private final RecordIndex records = new RecordIndex();
+        // The keys of the gap records (a gap record is the first record after a gap, thus there are few of them)
+        private final List<Long> gapKeys = new ArrayList<>();
+        private int goodRecords;
+        private int gapRecords;
+        private int duplicates;
+        private long prevEpochSecond;
+        private boolean hasPrev;
+
+        RecordCounter(String station) {
+            this.station = station;
+        }
+
+        @Override
+        public void accept(FineScaleReader.Timestamp timestamp) {
+            if (records.add(timestamp)) {
+                // The CSV file's dates should be in descending order (every 5 mins), thus it is possible to easily detect gaps
+                if (!hasPrev || timestamp.epochSecond() + 9 * 60 > prevEpochSecond) {
+                    goodRecords++;
+                }
+                else {
+                    log.trace("Large time gap : Prev {} vs Current {}", prevEpochSecond, timestamp);
+                    gapKeys.add(timestamp.key());
+                    gapRecords++;
+                }
+            }
+            else {
+                log.trace("Duplicate: {} {}", station, timestamp);
+                duplicates++;
+            }
+            prevEpochSecond = timestamp.epochSecond();
+            hasPrev = true;
+        }
+
+        /**
+         * Add the file's records to the station's index. The records that the station's other files already had are
+         * duplicates instead of good or gap records (thus the counts still add up to the records that were read).
+         */
+        void addTo(RecordIndex stationIndex) {
+            var gapDuplicates = 0;
+            var timestamp = new FineScaleReader.Timestamp();
+            for (var key : gapKeys) {
+                if (stationIndex.contains(timestamp.setKey(key))) {
+                    gapDuplicates++;
+                }
+            }
+            var otherDuplicates = stationIndex.addAll(records);
+            gapRecords -= gapDuplicates;
+            goodRecords -= otherDuplicates - gapDuplicates;
+            duplicates += otherDuplicates;
+        }
+
     }
 
 }
@@ -1,6 +1,7 @@
 package mywild.wildweather.domain.weather.schedulers.csv;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
@@ -8,214 +9,679 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 import org.apache.commons.csv.CSVRecord;
 import org.slf4j.helpers.MessageFormatter;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Component;
 import lombok.extern.slf4j.Slf4j;
 import mywild.wildweather.domain.weather.data.WeatherRepository;
 import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
 import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
-import mywild.wildweather.domain.weather.schedulers.SchedulerThreadFactory;
 import mywild.wildweather.domain.weather.schedulers.Utils;
 import mywild.wildweather.domain.weather.schedulers.api.WeatherUndergroundApiScheduler;
+import mywild.wildweather.domain.weather.schedulers.csv.SummaryCsvSchema.Column;
 
 @Slf4j
 @Component
 public class ProcessSummaryFiles {
 
-    private static final Object DATABASE_LOCK = new Object();
-
     private static final List<String> KNOWN_BAD_FILES = List.of(
         "AW Andante -> ambient-weather-high-lows-details-20241003-20251002.csv",
         "AW Corgi Corner -> ambient-weather-high-lows-details-20241003-20251002.csv"
     );
 
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    // The bounded queues between the stages hold a few batches per core, so that the parsers block (instead of using
+    // more memory) when the writer falls behind
+    private static final int QUEUE_CAPACITY = 2 * Runtime.getRuntime().availableProcessors();
+
+    private static final long WRITER_FLUSH_DELAY_MILLIS = 50;
+
+    // The source precedence, when several files have a record for the same date and category: the station's own
+    // exports (and the Ambient Weather API) come first, then Weather Underground, then the estimates
+    private static final int RANK_STATION = 0;
+    private static final int RANK_WEATHER_UNDERGROUND = 1;
+    private static final int RANK_ESTIMATES = 2;
+
+    private static final IngestBatch END_OF_RUN = new IngestBatch(null, List.of(), true);
+
     @Autowired
     private WeatherRepository repo;
-    
+
+    private volatile List<IngestStageStats> lastRunStats = List.of();
+
+    // Loaded by the first run that ingests files, and then kept up to date by the write stage
+    private volatile SavedRecords savedRecords;
+
+    /**
+     * The throughput of each stage (parse, merge and write) of the last run.
+     */
+    List<IngestStageStats> getLastRunStats() {
+        return lastRunStats;
+    }
+
+    /**
+     * Forget the saved records (when the weather table is cleared), they are loaded again by the next run.
+     */
+    void clearSavedRecords() {
+        savedRecords = null;
+    }
+
     List<Path> processAllSummaryFiles(Stream<Path> paths) throws InterruptedException {
         List<Path> csvFiles = paths
             .filter(Files::isRegularFile)
-            .filter(path -> path.toString().toLowerCase(Locale.ROOT).endsWith(".csv"))
-            .filter(path -> !WeatherCsvScheduler.hasFileBeenProcessed(CsvUtils.getCsvName(path)))
-            .sorted(Comparator.comparing(p -> p.getFileName().toString().toLowerCase(Locale.ROOT)))
+            .filter(CsvUtils::isCsvFile)
+            .filter(WeatherCsvScheduler::hasFileChanged)
             .toList();
+        return ingest(csvFiles);
+    }
+
+    boolean processSummaryFile(Path csvFile) throws InterruptedException {
+        return ingest(List.of(csvFile)).isEmpty();
+    }
+
+    /**
+     * Ingest the summary files through a pipeline of stages that are connected by bounded queues:
+     * <ul>
+     * <li>Parse: a virtual thread per file (at most one per core at a time, the largest files first) reads the file
+     * into batches of entities.</li>
+     * <li>Merge: applies the source precedence to the records of all the files of the run, so that a record is only
+     * written once per date and category, from the best source.</li>
+     * <li>Write: inserts the new records in batches (that can mix several files), and updates the changed records. The
+     * records whose keys are not saved yet are inserted without reading the database, the records that are saved with
+     * the same values are skipped without reading the database either, and only the saved records that differ are read
+     * with one query per station to be compared.</li>
+     * </ul>
+     * Each file is processed once per run, and is marked as processed once all its records have been written.
+     * @return The fine scale files (that are processed after the summary files).
+     */
+    private List<Path> ingest(List<Path> csvFiles) throws InterruptedException {
+        if (csvFiles.isEmpty()) {
+            // The stats of the last run that ingested files are kept
+            return List.of();
+        }
+        var parseStats = new StageStats("Parse");
+        var mergeStats = new StageStats("Merge");
+        var writeStats = new StageStats("Write");
+        var records = getSavedRecords();
+        BlockingQueue<IngestBatch> parsedQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<IngestBatch> mergedQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        var merger = Thread.ofVirtual().name("s-csv-merge").start(() -> merge(parsedQueue, mergedQueue, mergeStats));
+        var writer = Thread.ofVirtual().name("s-csv-write").start(() -> write(mergedQueue, records, writeStats));
         List<Path> fineScaleCsvFiles = Collections.synchronizedList(new ArrayList<>());
-        List<Callable<Void>> tasks = new ArrayList<>();
-        csvFiles.stream()
-            .filter(path -> !path.toString().toLowerCase(Locale.ROOT).contains("api-weather-underground"))
-            .forEach(csvFile -> {
-                tasks.add(() -> {
-                    var isSummaryFile = processSummaryFile(csvFile);
-                    if (!isSummaryFile) {
-                        fineScaleCsvFiles.add(csvFile);
-                    }
-                    return null;
-                });
-        });
-        ExecutorService executor = Executors.newFixedThreadPool(
-            Runtime.getRuntime().availableProcessors(),
-            new SchedulerThreadFactory("s-csv-"));
-        executor.invokeAll(tasks);
-        csvFiles.stream()
-            .filter(path -> path.toString().toLowerCase(Locale.ROOT).contains(WeatherUndergroundApiScheduler.WU_CSV_PREFIX))
-            .forEach(csvFile -> {
-                tasks.add(() -> {
-                    processSummaryFile(csvFile);
-                    return null;
-                });
-        });
-        executor.invokeAll(tasks);
-        executor.shutdown();
+        try {
+            var permits = new Semaphore(Runtime.getRuntime().availableProcessors());
+            var threadFactory = Thread.ofVirtual().name("s-csv-parse-", 1).factory();
+            try (var executor = Executors.newThreadPerTaskExecutor(threadFactory)) {
+                for (var csvFile : sortLargestFirst(csvFiles)) {
+                    permits.acquire();
+                    executor.execute(() -> {
+                        try {
+                            if (!parse(csvFile, parsedQueue, parseStats)) {
+                                fineScaleCsvFiles.add(csvFile);
+                            }
+                        }
+                        catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                        finally {
+                            permits.release();
+                        }
+                    });
+                }
+            }
+        }
+        finally {
+            // The merge and write stages finish the batches that are already queued
+            parsedQueue.put(END_OF_RUN);
+            merger.join();
+            writer.join();
+        }
+        lastRunStats = List.of(parseStats.toStats(), mergeStats.toStats(), writeStats.toStats());
+        for (var stats : lastRunStats) {
+            log.info("{} stage : {} rows in {} ms ({} rows/s)",
+                stats.stage(), stats.rows(), stats.millis(), stats.rowsPerSecond());
+        }
         return fineScaleCsvFiles;
     }
 
-    private boolean processSummaryFile(Path csvFile) {
-        StringBuilder logBuilder = new StringBuilder();
+    private SavedRecords getSavedRecords() {
+        var records = savedRecords;
+        if (records == null) {
+            var start = System.currentTimeMillis();
+            try {
+                records = SavedRecords.load(repo);
+            }
+            catch (RuntimeException ex) {
+                // The records are then all compared with the database during this run
+                log.error("Could not load the saved records: {}", ex.getMessage(), ex);
+                return new SavedRecords();
+            }
+            log.info("Loaded {} saved records in {} ms", records.size(), System.currentTimeMillis() - start);
+            savedRecords = records;
+        }
+        return records;
+    }
+
+    private static List<Path> sortLargestFirst(List<Path> csvFiles) {
+        Map<Path, Long> sizes = new HashMap<>();
+        for (var csvFile : csvFiles) {
+            try {
+                sizes.put(csvFile, Files.size(csvFile));
+            }
+            catch (IOException ex) {
+                // The error is reported when the file is parsed
+                sizes.put(csvFile, 0L);
+            }
+        }
+        List<Path> sorted = new ArrayList<>(csvFiles);
+        sorted.sort(Comparator.comparing((Path csvFile) -> sizes.get(csvFile)).reversed()
+            .thenComparing(csvFile -> csvFile.getFileName().toString().toLowerCase(Locale.ROOT)));
+        return sorted;
+    }
+
+    private static int getSourceRank(String csvName) {
+        if (csvName.contains("estimates-")) {
+            return RANK_ESTIMATES;
+        }
+        if (csvName.contains(WeatherUndergroundApiScheduler.WU_CSV_PREFIX)) {
+            return RANK_WEATHER_UNDERGROUND;
+        }
+        return RANK_STATION;
+    }
+
+    /**
+     * The parse stage of a file.
+     * @return False if the file is not a summary file (the file is then not sent to the next stages).
+     */
+    private boolean parse(Path csvFile, BlockingQueue<IngestBatch> parsedQueue, StageStats stats)
+            throws InterruptedException {
         var csvName = CsvUtils.getCsvName(csvFile);
-        logBuilder.append("----------------").append(System.lineSeparator());
-        logBuilder.append(MessageFormatter.format("Processing File : {}", csvName).getMessage()).append(System.lineSeparator());
-        var newRecords = 0;
-        var duplicates = 0;
-        var warnings = 0;
-        var errors = 0;
+        var file = new IngestFile(csvName, Utils.getStationName(csvFile), getSourceRank(csvName),
+            // A file that was processed before has changed, thus its rows that differ from the saved rows are updated.
+            // The rows that were removed from the file are kept: the weather rows don't record which file they came
+            // from, and the station's other files (its overlapping exports and the API files) can have the same days.
+            WeatherCsvScheduler.hasFileBeenProcessed(csvName));
         var missing = csvName.contains("estimates-") ? 99.99 : 0;
-        try (var reader = Files.newBufferedReader(csvFile)) {
-            String[] headers = CsvUtils.getHeaders(reader);
-            var isSummaryCsv = headers[0].equals("COL0");
-            if (isSummaryCsv) {
-                List<CSVRecord> records = CsvUtils.getRecords(reader, headers);
-                for (CSVRecord record : records) {
+        List<IngestRow> rows = new ArrayList<>(INSERT_BATCH_SIZE);
+        try (var reader = CsvUtils.newBufferedReader(csvFile)) {
+            // The columns are resolved once per header, and each record is decoded by position into the same row
+            var schema = SummaryCsvSchema.compile(reader.readLine());
+            var headers = schema.getHeaders();
+            if (!schema.isSummary()) {
+                log.debug("Delaying fine scale file until all summary files have been processed : {}", csvName);
+                return false;
+            }
+            stats.start();
+            var row = new SummaryCsvSchema.Row();
+            try (var parser = CsvUtils.parseRecords(reader, headers)) {
+                for (CSVRecord record : parser) {
                     try {
-                        var categoryRecord = record.get("COL0");
+                        var categoryRecord = schema.get(record, Column.CATEGORY);
                         if (!categoryRecord.contains("Datetime")) {
-                            var category = WeatherCategory.valueOf(categoryRecord.substring(0, 1));
-                            var date = LocalDate.parse(record.get("Date"));
-                            var station = Utils.getStationName(csvFile);
-                            var temperature = getDoubleValue(record.get("Outdoor Temperature"));
-                            var windSpeed = getDoubleValue(record.get("Wind Speed"));
-                            var windMax = getDoubleValue(record.get("Max Daily Gust"));
-                            var windDirection = getStringValue(record.get("Wind Direction"));
-                            var rainRate = getDoubleValue(record.get("Rain Rate"));
-                            var rainDaily = getDoubleValue(record.get("Daily Rain"));
-                            var pressure = getDoubleValue(record.get("Relative Pressure"));
-                            var humidity = getDoubleValue(record.get("Humidity"));
-                            var uvRadiationIndex = getDoubleValue(record.get("Ultra-Violet Radiation Index"));
-                            // TODO: Maybe better to build a map in memory and then save the map once-off after all the tasks are done
-                            synchronized (DATABASE_LOCK) {
-                                var entity = repo.findByDateAndStationAndCategory(date, station, category);
-                                if (entity == null) {
-                                    repo.save(
-                                        WeatherEntity.builder()
-                                            .station(station)
-                                            .date(date)
-                                            .category(category)
-                                            .temperature(temperature)
-                                            .windSpeed(windSpeed)
-                                            .windMax(windMax)
-                                            .windDirection(windDirection)
-                                            .rainRate(rainRate)
-                                            .rainDaily(rainDaily)
-                                            .pressure(pressure)
-                                            .humidity(humidity)
-                                            .uvRadiationIndex(uvRadiationIndex)
-                                            .missing(missing)
-                                        .build()
-                                    );
-                                    newRecords++;
-                                }
-                                else {
-                                    if (Objects.equals(entity.getTemperature(), temperature)
-                                            || Objects.equals(entity.getWindSpeed(), windSpeed)
-                                            || Objects.equals(entity.getWindMax(), windMax)
-                                            || Objects.equals(entity.getWindDirection(), windDirection)
-                                            || Objects.equals(entity.getRainRate(), rainRate)
-                                            || Objects.equals(entity.getRainDaily(), rainDaily)
-                                            || Objects.equals(entity.getPressure(), pressure)
-                                            || Objects.equals(entity.getHumidity(), humidity)
-                                            || Objects.equals(entity.getUvRadiationIndex(), uvRadiationIndex)) { 
-                                        log.trace("Ignore Duplicate : {} - {} - {}", station, date, category);
-                                        duplicates++;
-                                    }
-                                    else {
-                                        if (!csvName.contains("api-weather-underground")) { // Don't log for weather underground files
-                                            logBuilder.append("Inconsistent Duplicate!").append(System.lineSeparator());
-                                            logBuilder.append(MessageFormatter.format("   Entity : {}", entity).getMessage()).append(System.lineSeparator());
-                                            logBuilder.append(MessageFormatter.format("   Record : {}", record).getMessage()).append(System.lineSeparator());   
-                                        }
-                                        warnings++;
-                                    }
-                                }
+                            var invalidColumn = schema.decode(record, row);
+                            if (invalidColumn != null) {
+                                logNumberFormatError(csvName, headers, record, "Not a number in the column "
+                                    + invalidColumn.getHeader() + ": \"" + schema.get(record, invalidColumn) + "\"");
+                                file.parseWarnings++;
+                            }
+                            else {
+                                rows.add(new IngestRow(file, WeatherEntity.builder()
+                                    .station(file.station)
+                                    .date(row.getDate())
+                                    .category(WeatherCategory.valueOf(categoryRecord.substring(0, 1)))
+                                    .temperature(row.getValue(Column.TEMPERATURE))
+                                    .windSpeed(row.getValue(Column.WIND_SPEED))
+                                    .windMax(row.getValue(Column.WIND_MAX))
+                                    .windDirection(row.getWindDirection())
+                                    .rainRate(row.getValue(Column.RAIN_RATE))
+                                    .rainDaily(row.getValue(Column.RAIN_DAILY))
+                                    .pressure(row.getValue(Column.PRESSURE))
+                                    .humidity(row.getValue(Column.HUMIDITY))
+                                    .uvRadiationIndex(row.getValue(Column.UV_RADIATION_INDEX))
+                                    .missing(missing)
+                                .build(), record, false));
                             }
                         }
                     }
-                    catch (NumberFormatException ex) {
-                        if (KNOWN_BAD_FILES.contains(csvName) || csvName.contains("api-weather-underground")) {
-                            log.debug("Could not process record due to (known) number format error.");
-                            log.debug("   CSV File : {}", csvName);
-                            log.trace("   Headers  : {}", Arrays.toString(headers));
-                            log.debug("   Record   : {}", record.toString());
-                            log.debug("   Error    : {}", ex.getMessage());
-                        }
-                        else {
-                            log.warn("Could not process record due to number format error.");
-                            log.warn("   CSV File : {}", csvName);
-                            log.trace("   Headers  : {}", Arrays.toString(headers));
-                            log.warn("   Record   : {}", record.toString());
-                            log.warn("   Error    : {}", ex.getMessage());
-                        }
-                        log.trace(ex.getMessage(), ex);
-                        warnings++;
-                    }
-                    catch (IllegalArgumentException | OptimisticLockingFailureException | IllegalStateException ex) {
+                    catch (IllegalArgumentException | IllegalStateException ex) {
                         log.error("Could not process record!");
                         log.error("   CSV File : {}", csvName);
                         log.error("   Headers  : {}", Arrays.toString(headers));
                         log.error("   Record   : {}", record.toString());
                         log.error(ex.getMessage(), ex);
-                        errors++;
+                        file.parseErrors++;
+                    }
+                    // The records are sent in batches while the file is being read, so that memory use does not depend
+                    // on the file size
+                    if (rows.size() >= INSERT_BATCH_SIZE) {
+                        stats.add(rows.size());
+                        parsedQueue.put(new IngestBatch(file, rows, false));
+                        rows = new ArrayList<>(INSERT_BATCH_SIZE);
                     }
                 }
             }
-            else {
-                logBuilder.append("   > Delaying fine scale file until all summary files have been processed...").append(System.lineSeparator());
-                return false;
-            }
         }
-        catch (IOException ex) {
+        catch (IOException | UncheckedIOException ex) {
             log.error(ex.getMessage(), ex);
-            errors++;
+            file.parseErrors++;
         }
-        logBuilder.append(MessageFormatter.format("   New Records : {}", newRecords).getMessage()).append(System.lineSeparator());
-        logBuilder.append(MessageFormatter.format("   Duplicates  : {}", duplicates).getMessage()).append(System.lineSeparator());
-        logBuilder.append(MessageFormatter.format("   Warnings    : {}", warnings).getMessage()).append(System.lineSeparator());
-        logBuilder.append(MessageFormatter.format("   Errors      : {}", errors).getMessage()).append(System.lineSeparator());
-        log.info(logBuilder.toString());
-        WeatherCsvScheduler.markFileAsProcessed(csvName);
+        // The last batch (even when empty) tells the next stages that the file has been parsed
+        stats.add(rows.size());
+        parsedQueue.put(new IngestBatch(file, rows, true));
         return true;
     }
 
-    private Double getDoubleValue(String value) {
-        if (value == null || value.isBlank()) {
-            return null;
+    /**
+     * The merge stage, that drops the records that were already sent by a file of the same or a better source during
+     * this run, and marks the records that replace a record from a worse source.
+     */
+    private static void merge(BlockingQueue<IngestBatch> parsedQueue, BlockingQueue<IngestBatch> mergedQueue,
+            StageStats stats) {
+        Map<String, SourceRanks> stationRanks = new HashMap<>();
+        try {
+            while (true) {
+                var batch = parsedQueue.take();
+                if (batch == END_OF_RUN) {
+                    mergedQueue.put(END_OF_RUN);
+                    return;
+                }
+                stats.start();
+                var file = batch.file();
+                var ranks = stationRanks.computeIfAbsent(file.station, _ -> new SourceRanks());
+                List<IngestRow> rows = new ArrayList<>(batch.rows().size());
+                for (var row : batch.rows()) {
+                    var entity = row.entity();
+                    var previousRank = ranks.put(entity.getDate(), entity.getCategory(), file.rank);
+                    if (previousRank < 0) {
+                        rows.add(row);
+                    }
+                    else if (file.rank < previousRank) {
+                        rows.add(new IngestRow(file, entity, row.record(), true));
+                    }
+                    else {
+                        log.trace("Ignore Duplicate : {} - {} - {}", file.station, entity.getDate(), entity.getCategory());
+                        file.mergedDuplicates++;
+                    }
+                }
+                stats.add(batch.rows().size());
+                mergedQueue.put(new IngestBatch(file, rows, batch.isLast()));
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The write stage, that saves the records in batches of up to {@link #INSERT_BATCH_SIZE} (a partial batch is saved
+     * when no more records arrive shortly), and logs the results of each file once all its records are saved. Each batch
+     * is committed on its own, thus a file whose batch fails is left partly saved: it is not marked as processed, and the
+     * next run saves the rest of it (and finds the rows that were already saved as duplicates).
+     */
+    private void write(BlockingQueue<IngestBatch> mergedQueue, SavedRecords records, StageStats stats) {
+        List<IngestRow> rows = new ArrayList<>(INSERT_BATCH_SIZE);
+        List<IngestFile> parsedFiles = new ArrayList<>();
+        try {
+            while (true) {
+                var batch = rows.isEmpty() && parsedFiles.isEmpty()
+                    ? mergedQueue.take()
+                    : mergedQueue.poll(WRITER_FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                if (batch == null || batch == END_OF_RUN) {
+                    saveRows(rows, parsedFiles, records, stats);
+                    if (batch == END_OF_RUN) {
+                        return;
+                    }
+                    continue;
+                }
+                for (var row : batch.rows()) {
+                    rows.add(row);
+                    if (rows.size() >= INSERT_BATCH_SIZE) {
+                        saveRows(rows, parsedFiles, records, stats);
+                    }
+                }
+                if (batch.isLast()) {
+                    parsedFiles.add(batch.file());
+                }
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Save the rows, then finish the parsed files (since all their rows have now been saved).
+     */
+    private void saveRows(List<IngestRow> rows, List<IngestFile> parsedFiles, SavedRecords records, StageStats stats) {
+        if (!rows.isEmpty()) {
+            stats.start();
+            // Another run (or the fine scale files) may be writing the same stations
+            try (var _ = StationLocks.lock(rows.stream().map(row -> row.file().station).distinct().toList())) {
+                saveEntities(rows, records);
+            }
+            catch (RuntimeException ex) {
+                // The stage keeps running (otherwise the parse stage would block on the full queues)
+                var files = rows.stream().map(IngestRow::file).distinct().toList();
+                log.error("Could not save the records of {}, the files will be processed again during the next run.",
+                    files.stream().map(file -> file.csvName).toList());
+                log.error(ex.getMessage(), ex);
+                files.forEach(file -> {
+                    file.isSaved = false;
+                    file.writeErrors++;
+                });
+            }
+            stats.add(rows.size());
+            rows.clear();
+        }
+        parsedFiles.forEach(ProcessSummaryFiles::finishFile);
+        parsedFiles.clear();
+    }
+
+    private static void finishFile(IngestFile file) {
+        StringBuilder logBuilder = new StringBuilder();
+        logBuilder.append("----------------").append(System.lineSeparator());
+        logBuilder.append(MessageFormatter.format("Processing File : {}", file.csvName).getMessage()).append(System.lineSeparator());
+        logBuilder.append(file.writeLog);
+        logBuilder.append(MessageFormatter.format("   New Records : {}", file.newRecords).getMessage()).append(System.lineSeparator());
+        logBuilder.append(MessageFormatter.format("   Updated     : {}", file.updatedRecords).getMessage()).append(System.lineSeparator());
+        logBuilder.append(MessageFormatter.format("   Duplicates  : {}", file.mergedDuplicates + file.duplicates).getMessage()).append(System.lineSeparator());
+        logBuilder.append(MessageFormatter.format("   Warnings    : {}", file.parseWarnings + file.writeWarnings).getMessage()).append(System.lineSeparator());
+        logBuilder.append(MessageFormatter.format("   Errors      : {}", file.parseErrors + file.writeErrors).getMessage()).append(System.lineSeparator());
+        log.info(logBuilder.toString());
+        if (file.isSaved) {
+            WeatherCsvScheduler.markFileAsProcessed(file.csvName);
+        }
+    }
+
+    private static void logNumberFormatError(String csvName, String[] headers, CSVRecord record, String error) {
+        if (KNOWN_BAD_FILES.contains(csvName) || csvName.contains("api-weather-underground")) {
+            log.debug("Could not process record due to (known) number format error.");
+            log.debug("   CSV File : {}", csvName);
+            log.trace("   Headers  : {}", Arrays.toString(headers));
+            log.debug("   Record   : {}", record.toString());
+            log.debug("   Error    : {}", error);
+        }
+        else {
+            log.warn("Could not process record due to number format error.");
+            log.warn("   CSV File : {}", csvName);
+            log.trace("   Headers  : {}", Arrays.toString(headers));
+            log.warn("   Record   : {}", record.toString());
+            log.warn("   Error    : {}", error);
+        }
+    }
+
+    /**
+     * Insert the entities that are not known to be saved, skip the entities that are saved with the same values, and
+     * compare the other entities with the saved entities (read with one query per station). The saved entities that
+     * differ are updated when their file changed (since it was processed before), or when they come from a worse source
+     * than the new entity.
+     */
+    private void saveEntities(List<IngestRow> rows, SavedRecords records) {
+        List<IngestRow> newRows = new ArrayList<>(rows.size());
+        List<IngestRow> savedRows = new ArrayList<>();
+        for (var row : rows) {
+            var newEntity = row.entity();
+            if (records.hasSameValues(newEntity)) {
+                log.trace("Ignore Duplicate : {} - {} - {}", row.file().station, newEntity.getDate(), newEntity.getCategory());
+                row.file().duplicates++;
+            }
+            else if (records.contains(row.file().station, newEntity.getDate(), newEntity.getCategory())) {
+                savedRows.add(row);
+            }
+            else {
+                newRows.add(row);
+            }
+        }
+        Map<IngestFile, LocalDate[]> changedDates = new HashMap<>();
+        if (!newRows.isEmpty()) {
+            var inserted = repo.insertNew(newRows.stream().map(IngestRow::entity).toList());
+            for (int i = 0; i < newRows.size(); i++) {
+                var row = newRows.get(i);
+                if (inserted[i]) {
+                    row.file().newRecords++;
+                    records.put(row.entity());
+                    markDateAsChanged(changedDates, row.file(), row.entity().getDate());
+                }
+                else {
+                    // Saved since the records were loaded (the completely missing days)
+                    savedRows.add(row);
+                }
+            }
+        }
+        if (!savedRows.isEmpty()) {
+            updateEntities(savedRows, records, changedDates);
+        }
+        // Each batch is committed separately, thus its changes are marked straight away
+        changedDates.forEach((file, dates) ->
+            WeatherCsvScheduler.markWeatherAsChanged(file.station, file.csvName, dates[0], dates[1]));
+    }
+
+    private void updateEntities(List<IngestRow> rows, SavedRecords records, Map<IngestFile, LocalDate[]> changedDates) {
+        var existingEntities = findExistingEntities(rows);
+        List<WeatherEntity> updatedEntities = new ArrayList<>();
+        List<IngestFile> updatedFiles = new ArrayList<>();
+        for (var row : rows) {
+            var file = row.file();
+            var newEntity = row.entity();
+            var entity = existingEntities.get(file.station).get(new DateCategory(newEntity.getDate(), newEntity.getCategory()));
+            if (entity != null) {
+                records.put(entity);
+            }
+            if (entity == null || hasSameValues(entity, newEntity)) {
+                log.trace("Ignore Duplicate : {} - {} - {}", file.station, newEntity.getDate(), newEntity.getCategory());
+                file.duplicates++;
+            }
+            else if (file.isChangedFile || row.isOverride()) {
+                // The missing percentage comes from the fine scale files, thus it is kept, unless the row replaces the
+                // row of a worse source (an estimate is not the station's data, and its missing percentage shows that)
+                updatedEntities.add(newEntity.toBuilder()
+                    .id(entity.getId())
+                    .missing(row.isOverride() ? newEntity.getMissing() : entity.getMissing())
+                    .build());
+                updatedFiles.add(file);
+                markDateAsChanged(changedDates, file, newEntity.getDate());
+            }
+            else {
+                if (!file.csvName.contains("api-weather-underground")) { // Don't log for weather underground files
+                    file.writeLog.append("Inconsistent Duplicate!").append(System.lineSeparator());
+                    file.writeLog.append(MessageFormatter.format("   Entity : {}", entity).getMessage()).append(System.lineSeparator());
+                    file.writeLog.append(MessageFormatter.format("   Record : {}", row.record()).getMessage()).append(System.lineSeparator());
+                }
+                file.writeWarnings++;
+            }
+        }
+        if (!updatedEntities.isEmpty()) {
+            repo.saveAll(updatedEntities);
+            updatedEntities.forEach(records::put);
+            updatedFiles.forEach(file -> file.updatedRecords++);
+        }
+    }
+
+    private static void markDateAsChanged(Map<IngestFile, LocalDate[]> changedDates, IngestFile file, LocalDate date) {
+        var dates = changedDates.computeIfAbsent(file, _ -> new LocalDate[] { date, date });
+        dates[0] = date.isBefore(dates[0]) ? date : dates[0];
+        dates[1] = date.isAfter(dates[1]) ? date : dates[1];
+    }
+
+    private static boolean hasSameValues(WeatherEntity entity, WeatherEntity newEntity) {
+        return Objects.equals(entity.getTemperature(), newEntity.getTemperature())
+            && Objects.equals(entity.getWindSpeed(), newEntity.getWindSpeed())
+            && Objects.equals(entity.getWindMax(), newEntity.getWindMax())
+            && Objects.equals(entity.getWindDirection(), newEntity.getWindDirection())
+            && Objects.equals(entity.getRainRate(), newEntity.getRainRate())
+            && Objects.equals(entity.getRainDaily(), newEntity.getRainDaily())
+            && Objects.equals(entity.getPressure(), newEntity.getPressure())
+            && Objects.equals(entity.getHumidity(), newEntity.getHumidity())
+            && Objects.equals(entity.getUvRadiationIndex(), newEntity.getUvRadiationIndex());
+    }
+
+    /**
+     * The saved entities of the stations of the rows, for the dates of those rows.
+     */
+    private Map<String, Map<DateCategory, WeatherEntity>> findExistingEntities(List<IngestRow> rows) {
+        Map<String, LocalDate[]> stationDates = new HashMap<>();
+        for (var row : rows) {
+            var date = row.entity().getDate();
+            var dates = stationDates.computeIfAbsent(row.file().station, _ -> new LocalDate[] { date, date });
+            dates[0] = date.isBefore(dates[0]) ? date : dates[0];
+            dates[1] = date.isAfter(dates[1]) ? date : dates[1];
         }
-        return Double.valueOf(value);
+        Map<String, Map<DateCategory, WeatherEntity>> existingEntities = new HashMap<>();
+        stationDates.forEach((station, dates) -> {
+            Map<DateCategory, WeatherEntity> stationEntities = new HashMap<>();
+            for (var entity : repo.findAllByStationAndDateBetween(station, dates[0], dates[1])) {
+                stationEntities.put(new DateCategory(entity.getDate(), entity.getCategory()), entity);
+            }
+            existingEntities.put(station, stationEntities);
+        });
+        return existingEntities;
     }
 
-    private String getStringValue(String value) {
-        if (value == null || value.isBlank()) {
-            return null;
+    /**
+     * A CSV file that is being ingested. Each counter is only updated by one stage, and the counters are read by the
+     * write stage after it received the file's last batch (the queues make the earlier updates visible).
+     */
+    private static final class IngestFile {
+        private final String csvName;
+        private final String station;
+        private final int rank;
+        private final boolean isChangedFile;
+        // Parse stage
+        private int parseWarnings;
+        private int parseErrors;
+        // Merge stage
+        private int mergedDuplicates;
+        // Write stage
+        private int newRecords;
+        private int updatedRecords;
+        private int duplicates;
+        private int writeWarnings;
+        private int writeErrors;
+        private boolean isSaved = true;
+        private final StringBuilder writeLog = new StringBuilder();
+
+        private IngestFile(String csvName, String station, int rank, boolean isChangedFile) {
+            this.csvName = csvName;
+            this.station = station;
+            this.rank = rank;
+            this.isChangedFile = isChangedFile;
         }
-        return value;
+    }
+
+    /**
+     * A parsed record.
+     * @param isOverride Whether the record replaces a record from a worse source.
+     */
+    private record IngestRow(
+        IngestFile file,
+        WeatherEntity entity,
+        CSVRecord record,
+        boolean isOverride
+    ) {
+        // Record automatically generates: equals, hashCode and toString
+    }
+
+    /**
+     * Some of the records of a file.
+     * @param isLast Whether it is the file's last batch (that may be empty).
+     */
+    private record IngestBatch(
+        IngestFile file,
+        List<IngestRow> rows,
+        boolean isLast
+    ) {
+        // Record automatically generates: equals, hashCode and toString
+    }
+
+    /**
+     * The best source rank that was sent for each date and category of a station, stored compactly by day (a station
+     * has a few thousand days of records).
+     */
+    private static final class SourceRanks {
+        private static final int CATEGORIES = WeatherCategory.values().length;
+        private long firstDay;
+        // The rank plus one per day and category (0 when no record was sent)
+        private byte[] ranks = new byte[0];
+
+        /**
+         * Keep the better of the given rank and the previous rank.
+         * @return The previous rank (-1 if there was none).
+         */
+        private int put(LocalDate date, WeatherCategory category, int rank) {
+            var day = date.toEpochDay();
+            var days = ranks.length / CATEGORIES;
+            if (days == 0) {
+                firstDay = day;
+                ranks = new byte[366 * CATEGORIES];
+            }
+            else if (day < firstDay) {
+                var grownDays = (int) Math.max(firstDay - day, days / 2);
+                var grown = new byte[(days + grownDays) * CATEGORIES];
+                System.arraycopy(ranks, 0, grown, grownDays * CATEGORIES, ranks.length);
+                ranks = grown;
+                firstDay -= grownDays;
+            }
+            else if (day - firstDay >= days) {
+                ranks = Arrays.copyOf(ranks, (int) Math.max(day - firstDay + 1, days + days / 2) * CATEGORIES);
+            }
+            var index = (int) (day - firstDay) * CATEGORIES + category.ordinal();
+            var previousRank = ranks[index] - 1;
+            if (previousRank < 0 || rank < previousRank) {
+                ranks[index] = (byte) (rank + 1);
+            }
+            return previousRank;
+        }
+    }
+
+    /**
+     * The rows and duration of a stage, from the start of its first row until the end of its last row.
+     */
+    private static final class StageStats {
+        private final String stage;
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong startNanos = new AtomicLong();
+        private final AtomicLong endNanos = new AtomicLong();
+
+        private StageStats(String stage) {
+            this.stage = stage;
+        }
+
+        private void start() {
+            startNanos.compareAndSet(0, System.nanoTime());
+        }
+
+        private void add(int count) {
+            rows.addAndGet(count);
+            endNanos.accumulateAndGet(System.nanoTime(), Math::max);
+        }
+
+        private IngestStageStats toStats() {
+            var start = startNanos.get();
+            var end = endNanos.get();
+            return new IngestStageStats(stage, rows.get(),
+                start == 0 || end < start ? 0 : TimeUnit.NANOSECONDS.toMillis(end - start));
+        }
+    }
+
+    private record DateCategory(
+        LocalDate date,
+        WeatherCategory category
+    ) {
+        // Record automatically generates: equals, hashCode and toString
     }
 
 }
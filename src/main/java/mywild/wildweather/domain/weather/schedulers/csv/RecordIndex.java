@@ -0,0 +1,211 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The distinct timestamps of a station's fine scale records, to detect the duplicates and count the records per day.
+ * <p>
+ * The records are every 5 minutes, on whole minutes, thus the timestamps are kept as bits of the local epoch minute
+ * (one bitset per UTC offset, usually one or two per station), which takes a few KB per station and year. The rare
+ * timestamps with seconds are kept as their exact keys instead.
+ * <p>
+ * An index is not thread safe: each file is indexed on its own, and then merged into its station's index.
+ */
+final class RecordIndex {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final Map<Integer, MinuteBits> minutesPerOffset = new HashMap<>();
+    private final Set<Long> otherKeys = new HashSet<>();
+    // The records of a file are mostly in the same offset (without boxing it for every record)
+    private int lastOffsetSeconds;
+    private MinuteBits lastMinutes;
+
+    /**
+     * The number of records per day, in the timestamps' own offset.
+     * @param firstDay The epoch day of the first count.
+     */
+    record DayCounts(
+        long firstDay,
+        int[] counts
+    ) {
+        // Record automatically generates: equals, hashCode and toString
+    }
+
+    /**
+     * @return Whether the timestamp was not in the index yet.
+     */
+    boolean add(FineScaleReader.Timestamp timestamp) {
+        if (timestamp.epochSecond() % 60 != 0 || timestamp.offsetSeconds() % 60 != 0) {
+            return otherKeys.add(timestamp.key());
+        }
+        if (lastMinutes == null || lastOffsetSeconds != timestamp.offsetSeconds()) {
+            lastOffsetSeconds = timestamp.offsetSeconds();
+            lastMinutes = minutesPerOffset.computeIfAbsent(lastOffsetSeconds, _ -> new MinuteBits());
+        }
+        return lastMinutes.set((timestamp.epochSecond() + timestamp.offsetSeconds()) / 60);
+    }
+
+    boolean contains(FineScaleReader.Timestamp timestamp) {
+        if (timestamp.epochSecond() % 60 != 0 || timestamp.offsetSeconds() % 60 != 0) {
+            return otherKeys.contains(timestamp.key());
+        }
+        var minutes = minutesPerOffset.get(timestamp.offsetSeconds());
+        return minutes != null && minutes.get((timestamp.epochSecond() + timestamp.offsetSeconds()) / 60);
+    }
+
+    /**
+     * Add the timestamps of the other index.
+     * @return The number of the other index's timestamps that were already in this index.
+     */
+    int addAll(RecordIndex other) {
+        var duplicates = 0;
+        for (var entry : other.minutesPerOffset.entrySet()) {
+            duplicates += minutesPerOffset.computeIfAbsent(entry.getKey(), _ -> new MinuteBits()).or(entry.getValue());
+        }
+        for (var key : other.otherKeys) {
+            if (!otherKeys.add(key)) {
+                duplicates++;
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * @return No counts if the index is empty.
+     */
+    DayCounts countDays() {
+        var firstDay = Long.MAX_VALUE;
+        var lastDay = Long.MIN_VALUE;
+        for (var minutes : minutesPerOffset.values()) {
+            if (!minutes.isEmpty()) {
+                firstDay = Math.min(firstDay, Math.floorDiv(minutes.firstMinute(), MINUTES_PER_DAY));
+                lastDay = Math.max(lastDay, Math.floorDiv(minutes.lastMinute(), MINUTES_PER_DAY));
+            }
+        }
+        var timestamp = new FineScaleReader.Timestamp();
+        for (var key : otherKeys) {
+            var day = timestamp.setKey(key).epochDay();
+            firstDay = Math.min(firstDay, day);
+            lastDay = Math.max(lastDay, day);
+        }
+        if (firstDay > lastDay) {
+            return new DayCounts(0, new int[0]);
+        }
+        var counts = new int[Math.toIntExact(lastDay - firstDay + 1)];
+        for (var minutes : minutesPerOffset.values()) {
+            minutes.countDays(firstDay, counts);
+        }
+        for (var key : otherKeys) {
+            counts[(int) (timestamp.setKey(key).epochDay() - firstDay)]++;
+        }
+        return new DayCounts(firstDay, counts);
+    }
+
+    /**
+     * A bitset of epoch minutes, that grows in both directions (the files are in descending order).
+     */
+    private static final class MinuteBits {
+
+        // The index of the first word, counted from the epoch
+        private long firstWord;
+        private long[] words = new long[0];
+
+        boolean isEmpty() {
+            return words.length == 0;
+        }
+
+        boolean get(long minute) {
+            var index = Math.floorDiv(minute, 64) - firstWord;
+            return index >= 0 && index < words.length && (words[(int) index] & (1L << Math.floorMod(minute, 64))) != 0;
+        }
+
+        /**
+         * @return Whether the bit was not set yet.
+         */
+        boolean set(long minute) {
+            var word = Math.floorDiv(minute, 64);
+            ensureWords(word, word);
+            var index = (int) (word - firstWord);
+            var bit = 1L << Math.floorMod(minute, 64);
+            if ((words[index] & bit) != 0) {
+                return false;
+            }
+            words[index] |= bit;
+            return true;
+        }
+
+        /**
+         * @return The number of the other bits that were already set.
+         */
+        int or(MinuteBits other) {
+            if (other.isEmpty()) {
+                return 0;
+            }
+            ensureWords(other.firstWord, other.firstWord + other.words.length - 1);
+            var duplicates = 0;
+            var offset = (int) (other.firstWord - firstWord);
+            for (int i = 0; i < other.words.length; i++) {
+                duplicates += Long.bitCount(words[offset + i] & other.words[i]);
+                words[offset + i] |= other.words[i];
+            }
+            return duplicates;
+        }
+
+        long firstMinute() {
+            for (int i = 0; i < words.length; i++) {
+                if (words[i] != 0) {
+                    return (firstWord + i) * 64 + Long.numberOfTrailingZeros(words[i]);
+                }
+            }
+            throw new IllegalStateException("No minutes");
+        }
+
+        long lastMinute() {
+            for (int i = words.length - 1; i >= 0; i--) {
+                if (words[i] != 0) {
+                    return (firstWord + i) * 64 + 63 - Long.numberOfLeadingZeros(words[i]);
+                }
+            }
+            throw new IllegalStateException("No minutes");
+        }
+
+        void countDays(long firstDay, int[] counts) {
+            for (int i = 0; i < words.length; i++) {
+                var word = words[i];
+                while (word != 0) {
+                    var minute = (firstWord + i) * 64 + Long.numberOfTrailingZeros(word);
+                    counts[(int) (Math.floorDiv(minute, MINUTES_PER_DAY) - firstDay)]++;
+                    word &= word - 1;
+                }
+            }
+        }
+
+        /**
+         * Grow the words to include the range, by at least doubling them (to not copy them for every new day).
+         */
+        private void ensureWords(long startWord, long endWord) {
+            if (isEmpty()) {
+                firstWord = startWord;
+                words = new long[(int) (endWord - startWord + 1)];
+                return;
+            }
+            var lastWord = firstWord + words.length - 1;
+            if (startWord >= firstWord && endWord <= lastWord) {
+                return;
+            }
+            var growth = words.length;
+            var newFirstWord = startWord < firstWord ? Math.min(startWord, firstWord - growth) : firstWord;
+            var newLastWord = endWord > lastWord ? Math.max(endWord, lastWord + growth) : lastWord;
+            var newWords = new long[Math.toIntExact(newLastWord - newFirstWord + 1)];
+            System.arraycopy(words, 0, newWords, (int) (firstWord - newFirstWord), words.length);
+            firstWord = newFirstWord;
+            words = newWords;
+        }
+
+    }
+
+}
@@ -1,10 +0,0 @@
-package mywild.wildweather.domain.weather.schedulers.csv;
-
-import java.time.LocalDate;
-
-public record RecordsPerDateKey(
-    String station,
-    LocalDate date
-) {
-    // Record automatically generates: equals, hashCode and toString
-}
@@ -0,0 +1,186 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import mywild.wildweather.domain.weather.data.WeatherRepository;
+import mywild.wildweather.domain.weather.data.WeatherRowCallback;
+import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
+
+/**
+ * The saved weather records (station, day and category), with the values that the summary ingest compares, so that the
+ * summary records that are certainly new can be inserted without reading the database first, and the records that are
+ * unchanged are found without reading the database either. The records are stored compactly by day, per station, with
+ * the exact values of the saved records (NaN for null). Only a record that differs from its saved values (or whose key
+ * is not known) is compared with the saved record in the database.
+ * <p>
+ * The records are loaded once, and are then kept up to date by the summary ingest (the only other changes to the
+ * weather table are the missing percentages, that are not compared, and the completely missing days, which are unknown
+ * here and thus found when their insert fails). A station's records are only read and written while its
+ * {@link StationLocks} lock is held, thus only the map of the stations is shared between threads.
+ */
+final class SavedRecords {
+
+    private static final int CATEGORIES = WeatherCategory.values().length;
+
+    // The compared values, in the order of the WeatherRowCallback values (that ends with the missing percentage)
+    private static final int VALUES = WeatherRowCallback.MISSING;
+
+    private final Map<String, StationRecords> stations = new ConcurrentHashMap<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Read all the saved records.
+     */
+    static SavedRecords load(WeatherRepository repo) {
+        var savedRecords = new SavedRecords();
+        repo.scanAll((station, date, category, windDirection, values) ->
+            savedRecords.put(station, date, category, windDirection, values));
+        return savedRecords;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * @return False if the record is not known to be saved.
+     */
+    boolean contains(String station, LocalDate date, WeatherCategory category) {
+        var records = stations.get(station);
+        return records != null && records.contains(date.toEpochDay(), category);
+    }
+
+    /**
+     * @return True if the record is saved with exactly the same values, false if it differs or is not known to be saved.
+     */
+    boolean hasSameValues(WeatherEntity entity) {
+        var records = stations.get(entity.getStation());
+        if (records == null || !records.contains(entity.getDate().toEpochDay(), entity.getCategory())) {
+            return false;
+        }
+        var index = records.getIndex(entity.getDate().toEpochDay(), entity.getCategory());
+        var values = getValues(entity);
+        for (int i = 0; i < VALUES; i++) {
+            var value = values[i];
+            // A NaN value can't be told apart from a null value, thus it is compared with the database
+            if (Double.isNaN(value) && isNotNull(entity, i)) {
+                return false;
+            }
+            if (Double.doubleToLongBits(value) != Double.doubleToLongBits(records.values[index * VALUES + i])) {
+                return false;
+            }
+        }
+        return Objects.equals(entity.getWindDirection(), records.windDirections[index]);
+    }
+
+    /**
+     * Remember a record that was saved (or found in the database), with its values.
+     */
+    void put(WeatherEntity entity) {
+        put(entity.getStation(), entity.getDate(), entity.getCategory(), entity.getWindDirection(), getValues(entity));
+    }
+
+    private void put(String station, LocalDate date, WeatherCategory category, String windDirection, double[] values) {
+        if (stations.computeIfAbsent(station, _ -> new StationRecords())
+                .put(date.toEpochDay(), category, windDirection, values)) {
+            size.incrementAndGet();
+        }
+    }
+
+    private static double[] getValues(WeatherEntity entity) {
+        var values = new double[VALUES];
+        values[WeatherRowCallback.TEMPERATURE] = toDouble(entity.getTemperature());
+        values[WeatherRowCallback.WIND_SPEED] = toDouble(entity.getWindSpeed());
+        values[WeatherRowCallback.WIND_MAX] = toDouble(entity.getWindMax());
+        values[WeatherRowCallback.RAIN_RATE] = toDouble(entity.getRainRate());
+        values[WeatherRowCallback.RAIN_DAILY] = toDouble(entity.getRainDaily());
+        values[WeatherRowCallback.PRESSURE] = toDouble(entity.getPressure());
+        values[WeatherRowCallback.HUMIDITY] = toDouble(entity.getHumidity());
+        values[WeatherRowCallback.UV_RADIATION_INDEX] = toDouble(entity.getUvRadiationIndex());
+        return values;
+    }
+
+    private static boolean isNotNull(WeatherEntity entity, int value) {
+        return switch (value) {
+            case WeatherRowCallback.TEMPERATURE -> entity.getTemperature() != null;
+            case WeatherRowCallback.WIND_SPEED -> entity.getWindSpeed() != null;
+            case WeatherRowCallback.WIND_MAX -> entity.getWindMax() != null;
+            case WeatherRowCallback.RAIN_RATE -> entity.getRainRate() != null;
+            case WeatherRowCallback.RAIN_DAILY -> entity.getRainDaily() != null;
+            case WeatherRowCallback.PRESSURE -> entity.getPressure() != null;
+            case WeatherRowCallback.HUMIDITY -> entity.getHumidity() != null;
+            default -> entity.getUvRadiationIndex() != null;
+        };
+    }
+
+    private static double toDouble(Double value) {
+        return value == null ? Double.NaN : value;
+    }
+
+    /**
+     * The saved categories of a station's days (a station has a few thousand days of records), with their values.
+     */
+    private static final class StationRecords {
+        private long firstDay;
+        private boolean[] saved = new boolean[0];
+        private double[] values = new double[0];
+        private String[] windDirections = new String[0];
+
+        private int getIndex(long day, WeatherCategory category) {
+            return (int) (day - firstDay) * CATEGORIES + category.ordinal();
+        }
+
+        private boolean contains(long day, WeatherCategory category) {
+            var index = (day - firstDay) * CATEGORIES + category.ordinal();
+            return index >= 0 && index < saved.length && saved[(int) index];
+        }
+
+        /**
+         * @return Whether the record was not known yet.
+         */
+        private boolean put(long day, WeatherCategory category, String windDirection, double[] recordValues) {
+            var days = saved.length / CATEGORIES;
+            if (days == 0) {
+                firstDay = day;
+                resize(0, 366);
+            }
+            else if (day < firstDay) {
+                var grownDays = (int) Math.max(firstDay - day, days / 2);
+                resize(grownDays, days + grownDays);
+                firstDay -= grownDays;
+            }
+            else if (day - firstDay >= days) {
+                resize(0, (int) Math.max(day - firstDay + 1, days + days / 2));
+            }
+            var index = getIndex(day, category);
+            var isNew = !saved[index];
+            saved[index] = true;
+            System.arraycopy(recordValues, 0, values, index * VALUES, VALUES);
+            windDirections[index] = windDirection;
+            return isNew;
+        }
+
+        /**
+         * Copy the records into arrays of the given days, shifted by the given days.
+         */
+        private void resize(int shiftDays, int days) {
+            var shift = shiftDays * CATEGORIES;
+            var grownSaved = new boolean[days * CATEGORIES];
+            System.arraycopy(saved, 0, grownSaved, shift, saved.length);
+            saved = grownSaved;
+            var grownValues = new double[days * CATEGORIES * VALUES];
+            System.arraycopy(values, 0, grownValues, shift * VALUES, values.length);
+            values = grownValues;
+            var grownWindDirections = new String[days * CATEGORIES];
+            System.arraycopy(windDirections, 0, grownWindDirections, shift, windDirections.length);
+            windDirections = grownWindDirections;
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A lock per station, that is held while the station's weather rows are written. The files of a station can be
+ * ingested at the same time, and their writes of the same rows would otherwise race on the unique (date, station,
+ * category) key, or wait for the database's lock timeout (and then the whole batch fails). The writes of different
+ * stations still run at the same time.
+ * <p>
+ * The locks are not monitors, so that a virtual thread that waits for the database while holding a lock does not pin its
+ * carrier thread.
+ */
+final class StationLocks {
+
+    private StationLocks() {
+        // prevent instantiation
+    }
+
+    private static final Map<String, ReentrantLock> LOCKS = new ConcurrentHashMap<>();
+
+    /**
+     * Lock the stations, in the order of their names (so that two writers never wait for each other).
+     * @return The held locks, that are released when closed.
+     */
+    static HeldLocks lock(Collection<String> stations) {
+        List<ReentrantLock> locks = new TreeSet<>(stations).stream()
+            .map(station -> LOCKS.computeIfAbsent(station, _ -> new ReentrantLock()))
+            .toList();
+        locks.forEach(ReentrantLock::lock);
+        return new HeldLocks(locks);
+    }
+
+    static final class HeldLocks implements AutoCloseable {
+
+        private final List<ReentrantLock> locks;
+
+        private HeldLocks(List<ReentrantLock> locks) {
+            this.locks = locks;
+        }
+
+        @Override
+        public void close() {
+            locks.reversed().forEach(ReentrantLock::unlock);
+        }
+
+    }
+
+}
@@ -0,0 +1,136 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.commons.csv.CSVRecord;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The columns of a summary CSV file, resolved to their index once per header line (the plans are cached, because most
+ * files share the same header). The rows are then decoded by position, instead of by header name.
+ */
+final class SummaryCsvSchema {
+
+    private static final ConcurrentMap<String, SummaryCsvSchema> SCHEMAS = new ConcurrentHashMap<>();
+
+    @AllArgsConstructor
+    @Getter
+    enum Column {
+        CATEGORY            ("COL0"),
+        DATE                ("Date"),
+        TEMPERATURE         ("Outdoor Temperature"),
+        WIND_SPEED          ("Wind Speed"),
+        WIND_MAX            ("Max Daily Gust"),
+        WIND_DIRECTION      ("Wind Direction"),
+        RAIN_RATE           ("Rain Rate"),
+        RAIN_DAILY          ("Daily Rain"),
+        PRESSURE            ("Relative Pressure"),
+        HUMIDITY            ("Humidity"),
+        UV_RADIATION_INDEX  ("Ultra-Violet Radiation Index"),
+        ;
+
+        private final String header;
+    }
+
+    private static final Column[] COLUMNS = Column.values();
+
+    private final String[] headers;
+
+    private final int[] indexes;
+
+    private SummaryCsvSchema(String[] headers) {
+        this.headers = headers;
+        this.indexes = new int[COLUMNS.length];
+        var headerList = Arrays.asList(headers);
+        for (var column : COLUMNS) {
+            indexes[column.ordinal()] = headerList.indexOf(column.getHeader());
+        }
+    }
+
+    /**
+     * The schema of the header line (the normalised headers of CsvUtils.getHeaders()).
+     */
+    static SummaryCsvSchema compile(String headerLine) {
+        return SCHEMAS.computeIfAbsent(headerLine != null ? headerLine : "",
+            _ -> new SummaryCsvSchema(CsvUtils.getHeaders(headerLine)));
+    }
+
+    String[] getHeaders() {
+        return headers.clone();
+    }
+
+    boolean isSummary() {
+        return headers.length > 0 && headers[0].equals(Column.CATEGORY.getHeader());
+    }
+
+    /**
+     * The text of the column.
+     * @throws IllegalArgumentException If the file does not have the column, or the record is too short (the same as
+     * when reading the column by name).
+     */
+    String get(CSVRecord record, Column column) {
+        var index = indexes[column.ordinal()];
+        if (index < 0) {
+            throw new IllegalArgumentException("The column " + column.getHeader() + " was not found in "
+                + Arrays.toString(headers));
+        }
+        if (index >= record.size()) {
+            throw new IllegalArgumentException("The column " + column.getHeader() + " is at index " + index
+                + " but the record only has " + record.size() + " values");
+        }
+        return record.get(index);
+    }
+
+    /**
+     * Decode the columns of the record (except the category) into the row. The numbers are parsed straight into the
+     * row's values, without exceptions.
+     * @return The first column that is not a number, or null if all the columns were decoded.
+     */
+    Column decode(CSVRecord record, Row row) {
+        row.date = LocalDate.parse(get(record, Column.DATE));
+        Column invalidColumn = null;
+        for (var column : COLUMNS) {
+            if (column == Column.WIND_DIRECTION) {
+                var value = get(record, column);
+                row.windDirection = value == null || value.isBlank() ? null : value;
+            }
+            else if (column != Column.CATEGORY && column != Column.DATE) {
+                if (!DecimalParser.parse(get(record, column), row.values, column.ordinal()) && invalidColumn == null) {
+                    invalidColumn = column;
+                }
+            }
+        }
+        return invalidColumn;
+    }
+
+    /**
+     * The decoded values of a record, which is reused for all the records of a file.
+     */
+    static final class Row {
+
+        private final double[] values = new double[COLUMNS.length];
+        private LocalDate date;
+        private String windDirection;
+
+        LocalDate getDate() {
+            return date;
+        }
+
+        String getWindDirection() {
+            return windDirection;
+        }
+
+        /**
+         * The number of the column, or null when it was blank.
+         */
+        Double getValue(Column column) {
+            var value = values[column.ordinal()];
+            return Double.isNaN(value) ? null : value;
+        }
+
+    }
+
+}
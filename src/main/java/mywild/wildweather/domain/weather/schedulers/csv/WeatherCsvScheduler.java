@@ -4,17 +4,31 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicLong;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import lombok.extern.slf4j.Slf4j;
+import mywild.wildweather.domain.weather.data.CsvFileRepository;
+import mywild.wildweather.domain.weather.data.WeatherDataChangedEvent;
 import mywild.wildweather.domain.weather.data.WeatherRepository;
+import mywild.wildweather.domain.weather.data.entity.CsvFileEntity;
 
 @Slf4j
 @Service
@@ -22,10 +36,25 @@ public class WeatherCsvScheduler {
 
     private static final int SCHEDULE_DELAY = 2 * 1000; // 2 seconds
     private static final int SCHEDULE_RATE = 60 * 60 * 1000; // 1 hour
+    private static final int FULL_SCAN_RATE = 24 * 60 * 60 * 1000; // 1 day
 
     private static final AtomicBoolean IS_RUNNING = new AtomicBoolean(false);
 
-    private static final List<String> PROCESSED_CSV_FILES = new ArrayList<>();
+    private static final AtomicBoolean IS_RESTORED = new AtomicBoolean(false);
+
+    private static final AtomicLong LAST_FULL_SCAN = new AtomicLong(0);
+
+    private static final Map<String, CsvFileState> PROCESSED_CSV_FILES = new ConcurrentHashMap<>();
+
+    private static final Map<String, CsvFileState> DETECTED_CSV_FILES = new ConcurrentHashMap<>();
+
+    private static final Set<String> UNSAVED_CSV_FILES = ConcurrentHashMap.newKeySet();
+
+    private static final CsvFolderScanner FOLDER_SCANNER = new CsvFolderScanner();
+
+    private static final Map<String, NavigableMap<LocalDate, LocalDate>> CHANGED_WEATHER = new ConcurrentHashMap<>();
+
+    private static final Map<String, String> CHANGED_SOURCES = new ConcurrentHashMap<>();
 
     @Value("${mywild.csv.folder}")
     private String csvRootFolder;
@@ -33,60 +62,331 @@ public class WeatherCsvScheduler {
     @Autowired
     private WeatherRepository repo;
 
+    @Autowired
+    private CsvFileRepository csvFileRepo;
+
     @Autowired
     private ProcessSummaryFiles processSummaryFiles;
 
     @Autowired
     private ProcessFullFiles processFullFiles;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
     
     @Scheduled(initialDelay = SCHEDULE_DELAY, fixedRate = SCHEDULE_RATE)
     void scheduledCsvFilesProcessing() {
-        processCsvFiles();
+        var isFullScan = System.currentTimeMillis() - LAST_FULL_SCAN.get() >= FULL_SCAN_RATE;
+        // While the folders are watched, only the (daily) full scan is still done, in case an event was missed
+        if (isFullScan || !CsvFolderWatcher.isWatching()) {
+            processCsvFiles(isFullScan);
+        }
     }
 
     public boolean isRunning() {
         return IS_RUNNING.get();
     }
 
+    /**
+     * The throughput of each stage of the last run that ingested summary files.
+     */
+    public List<IngestStageStats> getLastRunStats() {
+        return processSummaryFiles.getLastRunStats();
+    }
+
     public void resetProcessedCsvFiles() {
         repo.deleteAll();
-        PROCESSED_CSV_FILES.clear();
+        repo.deleteAllRollups();
+        repo.deleteAllStations();
+        csvFileRepo.deleteAll();
+        processSummaryFiles.clearSavedRecords();
+        clearProcessedFiles();
+        CHANGED_WEATHER.clear();
+        CHANGED_SOURCES.clear();
+        IS_RESTORED.set(true);
+        eventPublisher.publishEvent(new WeatherDataChangedEvent(null));
     }
 
+    /**
+     * Process the new and changed CSV files, looking in all the folders.
+     */
     @Async
     public void processCsvFiles() {
+        processCsvFiles(true);
+    }
+
+    /**
+     * Process the new and changed CSV files.
+     * @param isFullScan Whether to look in all the folders, or only in the folders that changed since the last run.
+     * @return False if the files were already being processed (then the request is ignored).
+     */
+    boolean processCsvFiles(boolean isFullScan) {
+        return processCsvFiles(isFullScan ? "full scan" : "incremental scan", archives -> {
+            if (isFullScan) {
+                LAST_FULL_SCAN.set(System.currentTimeMillis());
+            }
+            return FOLDER_SCANNER.scan(Paths.get(csvRootFolder), isFullScan,
+                csvFile -> hasFileBeenProcessed(CsvUtils.getCsvName(csvFile)), archives);
+        });
+    }
+
+    /**
+     * Process the given CSV files, if they are new or changed.
+     * @return False if the files were already being processed (then the request is ignored).
+     */
+    boolean processCsvFiles(Collection<Path> csvFiles) {
+        return processCsvFiles(csvFiles.size() + " watched files", archives -> archives.expand(csvFiles));
+    }
+
+    @FunctionalInterface
+    private interface CsvFileFinder {
+        /**
+         * @param archives The archives that are open during the run, for their CSV files.
+         */
+        List<Path> find(CsvArchives archives) throws IOException;
+    }
+
+    private boolean processCsvFiles(String description, CsvFileFinder csvFileFinder) {
         if (!IS_RUNNING.compareAndSet(false, true)) {
             log.warn("Already busy processing csv files... The new request will be ignored.");
-            return;
+            return false;
         }
-        try (Stream<Path> paths = Files.walk(Paths.get(csvRootFolder))) {
+        restoreProcessedFiles();
+        initializeRollups();
+        try (var archives = new CsvArchives()) {
             log.info("**************************");
-            log.info("Looking for CSV files in : {}", csvRootFolder);
+            log.info("Looking for CSV files in : {} ({})", csvRootFolder, description);
             log.info("**************************");
-            List<Path> fineScaleCsvFiles = processSummaryFiles.processAllSummaryFiles(paths);
+            var csvFiles = csvFileFinder.find(archives);
+            List<Path> fineScaleCsvFiles = processSummaryFiles.processAllSummaryFiles(csvFiles.stream());
+            // The fine scale files can take a long time, thus the catalog already shows the new days in the meantime
+            refreshChangedStations();
             processFullFiles.processAllFineScaleFiles(fineScaleCsvFiles);
         }
         catch (IOException | InterruptedException ex) {
             log.error(ex.getMessage(), ex);
         }
         finally {
+            checkpointProcessedFiles();
+            var changedDays = refreshChangedWeather();
+            if (!changedDays.isEmpty()) {
+                eventPublisher.publishEvent(new WeatherDataChangedEvent(changedDays));
+            }
             log.info("****************************");
             log.info("Processed all CSV files in : {}", csvRootFolder);
             log.info("****************************");
             IS_RUNNING.set(false);
         }
+        return true;
+    }
+
+    /**
+     * Load the files that were processed before the last restart, so that only new files will be processed.
+     */
+    private void restoreProcessedFiles() {
+        if (IS_RESTORED.compareAndSet(false, true)) {
+            var count = 0;
+            for (var file : csvFileRepo.findAll()) {
+                PROCESSED_CSV_FILES.put(file.getName(), file.getHash() == null ? CsvFileState.UNKNOWN
+                    : new CsvFileState(file.getSize(), file.getLastModified(), file.getHash()));
+                count++;
+            }
+            log.info("Restored {} processed CSV files from the database", count);
+        }
+    }
+
+    /**
+     * Calculate the rollups of the existing weather data during the first run (at startup), so that a query never has to
+     * wait for them.
+     */
+    private void initializeRollups() {
+        try {
+            repo.initializeRollups();
+        }
+        catch (RuntimeException ex) {
+            log.error(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Save the files that were processed (or whose state was updated) during this run, so that they can be restored
+     * after a restart.
+     */
+    private void checkpointProcessedFiles() {
+        var fileNames = new ArrayList<>(UNSAVED_CSV_FILES);
+        fileNames.forEach(UNSAVED_CSV_FILES::remove);
+        try {
+            Map<String, CsvFileEntity> savedFiles = new HashMap<>();
+            if (!fileNames.isEmpty()) {
+                for (var file : csvFileRepo.findAllByNameIn(fileNames)) {
+                    savedFiles.put(file.getName(), file);
+                }
+            }
+            var processed = LocalDateTime.now();
+            var files = fileNames.stream()
+                .map(fileName -> {
+                    var state = PROCESSED_CSV_FILES.getOrDefault(fileName, CsvFileState.UNKNOWN);
+                    var savedFile = savedFiles.get(fileName);
+                    return (savedFile != null ? savedFile.toBuilder() : CsvFileEntity.builder().name(fileName))
+                        .processed(processed)
+                        .size(state.isKnown() ? state.size() : null)
+                        .lastModified(state.isKnown() ? state.lastModified() : null)
+                        .hash(state.hash())
+                        .build();
+                })
+                .toList();
+            csvFileRepo.saveAll(files);
+            log.debug("Checkpoint of {} processed CSV files", files.size());
+        }
+        catch (RuntimeException ex) {
+            log.error(ex.getMessage(), ex);
+            UNSAVED_CSV_FILES.addAll(fileNames);
+        }
+    }
+
+    /**
+     * Update the station catalog of the stations that were changed so far during this run.
+     */
+    private void refreshChangedStations() {
+        for (var station : List.copyOf(CHANGED_WEATHER.keySet())) {
+            var source = CHANGED_SOURCES.remove(station);
+            try {
+                repo.refreshStation(station, source);
+            }
+            catch (RuntimeException ex) {
+                log.error(ex.getMessage(), ex);
+                // The station is refreshed again at the end of the run, with its source
+                if (source != null) {
+                    CHANGED_SOURCES.putIfAbsent(station, source);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recalculate the weekly, monthly and yearly rollups of the days that were changed during this run, and update the
+     * station catalog of the changed stations.
+     * @return The changed date ranges of each station.
+     */
+    private Map<String, NavigableMap<LocalDate, LocalDate>> refreshChangedWeather() {
+        Map<String, NavigableMap<LocalDate, LocalDate>> changedDays = new HashMap<>();
+        for (var station : List.copyOf(CHANGED_WEATHER.keySet())) {
+            var changedRanges = CHANGED_WEATHER.remove(station);
+            if (changedRanges == null) {
+                continue;
+            }
+            changedDays.put(station, changedRanges);
+            var source = CHANGED_SOURCES.remove(station);
+            try {
+                for (var range : changedRanges.entrySet()) {
+                    repo.refreshRollups(station, range.getKey(), range.getValue());
+                }
+                log.debug("Refreshed the rollups of {} for {} changed date ranges", station, changedRanges.size());
+                repo.refreshStation(station, source);
+            }
+            catch (RuntimeException ex) {
+                log.error(ex.getMessage(), ex);
+                // Keep the station's changed days (and source), so that the next run refreshes them again
+                for (var range : changedRanges.entrySet()) {
+                    markWeatherAsChanged(station, range.getKey(), range.getValue());
+                }
+                if (source != null) {
+                    CHANGED_SOURCES.putIfAbsent(station, source);
+                }
+            }
+        }
+        return changedDays;
     }
 
     static void clearProcessedFiles() {
         PROCESSED_CSV_FILES.clear();
+        DETECTED_CSV_FILES.clear();
+        UNSAVED_CSV_FILES.clear();
+        FOLDER_SCANNER.clear();
+        LAST_FULL_SCAN.set(0);
     }
 
     static boolean hasFileBeenProcessed(String fileName) {
-        return PROCESSED_CSV_FILES.contains(fileName);
+        return PROCESSED_CSV_FILES.containsKey(fileName);
     }
 
+    /**
+     * Whether the file is new, or its content changed since it was processed. The content is only hashed when the
+     * size or last modified time changed. A file with the same content only has its new attributes recorded.
+     */
+    static boolean hasFileChanged(Path csvFile) {
+        var fileName = CsvUtils.getCsvName(csvFile);
+        try {
+            var attributes = Files.readAttributes(csvFile, BasicFileAttributes.class);
+            var processed = PROCESSED_CSV_FILES.get(fileName);
+            if (processed != null && processed.hasSameAttributes(attributes)) {
+                return false;
+            }
+            var state = CsvFileState.read(csvFile, attributes);
+            // Files that were processed before their state was recorded are assumed to be unchanged
+            if (processed != null && (!processed.isKnown() || processed.hasSameContent(state))) {
+                PROCESSED_CSV_FILES.put(fileName, state);
+                UNSAVED_CSV_FILES.add(fileName);
+                return false;
+            }
+            DETECTED_CSV_FILES.put(fileName, state);
+            return true;
+        }
+        catch (IOException ex) {
+            log.error("Could not read the CSV file {}: {}", csvFile, ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Record the file as processed, with the state it had when it was detected as new or changed.
+     */
     static void markFileAsProcessed(String fileName) {
-        PROCESSED_CSV_FILES.add(fileName);
+        var state = DETECTED_CSV_FILES.remove(fileName);
+        if (state != null) {
+            PROCESSED_CSV_FILES.put(fileName, state);
+        }
+        else {
+            PROCESSED_CSV_FILES.putIfAbsent(fileName, CsvFileState.UNKNOWN);
+        }
+        UNSAVED_CSV_FILES.add(fileName);
+    }
+
+    static void clearChangedWeather() {
+        CHANGED_WEATHER.clear();
+        CHANGED_SOURCES.clear();
+    }
+
+    static void markWeatherAsChanged(String station, LocalDate startDate, LocalDate endDate) {
+        CHANGED_WEATHER.compute(station, (_, changedRanges) ->
+            addRange(changedRanges == null ? new TreeMap<>() : changedRanges, startDate, endDate));
+    }
+
+    static void markWeatherAsChanged(String station, String csvName, LocalDate startDate, LocalDate endDate) {
+        markWeatherAsChanged(station, startDate, endDate);
+        CHANGED_SOURCES.put(station, csvName);
+    }
+
+    /**
+     * Add the date range to the ranges, merged with the ranges that it overlaps or is adjacent to (so that days that
+     * were changed far apart are refreshed separately, instead of refreshing all the days in between).
+     */
+    static NavigableMap<LocalDate, LocalDate> addRange(
+            NavigableMap<LocalDate, LocalDate> ranges, LocalDate startDate, LocalDate endDate) {
+        var before = ranges.floorEntry(startDate);
+        if (before != null && !before.getValue().plusDays(1).isBefore(startDate)) {
+            startDate = before.getKey();
+            endDate = before.getValue().isAfter(endDate) ? before.getValue() : endDate;
+            ranges.remove(before.getKey());
+        }
+        for (var after = ranges.ceilingEntry(startDate);
+                after != null && !after.getKey().isAfter(endDate.plusDays(1));
+                after = ranges.ceilingEntry(startDate)) {
+            endDate = after.getValue().isAfter(endDate) ? after.getValue() : endDate;
+            ranges.remove(after.getKey());
+        }
+        ranges.put(startDate, endDate);
+        return ranges;
     }
 
 }
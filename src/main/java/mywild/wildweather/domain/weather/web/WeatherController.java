@@ -5,9 +5,12 @@ import java.util.List;
 import java.util.Set;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
@@ -39,16 +42,32 @@ public class WeatherController extends BaseController {
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
             @RequestParam(required = false) Integer startMonth,
             @RequestParam(required = false) Integer endMonth) {
-        if ((startMonth != null && (startMonth < 1 || startMonth > 12))
-                || (endMonth != null && (endMonth < 1 || endMonth > 12))
-                || (startMonth != null && endMonth != null && startMonth > endMonth)) {
-            throw new BadRequestException("weather.invalid-request-parameters");
-        }
+        validateMonths(startMonth, endMonth);
         return service.getWeather(
             stations, grouping, category, aggregate, weatherFields, 
             startDate, endDate, startMonth, endMonth);
     }
 
+    @Operation(summary = "Returns the same weather data as /weather, but writes it one station and year at a time.")
+    @GetMapping("/weather/stream")
+    public ResponseEntity<StreamingResponseBody> streamWeather(
+            @RequestParam(required = false) List<String> stations,
+            @RequestParam(required = false) WeatherGrouping grouping,
+            @RequestParam(required = false) WeatherCategory category,
+            @RequestParam(required = false) WeatherAggregate aggregate,
+            @RequestParam(required = false) Set<WeatherField> weatherFields,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate, 
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) Integer startMonth,
+            @RequestParam(required = false) Integer endMonth) {
+        validateMonths(startMonth, endMonth);
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(output -> service.streamWeather(
+                stations, grouping, category, aggregate, weatherFields,
+                startDate, endDate, startMonth, endMonth, output));
+    }
+
     @Operation(summary = "Returns all weather stations.")
     @GetMapping("/weather/stations")
     public List<String> getWeatherStations() {
@@ -61,4 +80,12 @@ public class WeatherController extends BaseController {
         return service.getWeatherStatus();
     }
 
+    private static void validateMonths(Integer startMonth, Integer endMonth) {
+        if ((startMonth != null && (startMonth < 1 || startMonth > 12))
+                || (endMonth != null && (endMonth < 1 || endMonth > 12))
+                || (startMonth != null && endMonth != null && startMonth > endMonth)) {
+            throw new BadRequestException("weather.invalid-request-parameters");
+        }
+    }
+
 }
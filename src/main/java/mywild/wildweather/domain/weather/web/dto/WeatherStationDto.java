@@ -30,6 +30,12 @@ public class WeatherStationDto {
     @NotBlank
     private LocalDate endDate;
 
+    private long rowCount;
+
+    private int missingDays;
+
+    private String source;
+
     private boolean isMyStation;
 
 }
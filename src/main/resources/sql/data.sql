@@ -1,3 +1,4 @@
 -- Users
-INSERT INTO "users" (username, password, description) VALUES
-('mywild', /*'mywild'*/'$2a$10$ltPtAK35Fu4GWcMUZEwfaOYlTrrcaUFypDR2Wo38.oPj7jXW1lvqa', 'Default admin user.');
+INSERT INTO "users" (username, password, description)
+SELECT 'mywild', /*'mywild'*/'$2a$10$ltPtAK35Fu4GWcMUZEwfaOYlTrrcaUFypDR2Wo38.oPj7jXW1lvqa', 'Default admin user.'
+WHERE NOT EXISTS (SELECT 1 FROM "users" WHERE username = 'mywild');
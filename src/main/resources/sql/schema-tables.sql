@@ -23,7 +23,101 @@ CREATE TABLE IF NOT EXISTS "weather" (
     humidity DECFLOAT,                      -- CSV Column: Humidity (%)
     uv_radiation_index DECFLOAT,            -- CSV Column: Ultra-Violet Radiation Index
     missing DECFLOAT NOT NULL,              -- The percentage of records missing during the day
+    date_month INT GENERATED ALWAYS AS (MONTH(date)),   -- Stored, so that seasonal filters can use an index
     UNIQUE (date, station, category)
 );
 
+-- Databases created before the stored month column was added
+ALTER TABLE "weather" ADD COLUMN IF NOT EXISTS date_month INT GENERATED ALWAYS AS (MONTH(date));
+
 CREATE INDEX IF NOT EXISTS idx_weather_date ON "weather"(date);
+CREATE INDEX IF NOT EXISTS idx_weather_station_date ON "weather"(station, date);
+CREATE INDEX IF NOT EXISTS idx_weather_station_month ON "weather"(station, date_month, date);
+
+-- WEATHER ROLLUPS (WEEKLY, MONTHLY, YEARLY)
+-- The values of each field are only counted on days with less than 100% missing records (except for missing itself),
+-- and wind directions are in degrees (unknown directions are not counted, but are tracked in wind_direction_unknown)
+CREATE TABLE IF NOT EXISTS "weather_rollup" (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    station VARCHAR(64) NOT NULL,           -- The station's name
+    resolution VARCHAR(7) NOT NULL,         -- WEEKLY, MONTHLY or YEARLY
+    group_year INT NOT NULL,                -- The calendar year
+    group_bucket INT NOT NULL,              -- The ISO week of the year, the month or the year
+    category VARCHAR(1) NOT NULL,           -- Low, Average, High
+    bucket_start DATE NOT NULL,             -- The first day of the bucket (weeks are cut off at the start of the year)
+    first_date DATE NOT NULL,               -- The first day with data in the bucket
+    temperature_count INT NOT NULL,
+    temperature_sum DECFLOAT,
+    temperature_min DECFLOAT,
+    temperature_max DECFLOAT,
+    wind_speed_count INT NOT NULL,
+    wind_speed_sum DECFLOAT,
+    wind_speed_min DECFLOAT,
+    wind_speed_max DECFLOAT,
+    wind_max_count INT NOT NULL,
+    wind_max_sum DECFLOAT,
+    wind_max_min DECFLOAT,
+    wind_max_max DECFLOAT,
+    wind_direction_count INT NOT NULL,
+    wind_direction_sum DECFLOAT,
+    wind_direction_min DECFLOAT,
+    wind_direction_max DECFLOAT,
+    rain_rate_count INT NOT NULL,
+    rain_rate_sum DECFLOAT,
+    rain_rate_min DECFLOAT,
+    rain_rate_max DECFLOAT,
+    rain_daily_count INT NOT NULL,
+    rain_daily_sum DECFLOAT,
+    rain_daily_min DECFLOAT,
+    rain_daily_max DECFLOAT,
+    pressure_count INT NOT NULL,
+    pressure_sum DECFLOAT,
+    pressure_min DECFLOAT,
+    pressure_max DECFLOAT,
+    humidity_count INT NOT NULL,
+    humidity_sum DECFLOAT,
+    humidity_min DECFLOAT,
+    humidity_max DECFLOAT,
+    uv_radiation_index_count INT NOT NULL,
+    uv_radiation_index_sum DECFLOAT,
+    uv_radiation_index_min DECFLOAT,
+    uv_radiation_index_max DECFLOAT,
+    missing_count INT NOT NULL,
+    missing_sum DECFLOAT,
+    missing_min DECFLOAT,
+    missing_max DECFLOAT,
+    wind_direction_unknown INT NOT NULL,
+    UNIQUE (station, resolution, group_year, group_bucket, category)
+);
+
+CREATE INDEX IF NOT EXISTS idx_weather_rollup_bucket ON "weather_rollup"(resolution, bucket_start);
+
+-- WEATHER STATIONS (CATALOG)
+-- Updated after each ingestion run for the stations that changed, so that the station endpoints don't scan the weather
+CREATE TABLE IF NOT EXISTS "weather_station" (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    station VARCHAR(64) NOT NULL,           -- The station's name
+    first_date DATE NOT NULL,               -- The first day with data
+    last_date DATE NOT NULL,                -- The last day with data
+    row_count BIGINT NOT NULL,              -- The number of weather rows (one per day and category)
+    missing_days INT NOT NULL,              -- The number of days with 100% missing records
+    source VARCHAR(1024),                   -- The last CSV file that added days (station -> file name)
+    updated TIMESTAMP NOT NULL,             -- When the station was last updated
+    UNIQUE (station)
+);
+
+-- CSV FILES (PROCESSED)
+CREATE TABLE IF NOT EXISTS "csv_files" (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    name VARCHAR(1024) NOT NULL,            -- The processed CSV file (station -> file name)
+    processed TIMESTAMP NOT NULL,           -- When the file was processed
+    size BIGINT,                            -- The file's size in bytes when it was processed
+    last_modified BIGINT,                   -- The file's last modified time (epoch milliseconds) when it was processed
+    hash VARCHAR(64),                       -- The SHA-256 of the file's content when it was processed
+    UNIQUE (name)
+);
+
+-- Databases created before the files' size, last modified time and hash were stored
+ALTER TABLE "csv_files" ADD COLUMN IF NOT EXISTS size BIGINT;
+ALTER TABLE "csv_files" ADD COLUMN IF NOT EXISTS last_modified BIGINT;
+ALTER TABLE "csv_files" ADD COLUMN IF NOT EXISTS hash VARCHAR(64);
@@ -0,0 +1,301 @@
+package mywild.wildweather.domain.weather.data;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.time.LocalDate;
+import java.time.temporal.WeekFields;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
+import mywild.wildweather.domain.weather.web.dto.WeatherAggregate;
+import mywild.wildweather.domain.weather.web.dto.WeatherField;
+import mywild.wildweather.domain.weather.web.dto.WeatherGrouping;
+
+public class WeatherJdbcRepositoryImplTest {
+
+    private EmbeddedDatabase database;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private WeatherJdbcRepositoryImpl repo;
+
+    @BeforeEach
+    void setup() throws Exception {
+        database = new EmbeddedDatabaseBuilder()
+            .generateUniqueName(true)
+            .setType(EmbeddedDatabaseType.H2)
+            .addScript("sql/schema-tables.sql")
+            .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        repo = new WeatherJdbcRepositoryImpl();
+        var f = WeatherJdbcRepositoryImpl.class.getDeclaredField("jdbcTemplate");
+        f.setAccessible(true);
+        f.set(repo, jdbcTemplate);
+    }
+
+    @AfterEach
+    void cleanup() {
+        database.shutdown();
+    }
+
+    @Test
+    void insertNew_insertsOnlyRowsThatDoNotExist() {
+        var first = List.of(
+            entity("s1", LocalDate.of(2025, 1, 1), WeatherCategory.A, 10.0),
+            entity("s1", LocalDate.of(2025, 1, 1), WeatherCategory.H, 15.0));
+        assertArrayEquals(new boolean[] { true, true }, repo.insertNew(first));
+
+        var second = List.of(
+            entity("s1", LocalDate.of(2025, 1, 1), WeatherCategory.A, 99.0),
+            entity("s1", LocalDate.of(2025, 1, 2), WeatherCategory.A, 11.0),
+            entity("s2", LocalDate.of(2025, 1, 1), WeatherCategory.A, null));
+        assertArrayEquals(new boolean[] { false, true, true }, repo.insertNew(second));
+
+        assertEquals(4, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM \"weather\"", Integer.class));
+        assertEquals(10.0, jdbcTemplate.queryForObject(
+            "SELECT temperature FROM \"weather\" WHERE station = 's1' AND date = '2025-01-01' AND category = 'A'", Double.class));
+    }
+
+    @Test
+    void insertNew_writesMoreRowsThanTheBatchSize() {
+        var entities = new java.util.ArrayList<WeatherEntity>();
+        var date = LocalDate.of(2000, 1, 1);
+        for (int i = 0; i < WeatherJdbcRepositoryImpl.BATCH_SIZE + 10; i++) {
+            entities.add(entity("s1", date.plusDays(i), WeatherCategory.A, (double) i));
+        }
+        var inserted = repo.insertNew(entities);
+        assertEquals(entities.size(), inserted.length);
+        for (var value : inserted) {
+            assertEquals(true, value);
+        }
+    }
+
+    @Test
+    void updateMissing_updatesAllTheCategoriesOfTheDaysThatChanged() {
+        var date = LocalDate.of(2025, 1, 1);
+        repo.insertNew(List.of(
+            entity("s1", date, WeatherCategory.A, 10.0),
+            entity("s1", date, WeatherCategory.H, 15.0),
+            entity("s1", date.plusDays(1), WeatherCategory.A, 11.0),
+            entity("s2", date, WeatherCategory.A, 12.0)));
+
+        assertArrayEquals(new boolean[] { true, false, false }, repo.updateMissing(List.of(
+            new WeatherMissingDay("s1", date, 25.0),
+            new WeatherMissingDay("s1", date.plusDays(1), 0.0),
+            new WeatherMissingDay("s3", date, 50.0))));
+        assertEquals(List.of(25.0, 25.0, 0.0, 0.0), jdbcTemplate.queryForList(
+            "SELECT missing FROM \"weather\" ORDER BY station, date, category", Double.class));
+        // The same percentage again does not change the day
+        assertArrayEquals(new boolean[] { false }, repo.updateMissing(List.of(new WeatherMissingDay("s1", date, 25.0))));
+    }
+
+    @Test
+    void insertMissingDays_fillsTheGapsBetweenTheStationsDays() {
+        var date = LocalDate.of(2024, 12, 30);
+        repo.insertNew(List.of(
+            entity("s1", date, WeatherCategory.A, 10.0),
+            entity("s1", date.plusDays(2), WeatherCategory.H, 11.0),
+            entity("s1", date.plusDays(3), WeatherCategory.A, 12.0),
+            entity("s1", date.plusDays(7), WeatherCategory.A, 13.0),
+            entity("s2", date.plusDays(1), WeatherCategory.A, 14.0)));
+
+        assertEquals(List.of(
+                new WeatherGap(date.plusDays(1), date.plusDays(1)),
+                new WeatherGap(date.plusDays(4), date.plusDays(6))),
+            repo.insertMissingDays("s1"));
+        assertEquals(4 * WeatherCategory.values().length, jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM \"weather\" WHERE station = 's1' AND missing = 100 AND wind_direction = ''", Integer.class));
+        assertEquals(1, jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM \"weather\" WHERE station = 's1' AND date = ?", Integer.class, date.plusDays(2)));
+        assertEquals(List.of(), repo.insertMissingDays("s1"));
+        assertEquals(List.of(), repo.insertMissingDays("s2"));
+        assertEquals(List.of(), repo.insertMissingDays("s3"));
+    }
+
+    @Test
+    void findMissingDays_findsTheDaysWithoutDataFromTheStationsFirstDay() {
+        var date = LocalDate.of(2024, 12, 30);
+        repo.insertNew(List.of(
+            entity("s1", date, WeatherCategory.A, 10.0),
+            entity("s1", date.plusDays(2), WeatherCategory.H, 11.0),
+            entity("s1", date.plusDays(4), WeatherCategory.A, 12.0)));
+        repo.insertMissingDays("s1");
+
+        assertEquals(List.of(date.plusDays(1), date.plusDays(3), date.plusDays(5), date.plusDays(6)),
+            repo.findMissingDays("s1", date.minusDays(5), date.plusDays(6), date.minusDays(5)));
+        assertEquals(List.of(date.plusDays(3)),
+            repo.findMissingDays("s1", date.plusDays(2), date.plusDays(4), date.minusDays(5)));
+        // A station without rows starts at the default first day
+        assertEquals(List.of(date.plusDays(5), date.plusDays(6)),
+            repo.findMissingDays("s2", date, date.plusDays(6), date.plusDays(5)));
+        assertEquals(List.of(), repo.findMissingDays("s1", date.plusDays(1), date, date));
+    }
+
+    @Test
+    void schema_storesTheMonth() {
+        repo.insertNew(List.of(entity("s1", LocalDate.of(2024, 3, 5), WeatherCategory.A, 10.0)));
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT date_month FROM \"weather\"", Integer.class));
+    }
+
+    @Test
+    void searchWeather_appliesOnlyTheGivenFilters() {
+        repo.insertNew(List.of(
+            entity("s2", LocalDate.of(2024, 3, 5), WeatherCategory.H, 12.0),
+            entity("s1", LocalDate.of(2024, 3, 5), WeatherCategory.A, 10.0),
+            entity("s1", LocalDate.of(2024, 1, 5), WeatherCategory.A, null),
+            entity("s3", LocalDate.of(2024, 6, 5), WeatherCategory.A, 20.0)));
+
+        var all = repo.searchWeather(null, null, null, null, null, null);
+        assertEquals(List.of("s1", "s1", "s2", "s3"), all.stream().map(WeatherEntity::getStation).toList());
+        assertEquals(LocalDate.of(2024, 1, 5), all.get(0).getDate());
+        assertNull(all.get(0).getTemperature());
+        assertEquals(10.0, all.get(1).getTemperature());
+        assertEquals(WeatherCategory.H, all.get(2).getCategory());
+
+        assertEquals(4, repo.searchWeather(List.of(), null, null, null, null, null).size());
+        assertEquals(3, repo.searchWeather(List.of("s1", "s2"), null, null, null, null, null).size());
+        assertEquals(3, repo.searchWeather(null, WeatherCategory.A, null, null, null, null).size());
+        assertEquals(1, repo.searchWeather(List.of("s1"), WeatherCategory.A, LocalDate.of(2024, 2, 1),
+            LocalDate.of(2024, 12, 31), 3, 3).size());
+        assertEquals(2, repo.searchWeather(null, null, null, null, 3, 5).size());
+        assertEquals(0, repo.searchWeather(List.of("unknown"), null, null, null, null, null).size());
+    }
+
+    @Test
+    void findFirstDatesAndStreamWeather_readTheStationsInTheOrderOfTheirFirstDay() {
+        repo.insertNew(List.of(
+            entity("s2", LocalDate.of(2024, 3, 6), WeatherCategory.L, 1.0),
+            entity("s2", LocalDate.of(2024, 3, 6), WeatherCategory.A, 2.0),
+            entity("s2", LocalDate.of(2024, 3, 5), WeatherCategory.H, 3.0),
+            entity("s1", LocalDate.of(2024, 3, 5), WeatherCategory.A, 4.0),
+            entity("s3", LocalDate.of(2024, 1, 5), WeatherCategory.A, 5.0),
+            entity("s3", LocalDate.of(2024, 6, 5), WeatherCategory.A, 6.0)));
+
+        var firstDates = repo.findFirstDates(null, null, null, null, null, null);
+        assertEquals(List.of("s3", "s1", "s2"), List.copyOf(firstDates.keySet()));
+        assertEquals(LocalDate.of(2024, 1, 5), firstDates.get("s3"));
+        assertEquals(List.of("s1", "s2", "s3"), List.copyOf(repo.findFirstDates(null, null, null, null, 3, 12).keySet()));
+        assertEquals(List.of("s2"), List.copyOf(repo.findFirstDates(List.of("s2", "s4"), null, null, null, null, null).keySet()));
+
+        var rows = new ArrayList<WeatherEntity>();
+        repo.streamWeather("s2", null, null, null, null, null, rows::add);
+        assertEquals(List.of(3.0, 2.0, 1.0), rows.stream().map(WeatherEntity::getTemperature).toList());
+        rows.clear();
+        repo.streamWeather("s3", WeatherCategory.A, LocalDate.of(2024, 2, 1), null, 1, 12, rows::add);
+        assertEquals(List.of(6.0), rows.stream().map(WeatherEntity::getTemperature).toList());
+    }
+
+    @Test
+    void scanStation_readsTheStationsDaysInOrder() {
+        repo.insertNew(List.of(
+            entity("s1", LocalDate.of(2024, 3, 6), WeatherCategory.L, 1.0),
+            entity("s1", LocalDate.of(2024, 3, 6), WeatherCategory.A, 2.0),
+            entity("s1", LocalDate.of(2024, 3, 5), WeatherCategory.H, null),
+            entity("s1", LocalDate.of(2024, 3, 8), WeatherCategory.A, 4.0),
+            entity("s2", LocalDate.of(2024, 3, 6), WeatherCategory.A, 5.0)));
+
+        var temperatures = new ArrayList<Double>();
+        repo.scanStation("s1", LocalDate.of(2024, 3, 5), LocalDate.of(2024, 3, 7),
+            (station, _, _, windDirection, values) -> {
+                assertEquals("s1", station);
+                assertEquals("N", windDirection);
+                temperatures.add(values[WeatherRowCallback.TEMPERATURE]);
+            });
+        assertEquals(List.of(Double.NaN, 2.0, 1.0), temperatures);
+    }
+
+    @Test
+    void searchWeatherSql_isCachedPerShapeAndUsesIndexes() {
+        var sql = WeatherJdbcRepositoryImpl.getSearchWeatherSql(true, false, false, false, true, true);
+        assertSame(sql, WeatherJdbcRepositoryImpl.getSearchWeatherSql(true, false, false, false, true, true));
+        assertFalse(sql.contains("IS NULL"), sql);
+        assertTrue(sql.contains("ORDER BY date ASC, station ASC, category ASC"), sql);
+
+        assertUsesIndex("IDX_WEATHER_STATION_MONTH", sql
+            .replaceFirst("\\?", "ARRAY['s1', 's2']").replaceFirst("\\?", "3").replaceFirst("\\?", "5"));
+        assertUsesIndex("IDX_WEATHER_STATION_DATE",
+            WeatherJdbcRepositoryImpl.getSearchWeatherSql(true, false, true, true, false, false)
+                .replaceFirst("\\?", "ARRAY['s1']")
+                .replaceFirst("\\?", "DATE '2024-01-01'").replaceFirst("\\?", "DATE '2024-12-31'"));
+    }
+
+    @Test
+    void weekOfYearSql_matchesIsoWeekOfYear() {
+        var start = LocalDate.of(1999, 12, 1);
+        var weeks = jdbcTemplate.queryForList(
+            "SELECT " + WeatherSql.WEEK_OF_YEAR
+                + " FROM (SELECT DATEADD(DAY, X, DATE '1999-12-01') AS date FROM SYSTEM_RANGE(0, 11000)) ORDER BY date",
+            Integer.class);
+        for (int i = 0; i < weeks.size(); i++) {
+            var date = start.plusDays(i);
+            assertEquals(date.get(WeekFields.ISO.weekOfYear()), weeks.get(i), date.toString());
+        }
+    }
+
+    @Test
+    void aggregateWeather_aggregatesPerStationYearGroupAndCategory() {
+        repo.insertNew(List.of(
+            entity("s1", LocalDate.of(2025, 1, 1), WeatherCategory.A, 10.0),
+            entity("s1", LocalDate.of(2025, 1, 2), WeatherCategory.A, 20.0),
+            entity("s1", LocalDate.of(2025, 1, 3), WeatherCategory.A, null),
+            entity("s1", LocalDate.of(2025, 1, 1), WeatherCategory.H, 15.0),
+            entity("s1", LocalDate.of(2025, 1, 2), WeatherCategory.H, 25.0),
+            entity("s1", LocalDate.of(2025, 2, 1), WeatherCategory.H, null),
+            entity("s2", LocalDate.of(2025, 1, 5), WeatherCategory.A, 5.0)));
+        var fields = List.of(WeatherField.TEMPERATURE, WeatherField.MISSING);
+
+        var average = repo.aggregateWeather(List.of("s1"), null, WeatherGrouping.MONTHLY, WeatherAggregate.AVERAGE,
+            fields, null, null, null, null);
+        assertEquals(3, average.size());
+        assertEquals(WeatherCategory.A, average.get(0).category());
+        assertEquals(1, average.get(0).group());
+        assertEquals(15.0, average.get(0).values()[0]);
+        assertEquals(0.0, average.get(0).values()[1]);
+        assertEquals(WeatherCategory.H, average.get(1).category());
+        assertEquals(25.0, average.get(1).values()[0]);
+        assertEquals(2, average.get(2).group());
+        assertNull(average.get(2).values()[0]);
+
+        var total = repo.aggregateWeather(null, WeatherCategory.A, WeatherGrouping.YEARLY, WeatherAggregate.TOTAL,
+            fields, LocalDate.of(2025, 1, 2), null, 1, 1);
+        assertEquals(2, total.size());
+        assertEquals("s1", total.get(0).station());
+        assertEquals(2025, total.get(0).group());
+        assertEquals(20.0, total.get(0).values()[0]);
+        assertEquals("s2", total.get(1).station());
+        assertEquals(5.0, total.get(1).values()[0]);
+
+        assertThrows(IllegalArgumentException.class, () -> repo.aggregateWeather(null, null, WeatherGrouping.DAILY,
+            null, fields, null, null, null, null));
+    }
+
+    private void assertUsesIndex(String index, String sql) {
+        var plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+        assertTrue(plan.contains(index), plan);
+    }
+
+    private static WeatherEntity entity(String station, LocalDate date, WeatherCategory category, Double temperature) {
+        return WeatherEntity.builder()
+            .station(station)
+            .date(date)
+            .category(category)
+            .temperature(temperature)
+            .windDirection("N")
+            .missing(0)
+            .build();
+    }
+
+}
@@ -0,0 +1,168 @@
+package mywild.wildweather.domain.weather.data;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
+import mywild.wildweather.domain.weather.web.dto.WeatherAggregate;
+import mywild.wildweather.domain.weather.web.dto.WeatherField;
+import mywild.wildweather.domain.weather.web.dto.WeatherGrouping;
+
+public class WeatherRollupRepositoryImplTest {
+
+    private static final List<WeatherField> FIELDS = List.of(WeatherField.values());
+
+    private static final String[] DIRECTIONS = { "N", "WNW", "", null, "?" };
+
+    private EmbeddedDatabase database;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private WeatherJdbcRepositoryImpl weatherRepo;
+
+    private WeatherRollupRepositoryImpl rollupRepo;
+
+    private final Random random = new Random(3);
+
+    @BeforeEach
+    void setup() throws Exception {
+        database = new EmbeddedDatabaseBuilder()
+            .generateUniqueName(true)
+            .setType(EmbeddedDatabaseType.H2)
+            .addScript("sql/schema-tables.sql")
+            .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        weatherRepo = new WeatherJdbcRepositoryImpl();
+        var f1 = WeatherJdbcRepositoryImpl.class.getDeclaredField("jdbcTemplate");
+        f1.setAccessible(true);
+        f1.set(weatherRepo, jdbcTemplate);
+        rollupRepo = new WeatherRollupRepositoryImpl();
+        var f2 = WeatherRollupRepositoryImpl.class.getDeclaredField("jdbcTemplate");
+        f2.setAccessible(true);
+        f2.set(rollupRepo, jdbcTemplate);
+    }
+
+    @AfterEach
+    void cleanup() {
+        database.shutdown();
+    }
+
+    @Test
+    void initializeRollups_calculatesMissingRollupsFromExistingData() {
+        weatherRepo.insertNew(entities("s1", LocalDate.of(2023, 11, 20), LocalDate.of(2025, 2, 3)));
+        weatherRepo.insertNew(entities("s2", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31)));
+
+        // A query does not calculate the rollups
+        rollupRepo.findRollups(null, null, WeatherGrouping.YEARLY, null, FIELDS, null, null, null, null);
+        assertFalse(rollupRepo.isRollupsInitialized());
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM \"weather_rollup\"", Integer.class));
+
+        rollupRepo.initializeRollups();
+        assertTrue(rollupRepo.isRollupsInitialized());
+        assertSameAsAggregate(null, null, null, null, null);
+        assertTrue(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM \"weather_rollup\"", Integer.class) > 0);
+    }
+
+    @Test
+    void refreshRollups_onlyUpdatesTheChangedBuckets() {
+        weatherRepo.insertNew(entities("s1", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 6, 30)));
+        rollupRepo.refreshRollups("s1", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 6, 30));
+        var januaryId = jdbcTemplate.queryForObject(
+            "SELECT id FROM \"weather_rollup\" WHERE resolution = 'MONTHLY' AND group_bucket = 1 AND category = 'A'", Long.class);
+
+        weatherRepo.insertNew(entities("s1", LocalDate.of(2024, 6, 20), LocalDate.of(2024, 8, 12)));
+        rollupRepo.refreshRollups("s1", LocalDate.of(2024, 7, 1), LocalDate.of(2024, 8, 12));
+
+        assertEquals(januaryId, jdbcTemplate.queryForObject(
+            "SELECT id FROM \"weather_rollup\" WHERE resolution = 'MONTHLY' AND group_bucket = 1 AND category = 'A'", Long.class));
+        assertSameAsAggregate(null, null, null, null, null);
+    }
+
+    @Test
+    void findRollups_filtersCompleteGroups() {
+        weatherRepo.insertNew(entities("s1", LocalDate.of(2023, 12, 1), LocalDate.of(2025, 1, 31)));
+        weatherRepo.insertNew(entities("s2", LocalDate.of(2024, 3, 1), LocalDate.of(2024, 9, 30)));
+        rollupRepo.initializeRollups();
+
+        assertSameAsAggregate(List.of("s2"), WeatherCategory.H, null, null, null);
+        assertSameAsAggregate(null, null, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), null);
+        for (var aggregate : WeatherAggregate.values()) {
+            var expected = weatherRepo.aggregateWeather(null, null, WeatherGrouping.MONTHLY, aggregate, FIELDS,
+                LocalDate.of(2024, 2, 1), LocalDate.of(2024, 11, 30), 4, 8);
+            var actual = rollupRepo.findRollups(null, null, WeatherGrouping.MONTHLY, aggregate, FIELDS,
+                LocalDate.of(2024, 2, 1), LocalDate.of(2024, 11, 30), 4, 8);
+            assertSameRows(expected, actual);
+        }
+        assertThrows(IllegalArgumentException.class, () -> rollupRepo.findRollups(null, null, WeatherGrouping.YEARLY,
+            null, FIELDS, null, null, 1, 2));
+    }
+
+    @Test
+    void deleteAllRollups_removesAllRollups() {
+        weatherRepo.insertNew(entities("s1", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31)));
+        rollupRepo.refreshRollups("s1", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31));
+        rollupRepo.deleteAllRollups();
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM \"weather_rollup\"", Integer.class));
+    }
+
+    private void assertSameAsAggregate(List<String> stations, WeatherCategory category,
+            LocalDate startDate, LocalDate endDate, Integer month) {
+        for (var grouping : List.of(WeatherGrouping.WEEKLY, WeatherGrouping.MONTHLY, WeatherGrouping.YEARLY)) {
+            for (var aggregate : WeatherAggregate.values()) {
+                var expected = weatherRepo.aggregateWeather(stations, category, grouping, aggregate, FIELDS,
+                    startDate, endDate, month, month);
+                var actual = rollupRepo.findRollups(stations, category, grouping, aggregate, FIELDS,
+                    startDate, endDate, month, month);
+                assertSameRows(expected, actual);
+            }
+        }
+    }
+
+    private static void assertSameRows(List<WeatherGroupRow> expected, List<WeatherGroupRow> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            var e = expected.get(i);
+            var a = actual.get(i);
+            var description = e.station() + " " + e.year() + " " + e.group() + " " + e.category();
+            assertEquals(e.station(), a.station(), description);
+            assertEquals(e.year(), a.year(), description);
+            assertEquals(e.group(), a.group(), description);
+            assertEquals(e.category(), a.category(), description);
+            assertEquals(e.firstDate(), a.firstDate(), description);
+            assertArrayEquals(e.values(), a.values(), description);
+        }
+    }
+
+    private List<WeatherEntity> entities(String station, LocalDate startDate, LocalDate endDate) {
+        var entities = new ArrayList<WeatherEntity>();
+        for (var date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+            for (var category : WeatherCategory.values()) {
+                entities.add(WeatherEntity.builder()
+                    .station(station)
+                    .date(date)
+                    .category(category)
+                    .temperature(random.nextInt(6) == 0 ? null : random.nextInt(400) / 10.0)
+                    .windDirection(DIRECTIONS[random.nextInt(DIRECTIONS.length)])
+                    .humidity(random.nextInt(1000) / 10.0)
+                    .missing(random.nextInt(8) == 0 ? 100.0 : random.nextInt(20))
+                    .build());
+            }
+        }
+        return entities;
+    }
+
+}
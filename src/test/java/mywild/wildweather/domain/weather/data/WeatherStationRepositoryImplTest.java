@@ -0,0 +1,116 @@
+package mywild.wildweather.domain.weather.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
+
+public class WeatherStationRepositoryImplTest {
+
+    private EmbeddedDatabase database;
+
+    private WeatherJdbcRepositoryImpl weatherRepo;
+
+    private WeatherStationRepositoryImpl stationRepo;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setup() throws Exception {
+        database = new EmbeddedDatabaseBuilder()
+            .generateUniqueName(true)
+            .setType(EmbeddedDatabaseType.H2)
+            .addScript("sql/schema-tables.sql")
+            .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        weatherRepo = new WeatherJdbcRepositoryImpl();
+        var f1 = WeatherJdbcRepositoryImpl.class.getDeclaredField("jdbcTemplate");
+        f1.setAccessible(true);
+        f1.set(weatherRepo, jdbcTemplate);
+        stationRepo = new WeatherStationRepositoryImpl();
+        var f2 = WeatherStationRepositoryImpl.class.getDeclaredField("jdbcTemplate");
+        f2.setAccessible(true);
+        f2.set(stationRepo, jdbcTemplate);
+    }
+
+    @AfterEach
+    void cleanup() {
+        database.shutdown();
+    }
+
+    @Test
+    void findStationCatalog_addsTheStationsOfExistingData() {
+        weatherRepo.insertNew(entities("s2", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 10), 0));
+        weatherRepo.insertNew(entities("s1", LocalDate.of(2023, 12, 30), LocalDate.of(2024, 1, 2), 100));
+
+        var catalog = stationRepo.findStationCatalog();
+
+        assertEquals(List.of(
+            new WeatherStationRow("s1", LocalDate.of(2023, 12, 30), LocalDate.of(2024, 1, 2), 12, 4, null),
+            new WeatherStationRow("s2", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 10), 30, 0, null)),
+            catalog);
+    }
+
+    @Test
+    void refreshStation_updatesTheStationAndKeepsItsSource() {
+        assertTrue(stationRepo.findStationCatalog().isEmpty());
+
+        weatherRepo.insertNew(entities("s1", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 10), 0));
+        stationRepo.refreshStation("s1", "s1 -> a.csv");
+        assertEquals(List.of(
+            new WeatherStationRow("s1", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 10), 30, 0, "s1 -> a.csv")),
+            stationRepo.findStationCatalog());
+
+        weatherRepo.insertNew(entities("s1", LocalDate.of(2024, 1, 11), LocalDate.of(2024, 1, 12), 100));
+        stationRepo.refreshStation("s1", null);
+        assertEquals(List.of(
+            new WeatherStationRow("s1", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 12), 36, 2, "s1 -> a.csv")),
+            stationRepo.findStationCatalog());
+
+        stationRepo.deleteAllStations();
+        weatherRepo.insertNew(entities("s2", LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 1), 0));
+        stationRepo.refreshStation("s2", "s2 -> b.csv");
+        assertEquals(List.of(
+            new WeatherStationRow("s2", LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 1), 3, 0, "s2 -> b.csv")),
+            stationRepo.findStationCatalog());
+    }
+
+    @Test
+    void refreshStation_removesTheStationWithoutRows() {
+        weatherRepo.insertNew(entities("s1", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 2), 0));
+        weatherRepo.insertNew(entities("s2", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 2), 0));
+        assertEquals(2, stationRepo.findStationCatalog().size());
+
+        jdbcTemplate.update("DELETE FROM \"weather\" WHERE station = 's1'");
+        stationRepo.refreshStation("s1", null);
+        assertEquals(List.of("s2"), stationRepo.findStationCatalog().stream().map(WeatherStationRow::station).toList());
+    }
+
+    private static List<WeatherEntity> entities(String station, LocalDate startDate, LocalDate endDate, double missing) {
+        var entities = new ArrayList<WeatherEntity>();
+        for (var date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+            for (var category : WeatherCategory.values()) {
+                entities.add(WeatherEntity.builder()
+                    .station(station)
+                    .date(date)
+                    .category(category)
+                    .temperature(10.0)
+                    .windDirection("N")
+                    .missing(missing)
+                    .build());
+            }
+        }
+        return entities;
+    }
+
+}
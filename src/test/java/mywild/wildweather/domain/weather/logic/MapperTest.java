@@ -1,16 +1,26 @@
 package mywild.wildweather.domain.weather.logic;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import mywild.wildweather.domain.weather.data.WeatherJdbcRepositoryImpl;
 import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
 import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
 import mywild.wildweather.domain.weather.web.dto.WeatherAggregate;
+import mywild.wildweather.domain.weather.web.dto.WeatherField;
 import mywild.wildweather.domain.weather.web.dto.WeatherGrouping;
 
 public class MapperTest {
@@ -45,4 +55,94 @@ public class MapperTest {
         assertFalse(fieldMap.isEmpty());
     }
 
+    @Test
+    void testMapEntitiesToDtoAggregatesTheGroups() {
+        var entities = List.of(
+            day("s2", LocalDate.of(2025, 1, 30), WeatherCategory.H, 12.0, 0.0),
+            day("s2", LocalDate.of(2025, 1, 30), WeatherCategory.A, 8.0, 0.0),
+            day("s1", LocalDate.of(2025, 1, 31), WeatherCategory.A, 6.0, 0.0),
+            day("s1", LocalDate.of(2025, 1, 31), WeatherCategory.H, 9.0, 0.0),
+            day("s2", LocalDate.of(2025, 1, 31), WeatherCategory.A, 4.0, 10.0),
+            day("s2", LocalDate.of(2025, 1, 31), WeatherCategory.H, 15.0, 0.0),
+            day("s2", LocalDate.of(2025, 1, 31), WeatherCategory.L, 1.0, 0.0),
+            day("s2", LocalDate.of(2025, 2, 1), WeatherCategory.A, 100.0, 100.0),
+            day("s2", LocalDate.of(2025, 2, 2), WeatherCategory.A, null, 0.0));
+        var fields = Set.of(WeatherField.TEMPERATURE, WeatherField.MISSING);
+
+        var average = Mapper.mapEntitiesToDto(WeatherGrouping.MONTHLY, WeatherAggregate.AVERAGE, fields, entities);
+        assertEquals("{s2={2025={01={tmp={H=15.0, A=6.0, L=1.0}, mis={H=0.0, A=5.0, L=0.0}}, "
+            + "02={tmp={A=null}, mis={A=50.0}}}}, s1={2025={01={tmp={A=6.0, H=9.0}, mis={A=0.0, H=0.0}}}}}",
+            average.getWeather().toString());
+
+        var total = Mapper.mapEntitiesToDto(WeatherGrouping.MONTHLY, WeatherAggregate.TOTAL, fields, entities);
+        assertEquals("{s2={2025={01={tmp={H=27.0, A=12.0, L=1.0}, mis={H=0.0, A=10.0, L=0.0}}, "
+            + "02={tmp={A=null}, mis={A=100.0}}}}, s1={2025={01={tmp={A=6.0, H=9.0}, mis={A=0.0, H=0.0}}}}}",
+            total.getWeather().toString());
+    }
+
+    @Test
+    void testMapGroupsToDtoMatchesMapEntitiesToDto() throws Exception {
+        var database = new EmbeddedDatabaseBuilder()
+            .generateUniqueName(true)
+            .setType(EmbeddedDatabaseType.H2)
+            .addScript("sql/schema-tables.sql")
+            .build();
+        try {
+            var repo = new WeatherJdbcRepositoryImpl();
+            var jdbcTemplateField = WeatherJdbcRepositoryImpl.class.getDeclaredField("jdbcTemplate");
+            jdbcTemplateField.setAccessible(true);
+            jdbcTemplateField.set(repo, new JdbcTemplate(database));
+
+            // Use quarters, so that the sums are exact in both the database and in Java
+            var random = new Random(7);
+            var directions = new String[] { "N", "ESE", "", null, "?" };
+            var entities = new ArrayList<WeatherEntity>();
+            for (var station : List.of("s2", "s1")) {
+                var start = LocalDate.of(2023, 12, 1).plusDays(random.nextInt(40));
+                for (var date = start; date.isBefore(LocalDate.of(2025, 3, 1)); date = date.plusDays(1 + random.nextInt(2))) {
+                    for (var category : WeatherCategory.values()) {
+                        entities.add(WeatherEntity.builder()
+                            .station(station)
+                            .date(date)
+                            .category(category)
+                            .temperature(random.nextInt(6) == 0 ? null : random.nextInt(400) / 4.0)
+                            .windDirection(directions[random.nextInt(directions.length)])
+                            .rainDaily(random.nextInt(6) == 0 ? null : random.nextInt(100) / 4.0)
+                            .missing(random.nextInt(8) == 0 ? 100.0 : random.nextInt(20))
+                            .build());
+                    }
+                }
+            }
+            entities.sort(Comparator.comparing(WeatherEntity::getDate)
+                .thenComparing(WeatherEntity::getStation)
+                .thenComparing(e -> e.getCategory().name()));
+            repo.insertNew(entities);
+
+            var fields = List.of(WeatherField.values());
+            for (var grouping : List.of(WeatherGrouping.WEEKLY, WeatherGrouping.MONTHLY, WeatherGrouping.YEARLY)) {
+                for (var aggregate : WeatherAggregate.values()) {
+                    var expected = Mapper.mapEntitiesToDto(grouping, aggregate, null, entities);
+                    var actual = Mapper.mapGroupsToDto(grouping, fields,
+                        repo.aggregateWeather(null, null, grouping, aggregate, fields, null, null, null, null));
+                    // Compare the text, so that the order of the entries is also compared
+                    assertEquals(expected.getWeather().toString(), actual.getWeather().toString(), grouping + " " + aggregate);
+                }
+            }
+        }
+        finally {
+            database.shutdown();
+        }
+    }
+
+    private static WeatherEntity day(String station, LocalDate date, WeatherCategory category, Double temperature,
+            Double missing) {
+        return WeatherEntity.builder()
+            .station(station)
+            .date(date)
+            .category(category)
+            .temperature(temperature)
+            .missing(missing)
+            .build();
+    }
+
 }
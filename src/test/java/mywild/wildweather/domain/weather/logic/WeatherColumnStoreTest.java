@@ -0,0 +1,204 @@
+package mywild.wildweather.domain.weather.logic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import mywild.wildweather.domain.weather.data.WeatherRepository;
+import mywild.wildweather.domain.weather.data.WeatherRowCallback;
+import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
+import mywild.wildweather.domain.weather.web.dto.WeatherAggregate;
+import mywild.wildweather.domain.weather.web.dto.WeatherField;
+import mywild.wildweather.domain.weather.web.dto.WeatherGrouping;
+
+public class WeatherColumnStoreTest {
+
+    private static final String[] DIRECTIONS = { "N", "SSW", "", null, "??" };
+
+    private final List<WeatherEntity> entities = new ArrayList<>();
+
+    private WeatherColumnStore store;
+
+    @BeforeEach
+    void setup() throws Exception {
+        var random = new Random(42);
+        for (var station : List.of("s2", "s1", "s3")) {
+            var date = LocalDate.of(2023, 12, 20).plusDays(random.nextInt(20));
+            var end = LocalDate.of(2025, 2, 10).minusDays(random.nextInt(20));
+            for (; !date.isAfter(end); date = date.plusDays(1 + (random.nextInt(10) == 0 ? random.nextInt(5) : 0))) {
+                for (var category : WeatherCategory.values()) {
+                    if (random.nextInt(20) == 0) {
+                        continue;
+                    }
+                    entities.add(WeatherEntity.builder()
+                        .station(station)
+                        .date(date)
+                        .category(category)
+                        .temperature(randomValue(random))
+                        .windSpeed(randomValue(random))
+                        .windMax(randomValue(random))
+                        .windDirection(DIRECTIONS[random.nextInt(DIRECTIONS.length)])
+                        .rainRate(randomValue(random))
+                        .rainDaily(randomValue(random))
+                        .pressure(randomValue(random))
+                        .humidity(randomValue(random))
+                        .uvRadiationIndex(randomValue(random))
+                        .missing(random.nextInt(10) == 0 ? 100.0 : random.nextInt(30) * 1.0)
+                        .build());
+                }
+            }
+        }
+        WeatherRepository repo = mock(WeatherRepository.class);
+        doAnswer(invocation -> {
+            scan(entities.stream(), invocation.getArgument(0));
+            return null;
+        }).when(repo).scanAll(any());
+        doAnswer(invocation -> {
+            String station = invocation.getArgument(0);
+            LocalDate startDate = invocation.getArgument(1);
+            LocalDate endDate = invocation.getArgument(2);
+            scan(entities.stream().filter(e -> e.getStation().equals(station)
+                && !e.getDate().isBefore(startDate) && !e.getDate().isAfter(endDate)), invocation.getArgument(3));
+            return null;
+        }).when(repo).scanStation(any(), any(), any(), any());
+
+        store = new WeatherColumnStore();
+        var repoField = WeatherColumnStore.class.getDeclaredField("repo");
+        repoField.setAccessible(true);
+        repoField.set(store, repo);
+    }
+
+    @Test
+    void isLoaded_onlyAfterReload() {
+        assertFalse(store.isLoaded());
+        store.reload();
+        assertTrue(store.isLoaded());
+    }
+
+    @Test
+    void getWeather_matchesMapperForAllGroupingsAndAggregates() {
+        store.reload();
+        for (var grouping : WeatherGrouping.values()) {
+            for (var aggregate : WeatherAggregate.values()) {
+                assertSameAsMapper(null, grouping, null, aggregate, null, null, null, null, null);
+                assertSameAsMapper(List.of("s3", "s1"), grouping, null, aggregate, null, null, null, null, null);
+                for (var category : WeatherCategory.values()) {
+                    assertSameAsMapper(null, grouping, category, aggregate, null, null, null, null, null);
+                }
+            }
+        }
+    }
+
+    @Test
+    void getWeather_matchesMapperWithFilters() {
+        store.reload();
+        assertSameAsMapper(List.of("s2"), WeatherGrouping.DAILY, WeatherCategory.H, WeatherAggregate.AVERAGE,
+            Set.of(WeatherField.TEMPERATURE, WeatherField.MISSING), null, null, null, null);
+        assertSameAsMapper(null, WeatherGrouping.WEEKLY, null, WeatherAggregate.TOTAL,
+            Set.of(WeatherField.RAIN_DAILY), LocalDate.of(2024, 3, 3), LocalDate.of(2024, 11, 4), null, null);
+        assertSameAsMapper(null, WeatherGrouping.MONTHLY, null, null,
+            null, null, null, 11, 2);
+        assertSameAsMapper(null, WeatherGrouping.YEARLY, WeatherCategory.A, WeatherAggregate.AVERAGE,
+            Set.of(WeatherField.WIND_DIRECTION), null, LocalDate.of(2024, 6, 30), 2, 8);
+        assertSameAsMapper(List.of("unknown"), null, null, null,
+            null, null, null, null, null);
+        assertSameAsMapper(null, WeatherGrouping.DAILY, null, null,
+            null, LocalDate.of(2030, 1, 1), null, null, null);
+    }
+
+    @Test
+    void update_onlyReadsTheChangedDaysOfTheChangedStations() {
+        store.reload();
+        // Changed values, days before and after a station's days, a new station, and a station whose rows were removed
+        var random = new Random(7);
+        entities.replaceAll(e -> e.getStation().equals("s1") && e.getDate().getMonthValue() == 3
+            ? e.toBuilder().temperature(randomValue(random)).missing(100.0).build() : e);
+        for (var category : WeatherCategory.values()) {
+            entities.add(WeatherEntity.builder().station("s2").date(LocalDate.of(2023, 6, 1)).category(category)
+                .temperature(randomValue(random)).missing(0.0).build());
+            entities.add(WeatherEntity.builder().station("s2").date(LocalDate.of(2025, 5, 1)).category(category)
+                .rainDaily(randomValue(random)).missing(5.0).build());
+            entities.add(WeatherEntity.builder().station("s0").date(LocalDate.of(2024, 7, 7)).category(category)
+                .humidity(randomValue(random)).windDirection("NNE").missing(0.0).build());
+        }
+        entities.removeIf(e -> e.getStation().equals("s3"));
+
+        store.update(Map.of(
+            "s1", new TreeMap<>(Map.of(LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31))),
+            "s2", new TreeMap<>(Map.of(
+                LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 1),
+                LocalDate.of(2025, 4, 20), LocalDate.of(2025, 5, 1))),
+            "s0", new TreeMap<>(Map.of(LocalDate.of(2024, 7, 7), LocalDate.of(2024, 7, 7))),
+            "s3", new TreeMap<>(Map.of(LocalDate.of(2020, 1, 1), LocalDate.of(2026, 1, 1)))));
+
+        assertTrue(store.isLoaded());
+        for (var grouping : WeatherGrouping.values()) {
+            assertSameAsMapper(null, grouping, null, WeatherAggregate.AVERAGE, null, null, null, null, null);
+        }
+        assertSameAsMapper(List.of("s2"), WeatherGrouping.DAILY, WeatherCategory.L, WeatherAggregate.TOTAL,
+            null, LocalDate.of(2025, 1, 1), null, null, null);
+    }
+
+    private void assertSameAsMapper(List<String> stations, WeatherGrouping grouping, WeatherCategory category,
+            WeatherAggregate aggregate, Set<WeatherField> fields, LocalDate startDate, LocalDate endDate,
+            Integer startMonth, Integer endMonth) {
+        var rows = entities.stream()
+            .filter(e -> stations == null || stations.contains(e.getStation()))
+            .filter(e -> category == null || e.getCategory() == category)
+            .filter(e -> startDate == null || !e.getDate().isBefore(startDate))
+            .filter(e -> endDate == null || !e.getDate().isAfter(endDate))
+            .filter(e -> startMonth == null || e.getDate().getMonthValue() >= startMonth)
+            .filter(e -> endMonth == null || e.getDate().getMonthValue() <= endMonth)
+            .sorted(Comparator.comparing(WeatherEntity::getDate)
+                .thenComparing(WeatherEntity::getStation)
+                .thenComparing(e -> e.getCategory().name()))
+            .toList();
+        var expected = Mapper.mapEntitiesToDto(grouping, aggregate, fields, rows);
+        var actual = store.getWeather(stations, grouping, category, aggregate, fields,
+            startDate, endDate, startMonth, endMonth);
+        // Compare the text, so that the order of the entries is also compared
+        assertEquals(expected.getWeather().toString(), actual.getWeather().toString());
+    }
+
+    private static void scan(Stream<WeatherEntity> rows, WeatherRowCallback callback) {
+        var values = new double[WeatherRowCallback.VALUES];
+        rows.sorted(Comparator.comparing(WeatherEntity::getStation)
+                .thenComparing(WeatherEntity::getDate)
+                .thenComparing(e -> e.getCategory().name()))
+            .forEach(e -> {
+                values[WeatherRowCallback.TEMPERATURE] = toDouble(e.getTemperature());
+                values[WeatherRowCallback.WIND_SPEED] = toDouble(e.getWindSpeed());
+                values[WeatherRowCallback.WIND_MAX] = toDouble(e.getWindMax());
+                values[WeatherRowCallback.RAIN_RATE] = toDouble(e.getRainRate());
+                values[WeatherRowCallback.RAIN_DAILY] = toDouble(e.getRainDaily());
+                values[WeatherRowCallback.PRESSURE] = toDouble(e.getPressure());
+                values[WeatherRowCallback.HUMIDITY] = toDouble(e.getHumidity());
+                values[WeatherRowCallback.UV_RADIATION_INDEX] = toDouble(e.getUvRadiationIndex());
+                values[WeatherRowCallback.MISSING] = e.getMissing();
+                callback.accept(e.getStation(), e.getDate(), e.getCategory(), e.getWindDirection(), values);
+            });
+    }
+
+    private static Double randomValue(Random random) {
+        return random.nextInt(8) == 0 ? null : Math.round(random.nextDouble(-20, 40) * 100) / 100.0;
+    }
+
+    private static double toDouble(Double value) {
+        return value == null ? Double.NaN : value;
+    }
+
+}
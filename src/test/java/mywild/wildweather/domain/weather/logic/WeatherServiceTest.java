@@ -4,14 +4,30 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Consumer;
 import org.junit.jupiter.api.Test;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import mywild.wildweather.domain.weather.data.WeatherRepository;
+import mywild.wildweather.domain.weather.data.WeatherStationRow;
 import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
 import mywild.wildweather.domain.weather.web.dto.WeatherAggregate;
+import mywild.wildweather.domain.weather.web.dto.WeatherDataDto;
+import mywild.wildweather.domain.weather.web.dto.WeatherField;
 import mywild.wildweather.domain.weather.web.dto.WeatherGrouping;
 
 public class WeatherServiceTest {
@@ -20,10 +36,14 @@ public class WeatherServiceTest {
     void testGetWeatherDelegatesToMapperAndRepo() throws Exception {
         WeatherService svc = new WeatherService();
         WeatherRepository repo = mock(WeatherRepository.class);
+        WeatherColumnStore columnStore = mock(WeatherColumnStore.class);
 
         var repoField = WeatherService.class.getDeclaredField("repo");
         repoField.setAccessible(true);
         repoField.set(svc, repo);
+        var columnStoreField = WeatherService.class.getDeclaredField("columnStore");
+        columnStoreField.setAccessible(true);
+        columnStoreField.set(svc, columnStore);
 
         when(repo.searchWeather(any(), any(), any(), any(), any(), any())).thenReturn(List.of());
 
@@ -33,6 +53,155 @@ public class WeatherServiceTest {
         assertTrue(dto.getWeather().isEmpty());
     }
 
+    @Test
+    void testGetWeatherAggregatesCoarseGroupingsInTheDatabase() throws Exception {
+        WeatherService svc = new WeatherService();
+        WeatherRepository repo = mock(WeatherRepository.class);
+        WeatherColumnStore columnStore = mock(WeatherColumnStore.class);
+
+        var repoField = WeatherService.class.getDeclaredField("repo");
+        repoField.setAccessible(true);
+        repoField.set(svc, repo);
+        var columnStoreField = WeatherService.class.getDeclaredField("columnStore");
+        columnStoreField.setAccessible(true);
+        columnStoreField.set(svc, columnStore);
+
+        when(repo.aggregateWeather(any(), any(), any(), any(), any(), any(), any(), any(), any())).thenReturn(List.of());
+        when(repo.findRollups(any(), any(), any(), any(), any(), any(), any(), any(), any())).thenReturn(List.of());
+
+        // The rollups are not read before they have been calculated
+        var dto = svc.getWeather(null, WeatherGrouping.YEARLY, null, WeatherAggregate.AVERAGE, null,
+                LocalDate.of(2024, 1, 1), null, null, null);
+        assertTrue(dto.getWeather().isEmpty());
+        verify(repo).aggregateWeather(null, null, WeatherGrouping.YEARLY, WeatherAggregate.AVERAGE,
+                List.of(WeatherField.values()), LocalDate.of(2024, 1, 1), null, null, null);
+        verify(repo, never()).findRollups(any(), any(), any(), any(), any(), any(), any(), any(), any());
+        when(repo.isRollupsInitialized()).thenReturn(true);
+
+        // Complete years can be read from the rollups
+        dto = svc.getWeather(null, WeatherGrouping.YEARLY, null, WeatherAggregate.AVERAGE, null,
+                LocalDate.of(2024, 1, 1), null, null, null);
+        assertTrue(dto.getWeather().isEmpty());
+        verify(repo).findRollups(null, null, WeatherGrouping.YEARLY, WeatherAggregate.AVERAGE,
+                List.of(WeatherField.values()), LocalDate.of(2024, 1, 1), null, null, null);
+
+        // Partial years have to be aggregated from the days
+        dto = svc.getWeather(null, WeatherGrouping.YEARLY, null, WeatherAggregate.AVERAGE, null,
+                LocalDate.of(2024, 1, 2), null, null, null);
+        assertTrue(dto.getWeather().isEmpty());
+        verify(repo).aggregateWeather(null, null, WeatherGrouping.YEARLY, WeatherAggregate.AVERAGE,
+                List.of(WeatherField.values()), LocalDate.of(2024, 1, 2), null, null, null);
+        verify(repo, never()).searchWeather(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testGetWeatherUsesColumnStoreWhenLoaded() throws Exception {
+        WeatherService svc = new WeatherService();
+        WeatherRepository repo = mock(WeatherRepository.class);
+        WeatherColumnStore columnStore = mock(WeatherColumnStore.class);
+
+        var repoField = WeatherService.class.getDeclaredField("repo");
+        repoField.setAccessible(true);
+        repoField.set(svc, repo);
+        var columnStoreField = WeatherService.class.getDeclaredField("columnStore");
+        columnStoreField.setAccessible(true);
+        columnStoreField.set(svc, columnStore);
+
+        var expected = new WeatherDataDto();
+        when(columnStore.isLoaded()).thenReturn(true);
+        when(columnStore.getWeather(any(), any(), any(), any(), any(), any(), any(), any(), any())).thenReturn(expected);
+        when(repo.aggregateWeather(any(), any(), any(), any(), any(), any(), any(), any(), any())).thenReturn(List.of());
+
+        var dto = svc.getWeather(List.of("s1"), WeatherGrouping.DAILY, null, WeatherAggregate.TOTAL, null,
+                null, null, 1, 6);
+        assertEquals(expected, dto);
+        verify(repo, never()).searchWeather(any(), any(), any(), any(), any(), any());
+
+        // The other groupings are aggregated in the database
+        svc.getWeather(List.of("s1"), WeatherGrouping.MONTHLY, null, WeatherAggregate.TOTAL, null,
+                null, null, 1, 6);
+        verify(columnStore).getWeather(any(), any(), any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testStreamWeatherWritesTheSameJsonAsGetWeather() throws Exception {
+        WeatherService svc = new WeatherService();
+        WeatherRepository repo = mock(WeatherRepository.class);
+        WeatherColumnStore columnStore = mock(WeatherColumnStore.class);
+        var objectMapper = new ObjectMapper();
+
+        var repoField = WeatherService.class.getDeclaredField("repo");
+        repoField.setAccessible(true);
+        repoField.set(svc, repo);
+        var columnStoreField = WeatherService.class.getDeclaredField("columnStore");
+        columnStoreField.setAccessible(true);
+        columnStoreField.set(svc, columnStore);
+        var objectMapperField = WeatherService.class.getDeclaredField("objectMapper");
+        objectMapperField.setAccessible(true);
+        objectMapperField.set(svc, objectMapper);
+
+        var random = new Random(7);
+        var entities = new ArrayList<WeatherEntity>();
+        for (var station : List.of("s2", "s1", "s3")) {
+            var end = LocalDate.of(2025, 2, 10).minusDays(random.nextInt(30));
+            for (var date = LocalDate.of(2023, 12, 1).plusDays(random.nextInt(60)); !date.isAfter(end); date = date.plusDays(1)) {
+                for (var category : WeatherCategory.values()) {
+                    if (random.nextInt(10) > 0) {
+                        entities.add(WeatherEntity.builder()
+                            .station(station)
+                            .date(date)
+                            .category(category)
+                            .temperature(random.nextInt(8) == 0 ? null : random.nextInt(400) / 10.0)
+                            .rainDaily(random.nextInt(200) / 10.0)
+                            .windDirection("N")
+                            .missing(random.nextInt(10) == 0 ? 100.0 : 0.0)
+                            .build());
+                    }
+                }
+            }
+        }
+        Comparator<WeatherEntity> byDateAndCategory = Comparator.comparing(WeatherEntity::getDate)
+            .thenComparing(entity -> entity.getCategory().name());
+        when(repo.searchWeather(any(), any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            WeatherCategory category = invocation.getArgument(1);
+            return entities.stream()
+                .filter(entity -> category == null || entity.getCategory() == category)
+                .sorted(Comparator.comparing(WeatherEntity::getDate)
+                    .thenComparing(WeatherEntity::getStation)
+                    .thenComparing(entity -> entity.getCategory().name()))
+                .toList();
+        });
+        when(repo.findFirstDates(any(), any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            var firstDates = new LinkedHashMap<String, LocalDate>();
+            entities.stream()
+                .sorted(Comparator.comparing(WeatherEntity::getDate).thenComparing(WeatherEntity::getStation))
+                .forEach(entity -> firstDates.putIfAbsent(entity.getStation(), entity.getDate()));
+            return firstDates;
+        });
+        doAnswer(invocation -> {
+            String station = invocation.getArgument(0);
+            WeatherCategory category = invocation.getArgument(1);
+            Consumer<WeatherEntity> consumer = invocation.getArgument(6);
+            entities.stream()
+                .filter(entity -> entity.getStation().equals(station))
+                .filter(entity -> category == null || entity.getCategory() == category)
+                .sorted(byDateAndCategory)
+                .forEach(consumer);
+            return null;
+        }).when(repo).streamWeather(any(), any(), any(), any(), any(), any(), any());
+
+        for (var aggregate : WeatherAggregate.values()) {
+            for (var category : new WeatherCategory[] { null, WeatherCategory.H }) {
+                var expected = objectMapper.writeValueAsString(svc.getWeather(null, WeatherGrouping.DAILY, category,
+                    aggregate, Set.of(WeatherField.TEMPERATURE, WeatherField.MISSING), null, null, null, null));
+                var output = new ByteArrayOutputStream();
+                svc.streamWeather(null, WeatherGrouping.DAILY, category,
+                    aggregate, Set.of(WeatherField.TEMPERATURE, WeatherField.MISSING), null, null, null, null, output);
+                assertEquals(expected, output.toString(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
     @Test
     void testGetWeatherStationsAndStatus() throws Exception {
         WeatherService svc = new WeatherService();
@@ -45,11 +214,9 @@ public class WeatherServiceTest {
         myStationsField.setAccessible(true);
         myStationsField.set(svc, List.of("s1"));
 
-        when(repo.findStations()).thenReturn(List.of("s1", "s2"));
-        when(repo.findBottomDateByStation("s1")).thenReturn(LocalDate.of(2025, 1, 1));
-        when(repo.findTopDateByStation("s1")).thenReturn(LocalDate.of(2025, 1, 15));
-        when(repo.findBottomDateByStation("s2")).thenReturn(LocalDate.of(2025, 1, 2));
-        when(repo.findTopDateByStation("s2")).thenReturn(LocalDate.of(2025, 1, 20));
+        when(repo.findStationCatalog()).thenReturn(List.of(
+            new WeatherStationRow("s1", LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 15), 45, 2, "s1 -> a.csv"),
+            new WeatherStationRow("s2", LocalDate.of(2025, 1, 2), LocalDate.of(2025, 1, 20), 57, 0, null)));
 
         var stations = svc.getWeatherStations();
         assertEquals(2, stations.size());
@@ -57,6 +224,11 @@ public class WeatherServiceTest {
         var status = svc.getWeatherStatus();
         assertEquals(2, status.size());
         assertEquals("s1", status.get(0).getStation());
+        assertEquals(LocalDate.of(2025, 1, 1), status.get(0).getStartDate());
+        assertEquals(LocalDate.of(2025, 1, 15), status.get(0).getEndDate());
+        assertEquals(45, status.get(0).getRowCount());
+        assertEquals(2, status.get(0).getMissingDays());
+        assertEquals("s1 -> a.csv", status.get(0).getSource());
         assertTrue(status.get(0).isMyStation());
         assertTrue(!status.get(1).isMyStation());
     }
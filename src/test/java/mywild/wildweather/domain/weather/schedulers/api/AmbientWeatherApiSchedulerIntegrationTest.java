@@ -1,5 +1,6 @@
 package mywild.wildweather.domain.weather.schedulers.api;
 
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -14,8 +15,6 @@ import java.time.ZoneOffset;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.jupiter.api.Test;
-import org.mockito.MockedStatic;
-import org.mockito.Mockito;
 import mywild.ambientweather.openapi.client.api.AmbientWeatherApi;
 import mywild.ambientweather.openapi.client.model.DeviceData;
 import mywild.wildweather.domain.weather.data.WeatherRepository;
@@ -41,7 +40,8 @@ public class AmbientWeatherApiSchedulerIntegrationTest {
         var api = mock(AmbientWeatherApi.class);
         var repo = mock(WeatherRepository.class);
 
-        when(repo.findTopDateByStation(anyString())).thenReturn(LocalDate.now().minusDays(1));
+        when(repo.findMissingDays(anyString(), any(), any(), any()))
+            .thenReturn(List.of(LocalDate.now(ZoneOffset.UTC).minusDays(1)));
 
         OffsetDateTime apiEndDate = LocalDate.now(ZoneOffset.UTC).atStartOfDay().atOffset(ZoneOffset.UTC)
                 .minusSeconds(1);
@@ -67,19 +67,32 @@ public class AmbientWeatherApiSchedulerIntegrationTest {
         repoField.setAccessible(true);
         repoField.set(scheduler, repo);
 
+        var fetchEngineField = AmbientWeatherApiScheduler.class.getDeclaredField("fetchEngine");
+        fetchEngineField.setAccessible(true);
+        fetchEngineField.set(scheduler, new ApiFetchEngine());
+
+        for (var keyField : List.of("appKey", "apiKey")) {
+            var field = AmbientWeatherApiScheduler.class.getDeclaredField(keyField);
+            field.setAccessible(true);
+            field.set(scheduler, "test-" + keyField);
+        }
+        for (var limitField : List.of("appKeyRequestsPerSecond", "apiKeyRequestsPerSecond", "backfillDays")) {
+            var field = AmbientWeatherApiScheduler.class.getDeclaredField(limitField);
+            field.setAccessible(true);
+            field.setInt(scheduler, 100);
+        }
+
         var isRunningField = AmbientWeatherApiScheduler.class.getDeclaredField("IS_RUNNING");
         isRunningField.setAccessible(true);
         AtomicBoolean flag = (AtomicBoolean) isRunningField.get(null);
         flag.set(false);
 
-        try (MockedStatic<CsvWriter> csvMock = Mockito.mockStatic(CsvWriter.class)) {
-            csvMock.when(() -> CsvWriter.getCsvPath(any(), any(), any(), any())).thenReturn(stationDir.resolve("out.csv"));
-            csvMock.when(() -> CsvWriter.writeSingleDayCsvFile(any(), any(), any(), any(), any())).thenAnswer(i -> null);
-
-            scheduler.processApiData();
+        // The stations are fetched on other threads, thus the written CSV file is checked (instead of a static mock)
+        scheduler.processApiData();
 
-            csvMock.verify(() -> CsvWriter.writeSingleDayCsvFile(any(), any(), any(), any(), any()));
-        }
+        var csvPath = CsvWriter.getCsvPath(AmbientWeatherApiScheduler.AW_CSV_PREFIX, stationDir,
+            apiEndDate.toLocalDate(), null);
+        assertTrue(Files.exists(csvPath));
     }
 
 }
@@ -0,0 +1,51 @@
+package mywild.wildweather.domain.weather.schedulers.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.Test;
+
+public class ApiFetchEngineTest {
+
+    @Test
+    void fetchAll_fetchesAllTheStationsEvenIfOneFails() throws Exception {
+        var engine = new ApiFetchEngine();
+        Set<String> fetched = ConcurrentHashMap.newKeySet();
+        engine.fetchAll("test", List.of("a", "b", "c", "d"), station -> {
+            if (station.equals("b")) {
+                throw new IOException("Failed");
+            }
+            if (station.equals("c")) {
+                throw new IllegalStateException("Failed");
+            }
+            fetched.add(station);
+        });
+        assertEquals(Set.of("a", "d"), fetched);
+    }
+
+    @Test
+    void getBucket_sharesTheBucketOfTheKey() {
+        var engine = new ApiFetchEngine();
+        var limits = List.of(ApiFetchEngine.spreadLimit(1, Duration.ofSeconds(1)));
+        var bucket = engine.getBucket("provider", "key", limits);
+        assertSame(bucket, engine.getBucket("provider", "key", limits));
+        assertTrue(bucket != engine.getBucket("provider", "other-key", limits));
+        assertTrue(bucket != engine.getBucket("other-provider", "key", limits));
+    }
+
+    @Test
+    void acquire_spreadsTheRequestsOfAllTheStations() throws Exception {
+        var engine = new ApiFetchEngine();
+        var bucket = engine.getBucket("provider", "key", List.of(ApiFetchEngine.spreadLimit(20, Duration.ofSeconds(1))));
+        var start = System.nanoTime();
+        engine.fetchAll("test", List.of(1, 2, 3, 4, 5), _ -> ApiFetchEngine.acquire(bucket));
+        // The first request is allowed at once, then one every 50 ms
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 190);
+    }
+
+}
@@ -0,0 +1,64 @@
+package mywild.wildweather.domain.weather.schedulers.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import mywild.wildweather.domain.weather.data.WeatherRepository;
+
+public class BackfillPlannerTest {
+
+    @Test
+    void batch_coversTheDaysWithTheFewestRequests() {
+        var date = LocalDate.of(2025, 1, 1);
+        assertEquals(List.of(), BackfillPlanner.batch(List.of(), 31));
+        assertEquals(List.of(
+                new DateRange(date, date.plusDays(30)),
+                new DateRange(date.plusDays(31), date.plusDays(31)),
+                new DateRange(date.plusDays(90), date.plusDays(92))),
+            BackfillPlanner.batch(List.of(date, date.plusDays(3), date.plusDays(30), date.plusDays(31),
+                date.plusDays(90), date.plusDays(92)), 31));
+        assertEquals(List.of(
+                new DateRange(date, date),
+                new DateRange(date.plusDays(1), date.plusDays(1)),
+                new DateRange(date.plusDays(5), date.plusDays(5))),
+            BackfillPlanner.batch(List.of(date, date.plusDays(1), date.plusDays(5)), 1));
+    }
+
+    @Test
+    void plan_skipsTheDaysInTheCsvFilesAndTheSkippedDays() throws Exception {
+        var folder = Files.createTempDirectory("backfill-planner-test-").resolve("station1");
+        Files.createDirectories(folder);
+        var configPath = Files.writeString(folder.resolve("test-station-id.txt"), "ID");
+        var lastDay = LocalDate.of(2025, 3, 31);
+        // A fetched day, and a month file that was written halfway through the month
+        Files.writeString(CsvWriter.getCsvPath("test", folder, lastDay.minusDays(1), null), "");
+        var monthPath = Files.writeString(
+            CsvWriter.getCsvPath("test", folder, LocalDate.of(2025, 2, 1), LocalDate.of(2025, 2, 28)), "");
+        Files.setLastModifiedTime(monthPath, FileTime.from(
+            LocalDate.of(2025, 2, 15).atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant()));
+        var repo = mock(WeatherRepository.class);
+        when(repo.findMissingDays("station1", lastDay.minusDays(59), lastDay, LocalDate.of(2025, 2, 1))).thenReturn(List.of(
+            LocalDate.of(2025, 2, 10),
+            LocalDate.of(2025, 2, 14),
+            LocalDate.of(2025, 2, 15),
+            LocalDate.of(2025, 2, 16),
+            LocalDate.of(2025, 3, 20),
+            lastDay.minusDays(1),
+            lastDay));
+
+        var plan = BackfillPlanner.plan(repo, "test", configPath, lastDay, 60, 31, List.of(LocalDate.of(2025, 2, 16)));
+        assertEquals("station1", plan.station());
+        assertEquals(3, plan.missingDays());
+        assertEquals(List.of(
+                new DateRange(LocalDate.of(2025, 2, 15), LocalDate.of(2025, 2, 15)),
+                new DateRange(LocalDate.of(2025, 3, 20), lastDay)),
+            plan.requests());
+    }
+
+}
@@ -1,6 +1,7 @@
 package mywild.wildweather.domain.weather.schedulers.api;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -37,4 +38,30 @@ public class CsvWriterTest {
         assertEquals(true, hasHigh);
         assertEquals(true, hasLow);
     }
+
+    @Test
+    void writeEmptyCsvFileWritesOnlyTheHeaders() throws Exception {
+        Path parent = Files.createTempDirectory("csv-writer-parent-");
+        LocalDate start = LocalDate.of(2025, 11, 1);
+        Path csvPath = CsvWriter.getCsvPath("test", parent, start, start.plusDays(29));
+
+        CsvWriter.writeEmptyCsvFile(csvPath);
+
+        List<String> lines = Files.readAllLines(csvPath, StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertEquals(true, lines.getFirst().contains("Outdoor Temperature"));
+        assertEquals(new DateRange(start, start.plusDays(29)), CsvWriter.getCsvDates("test", csvPath));
+    }
+
+    @Test
+    void getCsvDatesReadsTheDatesOfTheCsvPath() {
+        Path parent = Path.of("station");
+        LocalDate start = LocalDate.of(2025, 11, 1);
+        LocalDate end = LocalDate.of(2025, 11, 30);
+        assertEquals(new DateRange(start, start), CsvWriter.getCsvDates("test", CsvWriter.getCsvPath("test", parent, start, null)));
+        assertEquals(new DateRange(start, end), CsvWriter.getCsvDates("test", CsvWriter.getCsvPath("test", parent, start, end)));
+        assertNull(CsvWriter.getCsvDates("other", CsvWriter.getCsvPath("test", parent, start, end)));
+        assertNull(CsvWriter.getCsvDates("test", parent.resolve("test-high-lows-details-latest.csv")));
+        assertNull(CsvWriter.getCsvDates("test", parent.resolve("test-mac-address.txt")));
+    }
 }
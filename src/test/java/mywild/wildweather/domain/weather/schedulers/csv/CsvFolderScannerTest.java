@@ -0,0 +1,96 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.jupiter.api.Test;
+
+public class CsvFolderScannerTest {
+
+    @Test
+    void scan_onlyListsTheFoldersThatChanged() throws Exception {
+        Path root = Files.createTempDirectory("csv-scan-root-");
+        Path stationA = Files.createDirectories(root.resolve("stationA"));
+        Path stationB = Files.createDirectories(root.resolve("stationB"));
+        Path a1 = Files.writeString(stationA.resolve("a1.csv"), "h\n");
+        Path b1 = Files.writeString(stationB.resolve("b1.CSV"), "h\n");
+        Files.writeString(stationB.resolve("notes.txt"), "h\n");
+        Set<Path> processed = new HashSet<>();
+        var scanner = new CsvFolderScanner();
+        var archives = new CsvArchives();
+
+        assertEquals(Set.of(a1, b1), Set.copyOf(scanner.scan(root, false, processed::contains, archives)));
+
+        // The unprocessed files are found again
+        processed.add(a1);
+        assertEquals(List.of(b1), scanner.scan(root, false, processed::contains, archives));
+        processed.add(b1);
+        assertEquals(List.of(), scanner.scan(root, false, processed::contains, archives));
+
+        // A new file changes its folder's last modified time
+        Path b2 = Files.writeString(stationB.resolve("b2.csv"), "h\n");
+        Files.setLastModifiedTime(stationB, FileTime.fromMillis(Files.getLastModifiedTime(stationB).toMillis() + 60_000));
+        assertEquals(Set.of(b1, b2), Set.copyOf(scanner.scan(root, false, processed::contains, archives)));
+        processed.add(b2);
+
+        // A file that is changed in place is only found by a full scan
+        Files.writeString(a1, "h\n1\n");
+        assertEquals(List.of(), scanner.scan(root, false, processed::contains, archives));
+        assertEquals(Set.of(a1, b1, b2), Set.copyOf(scanner.scan(root, true, processed::contains, archives)));
+    }
+
+    @Test
+    void scan_listsTheCompressedFilesAndTheEntriesOfTheArchives() throws Exception {
+        Path root = Files.createTempDirectory("csv-scan-root-");
+        Path stationA = Files.createDirectories(root.resolve("stationA"));
+        Path stationC = Files.createDirectories(root.resolve("stationC"));
+        try (var output = new GZIPOutputStream(Files.newOutputStream(stationA.resolve("a1.csv.gz")))) {
+            output.write("h\n1\n".getBytes(StandardCharsets.UTF_8));
+        }
+        // An archive of station folders, and an archive in a station folder
+        writeZip(root.resolve("archive.zip"), "stationB/b1.csv", "stationB/notes.txt");
+        writeZip(stationC.resolve("archive.zip"), "c1.csv", "c2.csv.gz");
+
+        try (var archives = new CsvArchives()) {
+            var csvFiles = new CsvFolderScanner().scan(root, false, _ -> false, archives);
+
+            assertEquals(Set.of("stationA -> a1.csv", "stationB -> b1.csv", "stationC -> c1.csv", "stationC -> c2.csv"),
+                csvFiles.stream().map(CsvUtils::getCsvName).collect(Collectors.toSet()));
+            for (var csvFile : csvFiles) {
+                try (var reader = CsvUtils.newBufferedReader(csvFile)) {
+                    assertEquals(List.of("h", "1"), reader.lines().toList(), csvFile.toString());
+                }
+            }
+        }
+    }
+
+    private static void writeZip(Path zip, String... entries) throws IOException {
+        try (var output = new ZipOutputStream(Files.newOutputStream(zip))) {
+            for (var entry : entries) {
+                output.putNextEntry(new ZipEntry(entry));
+                var content = "h\n1\n".getBytes(StandardCharsets.UTF_8);
+                if (entry.endsWith(".gz")) {
+                    var bytes = new ByteArrayOutputStream();
+                    try (var gzip = new GZIPOutputStream(bytes)) {
+                        gzip.write(content);
+                    }
+                    content = bytes.toByteArray();
+                }
+                output.write(content);
+                output.closeEntry();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+public class CsvFolderWatcherTest {
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void start_processesTheChangedFilesAfterTheDebounceDelay() throws Exception {
+        Path root = Files.createTempDirectory("csv-watch-root-");
+        Path stationA = Files.createDirectories(root.resolve("stationA"));
+
+        CsvFolderWatcher watcher = new CsvFolderWatcher();
+        WeatherCsvScheduler mockScheduler = mock(WeatherCsvScheduler.class);
+        when(mockScheduler.processCsvFiles(anyCollection())).thenReturn(true);
+
+        Field folderField = CsvFolderWatcher.class.getDeclaredField("csvRootFolder");
+        folderField.setAccessible(true);
+        folderField.set(watcher, root.toString());
+        Field debounceField = CsvFolderWatcher.class.getDeclaredField("debounceSeconds");
+        debounceField.setAccessible(true);
+        debounceField.set(watcher, 1);
+        Field schedulerField = CsvFolderWatcher.class.getDeclaredField("csvScheduler");
+        schedulerField.setAccessible(true);
+        schedulerField.set(watcher, mockScheduler);
+
+        watcher.start();
+        try {
+            assertTrue(CsvFolderWatcher.isWatching());
+
+            Path a1 = Files.writeString(stationA.resolve("a1.csv"), "h\n");
+            Files.writeString(stationA.resolve("notes.txt"), "h\n");
+            Files.writeString(a1, "h\n1\n");
+            // A new station folder with a file
+            Path stationB = Files.createDirectories(root.resolve("stationB"));
+            Path b1 = Files.writeString(stationB.resolve("b1.csv"), "h\n");
+
+            ArgumentCaptor<Collection<Path>> processed = ArgumentCaptor.forClass(Collection.class);
+            verify(mockScheduler, timeout(10_000).atLeastOnce()).processCsvFiles(processed.capture());
+            var files = processed.getAllValues().stream().flatMap(Collection::stream).toList();
+            assertEquals(Set.of(a1, b1), Set.copyOf(files));
+        }
+        finally {
+            watcher.stop();
+        }
+        assertFalse(CsvFolderWatcher.isWatching());
+    }
+
+}
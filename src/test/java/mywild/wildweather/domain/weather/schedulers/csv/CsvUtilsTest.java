@@ -27,7 +27,7 @@ public class CsvUtilsTest {
         BufferedReader reader = new BufferedReader(new StringReader(csv));
 
         String[] headers = CsvUtils.getHeaders(reader);
-        List<CSVRecord> records = CsvUtils.getRecords(reader, headers);
+        List<CSVRecord> records = CsvUtils.parseRecords(reader, headers).getRecords();
 
         assertEquals(1, records.size());
         CSVRecord r = records.get(0);
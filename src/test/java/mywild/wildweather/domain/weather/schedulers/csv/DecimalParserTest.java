@@ -0,0 +1,59 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class DecimalParserTest {
+
+    @Test
+    void parse_matchesDoubleParseDouble() {
+        var texts = new ArrayList<>(List.of(
+            "0", "-0", "+1", "12.3", "-12.30", " 1015.2 ", ".5", "5.", "0.0001", "007.25", "123456789012345",
+            "1234567890123456789", "0.1234567890123456789", "9007199254740993", "1e3", "-2.5E-2", "1.5d", "3f",
+            "0.00000000000000000000000125", "NaN", "-Infinity"));
+        var random = new Random(15);
+        for (int i = 0; i < 10_000; i++) {
+            texts.add(Double.toString(random.nextGaussian() * Math.pow(10, random.nextInt(8))));
+            texts.add(String.format(Locale.ROOT, "%.2f", (random.nextDouble() - 0.5) * 2000));
+            texts.add(Integer.toString(random.nextInt(200) - 100));
+        }
+        var values = new double[1];
+        for (var text : texts) {
+            assertTrue(DecimalParser.parse(text, values, 0), text);
+            assertEquals(Double.doubleToRawLongBits(Double.parseDouble(text)), Double.doubleToRawLongBits(values[0]), text);
+        }
+    }
+
+    @Test
+    void parse_storesNaNForBlankAndInvalidText() {
+        var values = new double[] { 1, 1, 1 };
+
+        assertTrue(DecimalParser.parse(null, values, 0));
+        assertTrue(DecimalParser.parse("  ", values, 1));
+        assertTrue(Double.isNaN(values[0]));
+        assertTrue(Double.isNaN(values[1]));
+        for (var text : List.of("--", "-", ".", "1.2.3", "12,5", "1e", "1e+", "N/A", "null", "12 5", "1.5dd", "°C")) {
+            values[2] = 1;
+            assertFalse(DecimalParser.parse(text, values, 2), text);
+            assertTrue(Double.isNaN(values[2]), text);
+        }
+    }
+
+    @Test
+    void parse_readsARangeOfTheText() {
+        var values = new double[2];
+        var line = "High,2025-11-08,-3.25,1015.2";
+
+        assertTrue(DecimalParser.parse(line, 16, 21, values, 0));
+        assertTrue(DecimalParser.parse(line, 22, line.length(), values, 1));
+        assertEquals(-3.25, values[0]);
+        assertEquals(1015.2, values[1]);
+    }
+
+}
@@ -0,0 +1,132 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+
+public class FineScaleReaderTest {
+
+    @Test
+    void read_parsesTheDatesLikeZonedDateTime() throws Exception {
+        var dates = List.of(
+            "2024-10-02T23:55:00-07:00",
+            "2024-10-02T23:50-07:00",
+            "2024-02-29T00:00:00Z",
+            "1999-12-31T23:59:59+05:30",
+            "2025-03-30T01:00:00+01:00:30",
+            "2025-03-09T03:30-06:00[America/Denver]");
+        var csv = new StringBuilder("Date,Simple Date,Outdoor Temperature (°C)\r\n");
+        for (var date : dates) {
+            csv.append(date).append(",\"2024/10/2, 11:55 PM\",12.3\r\n").append("\r\n");
+        }
+        var file = writeCsv(csv.toString());
+
+        var timestamps = read(file);
+
+        assertEquals(dates.size(), timestamps.size());
+        for (int i = 0; i < dates.size(); i++) {
+            var expected = ZonedDateTime.parse(dates.get(i));
+            assertEquals(expected.toEpochSecond(), timestamps.get(i)[0], dates.get(i));
+            assertEquals(expected.getOffset().getTotalSeconds(), timestamps.get(i)[1], dates.get(i));
+            assertEquals(expected.toLocalDate().toEpochDay(), timestamps.get(i)[2], dates.get(i));
+        }
+    }
+
+    @Test
+    void read_findsTheDateColumnAfterQuotedCommas() throws Exception {
+        var file = writeCsv("\"Simple Date\",\"Date\"\n\"2024/10/2, 11:55 PM\", \"2024-10-02T23:55:00-07:00\"\n");
+
+        var timestamps = read(file);
+
+        assertEquals(1, timestamps.size());
+        assertEquals(ZonedDateTime.parse("2024-10-02T23:55:00-07:00").toEpochSecond(), timestamps.get(0)[0]);
+    }
+
+    @Test
+    void read_failsWithoutADateColumn() throws Exception {
+        var file = writeCsv("Time,Value\n2024-10-02T23:55:00-07:00,1\n");
+
+        assertThrows(IOException.class, () -> read(file));
+    }
+
+    @Test
+    void split_givesTheSameLinesAsTheWholeFile() throws Exception {
+        var csv = new StringBuilder("\uFEFFDate,Simple Date,Value\r\n");
+        var time = ZonedDateTime.parse("2024-10-02T23:55:00-07:00");
+        for (int i = 0; i < 500; i++, time = time.minusMinutes(5)) {
+            csv.append(time).append(",\"2024/10/2, 11:55 PM\",").append(i).append(i % 7 == 0 ? "\r\n\r\n" : "\n");
+        }
+        var file = writeCsv(csv.toString().stripTrailing());
+        var expected = read(file);
+
+        for (var rangeSize : List.of(1L, 40L, 1000L, 7919L, Long.MAX_VALUE)) {
+            List<long[]> timestamps = new ArrayList<>();
+            var ranges = FineScaleReader.split(file, rangeSize);
+            for (var range : ranges) {
+                FineScaleReader.read(file, range, timestamp -> timestamps.add(
+                    new long[] { timestamp.epochSecond(), timestamp.offsetSeconds(), timestamp.epochDay() }));
+            }
+            assertEquals(500, timestamps.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(expected.get(i), timestamps.get(i));
+            }
+            assertEquals(Files.size(file), ranges.getLast().end());
+        }
+        assertEquals(List.of(), FineScaleReader.split(writeCsv(""), 1));
+    }
+
+    @Test
+    void read_decompressesGzipFiles() throws Exception {
+        var csv = new StringBuilder("\uFEFFDate,Simple Date,Value\r\n");
+        var time = ZonedDateTime.parse("2024-10-02T23:55:00-07:00");
+        // Over a window of lines, so that the buffer is refilled
+        for (int i = 0; i < 30_000; i++, time = time.minusMinutes(5)) {
+            csv.append(time).append(",\"2024/10/2, 11:55 PM\",").append(i).append("\r\n");
+        }
+        var file = writeCsv(csv.toString());
+        var gzip = Files.createTempFile("fine-scale-", ".csv.gz");
+        try (var output = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+            output.write(Files.readAllBytes(file));
+        }
+
+        var expected = read(file);
+        var timestamps = read(gzip);
+
+        assertEquals(30_000, timestamps.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), timestamps.get(i));
+        }
+        assertEquals(1, FineScaleReader.split(gzip, 1).size());
+    }
+
+    @Test
+    void getEpochDay_matchesLocalDate() {
+        for (var date = LocalDate.of(1899, 1, 1); date.isBefore(LocalDate.of(2101, 1, 1)); date = date.plusDays(1)) {
+            assertEquals(date.toEpochDay(), FineScaleReader.getEpochDay(date.getYear(), date.getMonthValue(), date.getDayOfMonth()));
+        }
+    }
+
+    private static Path writeCsv(String content) throws IOException {
+        var file = Files.createTempFile("fine-scale-", ".csv");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static List<long[]> read(Path file) throws IOException {
+        List<long[]> timestamps = new ArrayList<>();
+        FineScaleReader.read(file, timestamp -> timestamps.add(
+            new long[] { timestamp.epochSecond(), timestamp.offsetSeconds(), timestamp.epochDay() }));
+        return timestamps;
+    }
+
+}
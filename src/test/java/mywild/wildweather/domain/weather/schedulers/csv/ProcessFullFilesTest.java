@@ -1,17 +1,27 @@
 package mywild.wildweather.domain.weather.schedulers.csv;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.junit.jupiter.api.Test;
+import mywild.wildweather.domain.weather.data.WeatherMissingDay;
 import mywild.wildweather.domain.weather.data.WeatherRepository;
-import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
-import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
+import mywild.wildweather.domain.weather.data.WeatherStationRow;
 
 public class ProcessFullFilesTest {
 
@@ -30,12 +40,8 @@ public class ProcessFullFilesTest {
         ProcessFullFiles proc = new ProcessFullFiles();
         WeatherRepository mockRepo = mock(WeatherRepository.class);
 
-        WeatherEntity existing = WeatherEntity.builder().station("stationA").date(java.time.LocalDate.of(2025, 11, 7))
-                .category(WeatherCategory.A).build();
-        when(mockRepo.findAllByDateAndStationOrderByDateAscCategoryAsc(existing.getDate(), "stationA"))
-                .thenReturn(List.of(existing));
-
-        when(mockRepo.findStations()).thenReturn(List.of());
+        when(mockRepo.updateMissing(anyList())).thenAnswer(invocation -> new boolean[((List<?>) invocation.getArgument(0)).size()]);
+        when(mockRepo.findStationCatalog()).thenReturn(List.of());
 
         var f = ProcessFullFiles.class.getDeclaredField("repo");
         f.setAccessible(true);
@@ -48,7 +54,150 @@ public class ProcessFullFilesTest {
         String csvName = CsvUtils.getCsvName(csv);
         assertTrue(WeatherCsvScheduler.hasFileBeenProcessed(csvName));
 
-        verify(mockRepo).saveAll(org.mockito.ArgumentMatchers.anyList());
+        verify(mockRepo).updateMissing(List.of(new WeatherMissingDay("stationA", LocalDate.of(2025, 11, 7), 99.0)));
+        verify(mockRepo).insertMissingDays("stationA");
+    }
+
+    @Test
+    void processAllFineScaleFiles_retriesTheFilesThatCannotBeOpened() throws Exception {
+        Path root = Files.createTempDirectory("proc-full-root-");
+        Path station = root.resolve("stationA");
+        Files.createDirectories(station);
+        Path csv = station.resolve("h01.csv");
+        Path unreadableCsv = station.resolve("h02.csv");
+
+        Files.writeString(csv, "Date,Value\n2025-11-07T00:00:00Z,1\n", StandardCharsets.UTF_8);
+
+        ProcessFullFiles proc = new ProcessFullFiles();
+        WeatherRepository mockRepo = mock(WeatherRepository.class);
+
+        when(mockRepo.updateMissing(anyList())).thenAnswer(invocation -> new boolean[((List<?>) invocation.getArgument(0)).size()]);
+
+        var f = ProcessFullFiles.class.getDeclaredField("repo");
+        f.setAccessible(true);
+        f.set(proc, mockRepo);
+
+        WeatherCsvScheduler.clearProcessedFiles();
+
+        proc.processAllFineScaleFiles(List.of(csv, unreadableCsv));
+
+        assertTrue(WeatherCsvScheduler.hasFileBeenProcessed(CsvUtils.getCsvName(csv)));
+        assertFalse(WeatherCsvScheduler.hasFileBeenProcessed(CsvUtils.getCsvName(unreadableCsv)));
+    }
+
+    @Test
+    void processAllFineScaleFiles_countsTheRecordsBeforeAnInvalidDate() throws Exception {
+        Path root = Files.createTempDirectory("proc-full-root-");
+        Path station = root.resolve("stationA");
+        Files.createDirectories(station);
+        Path csv = station.resolve("h03.csv");
+
+        Files.writeString(csv, "Date,Value\n2025-11-07T00:00:00Z,1\n2025-11-07T00:05:00Z,2\nnot a date,3\n",
+            StandardCharsets.UTF_8);
+
+        ProcessFullFiles proc = new ProcessFullFiles();
+        WeatherRepository mockRepo = mock(WeatherRepository.class);
+
+        when(mockRepo.updateMissing(anyList())).thenAnswer(invocation -> new boolean[((List<?>) invocation.getArgument(0)).size()]);
+
+        var f = ProcessFullFiles.class.getDeclaredField("repo");
+        f.setAccessible(true);
+        f.set(proc, mockRepo);
+
+        WeatherCsvScheduler.clearProcessedFiles();
+
+        proc.processAllFineScaleFiles(List.of(csv));
+
+        // The error is counted, and the file is processed (reading it again would fail the same way)
+        assertTrue(WeatherCsvScheduler.hasFileBeenProcessed(CsvUtils.getCsvName(csv)));
+        verify(mockRepo).updateMissing(List.of(new WeatherMissingDay("stationA", LocalDate.of(2025, 11, 7), 99.0)));
+    }
+
+    @Test
+    void processAllFineScaleFiles_countsTheRecordsOfEachDayOnce() throws Exception {
+        Path root = Files.createTempDirectory("proc-full-root-");
+        Path station = root.resolve("stationA");
+        Files.createDirectories(station);
+        // Half a day of records (in descending order), and a second file with the same records
+        StringBuilder content = new StringBuilder("Date,Simple Date,Value\n");
+        for (var time = ZonedDateTime.parse("2025-11-07T11:55:00-07:00"); time.getHour() >= 0 && time.getDayOfMonth() == 7;
+                time = time.minusMinutes(5)) {
+            content.append(time.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME)).append(",x,1\n");
+        }
+        Path csv1 = station.resolve("h01.csv");
+        Path csv2 = station.resolve("h02.csv");
+        Files.writeString(csv1, content, StandardCharsets.UTF_8);
+        Files.writeString(csv2, content, StandardCharsets.UTF_8);
+
+        ProcessFullFiles proc = new ProcessFullFiles();
+        WeatherRepository mockRepo = mock(WeatherRepository.class);
+
+        when(mockRepo.updateMissing(anyList())).thenAnswer(invocation -> new boolean[((List<?>) invocation.getArgument(0)).size()]);
+        when(mockRepo.findStationCatalog()).thenReturn(List.of(
+            new WeatherStationRow("stationA", LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 1), 3, 0, null)));
+
+        var f = ProcessFullFiles.class.getDeclaredField("repo");
+        f.setAccessible(true);
+        f.set(proc, mockRepo);
+
+        WeatherCsvScheduler.clearProcessedFiles();
+
+        proc.processAllFineScaleFiles(List.of(csv1, csv2));
+
+        assertTrue(WeatherCsvScheduler.hasFileBeenProcessed(CsvUtils.getCsvName(csv1)));
+        assertTrue(WeatherCsvScheduler.hasFileBeenProcessed(CsvUtils.getCsvName(csv2)));
+        verify(mockRepo).updateMissing(List.of(new WeatherMissingDay("stationA", LocalDate.of(2025, 11, 7), 50.0)));
+    }
+
+    @Test
+    void processAllFineScaleFiles_countsTheDaysOfALargeFileAcrossItsRanges() throws Exception {
+        Path root = Files.createTempDirectory("proc-full-root-");
+        Path station = root.resolve("stationA");
+        Files.createDirectories(station);
+        // Over 4MB of records (in descending order), missing the first N records of the Nth day (up to an hour)
+        var firstDay = LocalDate.of(2024, 1, 1);
+        var days = 600;
+        StringBuilder content = new StringBuilder("Date,Simple Date,Outdoor Temperature (°C),Humidity (%)\n");
+        for (var day = firstDay.plusDays(days - 1); !day.isBefore(firstDay); day = day.minusDays(1)) {
+            var skipped = (int) ChronoUnit.DAYS.between(firstDay, day) % 13;
+            var time = day.atTime(23, 55).atZone(ZoneOffset.ofHours(-7));
+            for (int i = 0; i < 24 * 12; i++, time = time.minusMinutes(5)) {
+                if (i >= skipped) {
+                    content.append(time.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME)).append(",\"2024/1/1, 0:00 AM\",12.3,55\n");
+                }
+            }
+        }
+        Path csv = station.resolve("h03.csv");
+        Files.writeString(csv, content, StandardCharsets.UTF_8);
+        assertTrue(Files.size(csv) > 8 * 1024 * 1024);
+
+        ProcessFullFiles proc = new ProcessFullFiles();
+        WeatherRepository mockRepo = mock(WeatherRepository.class);
+
+        Map<LocalDate, Double> saved = new ConcurrentHashMap<>();
+        when(mockRepo.updateMissing(anyList())).thenAnswer(invocation -> {
+            List<WeatherMissingDay> missingDays = invocation.getArgument(0);
+            missingDays.forEach(day -> saved.put(day.date(), day.missing()));
+            return new boolean[missingDays.size()];
+        });
+        when(mockRepo.findStationCatalog()).thenReturn(List.of());
+
+        var f = ProcessFullFiles.class.getDeclaredField("repo");
+        f.setAccessible(true);
+        f.set(proc, mockRepo);
+
+        WeatherCsvScheduler.clearProcessedFiles();
+
+        proc.processAllFineScaleFiles(List.of(csv));
+
+        assertTrue(WeatherCsvScheduler.hasFileBeenProcessed(CsvUtils.getCsvName(csv)));
+        // The complete days are not updated
+        assertEquals(days - (days + 12) / 13, saved.size());
+        for (int d = 0; d < days; d++) {
+            var skipped = d % 13;
+            assertEquals(skipped == 0 ? null : (double) Math.round(skipped / (24.0 * 12) * 100.0),
+                saved.get(firstDay.plusDays(d)), firstDay.plusDays(d).toString());
+        }
     }
 
 }
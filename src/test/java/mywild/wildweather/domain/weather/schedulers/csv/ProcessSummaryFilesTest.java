@@ -1,19 +1,34 @@
 package mywild.wildweather.domain.weather.schedulers.csv;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
-import static org.mockito.Mockito.atLeast;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import mywild.wildweather.domain.weather.data.WeatherRepository;
+import mywild.wildweather.domain.weather.data.WeatherRowCallback;
 import mywild.wildweather.domain.weather.data.entity.WeatherCategory;
+import mywild.wildweather.domain.weather.data.entity.WeatherEntity;
 
 public class ProcessSummaryFilesTest {
 
@@ -31,8 +46,12 @@ public class ProcessSummaryFilesTest {
         ProcessSummaryFiles proc = new ProcessSummaryFiles();
         WeatherRepository mockRepo = mock(WeatherRepository.class);
 
-        when(mockRepo.findByDateAndStationAndCategory(LocalDate.of(2025, 11, 7), "stationA", WeatherCategory.A))
-                .thenReturn(null);
+        when(mockRepo.insertNew(anyList())).thenAnswer(invocation -> {
+            List<WeatherEntity> entities = invocation.getArgument(0);
+            boolean[] inserted = new boolean[entities.size()];
+            java.util.Arrays.fill(inserted, true);
+            return inserted;
+        });
 
         var f = ProcessSummaryFiles.class.getDeclaredField("repo");
         f.setAccessible(true);
@@ -44,7 +63,361 @@ public class ProcessSummaryFilesTest {
 
         assertTrue(fine.isEmpty());
 
-        verify(mockRepo, atLeast(1)).save(org.mockito.ArgumentMatchers.any());
+        verify(mockRepo, atLeast(1)).insertNew(anyList());
+        verify(mockRepo, never()).findAllByStationAndDateBetween(org.mockito.ArgumentMatchers.any(),
+                org.mockito.ArgumentMatchers.any(), org.mockito.ArgumentMatchers.any());
+    }
+
+    @Test
+    void processAllSummaryFiles_comparesExistingRecordsOnlyOncePerFile() throws Exception {
+        Path root = Files.createTempDirectory("proc-sum-root-");
+        Path station = root.resolve("stationA");
+        Files.createDirectories(station);
+        Path csv = station.resolve("ambient-weather-high-lows-details-20251108.csv");
+
+        String header = ",Date,Outdoor Temperature,Wind Speed,Max Daily Gust,Wind Direction,Rain Rate,Daily Rain,Relative Pressure,Humidity,Ultra-Violet Radiation Index\n";
+        String row1 = "Average,2025-11-08,12.3,5.0,8.0,N,0.1,1.2,1013.2,55.0,0.0\n";
+        String row2 = "High,2025-11-08,18.3,9.0,12.0,,0.5,1.2,1015.2,75.0,3.0\n";
+        Files.writeString(csv, header + row1 + row2, StandardCharsets.UTF_8);
+
+        ProcessSummaryFiles proc = new ProcessSummaryFiles();
+        WeatherRepository mockRepo = mock(WeatherRepository.class);
+
+        when(mockRepo.insertNew(anyList())).thenReturn(new boolean[] { false, false });
+        when(mockRepo.findAllByStationAndDateBetween("stationA", LocalDate.of(2025, 11, 8), LocalDate.of(2025, 11, 8)))
+                .thenReturn(List.of(
+                    WeatherEntity.builder().station("stationA").date(LocalDate.of(2025, 11, 8))
+                        .category(WeatherCategory.A).temperature(12.3).build(),
+                    WeatherEntity.builder().station("stationA").date(LocalDate.of(2025, 11, 8))
+                        .category(WeatherCategory.H).temperature(18.3).build()));
+
+        var f = ProcessSummaryFiles.class.getDeclaredField("repo");
+        f.setAccessible(true);
+        f.set(proc, mockRepo);
+
+        WeatherCsvScheduler.clearProcessedFiles();
+
+        List<Path> fine = proc.processAllSummaryFiles(Stream.of(csv));
+
+        assertTrue(fine.isEmpty());
+        assertTrue(WeatherCsvScheduler.hasFileBeenProcessed(CsvUtils.getCsvName(csv)));
+        verify(mockRepo, atLeast(1)).findAllByStationAndDateBetween("stationA", LocalDate.of(2025, 11, 8), LocalDate.of(2025, 11, 8));
+    }
+
+    @Test
+    void processSummaryFile_savesLargeFilesInBatches() throws Exception {
+        Path root = Files.createTempDirectory("proc-sum-root-");
+        Path station = root.resolve("stationA");
+        Files.createDirectories(station);
+        Path csv = station.resolve("ambient-weather-high-lows-details-20251109.csv");
+
+        StringBuilder content = new StringBuilder(",Date,Outdoor Temperature,Wind Speed,Max Daily Gust,Wind Direction,Rain Rate,Daily Rain,Relative Pressure,Humidity,Ultra-Violet Radiation Index\n");
+        for (var date = LocalDate.of(2024, 1, 1); date.isBefore(LocalDate.of(2025, 2, 4)); date = date.plusDays(1)) {
+            for (var category : List.of("Average", "High", "Low")) {
+                content.append(category).append(',').append(date).append(",12.3,5.0,8.0,N,0.1,1.2,1013.2,55.0,0.0\n");
+            }
+        }
+        Files.writeString(csv, content, StandardCharsets.UTF_8);
+
+        ProcessSummaryFiles proc = new ProcessSummaryFiles();
+        WeatherRepository mockRepo = mock(WeatherRepository.class);
+
+        List<Integer> batchSizes = new ArrayList<>();
+        when(mockRepo.insertNew(anyList())).thenAnswer(invocation -> {
+            List<WeatherEntity> entities = invocation.getArgument(0);
+            batchSizes.add(entities.size());
+            boolean[] inserted = new boolean[entities.size()];
+            java.util.Arrays.fill(inserted, true);
+            return inserted;
+        });
+
+        var f = ProcessSummaryFiles.class.getDeclaredField("repo");
+        f.setAccessible(true);
+        f.set(proc, mockRepo);
+
+        WeatherCsvScheduler.clearProcessedFiles();
+
+        assertTrue(proc.processSummaryFile(csv));
+
+        assertTrue(WeatherCsvScheduler.hasFileBeenProcessed(CsvUtils.getCsvName(csv)));
+        // 400 days with 3 categories each
+        assertEquals(List.of(1000, 200), batchSizes);
+    }
+
+    @Test
+    void processSummaryFile_insertsTheUnknownRecordsAndSkipsTheSavedRecordsWithoutReadingThem() throws Exception {
+        Path root = Files.createTempDirectory("proc-sum-root-");
+        Path station = root.resolve("stationA");
+        Files.createDirectories(station);
+        Path csv = station.resolve("ambient-weather-high-lows-details-20251113.csv");
+
+        String header = ",Date,Outdoor Temperature,Wind Speed,Max Daily Gust,Wind Direction,Rain Rate,Daily Rain,Relative Pressure,Humidity,Ultra-Violet Radiation Index\n";
+        String row1 = "Average,2025-11-13,12.3,5.0,8.0,N,0.1,1.2,1013.2,55.0,0.0\n";
+        String row2 = "High,2025-11-13,18.3,9.0,12.0,N,0.5,1.2,1015.2,75.0,\n";
+        Files.writeString(csv, header + row1 + row2, StandardCharsets.UTF_8);
+
+        ProcessSummaryFiles proc = new ProcessSummaryFiles();
+        WeatherRepository mockRepo = mock(WeatherRepository.class);
+
+        // The Average record is already saved (with another missing percentage)
+        doAnswer(invocation -> {
+            WeatherRowCallback callback = invocation.getArgument(0);
+            callback.accept("stationA", LocalDate.of(2025, 11, 13), WeatherCategory.A, "N",
+                new double[] { 12.3, 5.0, 8.0, 0.1, 1.2, 1013.2, 55.0, 0.0, 25.0 });
+            return null;
+        }).when(mockRepo).scanAll(any());
+        List<List<WeatherEntity>> insertedBatches = new ArrayList<>();
+        when(mockRepo.insertNew(anyList())).thenAnswer(invocation -> {
+            List<WeatherEntity> entities = invocation.getArgument(0);
+            insertedBatches.add(entities);
+            boolean[] inserted = new boolean[entities.size()];
+            java.util.Arrays.fill(inserted, true);
+            return inserted;
+        });
+
+        var f = ProcessSummaryFiles.class.getDeclaredField("repo");
+        f.setAccessible(true);
+        f.set(proc, mockRepo);
+
+        WeatherCsvScheduler.clearProcessedFiles();
+
+        // Only the unknown record is inserted, and the saved record is compared with its loaded values
+        assertTrue(proc.processSummaryFile(csv));
+        assertEquals(1, insertedBatches.size());
+        assertEquals(List.of(WeatherCategory.H), insertedBatches.get(0).stream().map(WeatherEntity::getCategory).toList());
+        verify(mockRepo, never()).findAllByStationAndDateBetween(any(), any(), any());
+        verify(mockRepo, never()).saveAll(anyList());
+
+        // The next runs know both records (with the inserted values), thus nothing is inserted nor read
+        assertTrue(proc.processSummaryFile(csv));
+        assertEquals(1, insertedBatches.size());
+        verify(mockRepo).scanAll(any());
+        verify(mockRepo, never()).findAllByStationAndDateBetween(any(), any(), any());
+        verify(mockRepo, never()).saveAll(anyList());
+
+        // The records are loaded again after a reset
+        proc.clearSavedRecords();
+        assertTrue(proc.processSummaryFile(csv));
+        verify(mockRepo, times(2)).scanAll(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void processSummaryFile_updatesTheChangedRecordsOfAChangedFile() throws Exception {
+        Path root = Files.createTempDirectory("proc-sum-root-");
+        Path station = root.resolve("stationA");
+        Files.createDirectories(station);
+        Path csv = station.resolve("ambient-weather-high-lows-details-20251110.csv");
+
+        String header = ",Date,Outdoor Temperature,Wind Speed,Max Daily Gust,Wind Direction,Rain Rate,Daily Rain,Relative Pressure,Humidity,Ultra-Violet Radiation Index\n";
+        String row1 = "Average,2025-11-10,12.3,5.0,8.0,N,0.1,1.2,1013.2,55.0,0.0\n";
+        String row2 = "High,2025-11-10,19.5,9.0,12.0,N,0.5,1.2,1015.2,75.0,3.0\n";
+        Files.writeString(csv, header + row1 + row2, StandardCharsets.UTF_8);
+
+        ProcessSummaryFiles proc = new ProcessSummaryFiles();
+        WeatherRepository mockRepo = mock(WeatherRepository.class);
+
+        when(mockRepo.insertNew(anyList())).thenReturn(new boolean[] { false, false });
+        when(mockRepo.findAllByStationAndDateBetween("stationA", LocalDate.of(2025, 11, 10), LocalDate.of(2025, 11, 10)))
+                .thenReturn(List.of(
+                    WeatherEntity.builder().id(1L).station("stationA").date(LocalDate.of(2025, 11, 10))
+                        .category(WeatherCategory.A).temperature(12.3).windSpeed(5.0).windMax(8.0).windDirection("N")
+                        .rainRate(0.1).rainDaily(1.2).pressure(1013.2).humidity(55.0).uvRadiationIndex(0.0).build(),
+                    WeatherEntity.builder().id(2L).station("stationA").date(LocalDate.of(2025, 11, 10))
+                        .category(WeatherCategory.H).temperature(18.3).windSpeed(9.0).windMax(12.0).windDirection("N")
+                        .rainRate(0.5).rainDaily(1.2).pressure(1015.2).humidity(75.0).uvRadiationIndex(3.0)
+                        .missing(10.0).build()));
+
+        var f = ProcessSummaryFiles.class.getDeclaredField("repo");
+        f.setAccessible(true);
+        f.set(proc, mockRepo);
+
+        WeatherCsvScheduler.clearProcessedFiles();
+        WeatherCsvScheduler.markFileAsProcessed(CsvUtils.getCsvName(csv));
+
+        assertTrue(proc.processSummaryFile(csv));
+
+        ArgumentCaptor<List<WeatherEntity>> updated = ArgumentCaptor.forClass(List.class);
+        verify(mockRepo).saveAll(updated.capture());
+        assertEquals(1, updated.getValue().size());
+        assertEquals(2L, updated.getValue().get(0).getId());
+        assertEquals(19.5, updated.getValue().get(0).getTemperature());
+        assertEquals(10.0, updated.getValue().get(0).getMissing());
+
+        // The read and updated values are kept, thus processing the file again doesn't read the database
+        assertTrue(proc.processSummaryFile(csv));
+        verify(mockRepo).findAllByStationAndDateBetween(any(), any(), any());
+        verify(mockRepo).saveAll(anyList());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void processAllSummaryFiles_processesEachFileOnceAndPrefersTheStationRecords() throws Exception {
+        Path root = Files.createTempDirectory("proc-sum-root-");
+        Path station = root.resolve("stationA");
+        Files.createDirectories(station);
+        Path stationCsv = station.resolve("ambient-weather-high-lows-details-20251111.csv");
+        Path wuCsv = station.resolve("api-weather-underground-20251111.csv");
+
+        String header = ",Date,Outdoor Temperature,Wind Speed,Max Daily Gust,Wind Direction,Rain Rate,Daily Rain,Relative Pressure,Humidity,Ultra-Violet Radiation Index\n";
+        Files.writeString(stationCsv, header
+            + "Average,2025-11-11,12.3,5.0,8.0,N,0.1,1.2,1013.2,55.0,0.0\n", StandardCharsets.UTF_8);
+        Files.writeString(wuCsv, header
+            + "Average,2025-11-11,11.0,5.0,8.0,N,0.1,1.2,1013.2,55.0,0.0\n"
+            + "Average,2025-11-12,9.0,5.0,8.0,N,0.1,1.2,1013.2,55.0,0.0\n", StandardCharsets.UTF_8);
+
+        ProcessSummaryFiles proc = new ProcessSummaryFiles();
+        WeatherRepository mockRepo = mock(WeatherRepository.class);
+
+        // A minimal database, keyed by date and category
+        Map<String, WeatherEntity> saved = new ConcurrentHashMap<>();
+        List<WeatherEntity> insertedRows = new CopyOnWriteArrayList<>();
+        when(mockRepo.insertNew(anyList())).thenAnswer(invocation -> {
+            List<WeatherEntity> entities = invocation.getArgument(0);
+            boolean[] inserted = new boolean[entities.size()];
+            for (int i = 0; i < entities.size(); i++) {
+                var entity = entities.get(i).toBuilder().id((long) saved.size() + 1).build();
+                inserted[i] = saved.putIfAbsent(entity.getDate() + "/" + entity.getCategory(), entity) == null;
+            }
+            insertedRows.addAll(entities);
+            return inserted;
+        });
+        when(mockRepo.findAllByStationAndDateBetween(any(), any(), any()))
+            .thenAnswer(invocation -> List.copyOf(saved.values()));
+        when(mockRepo.saveAll(anyList())).thenAnswer(invocation -> {
+            List<WeatherEntity> entities = invocation.getArgument(0);
+            entities.forEach(entity -> saved.put(entity.getDate() + "/" + entity.getCategory(), entity));
+            return entities;
+        });
+
+        var f = ProcessSummaryFiles.class.getDeclaredField("repo");
+        f.setAccessible(true);
+        f.set(proc, mockRepo);
+
+        WeatherCsvScheduler.clearProcessedFiles();
+
+        List<Path> fine = proc.processAllSummaryFiles(Stream.of(wuCsv, stationCsv));
+
+        assertTrue(fine.isEmpty());
+        assertTrue(WeatherCsvScheduler.hasFileBeenProcessed(CsvUtils.getCsvName(stationCsv)));
+        assertTrue(WeatherCsvScheduler.hasFileBeenProcessed(CsvUtils.getCsvName(wuCsv)));
+        // Each record is sent once (the Weather Underground record of the 11th is dropped when it comes second)
+        assertTrue(insertedRows.size() <= 3);
+        assertEquals(12.3, saved.get("2025-11-11/A").getTemperature());
+        assertEquals(9.0, saved.get("2025-11-12/A").getTemperature());
+        assertEquals(List.of("Parse", "Merge", "Write"),
+            proc.getLastRunStats().stream().map(IngestStageStats::stage).toList());
+        assertEquals(3, proc.getLastRunStats().get(0).rows());
+    }
+
+    @Test
+    void processAllSummaryFiles_replacesTheEstimatesWithTheStationRecords() throws Exception {
+        Path root = Files.createTempDirectory("proc-sum-root-");
+        Path station = root.resolve("stationA");
+        Files.createDirectories(station);
+        Path estimatesCsv = station.resolve("estimates-20251112.csv");
+        Path stationCsv = station.resolve("ambient-weather-high-lows-details-20251112.csv");
+
+        String header = ",Date,Outdoor Temperature,Wind Speed,Max Daily Gust,Wind Direction,Rain Rate,Daily Rain,Relative Pressure,Humidity,Ultra-Violet Radiation Index\n";
+        // The larger file is parsed first, thus the estimate is saved before the station's record replaces it
+        Files.writeString(estimatesCsv, header
+            + "Average,2025-11-12,11.0,5.0,8.0,N,0.1,1.2,1013.2,55.0,0.0\n"
+            + "Average,2025-11-13,10.0,5.0,8.0,N,0.1,1.2,1013.2,55.0,0.0\n", StandardCharsets.UTF_8);
+        Files.writeString(stationCsv, header
+            + "Average,2025-11-12,12.3,5.0,8.0,N,0.1,1.2,1013.2,55.0,0.0\n", StandardCharsets.UTF_8);
+
+        ProcessSummaryFiles proc = new ProcessSummaryFiles();
+        WeatherRepository mockRepo = mock(WeatherRepository.class);
+
+        // A minimal database, keyed by date and category
+        Map<String, WeatherEntity> saved = new ConcurrentHashMap<>();
+        when(mockRepo.insertNew(anyList())).thenAnswer(invocation -> {
+            List<WeatherEntity> entities = invocation.getArgument(0);
+            boolean[] inserted = new boolean[entities.size()];
+            for (int i = 0; i < entities.size(); i++) {
+                var entity = entities.get(i).toBuilder().id((long) saved.size() + 1).build();
+                inserted[i] = saved.putIfAbsent(entity.getDate() + "/" + entity.getCategory(), entity) == null;
+            }
+            return inserted;
+        });
+        when(mockRepo.findAllByStationAndDateBetween(any(), any(), any()))
+            .thenAnswer(invocation -> List.copyOf(saved.values()));
+        when(mockRepo.saveAll(anyList())).thenAnswer(invocation -> {
+            List<WeatherEntity> entities = invocation.getArgument(0);
+            entities.forEach(entity -> saved.put(entity.getDate() + "/" + entity.getCategory(), entity));
+            return entities;
+        });
+
+        var f = ProcessSummaryFiles.class.getDeclaredField("repo");
+        f.setAccessible(true);
+        f.set(proc, mockRepo);
+
+        WeatherCsvScheduler.clearProcessedFiles();
+
+        proc.processAllSummaryFiles(Stream.of(estimatesCsv, stationCsv));
+
+        assertEquals(12.3, saved.get("2025-11-12/A").getTemperature());
+        assertEquals(0.0, saved.get("2025-11-12/A").getMissing());
+        assertEquals(99.99, saved.get("2025-11-13/A").getMissing());
+    }
+
+    @Test
+    void processSummaryFile_writesTheOverlappingFilesOfAStationOneAtATime() throws Exception {
+        Path root = Files.createTempDirectory("proc-sum-root-");
+        Path station = root.resolve("stationA");
+        Files.createDirectories(station);
+        Path firstCsv = station.resolve("ambient-weather-high-lows-details-20251113.csv");
+        Path secondCsv = station.resolve("api-weather-underground-20251113.csv");
+
+        String header = ",Date,Outdoor Temperature,Wind Speed,Max Daily Gust,Wind Direction,Rain Rate,Daily Rain,Relative Pressure,Humidity,Ultra-Violet Radiation Index\n";
+        String rows = "Average,2025-11-13,12.3,5.0,8.0,N,0.1,1.2,1013.2,55.0,0.0\n"
+            + "Average,2025-11-14,10.3,5.0,8.0,N,0.1,1.2,1013.2,55.0,0.0\n";
+        Files.writeString(firstCsv, header + rows, StandardCharsets.UTF_8);
+        Files.writeString(secondCsv, header + rows, StandardCharsets.UTF_8);
+
+        ProcessSummaryFiles proc = new ProcessSummaryFiles();
+        WeatherRepository mockRepo = mock(WeatherRepository.class);
+
+        // A minimal database, that counts the writes of the station that are running at the same time
+        Map<String, WeatherEntity> saved = new ConcurrentHashMap<>();
+        AtomicInteger writing = new AtomicInteger();
+        AtomicInteger maxWriting = new AtomicInteger();
+        when(mockRepo.insertNew(anyList())).thenAnswer(invocation -> {
+            maxWriting.accumulateAndGet(writing.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(100);
+                List<WeatherEntity> entities = invocation.getArgument(0);
+                boolean[] inserted = new boolean[entities.size()];
+                for (int i = 0; i < entities.size(); i++) {
+                    var entity = entities.get(i).toBuilder().id((long) i + 1).build();
+                    inserted[i] = saved.putIfAbsent(entity.getDate() + "/" + entity.getCategory(), entity) == null;
+                }
+                return inserted;
+            }
+            finally {
+                writing.decrementAndGet();
+            }
+        });
+        when(mockRepo.findAllByStationAndDateBetween(any(), any(), any()))
+            .thenAnswer(invocation -> List.copyOf(saved.values()));
+
+        var f = ProcessSummaryFiles.class.getDeclaredField("repo");
+        f.setAccessible(true);
+        f.set(proc, mockRepo);
+
+        WeatherCsvScheduler.clearProcessedFiles();
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var first = executor.submit(() -> proc.processSummaryFile(firstCsv));
+            var second = executor.submit(() -> proc.processSummaryFile(secondCsv));
+            assertTrue(first.get());
+            assertTrue(second.get());
+        }
+
+        assertEquals(1, maxWriting.get());
+        assertEquals(2, saved.size());
+        assertTrue(WeatherCsvScheduler.hasFileBeenProcessed(CsvUtils.getCsvName(firstCsv)));
+        assertTrue(WeatherCsvScheduler.hasFileBeenProcessed(CsvUtils.getCsvName(secondCsv)));
     }
 
 }
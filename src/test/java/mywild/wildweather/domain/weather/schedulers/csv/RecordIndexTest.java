@@ -0,0 +1,83 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import org.junit.jupiter.api.Test;
+
+public class RecordIndexTest {
+
+    @Test
+    void add_detectsTheSameTimestampInTheSameOffset() {
+        var index = new RecordIndex();
+        assertTrue(index.add(timestamp("2025-11-07T10:05:00-07:00")));
+        assertFalse(index.add(timestamp("2025-11-07T10:05:00-07:00")));
+        // The same instant, as written in another offset
+        assertTrue(index.add(timestamp("2025-11-07T11:05:00-06:00")));
+        // Timestamps with seconds
+        assertTrue(index.add(timestamp("2025-11-07T10:05:30-07:00")));
+        assertFalse(index.add(timestamp("2025-11-07T10:05:30-07:00")));
+        // Growing backwards and forwards by more than the current words
+        assertTrue(index.add(timestamp("2024-11-07T10:05:00-07:00")));
+        assertTrue(index.add(timestamp("2026-11-07T10:05:00-07:00")));
+        assertFalse(index.add(timestamp("2024-11-07T10:05:00-07:00")));
+        assertFalse(index.add(timestamp("2025-11-07T10:05:00-07:00")));
+    }
+
+    @Test
+    void addAll_countsTheTimestampsThatWereAlreadyIndexed() {
+        var station = new RecordIndex();
+        var file1 = new RecordIndex();
+        file1.add(timestamp("2025-11-07T23:55:00-07:00"));
+        file1.add(timestamp("2025-11-07T23:50:00-07:00"));
+        file1.add(timestamp("2025-11-07T23:50:30-07:00"));
+        assertEquals(0, station.addAll(file1));
+        var file2 = new RecordIndex();
+        file2.add(timestamp("2025-11-08T00:00:00-07:00"));
+        file2.add(timestamp("2025-11-07T23:55:00-07:00"));
+        file2.add(timestamp("2025-11-07T23:50:30-07:00"));
+        file2.add(timestamp("2025-10-01T12:00:00-06:00"));
+        assertEquals(2, station.addAll(file2));
+        assertFalse(station.add(timestamp("2025-11-08T00:00:00-07:00")));
+        assertFalse(station.add(timestamp("2025-10-01T12:00:00-06:00")));
+    }
+
+    @Test
+    void contains_findsTheIndexedTimestamps() {
+        var index = new RecordIndex();
+        index.add(timestamp("2025-11-07T23:55:00-07:00"));
+        index.add(timestamp("2025-11-07T23:50:30-07:00"));
+        assertTrue(index.contains(timestamp("2025-11-07T23:55:00-07:00")));
+        assertTrue(index.contains(timestamp("2025-11-07T23:50:30-07:00")));
+        assertFalse(index.contains(timestamp("2025-11-07T23:50:00-07:00")));
+        assertFalse(index.contains(timestamp("2025-11-08T00:55:00-06:00")));
+        // Before and after the indexed words
+        assertFalse(index.contains(timestamp("2024-11-07T23:55:00-07:00")));
+        assertFalse(index.contains(timestamp("2026-11-07T23:55:00-07:00")));
+    }
+
+    @Test
+    void countDays_countsTheRecordsOfEachDayInTheirOwnOffset() {
+        var index = new RecordIndex();
+        assertEquals(0, index.countDays().counts().length);
+        index.add(timestamp("2025-11-07T23:55:00-07:00"));
+        index.add(timestamp("2025-11-07T00:00:00-07:00"));
+        index.add(timestamp("2025-11-07T00:00:30-07:00"));
+        index.add(timestamp("2025-11-09T00:00:00-07:00"));
+        // The same instant as the first record, but on the next day in this offset
+        index.add(timestamp("2025-11-08T00:55:00-06:00"));
+        var dayCounts = index.countDays();
+        assertEquals(LocalDate.of(2025, 11, 7).toEpochDay(), dayCounts.firstDay());
+        assertArrayEquals(new int[] { 3, 1, 1 }, dayCounts.counts());
+    }
+
+    private static FineScaleReader.Timestamp timestamp(String value) {
+        var dateTime = OffsetDateTime.parse(value);
+        var timestamp = new FineScaleReader.Timestamp();
+        return timestamp.setKey((dateTime.toEpochSecond() << 17) | (dateTime.getOffset().getTotalSeconds() + (1 << 16)));
+    }
+
+}
@@ -0,0 +1,66 @@
+package mywild.wildweather.domain.weather.schedulers.csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.time.LocalDate;
+import org.junit.jupiter.api.Test;
+import mywild.wildweather.domain.weather.schedulers.csv.SummaryCsvSchema.Column;
+
+public class SummaryCsvSchemaTest {
+
+    @Test
+    void compile_resolvesTheColumnsOncePerHeader() throws Exception {
+        var headerLine = ",Date,Humidity (%),Hourly Rain (in/hr),Outdoor Temperature (°C),Wind Speed,Max Daily Gust,"
+            + "Wind Direction,Daily Rain,Relative Pressure,Ultra-Violet Radiation Index";
+        var schema = SummaryCsvSchema.compile(headerLine);
+
+        assertSame(schema, SummaryCsvSchema.compile(headerLine));
+        assertTrue(schema.isSummary());
+
+        var reader = new BufferedReader(new StringReader("High,2025-11-08,75,0.5,18.3,9.0,12.0,,1.2,1015.2,\n"));
+        var record = CsvUtils.parseRecords(reader, schema.getHeaders()).iterator().next();
+        var row = new SummaryCsvSchema.Row();
+        assertNull(schema.decode(record, row));
+        assertEquals("High", schema.get(record, Column.CATEGORY));
+        assertEquals(LocalDate.of(2025, 11, 8), row.getDate());
+        assertEquals(18.3, row.getValue(Column.TEMPERATURE));
+        assertEquals(0.5, row.getValue(Column.RAIN_RATE));
+        assertEquals(75.0, row.getValue(Column.HUMIDITY));
+        assertNull(row.getWindDirection());
+        assertNull(row.getValue(Column.UV_RADIATION_INDEX));
+    }
+
+    @Test
+    void decode_returnsTheFirstInvalidColumn() throws Exception {
+        var schema = SummaryCsvSchema.compile(",Date,Outdoor Temperature (°C),Humidity (%),Relative Pressure,Wind Speed,"
+            + "Max Daily Gust,Wind Direction,Hourly Rain (in/hr),Daily Rain,Ultra-Violet Radiation Index");
+        var reader = new BufferedReader(new StringReader("Low,2025-11-08,--,75,1015.2.1,,,,,,\n"));
+        var record = CsvUtils.parseRecords(reader, schema.getHeaders()).iterator().next();
+        var row = new SummaryCsvSchema.Row();
+
+        assertEquals(Column.TEMPERATURE, schema.decode(record, row));
+        assertNull(row.getValue(Column.TEMPERATURE));
+        assertEquals(75.0, row.getValue(Column.HUMIDITY));
+        assertNull(row.getValue(Column.PRESSURE));
+    }
+
+    @Test
+    void get_failsForMissingColumns() throws Exception {
+        var schema = SummaryCsvSchema.compile("Date,Outdoor Temperature");
+
+        assertFalse(schema.isSummary());
+
+        var reader = new BufferedReader(new StringReader("2025-11-08\n"));
+        var record = CsvUtils.parseRecords(reader, schema.getHeaders()).iterator().next();
+
+        assertThrows(IllegalArgumentException.class, () -> schema.get(record, Column.HUMIDITY));
+        assertThrows(IllegalArgumentException.class, () -> schema.get(record, Column.TEMPERATURE));
+    }
+
+}
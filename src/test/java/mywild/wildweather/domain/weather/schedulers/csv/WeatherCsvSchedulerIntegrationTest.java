@@ -8,12 +8,16 @@ import java.nio.file.Path;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
+import mywild.wildweather.domain.weather.data.CsvFileRepository;
+import mywild.wildweather.domain.weather.data.WeatherRepository;
 
 public class WeatherCsvSchedulerIntegrationTest {
 
+    @BeforeEach
     @AfterEach
     void cleanup() throws Exception {
         Field isRunningField = WeatherCsvScheduler.class.getDeclaredField("IS_RUNNING");
@@ -21,6 +25,7 @@ public class WeatherCsvSchedulerIntegrationTest {
         AtomicBoolean isRunning = (AtomicBoolean) isRunningField.get(null);
         isRunning.set(false);
         WeatherCsvScheduler.clearProcessedFiles();
+        WeatherCsvScheduler.clearChangedWeather();
     }
 
     @Test
@@ -38,6 +43,8 @@ public class WeatherCsvSchedulerIntegrationTest {
 
         ProcessSummaryFiles mockSummary = Mockito.mock(ProcessSummaryFiles.class);
         ProcessFullFiles mockFull = Mockito.mock(ProcessFullFiles.class);
+        WeatherRepository mockRepo = Mockito.mock(WeatherRepository.class);
+        CsvFileRepository mockCsvFileRepo = Mockito.mock(CsvFileRepository.class);
         Field folderField = WeatherCsvScheduler.class.getDeclaredField("csvRootFolder");
         folderField.setAccessible(true);
         folderField.set(scheduler, root.toString());
@@ -48,6 +55,12 @@ public class WeatherCsvSchedulerIntegrationTest {
         Field fFull = WeatherCsvScheduler.class.getDeclaredField("processFullFiles");
         fFull.setAccessible(true);
         fFull.set(scheduler, mockFull);
+        Field fRepo = WeatherCsvScheduler.class.getDeclaredField("repo");
+        fRepo.setAccessible(true);
+        fRepo.set(scheduler, mockRepo);
+        Field fCsvFileRepo = WeatherCsvScheduler.class.getDeclaredField("csvFileRepo");
+        fCsvFileRepo.setAccessible(true);
+        fCsvFileRepo.set(scheduler, mockCsvFileRepo);
 
         Mockito.when(mockSummary.processAllSummaryFiles(ArgumentMatchers.any())).thenAnswer(invocation -> {
             Stream<Path> paths = invocation.getArgument(0);
@@ -1,30 +1,51 @@
 package mywild.wildweather.domain.weather.schedulers.csv;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
+import org.springframework.context.ApplicationEventPublisher;
+import mywild.wildweather.domain.weather.data.CsvFileRepository;
+import mywild.wildweather.domain.weather.data.WeatherDataChangedEvent;
 import mywild.wildweather.domain.weather.data.WeatherRepository;
+import mywild.wildweather.domain.weather.data.entity.CsvFileEntity;
 
 public class WeatherCsvSchedulerTest {
 
+    @BeforeEach
     @AfterEach
     void cleanup() throws Exception {
         Field isRunningField = WeatherCsvScheduler.class.getDeclaredField("IS_RUNNING");
         isRunningField.setAccessible(true);
         AtomicBoolean isRunning = (AtomicBoolean) isRunningField.get(null);
         isRunning.set(false);
+        Field isRestoredField = WeatherCsvScheduler.class.getDeclaredField("IS_RESTORED");
+        isRestoredField.setAccessible(true);
+        AtomicBoolean isRestored = (AtomicBoolean) isRestoredField.get(null);
+        isRestored.set(false);
         WeatherCsvScheduler.clearProcessedFiles();
+        WeatherCsvScheduler.clearChangedWeather();
     }
 
     @Test
@@ -38,6 +59,7 @@ public class WeatherCsvSchedulerTest {
         ProcessSummaryFiles mockSummary = Mockito.mock(ProcessSummaryFiles.class);
         ProcessFullFiles mockFull = Mockito.mock(ProcessFullFiles.class);
         WeatherRepository mockRepo = Mockito.mock(WeatherRepository.class);
+        CsvFileRepository mockCsvFileRepo = Mockito.mock(CsvFileRepository.class);
 
         Field folderField = WeatherCsvScheduler.class.getDeclaredField("csvRootFolder");
         folderField.setAccessible(true);
@@ -52,6 +74,9 @@ public class WeatherCsvSchedulerTest {
         Field fRepo = WeatherCsvScheduler.class.getDeclaredField("repo");
         fRepo.setAccessible(true);
         fRepo.set(scheduler, mockRepo);
+        Field fCsvFileRepo = WeatherCsvScheduler.class.getDeclaredField("csvFileRepo");
+        fCsvFileRepo.setAccessible(true);
+        fCsvFileRepo.set(scheduler, mockCsvFileRepo);
 
         when(mockSummary.processAllSummaryFiles(ArgumentMatchers.any()))
                 .thenReturn(Collections.emptyList());
@@ -61,9 +86,193 @@ public class WeatherCsvSchedulerTest {
 
         verify(mockSummary).processAllSummaryFiles(ArgumentMatchers.any());
         verify(mockFull).processAllFineScaleFiles(ArgumentMatchers.anyList());
+        verify(mockCsvFileRepo).saveAll(ArgumentMatchers.anyList());
         assertFalse(scheduler.isRunning());
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    void processCsvFiles_restoresAndCheckpointsProcessedFiles() throws Exception {
+        Path root = Files.createTempDirectory("csv-root-");
+
+        WeatherCsvScheduler scheduler = new WeatherCsvScheduler();
+
+        ProcessSummaryFiles mockSummary = Mockito.mock(ProcessSummaryFiles.class);
+        ProcessFullFiles mockFull = Mockito.mock(ProcessFullFiles.class);
+        WeatherRepository mockRepo = Mockito.mock(WeatherRepository.class);
+        CsvFileRepository mockCsvFileRepo = Mockito.mock(CsvFileRepository.class);
+        ApplicationEventPublisher mockPublisher = Mockito.mock(ApplicationEventPublisher.class);
+
+        Field folderField = WeatherCsvScheduler.class.getDeclaredField("csvRootFolder");
+        folderField.setAccessible(true);
+        folderField.set(scheduler, root.toString());
+        Field fSummary = WeatherCsvScheduler.class.getDeclaredField("processSummaryFiles");
+        fSummary.setAccessible(true);
+        fSummary.set(scheduler, mockSummary);
+        Field fFull = WeatherCsvScheduler.class.getDeclaredField("processFullFiles");
+        fFull.setAccessible(true);
+        fFull.set(scheduler, mockFull);
+        Field fRepo = WeatherCsvScheduler.class.getDeclaredField("repo");
+        fRepo.setAccessible(true);
+        fRepo.set(scheduler, mockRepo);
+        Field fCsvFileRepo = WeatherCsvScheduler.class.getDeclaredField("csvFileRepo");
+        fCsvFileRepo.setAccessible(true);
+        fCsvFileRepo.set(scheduler, mockCsvFileRepo);
+        Field fPublisher = WeatherCsvScheduler.class.getDeclaredField("eventPublisher");
+        fPublisher.setAccessible(true);
+        fPublisher.set(scheduler, mockPublisher);
+
+        when(mockCsvFileRepo.findAll()).thenReturn(List.of(CsvFileEntity.builder()
+            .id(1L).name("stationA -> old.csv").processed(LocalDateTime.now()).build()));
+        when(mockSummary.processAllSummaryFiles(ArgumentMatchers.any())).thenAnswer(invocation -> {
+            WeatherCsvScheduler.markFileAsProcessed("stationA -> new.csv");
+            return Collections.emptyList();
+        });
+
+        scheduler.processCsvFiles();
+
+        assertTrue(WeatherCsvScheduler.hasFileBeenProcessed("stationA -> old.csv"));
+        assertTrue(WeatherCsvScheduler.hasFileBeenProcessed("stationA -> new.csv"));
+        ArgumentCaptor<List<CsvFileEntity>> saved = ArgumentCaptor.forClass(List.class);
+        verify(mockCsvFileRepo).saveAll(saved.capture());
+        assertEquals(1, saved.getValue().size());
+        assertEquals("stationA -> new.csv", saved.getValue().get(0).getName());
+        // No weather rows were changed
+        verify(mockPublisher, never()).publishEvent(ArgumentMatchers.<Object>any());
+    }
+
+    @Test
+    void processCsvFiles_refreshesTheRollupsAndStationsOfChangedWeather() throws Exception {
+        Path root = Files.createTempDirectory("csv-root-");
+
+        WeatherCsvScheduler scheduler = new WeatherCsvScheduler();
+
+        ProcessSummaryFiles mockSummary = Mockito.mock(ProcessSummaryFiles.class);
+        ProcessFullFiles mockFull = Mockito.mock(ProcessFullFiles.class);
+        WeatherRepository mockRepo = Mockito.mock(WeatherRepository.class);
+        CsvFileRepository mockCsvFileRepo = Mockito.mock(CsvFileRepository.class);
+        ApplicationEventPublisher mockPublisher = Mockito.mock(ApplicationEventPublisher.class);
+
+        Field folderField = WeatherCsvScheduler.class.getDeclaredField("csvRootFolder");
+        folderField.setAccessible(true);
+        folderField.set(scheduler, root.toString());
+        Field fSummary = WeatherCsvScheduler.class.getDeclaredField("processSummaryFiles");
+        fSummary.setAccessible(true);
+        fSummary.set(scheduler, mockSummary);
+        Field fFull = WeatherCsvScheduler.class.getDeclaredField("processFullFiles");
+        fFull.setAccessible(true);
+        fFull.set(scheduler, mockFull);
+        Field fRepo = WeatherCsvScheduler.class.getDeclaredField("repo");
+        fRepo.setAccessible(true);
+        fRepo.set(scheduler, mockRepo);
+        Field fCsvFileRepo = WeatherCsvScheduler.class.getDeclaredField("csvFileRepo");
+        fCsvFileRepo.setAccessible(true);
+        fCsvFileRepo.set(scheduler, mockCsvFileRepo);
+        Field fPublisher = WeatherCsvScheduler.class.getDeclaredField("eventPublisher");
+        fPublisher.setAccessible(true);
+        fPublisher.set(scheduler, mockPublisher);
+
+        when(mockSummary.processAllSummaryFiles(ArgumentMatchers.any())).thenAnswer(invocation -> {
+            WeatherCsvScheduler.markWeatherAsChanged("s1", LocalDate.of(2025, 3, 1), LocalDate.of(2025, 3, 5));
+            WeatherCsvScheduler.markWeatherAsChanged("s1", LocalDate.of(2025, 2, 10), LocalDate.of(2025, 2, 11));
+            WeatherCsvScheduler.markWeatherAsChanged("s1", LocalDate.of(2025, 3, 6), LocalDate.of(2025, 3, 6));
+            WeatherCsvScheduler.markWeatherAsChanged("s2", "s2 -> b.csv", LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 2));
+            return Collections.emptyList();
+        });
+
+        scheduler.processCsvFiles();
+
+        // The rollups of the existing data are calculated before the files are processed
+        var initOrder = Mockito.inOrder(mockRepo, mockSummary);
+        initOrder.verify(mockRepo).initializeRollups();
+        initOrder.verify(mockSummary).processAllSummaryFiles(ArgumentMatchers.any());
+        verify(mockRepo).refreshRollups("s1", LocalDate.of(2025, 2, 10), LocalDate.of(2025, 2, 11));
+        verify(mockRepo).refreshRollups("s1", LocalDate.of(2025, 3, 1), LocalDate.of(2025, 3, 6));
+        verify(mockRepo).refreshRollups("s2", LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 2));
+        // Once after the summary files (with the new source), and again at the end of the run
+        var inOrder = Mockito.inOrder(mockRepo, mockFull);
+        inOrder.verify(mockRepo).refreshStation("s2", "s2 -> b.csv");
+        inOrder.verify(mockFull).processAllFineScaleFiles(ArgumentMatchers.any());
+        inOrder.verify(mockRepo).refreshStation("s2", null);
+        verify(mockRepo, times(2)).refreshStation("s1", null);
+        verify(mockPublisher).publishEvent(new WeatherDataChangedEvent(Map.of(
+            "s1", new TreeMap<>(Map.of(
+                LocalDate.of(2025, 2, 10), LocalDate.of(2025, 2, 11),
+                LocalDate.of(2025, 3, 1), LocalDate.of(2025, 3, 6))),
+            "s2", new TreeMap<>(Map.of(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 2))))));
+    }
+
+    @Test
+    void processCsvFiles_refreshesTheChangedWeatherAgainAfterAFailure() throws Exception {
+        Path root = Files.createTempDirectory("csv-root-");
+
+        WeatherCsvScheduler scheduler = new WeatherCsvScheduler();
+
+        ProcessSummaryFiles mockSummary = Mockito.mock(ProcessSummaryFiles.class);
+        ProcessFullFiles mockFull = Mockito.mock(ProcessFullFiles.class);
+        WeatherRepository mockRepo = Mockito.mock(WeatherRepository.class);
+        CsvFileRepository mockCsvFileRepo = Mockito.mock(CsvFileRepository.class);
+        ApplicationEventPublisher mockPublisher = Mockito.mock(ApplicationEventPublisher.class);
+
+        Field folderField = WeatherCsvScheduler.class.getDeclaredField("csvRootFolder");
+        folderField.setAccessible(true);
+        folderField.set(scheduler, root.toString());
+        Field fSummary = WeatherCsvScheduler.class.getDeclaredField("processSummaryFiles");
+        fSummary.setAccessible(true);
+        fSummary.set(scheduler, mockSummary);
+        Field fFull = WeatherCsvScheduler.class.getDeclaredField("processFullFiles");
+        fFull.setAccessible(true);
+        fFull.set(scheduler, mockFull);
+        Field fRepo = WeatherCsvScheduler.class.getDeclaredField("repo");
+        fRepo.setAccessible(true);
+        fRepo.set(scheduler, mockRepo);
+        Field fCsvFileRepo = WeatherCsvScheduler.class.getDeclaredField("csvFileRepo");
+        fCsvFileRepo.setAccessible(true);
+        fCsvFileRepo.set(scheduler, mockCsvFileRepo);
+        Field fPublisher = WeatherCsvScheduler.class.getDeclaredField("eventPublisher");
+        fPublisher.setAccessible(true);
+        fPublisher.set(scheduler, mockPublisher);
+
+        when(mockSummary.processAllSummaryFiles(ArgumentMatchers.any()))
+            .thenAnswer(invocation -> {
+                WeatherCsvScheduler.markWeatherAsChanged("s1", "s1 -> a.csv", LocalDate.of(2025, 3, 1), LocalDate.of(2025, 3, 5));
+                return Collections.emptyList();
+            })
+            .thenReturn(Collections.emptyList());
+        Mockito.doThrow(new IllegalStateException("Failed")).doNothing()
+            .when(mockRepo).refreshStation("s1", "s1 -> a.csv");
+        Mockito.doThrow(new IllegalStateException("Failed")).doNothing()
+            .when(mockRepo).refreshRollups("s1", LocalDate.of(2025, 3, 1), LocalDate.of(2025, 3, 5));
+
+        scheduler.processCsvFiles();
+        scheduler.processCsvFiles();
+
+        // The failed days and source are refreshed again by the next run
+        verify(mockRepo, times(2)).refreshRollups("s1", LocalDate.of(2025, 3, 1), LocalDate.of(2025, 3, 5));
+        verify(mockRepo, times(2)).refreshStation("s1", "s1 -> a.csv");
+        verify(mockRepo).refreshStation("s1", null);
+    }
+
+    @Test
+    void addRange_mergesTheOverlappingAndAdjacentRanges() {
+        var ranges = new TreeMap<LocalDate, LocalDate>();
+        WeatherCsvScheduler.addRange(ranges, LocalDate.of(2025, 1, 10), LocalDate.of(2025, 1, 12));
+        WeatherCsvScheduler.addRange(ranges, LocalDate.of(2025, 6, 1), LocalDate.of(2025, 6, 1));
+        WeatherCsvScheduler.addRange(ranges, LocalDate.of(2025, 1, 20), LocalDate.of(2025, 1, 25));
+        assertEquals(Map.of(
+                LocalDate.of(2025, 1, 10), LocalDate.of(2025, 1, 12),
+                LocalDate.of(2025, 1, 20), LocalDate.of(2025, 1, 25),
+                LocalDate.of(2025, 6, 1), LocalDate.of(2025, 6, 1)),
+            ranges);
+        // Adjacent to the first range, and overlapping the second
+        WeatherCsvScheduler.addRange(ranges, LocalDate.of(2025, 1, 13), LocalDate.of(2025, 1, 21));
+        WeatherCsvScheduler.addRange(ranges, LocalDate.of(2025, 5, 1), LocalDate.of(2025, 5, 31));
+        assertEquals(Map.of(
+                LocalDate.of(2025, 1, 10), LocalDate.of(2025, 1, 25),
+                LocalDate.of(2025, 5, 1), LocalDate.of(2025, 6, 1)),
+            ranges);
+    }
+
     @Test
     void processCsvFiles_returnsImmediatelyWhenAlreadyRunning() throws Exception {
         WeatherCsvScheduler scheduler = new WeatherCsvScheduler();
@@ -120,19 +329,67 @@ public class WeatherCsvSchedulerTest {
         assertTrue(WeatherCsvScheduler.hasFileBeenProcessed(testFile));
     }
 
+    @Test
+    void hasFileChanged_onlyDetectsNewAndChangedContent() throws Exception {
+        Path station = Files.createTempDirectory("csv-root-").resolve("stationA");
+        Files.createDirectories(station);
+        Path csv = station.resolve("a.csv");
+        Files.writeString(csv, "h1\n1\n");
+        var csvName = CsvUtils.getCsvName(csv);
+
+        assertTrue(WeatherCsvScheduler.hasFileChanged(csv));
+        WeatherCsvScheduler.markFileAsProcessed(csvName);
+        assertFalse(WeatherCsvScheduler.hasFileChanged(csv));
+
+        // Only the last modified time changed
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(Files.getLastModifiedTime(csv).toMillis() - 60_000));
+        assertFalse(WeatherCsvScheduler.hasFileChanged(csv));
+
+        Files.writeString(csv, "h1\n2\n");
+        assertTrue(WeatherCsvScheduler.hasFileChanged(csv));
+        assertTrue(WeatherCsvScheduler.hasFileBeenProcessed(csvName));
+        WeatherCsvScheduler.markFileAsProcessed(csvName);
+
+        // The same content, once compressed
+        Path gzip = station.resolve("a.csv.gz");
+        try (var output = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+            output.write(Files.readAllBytes(csv));
+        }
+        Files.delete(csv);
+        assertEquals(csvName, CsvUtils.getCsvName(gzip));
+        assertFalse(WeatherCsvScheduler.hasFileChanged(gzip));
+    }
+
     @Test
     void resetProcessedCsvFiles_shouldClearListAndRepository() throws Exception {
         WeatherCsvScheduler scheduler = new WeatherCsvScheduler();
         WeatherRepository mockRepo = Mockito.mock(WeatherRepository.class);
+        CsvFileRepository mockCsvFileRepo = Mockito.mock(CsvFileRepository.class);
+        ApplicationEventPublisher mockPublisher = Mockito.mock(ApplicationEventPublisher.class);
         
         Field fRepo = WeatherCsvScheduler.class.getDeclaredField("repo");
         fRepo.setAccessible(true);
         fRepo.set(scheduler, mockRepo);
+        Field fCsvFileRepo = WeatherCsvScheduler.class.getDeclaredField("csvFileRepo");
+        fCsvFileRepo.setAccessible(true);
+        fCsvFileRepo.set(scheduler, mockCsvFileRepo);
+        Field fPublisher = WeatherCsvScheduler.class.getDeclaredField("eventPublisher");
+        fPublisher.setAccessible(true);
+        fPublisher.set(scheduler, mockPublisher);
+        ProcessSummaryFiles mockSummaryFiles = Mockito.mock(ProcessSummaryFiles.class);
+        Field fSummaryFiles = WeatherCsvScheduler.class.getDeclaredField("processSummaryFiles");
+        fSummaryFiles.setAccessible(true);
+        fSummaryFiles.set(scheduler, mockSummaryFiles);
 
         WeatherCsvScheduler.markFileAsProcessed("test.csv");
         scheduler.resetProcessedCsvFiles();
 
         verify(mockRepo).deleteAll();
+        verify(mockRepo).deleteAllRollups();
+        verify(mockRepo).deleteAllStations();
+        verify(mockCsvFileRepo).deleteAll();
+        verify(mockSummaryFiles).clearSavedRecords();
+        verify(mockPublisher).publishEvent(new WeatherDataChangedEvent(null));
         assertFalse(WeatherCsvScheduler.hasFileBeenProcessed("test.csv"));
     }
 